@@ -0,0 +1,41 @@
+package io.github.nahkd123.nodegraph.graph;
+
+import java.lang.management.ManagementFactory;
+
+import com.sun.management.ThreadMXBean;
+
+/**
+ * <p>
+ * Access to per-thread allocation counter of HotSpot. The counter is not
+ * available when the JVM does not support it, or when {@code jdk.management}
+ * module is missing from the runtime.
+ * </p>
+ */
+final class Allocations {
+	private static final ThreadMXBean THREADS = find();
+
+	private Allocations() {}
+
+	private static ThreadMXBean find() {
+		try {
+			if (ManagementFactory.getThreadMXBean() instanceof ThreadMXBean threads
+				&& threads.isThreadAllocatedMemorySupported()
+				&& threads.isThreadAllocatedMemoryEnabled()) return threads;
+		} catch (LinkageError e) {
+			// jdk.management is not available
+		}
+
+		return null;
+	}
+
+	/**
+	 * <p>
+	 * Get the total number of bytes allocated by current thread.
+	 * </p>
+	 * 
+	 * @return The allocated bytes, or {@code -1} if not available.
+	 */
+	static long currentThread() {
+		return THREADS != null ? THREADS.getCurrentThreadAllocatedBytes() : -1L;
+	}
+}
@@ -0,0 +1,74 @@
+package io.github.nahkd123.nodegraph.graph;
+
+import java.util.List;
+
+import io.github.nahkd123.nodegraph.node.BatchNode;
+import io.github.nahkd123.nodegraph.socket.OutputSocket;
+
+/**
+ * <p>
+ * An evaluation round that evaluates a node graph over a batch of samples in
+ * one pass. Each sample have its own environment, while internal node states
+ * are shared between all samples of the round.
+ * </p>
+ * <p>
+ * Every node is processed for the whole batch before moving to the next node:
+ * {@link BatchNode} is processed once per batch and other nodes are processed
+ * once per sample. As a result, nodes with internal states observe samples in
+ * a different order compared to evaluating each sample separately.
+ * </p>
+ *
+ * @param <E> Type of environment object.
+ */
+public interface BatchEvaluationRound<E> {
+	/**
+	 * <p>
+	 * Evaluate the node instance for every sample.
+	 * </p>
+	 *
+	 * @param instance     The node instance.
+	 * @param environments The environment of each sample.
+	 * @return The output getter to obtain the results of all samples. The getter
+	 *         always reflects the latest evaluation.
+	 */
+	BatchOutputGetter evalBatch(NodeInstance<?, E> instance, List<? extends E> environments);
+
+	public static interface BatchOutputGetter {
+		/**
+		 * <p>
+		 * Get the number of samples.
+		 * </p>
+		 */
+		int size();
+
+		<V> V get(OutputSocket<V> socket, int sample);
+
+		long getLong(OutputSocket<? extends Number> socket, int sample);
+
+		double getDouble(OutputSocket<? extends Number> socket, int sample);
+
+		/**
+		 * <p>
+		 * Get the output column as {@code double} values. If the socket is not
+		 * stored as {@code double}, the values will be converted to a new array.
+		 * Only the first {@link #size()} elements are used.
+		 * </p>
+		 *
+		 * @param socket The output socket.
+		 * @return The output column.
+		 */
+		double[] getDoubles(OutputSocket<? extends Number> socket);
+
+		/**
+		 * <p>
+		 * Get the output column as {@code long} values. If the socket is not
+		 * stored as {@code long}, the values will be converted to a new array. Only
+		 * the first {@link #size()} elements are used.
+		 * </p>
+		 *
+		 * @param socket The output socket.
+		 * @return The output column.
+		 */
+		long[] getLongs(OutputSocket<?> socket);
+	}
+}
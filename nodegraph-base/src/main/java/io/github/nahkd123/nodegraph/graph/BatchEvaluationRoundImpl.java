@@ -0,0 +1,426 @@
+package io.github.nahkd123.nodegraph.graph;
+
+import java.util.Arrays;
+import java.util.List;
+
+import io.github.nahkd123.nodegraph.node.BatchNode;
+import io.github.nahkd123.nodegraph.node.BatchProcessContext;
+import io.github.nahkd123.nodegraph.node.Node;
+import io.github.nahkd123.nodegraph.node.NodeProcessContext;
+import io.github.nahkd123.nodegraph.socket.InputSocket;
+import io.github.nahkd123.nodegraph.socket.OutputSocket;
+
+/**
+ * <p>
+ * Batch evaluation round that runs {@link CompiledGraph}. Values are stored in
+ * columns: each global output index of the plan have a {@code long[]},
+ * {@code double[]} or {@code Object[]} column depending on its storage kind.
+ * </p>
+ * <p>
+ * Columns are allocated on first use and only reallocated when the batch
+ * grows, so repeated evaluations with the same batch size reuse all columns.
+ * </p>
+ *
+ * @param <E> Type of environment object.
+ */
+class BatchEvaluationRoundImpl<E> implements BatchEvaluationRound<E> {
+	private final CompiledGraph<E> plan;
+	private final Object[] states;
+	private final boolean[] initialized;
+	private final Object[] outputColumns;
+	private final Object[] capturedColumns;
+	private final long[][] scratchLongs;
+	private final double[][] scratchDoubles;
+	private final Object[][] scratchObjects;
+	private final int[][] schedules;
+	private final BatchOutputGetter[] getters;
+	private final SlotBatchContext batchContext = new SlotBatchContext();
+	private final SampleContext sampleContext = new SampleContext();
+	private List<? extends E> environments = List.of();
+	private int size = 0;
+
+	BatchEvaluationRoundImpl(CompiledGraph<E> plan) {
+		this.plan = plan;
+		this.states = new Object[plan.instances.length];
+		this.initialized = new boolean[plan.instances.length];
+		this.outputColumns = new Object[plan.outputOwners.length];
+		this.capturedColumns = new Object[plan.inputSources.length];
+		this.scratchLongs = new long[plan.inputSources.length][];
+		this.scratchDoubles = new double[plan.inputSources.length][];
+		this.scratchObjects = new Object[plan.inputSources.length][];
+		this.schedules = new int[plan.instances.length][];
+		this.getters = new BatchOutputGetter[plan.instances.length];
+	}
+
+	@Override
+	public BatchOutputGetter evalBatch(NodeInstance<?, E> instance, List<? extends E> environments) {
+		int target = plan.slotOf(instance);
+		if (target == -1) throw new IllegalArgumentException("Node instance is not a part of compiled graph");
+		int[] schedule = schedules[target];
+		if (schedule == null) schedule = schedules[target] = plan.schedule(target);
+		this.environments = environments;
+		this.size = environments.size();
+
+		for (int i = 0; i < schedule.length; i += 2) {
+			process(schedule[i]);
+			int capture = schedule[i + 1];
+			if (capture != -1) capture(capture);
+		}
+
+		BatchOutputGetter getter = getters[target];
+		if (getter == null) getter = getters[target] = new SlotOutputGetter(target);
+		return getter;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private void process(int slot) {
+		Node node = plan.nodes[slot];
+
+		if (!initialized[slot]) {
+			states[slot] = node.initialize();
+			initialized[slot] = true;
+		}
+
+		if (node instanceof BatchNode batch) {
+			batchContext.slot = slot;
+			batch.processBatch(batchContext);
+			return;
+		}
+
+		sampleContext.slot = slot;
+
+		for (int sample = 0; sample < size; sample++) {
+			sampleContext.sample = sample;
+			node.process(sampleContext);
+		}
+	}
+
+	private void capture(int input) {
+		System.arraycopy(outputColumn(plan.inputSources[input]), 0, capturedColumn(input), 0, size);
+	}
+
+	private Object newColumn(byte kind) {
+		return switch (kind) {
+		case CompiledGraph.KIND_LONG -> new long[size];
+		case CompiledGraph.KIND_DOUBLE -> new double[size];
+		default -> new Object[size];
+		};
+	}
+
+	private static int lengthOf(Object column) {
+		if (column instanceof long[] longs) return longs.length;
+		if (column instanceof double[] doubles) return doubles.length;
+		return ((Object[]) column).length;
+	}
+
+	private Object outputColumn(int output) {
+		Object column = outputColumns[output];
+		if (column == null || lengthOf(column) < size)
+			column = outputColumns[output] = newColumn(plan.outputKinds[output]);
+		return column;
+	}
+
+	private Object capturedColumn(int input) {
+		Object column = capturedColumns[input];
+		if (column == null || lengthOf(column) < size)
+			column = capturedColumns[input] = newColumn(plan.outputKinds[plan.inputSources[input]]);
+		return column;
+	}
+
+	/**
+	 * <p>
+	 * Get the column that the input reads from. The input must be connected.
+	 * </p>
+	 */
+	private Object sourceColumn(int input) {
+		int src = plan.inputSources[input];
+		return plan.cached[plan.outputOwners[src]] ? outputColumn(src) : capturedColumn(input);
+	}
+
+	private static Object readColumn(Object column, Class<?> type, int sample) {
+		if (column instanceof long[] longs) return CompiledGraph.box(type, longs[sample], 0d);
+		if (column instanceof double[] doubles) return CompiledGraph.box(type, 0L, doubles[sample]);
+		return ((Object[]) column)[sample];
+	}
+
+	private static long readColumnLong(Object column, int sample) {
+		if (column instanceof long[] longs) return longs[sample];
+		if (column instanceof double[] doubles) return (long) doubles[sample];
+		return CompiledGraph.unboxLong(((Object[]) column)[sample]);
+	}
+
+	private static double readColumnDouble(Object column, int sample) {
+		if (column instanceof long[] longs) return longs[sample];
+		if (column instanceof double[] doubles) return doubles[sample];
+		return CompiledGraph.unboxDouble(((Object[]) column)[sample]);
+	}
+
+	private Object readInput(int input, int sample) {
+		int src = plan.inputSources[input];
+		if (src == -1) return plan.inputConstants[input];
+		return readColumn(sourceColumn(input), plan.outputTypes[src], sample);
+	}
+
+	private long readInputLong(int input, int sample) {
+		if (plan.inputSources[input] == -1) return plan.inputConstantLongs[input];
+		return readColumnLong(sourceColumn(input), sample);
+	}
+
+	private double readInputDouble(int input, int sample) {
+		if (plan.inputSources[input] == -1) return plan.inputConstantDoubles[input];
+		return readColumnDouble(sourceColumn(input), sample);
+	}
+
+	private long[] scratchLongs(int input) {
+		long[] column = scratchLongs[input];
+		if (column == null || column.length < size) column = scratchLongs[input] = new long[size];
+		return column;
+	}
+
+	private double[] scratchDoubles(int input) {
+		double[] column = scratchDoubles[input];
+		if (column == null || column.length < size) column = scratchDoubles[input] = new double[size];
+		return column;
+	}
+
+	private Object[] scratchObjects(int input) {
+		Object[] column = scratchObjects[input];
+		if (column == null || column.length < size) column = scratchObjects[input] = new Object[size];
+		return column;
+	}
+
+	/**
+	 * <p>
+	 * Write primitive value to output column that is stored as {@code long} or
+	 * {@code double}.
+	 * </p>
+	 */
+	private static void writePrimitive(Object column, int sample, long longValue, double doubleValue) {
+		if (column instanceof long[] longs) longs[sample] = longValue;
+		else ((double[]) column)[sample] = doubleValue;
+	}
+
+	private class SlotOutputGetter implements BatchOutputGetter {
+		private final int slot;
+
+		SlotOutputGetter(int slot) {
+			this.slot = slot;
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public <V> V get(OutputSocket<V> socket, int sample) {
+			int output = plan.outputIndexOf(slot, socket);
+			return (V) readColumn(outputColumn(output), plan.outputTypes[output], sample);
+		}
+
+		@Override
+		public long getLong(OutputSocket<? extends Number> socket, int sample) {
+			return readColumnLong(outputColumn(plan.outputIndexOf(slot, socket)), sample);
+		}
+
+		@Override
+		public double getDouble(OutputSocket<? extends Number> socket, int sample) {
+			return readColumnDouble(outputColumn(plan.outputIndexOf(slot, socket)), sample);
+		}
+
+		@Override
+		public double[] getDoubles(OutputSocket<? extends Number> socket) {
+			Object column = outputColumn(plan.outputIndexOf(slot, socket));
+			if (column instanceof double[] doubles) return doubles;
+			double[] out = new double[size];
+			for (int i = 0; i < size; i++) out[i] = readColumnDouble(column, i);
+			return out;
+		}
+
+		@Override
+		public long[] getLongs(OutputSocket<?> socket) {
+			Object column = outputColumn(plan.outputIndexOf(slot, socket));
+			if (column instanceof long[] longs) return longs;
+			long[] out = new long[size];
+			for (int i = 0; i < size; i++) out[i] = readColumnLong(column, i);
+			return out;
+		}
+	}
+
+	private class SlotBatchContext implements BatchProcessContext<Object, E> {
+		private int slot;
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public Object getStates() { return states[slot]; }
+
+		@Override
+		public E getEnvironment(int sample) {
+			return environments.get(sample);
+		}
+
+		@Override
+		public double[] getDoubles(InputSocket<? extends Number> socket) {
+			int input = plan.inputIndexOf(slot, socket);
+			double[] scratch;
+
+			if (plan.inputSources[input] == -1) {
+				scratch = scratchDoubles(input);
+				Arrays.fill(scratch, 0, size, plan.inputConstantDoubles[input]);
+				return scratch;
+			}
+
+			Object column = sourceColumn(input);
+			if (column instanceof double[] doubles) return doubles;
+			scratch = scratchDoubles(input);
+			for (int i = 0; i < size; i++) scratch[i] = readColumnDouble(column, i);
+			return scratch;
+		}
+
+		@Override
+		public long[] getLongs(InputSocket<?> socket) {
+			int input = plan.inputIndexOf(slot, socket);
+			long[] scratch;
+
+			if (plan.inputSources[input] == -1) {
+				scratch = scratchLongs(input);
+				Arrays.fill(scratch, 0, size, plan.inputConstantLongs[input]);
+				return scratch;
+			}
+
+			Object column = sourceColumn(input);
+			if (column instanceof long[] longs) return longs;
+			scratch = scratchLongs(input);
+			for (int i = 0; i < size; i++) scratch[i] = readColumnLong(column, i);
+			return scratch;
+		}
+
+		@Override
+		public Object[] getObjects(InputSocket<?> socket) {
+			int input = plan.inputIndexOf(slot, socket);
+			int src = plan.inputSources[input];
+			Object[] scratch;
+
+			if (src == -1) {
+				scratch = scratchObjects(input);
+				Arrays.fill(scratch, 0, size, plan.inputConstants[input]);
+				return scratch;
+			}
+
+			Object column = sourceColumn(input);
+			if (column instanceof Object[] objects) return objects;
+			scratch = scratchObjects(input);
+			for (int i = 0; i < size; i++) scratch[i] = readColumn(column, plan.outputTypes[src], i);
+			return scratch;
+		}
+
+		@Override
+		public double[] getDoubleOutput(OutputSocket<?> socket) {
+			if (outputColumn(plan.outputIndexOf(slot, socket)) instanceof double[] doubles) return doubles;
+			throw new IllegalArgumentException("Output socket " + socket.name() + " is not stored as double");
+		}
+
+		@Override
+		public long[] getLongOutput(OutputSocket<?> socket) {
+			if (outputColumn(plan.outputIndexOf(slot, socket)) instanceof long[] longs) return longs;
+			throw new IllegalArgumentException("Output socket " + socket.name() + " is not stored as long");
+		}
+
+		@Override
+		public Object[] getObjectOutput(OutputSocket<?> socket) {
+			if (outputColumn(plan.outputIndexOf(slot, socket)) instanceof Object[] objects) return objects;
+			throw new IllegalArgumentException("Output socket " + socket.name() + " is stored as primitive");
+		}
+	}
+
+	private class SampleContext implements NodeProcessContext<Object, E> {
+		private int slot;
+		private int sample;
+
+		@Override
+		public Object getStates() { return states[slot]; }
+
+		@Override
+		public E getEnvironment() { return environments.get(sample); }
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public <V> V get(InputSocket<V> socket) {
+			return (V) readInput(plan.inputIndexOf(slot, socket), sample);
+		}
+
+		@Override
+		public int getInt(InputSocket<? extends Number> socket) {
+			return (int) readInputLong(plan.inputIndexOf(slot, socket), sample);
+		}
+
+		@Override
+		public long getLong(InputSocket<? extends Number> socket) {
+			return readInputLong(plan.inputIndexOf(slot, socket), sample);
+		}
+
+		@Override
+		public float getFloat(InputSocket<? extends Number> socket) {
+			return (float) readInputDouble(plan.inputIndexOf(slot, socket), sample);
+		}
+
+		@Override
+		public double getDouble(InputSocket<? extends Number> socket) {
+			return readInputDouble(plan.inputIndexOf(slot, socket), sample);
+		}
+
+		@Override
+		public boolean getBoolean(InputSocket<Boolean> socket) {
+			return readInputLong(plan.inputIndexOf(slot, socket), sample) != 0L;
+		}
+
+		@Override
+		public <V> void set(OutputSocket<V> socket, V value) {
+			int output = plan.outputIndexOf(slot, socket);
+			Object column = outputColumn(output);
+			if (column instanceof long[] longs) longs[sample] = CompiledGraph.unboxLong(value);
+			else if (column instanceof double[] doubles) doubles[sample] = CompiledGraph.unboxDouble(value);
+			else ((Object[]) column)[sample] = value;
+		}
+
+		@Override
+		public void setInt(OutputSocket<? super Integer> socket, int value) {
+			Object column = outputColumn(plan.outputIndexOf(slot, socket));
+			if (column instanceof Object[] objects) objects[sample] = value;
+			else writePrimitive(column, sample, value, value);
+		}
+
+		@Override
+		public void setLong(OutputSocket<? super Long> socket, long value) {
+			Object column = outputColumn(plan.outputIndexOf(slot, socket));
+			if (column instanceof Object[] objects) objects[sample] = value;
+			else writePrimitive(column, sample, value, value);
+		}
+
+		@Override
+		public void setFloat(OutputSocket<? super Float> socket, float value) {
+			Object column = outputColumn(plan.outputIndexOf(slot, socket));
+			if (column instanceof Object[] objects) objects[sample] = value;
+			else writePrimitive(column, sample, (long) value, value);
+		}
+
+		@Override
+		public void setDouble(OutputSocket<? super Double> socket, double value) {
+			Object column = outputColumn(plan.outputIndexOf(slot, socket));
+			if (column instanceof Object[] objects) objects[sample] = value;
+			else writePrimitive(column, sample, (long) value, value);
+		}
+
+		@Override
+		public void setBoolean(OutputSocket<? super Boolean> socket, boolean value) {
+			Object column = outputColumn(plan.outputIndexOf(slot, socket));
+			if (column instanceof Object[] objects) objects[sample] = value;
+			else writePrimitive(column, sample, value ? 1L : 0L, value ? 1d : 0d);
+		}
+	}
+}
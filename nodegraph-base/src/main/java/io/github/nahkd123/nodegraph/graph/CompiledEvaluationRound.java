@@ -0,0 +1,449 @@
+package io.github.nahkd123.nodegraph.graph;
+
+import io.github.nahkd123.nodegraph.node.Node;
+import io.github.nahkd123.nodegraph.node.NodeProcessContext;
+import io.github.nahkd123.nodegraph.socket.InputSocket;
+import io.github.nahkd123.nodegraph.socket.OutputSocket;
+
+/**
+ * <p>
+ * Evaluation round that runs {@link CompiledGraph}. All values are stored in
+ * arrays indexed by the global input and output indices of the plan.
+ * </p>
+ * <p>
+ * Values of primitive sockets are stored in {@code long[]} or {@code double[]}
+ * (see {@link CompiledGraph#kindOf(Class)}) and only boxed when they are
+ * requested as objects.
+ * </p>
+ * <p>
+ * The value arrays, the processing context and the output getters are
+ * allocated once and reused by every evaluation, so repeated evaluations of
+ * the same target do not allocate anything on the heap (the schedule of
+ * each target is built on its first evaluation).
+ * </p>
+ *
+ * @param <E> Type of environment object.
+ */
+class CompiledEvaluationRound<E> implements EvaluationRound<E> {
+	final CompiledGraph<E> plan;
+	private final E environment;
+	private final Object[] states;
+	private final boolean[] initialized;
+	private final Object[] outputs;
+	private final long[] outputLongs;
+	private final double[] outputDoubles;
+	private final Object[] captured;
+	private final long[] capturedLongs;
+	private final double[] capturedDoubles;
+	private final int[][] schedules;
+	private final NodeOutputGetter[] getters;
+	private final int[] processedEpochs;
+	private final int[] readEpochs;
+	private final MemoCache.Key[] memoKeys;
+	final SlotContext context = new SlotContext();
+	private EvaluationListener<E> listener;
+	int epoch;
+
+	CompiledEvaluationRound(CompiledGraph<E> plan, E environment) {
+		this.plan = plan;
+		this.environment = environment;
+		this.states = new Object[plan.instances.length];
+		this.initialized = new boolean[plan.instances.length];
+		this.outputs = new Object[plan.outputOwners.length];
+		this.outputLongs = new long[plan.outputOwners.length];
+		this.outputDoubles = new double[plan.outputOwners.length];
+		this.captured = new Object[plan.inputSources.length];
+		this.capturedLongs = new long[plan.inputSources.length];
+		this.capturedDoubles = new double[plan.inputSources.length];
+		this.schedules = new int[plan.instances.length][];
+		this.getters = new NodeOutputGetter[plan.instances.length];
+		this.processedEpochs = new int[plan.instances.length];
+		this.readEpochs = new int[plan.instances.length];
+		this.memoKeys = plan.memoCache != null ? new MemoCache.Key[plan.instances.length] : null;
+	}
+
+	@Override
+	public E getEnvironment() { return environment; }
+
+	@Override
+	public void setListener(EvaluationListener<E> listener) {
+		this.listener = listener;
+	}
+
+	@Override
+	public NodeOutputGetter eval(NodeInstance<?, E> instance) {
+		int target = targetOf(instance);
+		epoch++;
+		run(scheduleOf(target));
+		return getter(target);
+	}
+
+	void run(int[] schedule) {
+		for (int i = 0; i < schedule.length; i += 2) {
+			process(context, schedule[i]);
+			int capture = schedule[i + 1];
+			if (capture != -1) capture(capture);
+		}
+	}
+
+	int targetOf(NodeInstance<?, E> instance) {
+		int target = plan.slotOf(instance);
+		if (target == -1) throw new IllegalArgumentException("Node instance is not a part of compiled graph");
+		return target;
+	}
+
+	int[] scheduleOf(int target) {
+		int[] schedule = schedules[target];
+		if (schedule == null) schedule = schedules[target] = plan.schedule(target);
+		return schedule;
+	}
+
+	NodeOutputGetter getter(int target) {
+		NodeOutputGetter getter = getters[target];
+		if (getter == null) getter = getters[target] = new SlotOutputGetter(target);
+		return getter;
+	}
+
+	/**
+	 * <p>
+	 * Initialize internal states of the slot if needed and point the processing
+	 * context of this round to the slot. Used by generated evaluators right
+	 * before processing the node.
+	 * </p>
+	 */
+	void prepare(int slot) {
+		if (!initialized[slot]) {
+			states[slot] = plan.nodes[slot].initialize();
+			initialized[slot] = true;
+		}
+
+		context.slot = slot;
+	}
+
+	boolean hasListener() {
+		return listener != null;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	void process(SlotContext context, int slot) {
+		Node node = plan.nodes[slot];
+
+		if (!initialized[slot]) {
+			states[slot] = node.initialize();
+			initialized[slot] = true;
+		}
+
+		context.slot = slot;
+		EvaluationListener<E> listener = this.listener;
+
+		if (listener == null) {
+			invoke(context, node, slot);
+			return;
+		}
+
+		reportCacheHits(listener, slot);
+		if (plan.cached[slot]) listener.onCacheMiss(plan.instances[slot]);
+		long allocated = Allocations.currentThread();
+		long start = System.nanoTime();
+		invoke(context, node, slot);
+		long nanos = System.nanoTime() - start;
+		if (allocated != -1L) allocated = Allocations.currentThread() - allocated;
+		processedEpochs[slot] = epoch;
+		listener.onProcessed(plan.instances[slot], nanos, allocated);
+	}
+
+	/**
+	 * <p>
+	 * Report cache hits for the cached sources of the slot that were already
+	 * read by another slot in current evaluation, or were not processed in
+	 * current evaluation at all. The first read of a source that was just
+	 * processed is not a hit, which matches the lazy evaluation round.
+	 * </p>
+	 */
+	void reportCacheHits(EvaluationListener<E> listener, int slot) {
+		for (int input = plan.inputOffsets[slot]; input < plan.inputOffsets[slot + 1]; input++) {
+			int src = plan.inputSources[input];
+			if (src == -1) continue;
+			int srcSlot = plan.outputOwners[src];
+			if (!plan.cached[srcSlot]) continue;
+			if (readEpochs[srcSlot] == epoch || processedEpochs[srcSlot] != epoch) listener.onCacheHit(plan.instances[srcSlot]);
+			readEpochs[srcSlot] = epoch;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Process the node, or copy the memoized outputs if the node is pure and its
+	 * input values are found in {@link MemoCache}.
+	 * </p>
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private void invoke(SlotContext context, Node node, int slot) {
+		MemoCache memoCache = plan.memoCache;
+
+		if (memoCache == null || !plan.pure[slot]) {
+			node.process(context);
+			return;
+		}
+
+		int inputOffset = plan.inputOffsets[slot];
+		int outputOffset = plan.outputOffsets[slot];
+		MemoCache.Key key = memoKeys[slot];
+		if (key == null) key = memoKeys[slot] = new MemoCache.Key(node, plan.inputOffsets[slot + 1] - inputOffset);
+		for (int i = 0; i < key.inputs.length; i++) key.inputs[i] = readInput(inputOffset + i);
+		Object[] outputs = memoCache.get(key.rehash());
+
+		if (outputs != null) {
+			for (int i = 0; i < outputs.length; i++) writeOutput(outputOffset + i, outputs[i]);
+			return;
+		}
+
+		node.process(context);
+		outputs = new Object[plan.outputOffsets[slot + 1] - outputOffset];
+		for (int i = 0; i < outputs.length; i++) outputs[i] = readOutput(outputOffset + i);
+		memoCache.put(key, outputs);
+	}
+
+	/**
+	 * <p>
+	 * Copy internal states and outputs of all node instances that are still
+	 * present in this round from previous round.
+	 * </p>
+	 */
+	void transferFrom(CompiledEvaluationRound<E> previous) {
+		for (int slot = 0; slot < plan.instances.length; slot++) {
+			int previousSlot = previous.plan.slotOf(plan.instances[slot]);
+			if (previousSlot == -1 || previous.plan.nodes[previousSlot] != plan.nodes[slot]) continue;
+			transferSlot(previous, previousSlot, slot);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Copy internal states and outputs of a slot from another round. Both slots
+	 * must hold the same node.
+	 * </p>
+	 */
+	void transferSlot(CompiledEvaluationRound<E> from, int fromSlot, int slot) {
+		states[slot] = from.states[fromSlot];
+		initialized[slot] = from.initialized[fromSlot];
+		int fromOutput = from.plan.outputOffsets[fromSlot];
+		int output = plan.outputOffsets[slot];
+		int count = plan.outputOffsets[slot + 1] - output;
+		System.arraycopy(from.outputs, fromOutput, outputs, output, count);
+		System.arraycopy(from.outputLongs, fromOutput, outputLongs, output, count);
+		System.arraycopy(from.outputDoubles, fromOutput, outputDoubles, output, count);
+	}
+
+	void capture(int input) {
+		int src = plan.inputSources[input];
+		captured[input] = outputs[src];
+		capturedLongs[input] = outputLongs[src];
+		capturedDoubles[input] = outputDoubles[src];
+	}
+
+	Object readOutput(int output) {
+		return switch (plan.outputKinds[output]) {
+		case CompiledGraph.KIND_LONG -> CompiledGraph.box(plan.outputTypes[output], outputLongs[output], 0d);
+		case CompiledGraph.KIND_DOUBLE -> CompiledGraph.box(plan.outputTypes[output], 0L, outputDoubles[output]);
+		default -> outputs[output];
+		};
+	}
+
+	private void writeOutput(int output, Object value) {
+		switch (plan.outputKinds[output]) {
+		case CompiledGraph.KIND_LONG -> outputLongs[output] = CompiledGraph.unboxLong(value);
+		case CompiledGraph.KIND_DOUBLE -> outputDoubles[output] = CompiledGraph.unboxDouble(value);
+		default -> outputs[output] = value;
+		}
+	}
+
+	private long readOutputLong(int output) {
+		return switch (plan.outputKinds[output]) {
+		case CompiledGraph.KIND_LONG -> outputLongs[output];
+		case CompiledGraph.KIND_DOUBLE -> (long) outputDoubles[output];
+		default -> CompiledGraph.unboxLong(outputs[output]);
+		};
+	}
+
+	private double readOutputDouble(int output) {
+		return switch (plan.outputKinds[output]) {
+		case CompiledGraph.KIND_LONG -> outputLongs[output];
+		case CompiledGraph.KIND_DOUBLE -> outputDoubles[output];
+		default -> CompiledGraph.unboxDouble(outputs[output]);
+		};
+	}
+
+	private Object readInput(int input) {
+		int src = plan.inputSources[input];
+		if (src == -1) return plan.inputConstants[input];
+		if (plan.cached[plan.outputOwners[src]]) return readOutput(src);
+		return switch (plan.outputKinds[src]) {
+		case CompiledGraph.KIND_LONG -> CompiledGraph.box(plan.outputTypes[src], capturedLongs[input], 0d);
+		case CompiledGraph.KIND_DOUBLE -> CompiledGraph.box(plan.outputTypes[src], 0L, capturedDoubles[input]);
+		default -> captured[input];
+		};
+	}
+
+	private long readInputLong(int input) {
+		int src = plan.inputSources[input];
+		if (src == -1) return plan.inputConstantLongs[input];
+		if (plan.cached[plan.outputOwners[src]]) return readOutputLong(src);
+		return switch (plan.outputKinds[src]) {
+		case CompiledGraph.KIND_LONG -> capturedLongs[input];
+		case CompiledGraph.KIND_DOUBLE -> (long) capturedDoubles[input];
+		default -> CompiledGraph.unboxLong(captured[input]);
+		};
+	}
+
+	private double readInputDouble(int input) {
+		int src = plan.inputSources[input];
+		if (src == -1) return plan.inputConstantDoubles[input];
+		if (plan.cached[plan.outputOwners[src]]) return readOutputDouble(src);
+		return switch (plan.outputKinds[src]) {
+		case CompiledGraph.KIND_LONG -> capturedLongs[input];
+		case CompiledGraph.KIND_DOUBLE -> capturedDoubles[input];
+		default -> CompiledGraph.unboxDouble(captured[input]);
+		};
+	}
+
+	private class SlotOutputGetter implements NodeOutputGetter {
+		private final int slot;
+
+		SlotOutputGetter(int slot) {
+			this.slot = slot;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public <V> V get(OutputSocket<V> socket) {
+			return (V) readOutput(plan.outputIndexOf(slot, socket));
+		}
+
+		@Override
+		public int getInt(OutputSocket<? extends Number> socket) {
+			return (int) readOutputLong(plan.outputIndexOf(slot, socket));
+		}
+
+		@Override
+		public long getLong(OutputSocket<? extends Number> socket) {
+			return readOutputLong(plan.outputIndexOf(slot, socket));
+		}
+
+		@Override
+		public float getFloat(OutputSocket<? extends Number> socket) {
+			return (float) readOutputDouble(plan.outputIndexOf(slot, socket));
+		}
+
+		@Override
+		public double getDouble(OutputSocket<? extends Number> socket) {
+			return readOutputDouble(plan.outputIndexOf(slot, socket));
+		}
+
+		@Override
+		public boolean getBoolean(OutputSocket<Boolean> socket) {
+			return readOutputLong(plan.outputIndexOf(slot, socket)) != 0L;
+		}
+	}
+
+	class SlotContext implements NodeProcessContext<Object, E> {
+		private int slot;
+
+		@Override
+		public Object getStates() { return states[slot]; }
+
+		@Override
+		public E getEnvironment() { return environment; }
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public <V> V get(InputSocket<V> socket) {
+			return (V) readInput(plan.inputIndexOf(slot, socket));
+		}
+
+		@Override
+		public int getInt(InputSocket<? extends Number> socket) {
+			return (int) readInputLong(plan.inputIndexOf(slot, socket));
+		}
+
+		@Override
+		public long getLong(InputSocket<? extends Number> socket) {
+			return readInputLong(plan.inputIndexOf(slot, socket));
+		}
+
+		@Override
+		public float getFloat(InputSocket<? extends Number> socket) {
+			return (float) readInputDouble(plan.inputIndexOf(slot, socket));
+		}
+
+		@Override
+		public double getDouble(InputSocket<? extends Number> socket) {
+			return readInputDouble(plan.inputIndexOf(slot, socket));
+		}
+
+		@Override
+		public boolean getBoolean(InputSocket<Boolean> socket) {
+			return readInputLong(plan.inputIndexOf(slot, socket)) != 0L;
+		}
+
+		@Override
+		public <V> void set(OutputSocket<V> socket, V value) {
+			writeOutput(plan.outputIndexOf(slot, socket), value);
+		}
+
+		@Override
+		public void setInt(OutputSocket<? super Integer> socket, int value) {
+			int output = plan.outputIndexOf(slot, socket);
+
+			switch (plan.outputKinds[output]) {
+			case CompiledGraph.KIND_LONG -> outputLongs[output] = value;
+			case CompiledGraph.KIND_DOUBLE -> outputDoubles[output] = value;
+			default -> outputs[output] = value;
+			}
+		}
+
+		@Override
+		public void setLong(OutputSocket<? super Long> socket, long value) {
+			int output = plan.outputIndexOf(slot, socket);
+
+			switch (plan.outputKinds[output]) {
+			case CompiledGraph.KIND_LONG -> outputLongs[output] = value;
+			case CompiledGraph.KIND_DOUBLE -> outputDoubles[output] = value;
+			default -> outputs[output] = value;
+			}
+		}
+
+		@Override
+		public void setFloat(OutputSocket<? super Float> socket, float value) {
+			int output = plan.outputIndexOf(slot, socket);
+
+			switch (plan.outputKinds[output]) {
+			case CompiledGraph.KIND_LONG -> outputLongs[output] = (long) value;
+			case CompiledGraph.KIND_DOUBLE -> outputDoubles[output] = value;
+			default -> outputs[output] = value;
+			}
+		}
+
+		@Override
+		public void setDouble(OutputSocket<? super Double> socket, double value) {
+			int output = plan.outputIndexOf(slot, socket);
+
+			switch (plan.outputKinds[output]) {
+			case CompiledGraph.KIND_LONG -> outputLongs[output] = (long) value;
+			case CompiledGraph.KIND_DOUBLE -> outputDoubles[output] = value;
+			default -> outputs[output] = value;
+			}
+		}
+
+		@Override
+		public void setBoolean(OutputSocket<? super Boolean> socket, boolean value) {
+			int output = plan.outputIndexOf(slot, socket);
+
+			switch (plan.outputKinds[output]) {
+			case CompiledGraph.KIND_LONG -> outputLongs[output] = value ? 1L : 0L;
+			case CompiledGraph.KIND_DOUBLE -> outputDoubles[output] = value ? 1d : 0d;
+			default -> outputs[output] = value;
+			}
+		}
+	}
+}
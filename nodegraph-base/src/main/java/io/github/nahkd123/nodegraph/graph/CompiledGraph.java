@@ -0,0 +1,739 @@
+package io.github.nahkd123.nodegraph.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import io.github.nahkd123.nodegraph.node.BatchNode;
+import io.github.nahkd123.nodegraph.node.Node;
+import io.github.nahkd123.nodegraph.node.NodeDescriptor;
+import io.github.nahkd123.nodegraph.socket.InputSocket;
+import io.github.nahkd123.nodegraph.socket.OutputSocket;
+import io.github.nahkd123.nodegraph.socket.Socket;
+
+/**
+ * <p>
+ * An immutable evaluation plan compiled from {@link NodeGraph} or
+ * {@link GraphSnapshot}. Node instances are sorted in topological order and
+ * assigned to dense integer slots, and all sockets and connections are
+ * resolved into flat {@code int[]} tables, so evaluating the plan is a linear
+ * loop over the slots without any hashing.
+ * </p>
+ * <p>
+ * The plan is a snapshot of the graph at the time of compilation, including the
+ * initial values of all input sockets. If the graph is changed, you have to
+ * compile it again.
+ * </p>
+ *
+ * @param <E> Type of environment object.
+ * @see NodeGraph#compile()
+ * @see GraphSnapshot#compile()
+ */
+public final class CompiledGraph<E> {
+	static final byte KIND_OBJECT = 0;
+	static final byte KIND_LONG = 1;
+	static final byte KIND_DOUBLE = 2;
+
+	/**
+	 * <p>
+	 * Node instances, indexed by slot and sorted in topological order (every
+	 * instance is placed after all instances it depends on).
+	 * </p>
+	 */
+	final NodeInstance<?, E>[] instances;
+	final Node<?, E>[] nodes;
+	final NodeDescriptor[] descriptors;
+	final boolean[] cached;
+	final boolean[] threadSafe;
+	final boolean[] pure;
+
+	/**
+	 * <p>
+	 * Whether each slot is shared by multiple node instances that are merged by
+	 * {@link Optimization#DEDUPLICATE}.
+	 * </p>
+	 */
+	final boolean[] shared;
+
+	/**
+	 * <p>
+	 * Whether each slot is evaluated at compile time by
+	 * {@link Optimization#FOLD_CONSTANTS}.
+	 * </p>
+	 */
+	final boolean[] folded;
+	final InputSocket<?>[][] inputSockets;
+	final OutputSocket<?>[][] outputSockets;
+
+	/**
+	 * <p>
+	 * Index of first input of each slot in global input table. Inputs of slot
+	 * {@code i} are located in {@code [inputOffsets[i], inputOffsets[i + 1])}.
+	 * </p>
+	 */
+	final int[] inputOffsets;
+
+	/**
+	 * <p>
+	 * Index of first output of each slot in global output table. Outputs of slot
+	 * {@code i} are located in {@code [outputOffsets[i], outputOffsets[i + 1])}.
+	 * </p>
+	 */
+	final int[] outputOffsets;
+
+	/**
+	 * <p>
+	 * Global output index connected to each global input, or {@code -1} if the
+	 * input is not connected.
+	 * </p>
+	 */
+	final int[] inputSources;
+
+	/**
+	 * <p>
+	 * Slot that owns each global output.
+	 * </p>
+	 */
+	final int[] outputOwners;
+
+	/**
+	 * <p>
+	 * Declared type and storage kind of each global output. Outputs with
+	 * primitive type are stored in primitive arrays instead of {@code Object[]}.
+	 * </p>
+	 *
+	 * @see #kindOf(Class)
+	 */
+	final Class<?>[] outputTypes;
+	final byte[] outputKinds;
+
+	/**
+	 * <p>
+	 * Initial value of each global input at the time of compilation.
+	 * </p>
+	 */
+	final Object[] inputConstants;
+	final long[] inputConstantLongs;
+	final double[] inputConstantDoubles;
+
+	/**
+	 * <p>
+	 * Global output index of folded slot that was connected to each global
+	 * input, or {@code -1}. The constant of such input is the output of the
+	 * folded slot instead of the initial value.
+	 * </p>
+	 */
+	final int[] foldedSources;
+
+	/**
+	 * <p>
+	 * Memo cache of the graph at the time of compilation, or {@code null}.
+	 * </p>
+	 */
+	final MemoCache memoCache;
+
+	private final Map<NodeInstance<?, E>, Integer> slots = new IdentityHashMap<>();
+
+	CompiledGraph(GraphSnapshot<E> graph) {
+		this(graph, Collections.emptySet());
+	}
+
+	/**
+	 * <p>
+	 * Compile node graph, including additional node instances that are not a
+	 * part of the graph.
+	 * </p>
+	 */
+	CompiledGraph(GraphSnapshot<E> graph, Collection<NodeInstance<?, E>> extraInstances) {
+		this(graph, sort(graph, collect(graph, extraInstances)));
+	}
+
+	/**
+	 * <p>
+	 * Compile only the node instances that the outputs depend on.
+	 * </p>
+	 *
+	 * @see GraphSnapshot#findDependencies(Collection)
+	 */
+	static <E> CompiledGraph<E> ofDependencies(GraphSnapshot<E> graph, Collection<? extends NodeInstance<?, E>> outputs) {
+		return new CompiledGraph<>(graph, sort(graph, graph.findDependencies(outputs)));
+	}
+
+	@SuppressWarnings("unchecked")
+	private CompiledGraph(GraphSnapshot<E> graph, NodeInstance<?, E>[] sorted) {
+		Map<NodeInstance<?, E>, NodeInstance<?, E>> aliases = graph.getOptimizations().contains(Optimization.DEDUPLICATE)
+			? deduplicate(graph, sorted)
+			: Collections.emptyMap();
+		instances = aliases.isEmpty()
+			? sorted
+			: Arrays.stream(sorted).filter(i -> !aliases.containsKey(i)).toArray(NodeInstance[]::new);
+		int count = instances.length;
+		nodes = new Node[count];
+		descriptors = new NodeDescriptor[count];
+		cached = new boolean[count];
+		threadSafe = new boolean[count];
+		pure = new boolean[count];
+		shared = new boolean[count];
+		folded = new boolean[count];
+		memoCache = graph.getMemoCache();
+		inputSockets = new InputSocket[count][];
+		outputSockets = new OutputSocket[count][];
+		inputOffsets = new int[count + 1];
+		outputOffsets = new int[count + 1];
+		Map<NodeDescriptor, Object[][]> socketArrays = new IdentityHashMap<>();
+
+		for (int slot = 0; slot < count; slot++) {
+			NodeInstance<?, E> instance = instances[slot];
+			slots.put(instance, slot);
+			nodes[slot] = instance.getNode();
+			cached[slot] = nodes[slot].shouldCache();
+			threadSafe[slot] = nodes[slot].isThreadSafe();
+			pure[slot] = nodes[slot].isPure();
+
+			descriptors[slot] = NodeDescriptor.of(nodes[slot]);
+			// Slots of the same node share the same socket arrays
+			Object[][] arrays = socketArrays.computeIfAbsent(descriptors[slot], d -> new Object[][] {
+				d.getInputs().toArray(InputSocket[]::new),
+				d.getOutputs().toArray(OutputSocket[]::new)
+			});
+			inputSockets[slot] = (InputSocket<?>[]) arrays[0];
+			outputSockets[slot] = (OutputSocket<?>[]) arrays[1];
+			inputOffsets[slot + 1] = inputOffsets[slot] + inputSockets[slot].length;
+			outputOffsets[slot + 1] = outputOffsets[slot] + outputSockets[slot].length;
+		}
+
+		aliases.forEach((alias, canonical) -> {
+			int slot = slots.get(canonical);
+			slots.put(alias, slot);
+			shared[slot] = true;
+		});
+
+		inputSources = new int[inputOffsets[count]];
+		inputConstants = new Object[inputOffsets[count]];
+		inputConstantLongs = new long[inputOffsets[count]];
+		inputConstantDoubles = new double[inputOffsets[count]];
+		foldedSources = new int[inputOffsets[count]];
+		Arrays.fill(foldedSources, -1);
+		outputOwners = new int[outputOffsets[count]];
+		outputTypes = new Class[outputOffsets[count]];
+		outputKinds = new byte[outputOffsets[count]];
+
+		for (int slot = 0; slot < count; slot++) {
+			for (int output = outputOffsets[slot]; output < outputOffsets[slot + 1]; output++) {
+				outputOwners[output] = slot;
+				outputTypes[output] = outputSockets[slot][output - outputOffsets[slot]].type();
+				outputKinds[output] = kindOf(outputTypes[output]);
+			}
+		}
+
+		for (int slot = 0; slot < count; slot++) {
+			NodeInstance<?, E> instance = instances[slot];
+			InputSocket<?>[] inputs = inputSockets[slot];
+
+			for (int i = 0; i < inputs.length; i++) {
+				int input = inputOffsets[slot] + i;
+				NodeSocketRef<?, E, ?> src = graph.dstToSrc.get(new NodeSocketRef<>(instance, inputs[i]));
+				setConstant(input, graph.getInitialValue(instance, inputs[i]));
+
+				if (src == null) {
+					inputSources[input] = -1;
+				} else {
+					int srcSlot = slots.get(src.node());
+					inputSources[input] = outputIndexOf(srcSlot, (OutputSocket<?>) src.socket());
+				}
+			}
+		}
+
+		if (graph.getOptimizations().contains(Optimization.FOLD_CONSTANTS)) foldConstants();
+	}
+
+	/**
+	 * <p>
+	 * Process pure nodes whose inputs are all initial values, either directly or
+	 * through other folded nodes, then replace the connections from these nodes
+	 * with their outputs. Nodes that fail while folding are left to be processed
+	 * during evaluation, so the failure is reported to the caller of
+	 * {@link EvaluationRound#eval(NodeInstance)}.
+	 * </p>
+	 */
+	private void foldConstants() {
+		CompiledEvaluationRound<E> round = new CompiledEvaluationRound<>(this, null);
+
+		for (int slot = 0; slot < instances.length; slot++) {
+			if (!pure[slot] || !cached[slot] || !isConstant(slot)) continue;
+
+			try {
+				round.process(round.context, slot);
+				folded[slot] = true;
+			} catch (RuntimeException e) {
+				// Processed again during evaluation
+			}
+		}
+
+		for (int input = 0; input < inputSources.length; input++) {
+			int src = inputSources[input];
+			if (src == -1 || !folded[outputOwners[src]]) continue;
+			inputSources[input] = -1;
+			foldedSources[input] = src;
+			setConstant(input, round.readOutput(src));
+		}
+	}
+
+	private boolean isConstant(int slot) {
+		for (int input = inputOffsets[slot]; input < inputOffsets[slot + 1]; input++) {
+			int src = inputSources[input];
+			if (src != -1 && !folded[outputOwners[src]]) return false;
+		}
+
+		return true;
+	}
+
+	private void setConstant(int input, Object constant) {
+		inputConstants[input] = constant;
+
+		if (constant instanceof Number number) {
+			inputConstantLongs[input] = number.longValue();
+			inputConstantDoubles[input] = number.doubleValue();
+		} else if (constant instanceof Boolean bool) {
+			inputConstantLongs[input] = bool ? 1L : 0L;
+			inputConstantDoubles[input] = bool ? 1d : 0d;
+		} else {
+			inputConstantLongs[input] = 0L;
+			inputConstantDoubles[input] = 0d;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Read the initial values of node instance at given slot again. This breaks
+	 * the immutability of the plan, so it must only be used on plans that are
+	 * owned by a single evaluation round.
+	 * </p>
+	 */
+	void updateConstants(int slot) {
+		InputSocket<?>[] inputs = inputSockets[slot];
+
+		for (int i = 0; i < inputs.length; i++) {
+			int input = inputOffsets[slot] + i;
+			if (foldedSources[input] == -1) setConstant(input, instances[slot].getInitialValue(inputs[i]));
+		}
+	}
+
+	/**
+	 * <p>
+	 * Get the storage kind for values of given type. {@code int}, {@code long}
+	 * and {@code boolean} are stored as {@code long}, {@code float} and
+	 * {@code double} are stored as {@code double} and everything else are stored
+	 * as objects.
+	 * </p>
+	 */
+	static byte kindOf(Class<?> type) {
+		if (type == int.class || type == long.class || type == boolean.class) return KIND_LONG;
+		if (type == double.class || type == float.class) return KIND_DOUBLE;
+		return KIND_OBJECT;
+	}
+
+	/**
+	 * <p>
+	 * Box primitive value that is stored as {@code long} or {@code double} to the
+	 * wrapper of declared type.
+	 * </p>
+	 */
+	static Object box(Class<?> type, long longValue, double doubleValue) {
+		if (type == int.class) return (int) longValue;
+		if (type == long.class) return longValue;
+		if (type == boolean.class) return longValue != 0L;
+		if (type == float.class) return (float) doubleValue;
+		return doubleValue;
+	}
+
+	/**
+	 * <p>
+	 * Unbox a number or boolean to be stored as {@code long}.
+	 * </p>
+	 */
+	static long unboxLong(Object value) {
+		return value instanceof Boolean bool ? (bool ? 1L : 0L) : ((Number) value).longValue();
+	}
+
+	/**
+	 * <p>
+	 * Unbox a number or boolean to be stored as {@code double}.
+	 * </p>
+	 */
+	static double unboxDouble(Object value) {
+		return value instanceof Boolean bool ? (bool ? 1d : 0d) : ((Number) value).doubleValue();
+	}
+
+	/**
+	 * <p>
+	 * Collect all node instances of the graph. Instances that are connected but
+	 * not added to the graph are included as well, since they are still reachable
+	 * during evaluation.
+	 * </p>
+	 */
+	private static <E> Collection<NodeInstance<?, E>> collect(GraphSnapshot<E> graph, Collection<NodeInstance<?, E>> extraInstances) {
+		Set<NodeInstance<?, E>> collected = Collections.newSetFromMap(new IdentityHashMap<>());
+		collected.addAll(graph.instances.keySet());
+		collected.addAll(extraInstances);
+
+		graph.dstToSrc.forEach((dst, src) -> {
+			collected.add(dst.node());
+			collected.add(src.node());
+		});
+
+		return collected;
+	}
+
+	/**
+	 * <p>
+	 * Sort the node instances in topological order. The instances must include
+	 * all sources of every included instance.
+	 * </p>
+	 */
+	@SuppressWarnings("unchecked")
+	private static <E> NodeInstance<?, E>[] sort(GraphSnapshot<E> graph, Collection<NodeInstance<?, E>> included) {
+		Map<NodeInstance<?, E>, Integer> ids = new IdentityHashMap<>();
+		List<NodeInstance<?, E>> unordered = new ArrayList<>(included);
+		for (NodeInstance<?, E> instance : unordered) ids.put(instance, ids.size());
+
+		// Build successor table in CSR form
+		int count = unordered.size();
+		int[] inDegree = new int[count];
+		int[] successorOffsets = new int[count + 1];
+		graph.dstToSrc.forEach((dst, src) -> {
+			Integer id = ids.get(dst.node());
+			if (id == null) return;
+			inDegree[id]++;
+			successorOffsets[ids.get(src.node()) + 1]++;
+		});
+		for (int i = 0; i < count; i++) successorOffsets[i + 1] += successorOffsets[i];
+
+		int[] successors = new int[successorOffsets[count]];
+		int[] fill = Arrays.copyOf(successorOffsets, count);
+		graph.dstToSrc.forEach((dst, src) -> {
+			Integer id = ids.get(dst.node());
+			if (id != null) successors[fill[ids.get(src.node())]++] = id;
+		});
+
+		// Kahn's algorithm
+		int[] queue = new int[count];
+		int head = 0, tail = 0;
+		for (int i = 0; i < count; i++) if (inDegree[i] == 0) queue[tail++] = i;
+
+		while (head < tail) {
+			int id = queue[head++];
+
+			for (int i = successorOffsets[id]; i < successorOffsets[id + 1]; i++) {
+				if (--inDegree[successors[i]] == 0) queue[tail++] = successors[i];
+			}
+		}
+
+		if (tail != count) throw new IllegalStateException("node graph contains a cycle");
+		NodeInstance<?, E>[] sorted = new NodeInstance[count];
+		for (int i = 0; i < count; i++) sorted[i] = unordered.get(queue[i]);
+		return sorted;
+	}
+
+	/**
+	 * <p>
+	 * Find node instances that are structurally identical to an earlier instance
+	 * in topological order. Sources are always visited before their consumers,
+	 * so the key of each instance refers to the merged sources, which allows
+	 * identical chains to be merged as a whole.
+	 * </p>
+	 *
+	 * @return Map of merged instance to the instance that owns the slot.
+	 */
+	private static <E> Map<NodeInstance<?, E>, NodeInstance<?, E>> deduplicate(GraphSnapshot<E> graph, NodeInstance<?, E>[] sorted) {
+		Map<NodeInstance<?, E>, NodeInstance<?, E>> aliases = new IdentityHashMap<>();
+		Map<Node<?, E>, Map<List<Object>, NodeInstance<?, E>>> seen = new IdentityHashMap<>();
+
+		for (NodeInstance<?, E> instance : sorted) {
+			Node<?, E> node = instance.getNode();
+			if (!node.isPure() || !node.shouldCache()) continue;
+			List<Object> key = new ArrayList<>();
+
+			for (InputSocket<?> socket : NodeDescriptor.of(node).getInputs()) {
+				NodeSocketRef<?, E, ?> src = graph.dstToSrc.get(new NodeSocketRef<>(instance, socket));
+				if (src == null) key.add(graph.getInitialValue(instance, socket));
+				else key.add(new SourceKey(aliases.getOrDefault(src.node(), src.node()), src.socket()));
+			}
+
+			NodeInstance<?, E> canonical = seen.computeIfAbsent(node, n -> new HashMap<>()).putIfAbsent(key, instance);
+			if (canonical != null) aliases.put(instance, canonical);
+		}
+
+		return aliases;
+	}
+
+	private static record SourceKey(NodeInstance<?, ?> instance, Socket<?> socket) {
+	}
+
+	/**
+	 * <p>
+	 * Get all node instances in this plan, sorted in topological order. Instances
+	 * that are merged by {@link Optimization#DEDUPLICATE} are not included.
+	 * </p>
+	 *
+	 * @return An unmodifiable list of node instances, indexed by slot.
+	 */
+	public List<NodeInstance<?, E>> getInstances() {
+		return Collections.unmodifiableList(Arrays.asList(instances));
+	}
+
+	/**
+	 * <p>
+	 * Get the slot assigned to node instance. Instances that are merged by
+	 * {@link Optimization#DEDUPLICATE} share the same slot.
+	 * </p>
+	 *
+	 * @param instance The node instance.
+	 * @return The slot, or {@code -1} if the instance is not a part of this plan.
+	 */
+	public int slotOf(NodeInstance<?, E> instance) {
+		Integer slot = slots.get(instance);
+		return slot != null ? slot : -1;
+	}
+
+	/**
+	 * <p>
+	 * Get all node instances of this plan, including the instances that are
+	 * merged into the slot of another instance.
+	 * </p>
+	 */
+	Set<NodeInstance<?, E>> allInstances() {
+		return slots.keySet();
+	}
+
+	/**
+	 * <p>
+	 * Create a new evaluation round that evaluates this plan. Just like
+	 * {@link NodeGraph#newCompiledEvalRound(Object)}, each round have its own set
+	 * of internal node states, and every node that the target depends on is
+	 * processed, even if the node does not read some of its inputs.
+	 * </p>
+	 * <p>
+	 * The round reuses its output storage between evaluations and does not
+	 * allocate on repeated evaluations. As a result, the output getter returned
+	 * from {@link EvaluationRound#eval(NodeInstance)} always reflects the latest
+	 * evaluation; read the values you need before evaluating again.
+	 * </p>
+	 *
+	 * @param environment The environment.
+	 * @return A new evaluation round.
+	 */
+	public EvaluationRound<E> newEvalRound(E environment) {
+		return new CompiledEvaluationRound<>(this, environment);
+	}
+
+	/**
+	 * <p>
+	 * Create a new evaluation round that runs this plan with generated bytecode
+	 * instead of the interpreter. The schedule of each target is turned into a
+	 * hidden class on its first evaluation, where every scheduled node is
+	 * processed from its own call site, so the JIT compiler can inline
+	 * {@link Node#process(io.github.nahkd123.nodegraph.node.NodeProcessContext)}
+	 * for each node. Generated classes are cached and shared between plans with
+	 * the same structure and node types.
+	 * </p>
+	 * <p>
+	 * The round behaves exactly like {@link #newEvalRound(Object)}. It falls
+	 * back to the interpreter if the class can not be generated, if an
+	 * {@link EvaluationListener} is set or if the plan uses a {@link MemoCache}.
+	 * Generating the classes is only worth it for plans that are evaluated many
+	 * times.
+	 * </p>
+	 *
+	 * @param environment The environment.
+	 * @return A new evaluation round.
+	 */
+	public EvaluationRound<E> newGeneratedEvalRound(E environment) {
+		return new GeneratedEvaluationRound<>(this, environment);
+	}
+
+	/**
+	 * <p>
+	 * Create a new evaluation round that processes independent branches of this
+	 * plan in parallel. The branches are submitted to the executor, while the
+	 * thread that calls {@link EvaluationRound#eval(NodeInstance)} also takes
+	 * part in processing and blocks until the evaluation is completed.
+	 * </p>
+	 * <p>
+	 * Nodes that are not {@link Node#isThreadSafe() thread-safe} are never
+	 * processed at the same time as each other. The round can be shared between
+	 * threads, but evaluation requests will be processed one at a time.
+	 * </p>
+	 *
+	 * @param environment The environment.
+	 * @param executor    The executor for processing nodes, like
+	 *                    {@link ForkJoinPool}.
+	 * @return A new evaluation round.
+	 */
+	public EvaluationRound<E> newParallelEvalRound(E environment, Executor executor) {
+		return new ParallelEvaluationRound<>(this, environment, executor);
+	}
+
+	/**
+	 * <p>
+	 * Create a new evaluation round that processes independent branches of this
+	 * plan in parallel with {@link ForkJoinPool#commonPool()}.
+	 * </p>
+	 *
+	 * @param environment The environment.
+	 * @return A new evaluation round.
+	 * @see #newParallelEvalRound(Object, Executor)
+	 */
+	public EvaluationRound<E> newParallelEvalRound(E environment) {
+		return newParallelEvalRound(environment, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * <p>
+	 * Create a new batch evaluation round that evaluates this plan over multiple
+	 * samples in one pass. Nodes that implements {@link BatchNode} are processed
+	 * once per batch, while other nodes are processed once per sample.
+	 * </p>
+	 *
+	 * @return A new batch evaluation round.
+	 */
+	public BatchEvaluationRound<E> newBatchEvalRound() {
+		return new BatchEvaluationRoundImpl<>(this);
+	}
+
+	int inputIndexOf(int slot, InputSocket<?> socket) {
+		InputSocket<?>[] sockets = inputSockets[slot];
+		for (int i = 0; i < sockets.length; i++) if (sockets[i] == socket) return inputOffsets[slot] + i;
+		int index = descriptors[slot].indexOf(socket);
+		if (index != -1) return inputOffsets[slot] + index;
+		throw new IllegalArgumentException("Socket %s is not declared in node %s".formatted(
+			socket.name(),
+			nodes[slot].getClass()));
+	}
+
+	int outputIndexOf(int slot, OutputSocket<?> socket) {
+		OutputSocket<?>[] sockets = outputSockets[slot];
+		for (int i = 0; i < sockets.length; i++) if (sockets[i] == socket) return outputOffsets[slot] + i;
+		int index = descriptors[slot].indexOf(socket);
+		if (index != -1) return outputOffsets[slot] + index;
+		throw new IllegalArgumentException("Socket %s is not declared in node %s".formatted(
+			socket.name(),
+			nodes[slot].getClass()));
+	}
+
+	/**
+	 * <p>
+	 * Build the evaluation schedule for target slot. The schedule is a list of
+	 * {@code (slot, capture)} pairs. For each pair, the node in {@code slot} must
+	 * be processed, then if {@code capture} is not {@code -1}, the output
+	 * connected to global input {@code capture} must be copied to that input.
+	 * </p>
+	 * <p>
+	 * Nodes with {@link Node#shouldCache()} enabled are processed at most once,
+	 * in topological order. Nodes without caching are processed once for each
+	 * connection that consumes their outputs, right before the consumer, which
+	 * matches the behavior of {@link NodeGraph#newEvalRound(Object)} when each
+	 * input is read once.
+	 * </p>
+	 *
+	 * @param target The target slot.
+	 * @return The schedule.
+	 */
+	int[] schedule(int target) {
+		// Mark all slots that target depends on
+		boolean[] cone = new boolean[instances.length];
+		int[] stack = new int[16];
+		int top = 0;
+		cone[target] = true;
+		stack[top++] = target;
+
+		while (top > 0) {
+			int slot = stack[--top];
+
+			for (int input = inputOffsets[slot]; input < inputOffsets[slot + 1]; input++) {
+				if (inputSources[input] == -1) continue;
+				int src = outputOwners[inputSources[input]];
+				if (cone[src]) continue;
+				cone[src] = true;
+				if (top == stack.length) stack = Arrays.copyOf(stack, top * 2);
+				stack[top++] = src;
+			}
+		}
+
+		// Emit cached slots in topological order, with uncached sources expanded
+		// right before their consumers
+		ScheduleBuilder builder = new ScheduleBuilder();
+
+		for (int slot = 0; slot <= target; slot++) {
+			if (!cone[slot] || (!cached[slot] && slot != target)) continue;
+			builder.expandInputs(slot);
+			builder.emit(slot, -1);
+		}
+
+		return builder.build();
+	}
+
+	private class ScheduleBuilder {
+		private int[] ops = new int[16];
+		private int length = 0;
+		private int[] frames = new int[16];
+
+		void emit(int slot, int capture) {
+			if (length + 2 > ops.length) ops = Arrays.copyOf(ops, ops.length * 2);
+			ops[length++] = slot;
+			ops[length++] = capture;
+		}
+
+		/**
+		 * <p>
+		 * Emit all uncached sources of the slot in post-order, using explicit stack
+		 * instead of recursion. Each frame is a pair of the input that is being
+		 * expanded and the next input of its source to visit.
+		 * </p>
+		 */
+		void expandInputs(int slot) {
+			for (int input = inputOffsets[slot]; input < inputOffsets[slot + 1]; input++) {
+				if (!isUncachedSource(input)) continue;
+				int top = 0;
+				top = push(top, input);
+
+				while (top > 0) {
+					int expanding = frames[top - 2];
+					int src = outputOwners[inputSources[expanding]];
+					int next = frames[top - 1];
+
+					if (next < inputOffsets[src + 1]) {
+						frames[top - 1]++;
+						if (isUncachedSource(next)) top = push(top, next);
+					} else {
+						top -= 2;
+						emit(src, expanding);
+					}
+				}
+			}
+		}
+
+		private boolean isUncachedSource(int input) {
+			return inputSources[input] != -1 && !cached[outputOwners[inputSources[input]]];
+		}
+
+		private int push(int top, int input) {
+			if (top + 2 > frames.length) frames = Arrays.copyOf(frames, frames.length * 2);
+			frames[top++] = input;
+			frames[top++] = inputOffsets[outputOwners[inputSources[input]]];
+			return top;
+		}
+
+		int[] build() {
+			return Arrays.copyOf(ops, length);
+		}
+	}
+}
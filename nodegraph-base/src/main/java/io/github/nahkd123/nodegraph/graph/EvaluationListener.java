@@ -0,0 +1,55 @@
+package io.github.nahkd123.nodegraph.graph;
+
+/**
+ * <p>
+ * Listener for observing the evaluation of node instances, which can be
+ * attached to {@link EvaluationRound} with
+ * {@link EvaluationRound#setListener(EvaluationListener)}. All methods do
+ * nothing by default.
+ * </p>
+ * <p>
+ * Listeners attached to rounds that process nodes in parallel will be called
+ * from multiple threads at the same time.
+ * </p>
+ *
+ * @param <E> Type of environment object.
+ * @see EvaluationMetrics
+ */
+public interface EvaluationListener<E> {
+	/**
+	 * <p>
+	 * Called after {@link io.github.nahkd123.nodegraph.node.Node#process} of node
+	 * instance returns.
+	 * </p>
+	 * 
+	 * @param instance       The node instance.
+	 * @param nanos          The wall time spent in processing, in nanoseconds.
+	 * @param allocatedBytes The number of bytes allocated on the heap by the
+	 *                       processing thread, or {@code -1} if allocation
+	 *                       measurement is not available in current JVM.
+	 */
+	default void onProcessed(NodeInstance<?, E> instance, long nanos, long allocatedBytes) {}
+
+	/**
+	 * <p>
+	 * Called when a node that is about to be processed reads outputs of a cached
+	 * node without processing it again, once for each connection. The first read
+	 * of outputs that were just computed is not a hit; only later reads in the
+	 * same evaluation, and reads of outputs kept from previous evaluations, are
+	 * reported.
+	 * </p>
+	 * 
+	 * @param instance The cached node instance.
+	 */
+	default void onCacheHit(NodeInstance<?, E> instance) {}
+
+	/**
+	 * <p>
+	 * Called right before a cached node is processed, because its outputs are
+	 * not available for current evaluation.
+	 * </p>
+	 * 
+	 * @param instance The cached node instance.
+	 */
+	default void onCacheMiss(NodeInstance<?, E> instance) {}
+}
@@ -0,0 +1,116 @@
+package io.github.nahkd123.nodegraph.graph;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * An {@link EvaluationListener} that collects metrics of each node instance.
+ * The collector is thread-safe, so it can be attached to multiple rounds,
+ * including rounds that process nodes in parallel.
+ * </p>
+ * 
+ * <pre>
+ * EvaluationMetrics&lt;Void&gt; metrics = new EvaluationMetrics&lt;&gt;();
+ * EvaluationRound&lt;Void&gt; eval = graph.newEvalRound(null);
+ * eval.setListener(metrics);
+ * eval.eval(outputNode);
+ * metrics.getAll().forEach((instance, m) -&gt; System.out.println(m.processNanos()));
+ * </pre>
+ *
+ * @param <E> Type of environment object.
+ */
+public class EvaluationMetrics<E> implements EvaluationListener<E> {
+	private final Map<NodeInstance<?, E>, Counters> counters = new ConcurrentHashMap<>();
+
+	@Override
+	public void onProcessed(NodeInstance<?, E> instance, long nanos, long allocatedBytes) {
+		Counters c = countersOf(instance);
+		c.invocations.increment();
+		c.processNanos.add(nanos);
+		if (allocatedBytes > 0L) c.allocatedBytes.add(allocatedBytes);
+	}
+
+	@Override
+	public void onCacheHit(NodeInstance<?, E> instance) {
+		countersOf(instance).cacheHits.increment();
+	}
+
+	@Override
+	public void onCacheMiss(NodeInstance<?, E> instance) {
+		countersOf(instance).cacheMisses.increment();
+	}
+
+	private Counters countersOf(NodeInstance<?, E> instance) {
+		Counters c = counters.get(instance);
+		return c != null ? c : counters.computeIfAbsent(instance, k -> new Counters());
+	}
+
+	/**
+	 * <p>
+	 * Get the metrics of node instance.
+	 * </p>
+	 * 
+	 * @param instance The node instance.
+	 * @return The metrics, or all zeros if the instance is never observed.
+	 */
+	public NodeMetrics get(NodeInstance<?, E> instance) {
+		Counters c = counters.get(instance);
+		return c != null ? c.snapshot() : new NodeMetrics(0L, 0L, 0L, 0L, 0L);
+	}
+
+	/**
+	 * <p>
+	 * Get the metrics of all observed node instances.
+	 * </p>
+	 * 
+	 * @return A snapshot of metrics.
+	 */
+	public Map<NodeInstance<?, E>, NodeMetrics> getAll() {
+		Map<NodeInstance<?, E>, NodeMetrics> out = new HashMap<>();
+		counters.forEach((instance, c) -> out.put(instance, c.snapshot()));
+		return Collections.unmodifiableMap(out);
+	}
+
+	public void reset() {
+		counters.clear();
+	}
+
+	/**
+	 * <p>
+	 * Metrics of a single node instance.
+	 * </p>
+	 * 
+	 * @param invocations    The number of times the node is processed.
+	 * @param processNanos   Total wall time spent in processing.
+	 * @param allocatedBytes Total bytes allocated while processing, or {@code 0}
+	 *                       if allocation measurement is not available.
+	 * @param cacheHits      The number of times outputs of the node are reused
+	 *                       without processing.
+	 * @param cacheMisses    The number of times the node is processed because its
+	 *                       cached outputs are not available (see
+	 *                       {@link io.github.nahkd123.nodegraph.node.Node#shouldCache()}).
+	 */
+	public static record NodeMetrics(long invocations, long processNanos, long allocatedBytes, long cacheHits, long cacheMisses) {
+	}
+
+	private static class Counters {
+		final LongAdder invocations = new LongAdder();
+		final LongAdder processNanos = new LongAdder();
+		final LongAdder allocatedBytes = new LongAdder();
+		final LongAdder cacheHits = new LongAdder();
+		final LongAdder cacheMisses = new LongAdder();
+
+		NodeMetrics snapshot() {
+			return new NodeMetrics(
+				invocations.sum(),
+				processNanos.sum(),
+				allocatedBytes.sum(),
+				cacheHits.sum(),
+				cacheMisses.sum());
+		}
+	}
+}
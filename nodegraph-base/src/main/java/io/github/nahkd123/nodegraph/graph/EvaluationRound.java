@@ -18,6 +18,23 @@ public interface EvaluationRound<E> {
 	 */
 	NodeOutputGetter eval(NodeInstance<?, E> instance);
 
+	/**
+	 * <p>
+	 * Attach a listener that observes the processing of node instances in this
+	 * round, replacing the previous one. When there is no listener attached, the
+	 * round does not measure anything.
+	 * </p>
+	 * <p>
+	 * All evaluation rounds created by this library support listeners. The
+	 * default implementation ignores the listener, so rounds implemented outside
+	 * of this library only have to override this method if they report to
+	 * listeners.
+	 * </p>
+	 * 
+	 * @param listener The listener, or {@code null} to detach.
+	 */
+	default void setListener(EvaluationListener<E> listener) {}
+
 	@FunctionalInterface
 	public static interface NodeInputSupplier {
 		<V> V supply(InputSocket<V> socket);
@@ -26,5 +43,25 @@ public interface EvaluationRound<E> {
 	@FunctionalInterface
 	public static interface NodeOutputGetter {
 		<V> V get(OutputSocket<V> socket);
+
+		default int getInt(OutputSocket<? extends Number> socket) {
+			return get(socket).intValue();
+		}
+
+		default long getLong(OutputSocket<? extends Number> socket) {
+			return get(socket).longValue();
+		}
+
+		default float getFloat(OutputSocket<? extends Number> socket) {
+			return get(socket).floatValue();
+		}
+
+		default double getDouble(OutputSocket<? extends Number> socket) {
+			return get(socket).doubleValue();
+		}
+
+		default boolean getBoolean(OutputSocket<Boolean> socket) {
+			return get(socket);
+		}
 	}
 }
@@ -8,10 +8,27 @@ import io.github.nahkd123.nodegraph.socket.InputSocket;
 import io.github.nahkd123.nodegraph.socket.OutputSocket;
 import io.github.nahkd123.nodegraph.socket.Socket;
 
+/**
+ * <p>
+ * Default evaluation round of {@link NodeGraph}. Nodes are processed lazily:
+ * the source of an input is only processed when the node reads that input, so
+ * branches that are never read are never processed. Nodes without caching are
+ * processed again on every read of their outputs.
+ * </p>
+ * <p>
+ * Sources are processed recursively, so the depth of the graph is limited by
+ * the thread stack size. The processing time and allocations reported to
+ * {@link EvaluationListener} include the sources that are processed while the
+ * node reads its inputs.
+ * </p>
+ *
+ * @param <E> Type of environment object.
+ */
 class EvaluationRoundImpl<E> implements EvaluationRound<E> {
 	private NodeGraph<E> domain;
 	private E environment;
 	private Map<NodeInstance<?, E>, ?> states = new HashMap<>();
+	private EvaluationListener<E> listener;
 
 	EvaluationRoundImpl(NodeGraph<E> domain, E environment) {
 		this.domain = domain;
@@ -21,6 +38,11 @@ class EvaluationRoundImpl<E> implements EvaluationRound<E> {
 	@Override
 	public E getEnvironment() { return environment; }
 
+	@Override
+	public void setListener(EvaluationListener<E> listener) {
+		this.listener = listener;
+	}
+
 	@Override
 	public NodeOutputGetter eval(NodeInstance<?, E> instance) {
 		Map<NodeInstance<?, E>, Map<Socket<?>, ?>> globalCache = new HashMap<NodeInstance<?, E>, Map<Socket<?>, ?>>();
@@ -41,7 +63,13 @@ class EvaluationRoundImpl<E> implements EvaluationRound<E> {
 
 		if (instance.getNode().shouldCache()) {
 			nodeResult = globalCache.get(instance);
-			if (nodeResult != null) return nodeResult;
+
+			if (nodeResult != null) {
+				if (listener != null) listener.onCacheHit(instance);
+				return nodeResult;
+			}
+
+			if (listener != null) listener.onCacheMiss(instance);
 		}
 
 		globalCache.put(instance, nodeResult = new HashMap<>());
@@ -56,7 +84,19 @@ class EvaluationRoundImpl<E> implements EvaluationRound<E> {
 			}
 		});
 
+		EvaluationListener<E> listener = this.listener;
+
+		if (listener == null) {
+			instance.getNode().process(ctx);
+			return nodeResult;
+		}
+
+		long allocated = Allocations.currentThread();
+		long start = System.nanoTime();
 		instance.getNode().process(ctx);
+		long nanos = System.nanoTime() - start;
+		if (allocated != -1L) allocated = Allocations.currentThread() - allocated;
+		listener.onProcessed(instance, nanos, allocated);
 		return nodeResult;
 	}
 
@@ -0,0 +1,334 @@
+package io.github.nahkd123.nodegraph.graph;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.github.nahkd123.nodegraph.node.Node;
+import io.github.nahkd123.nodegraph.node.NodeProcessContext;
+
+/**
+ * <p>
+ * Generate evaluators that run a schedule of {@link CompiledGraph} as
+ * straight-line bytecode. Every scheduled node gets its own
+ * {@code invokeinterface} call site, so each call site only sees a single node
+ * type and can be inlined by the JIT compiler, unlike the shared call site in
+ * {@link CompiledEvaluationRound}.
+ * </p>
+ * <p>
+ * Evaluators are defined as hidden classes in this package and cached by the
+ * schedule and the type of each scheduled node, so graphs with the same
+ * structure share the same class. Node types are identified by IDs assigned
+ * with {@link ClassValue}, so the cache does not keep node classes (and their
+ * class loaders) from being unloaded. If the class can not be defined, the
+ * schedule falls back to the interpreter, and the fallback is not cached.
+ * </p>
+ */
+final class EvaluatorGenerator {
+	private static final int MAX_CACHED = 256;
+
+	/**
+	 * <p>
+	 * Number of scheduled nodes in each generated method. Methods are kept small
+	 * enough to be compiled by the JIT compiler, which ignores methods that are
+	 * larger than 8000 bytes by default.
+	 * </p>
+	 */
+	private static final int NODES_PER_METHOD = 128;
+
+	private static final String ROUND = internalName(CompiledEvaluationRound.class);
+	private static final String NODE = internalName(Node.class);
+	private static final String CONTEXT = internalName(NodeProcessContext.class);
+	private static final String EVALUATOR = internalName(Evaluator.class);
+	private static final String RUN_DESCRIPTOR = "(L%s;[L%s;L%s;)V".formatted(ROUND, NODE, CONTEXT);
+	private static final String CLASS_NAME = EvaluatorGenerator.class.getPackageName().replace('.', '/') + "/GeneratedEvaluator";
+
+	private static final Lookup LOOKUP = MethodHandles.lookup();
+	private static final AtomicInteger NEXT_TYPE_ID = new AtomicInteger();
+	private static final ClassValue<Integer> TYPE_IDS = new ClassValue<>() {
+		@Override
+		protected Integer computeValue(Class<?> type) {
+			return NEXT_TYPE_ID.getAndIncrement();
+		}
+	};
+	private static final Map<Key, Evaluator> CACHE = new LinkedHashMap<>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, Evaluator> eldest) {
+			return size() > MAX_CACHED;
+		}
+	};
+
+	private EvaluatorGenerator() {}
+
+	/**
+	 * <p>
+	 * An evaluator that processes all nodes in a schedule. The context must be
+	 * the processing context of the round.
+	 * </p>
+	 */
+	static interface Evaluator {
+		void run(CompiledEvaluationRound<?> round, Node<?, ?>[] nodes, NodeProcessContext<?, ?> context);
+	}
+
+	/**
+	 * <p>
+	 * Get the evaluator for a schedule of the plan, generating a new class if
+	 * there is no cached evaluator for the same structure.
+	 * </p>
+	 *
+	 * @param plan     The plan.
+	 * @param schedule The schedule, as returned from
+	 *                 {@link CompiledGraph#schedule(int)}.
+	 * @return The evaluator.
+	 */
+	static Evaluator get(CompiledGraph<?> plan, int[] schedule) {
+		int[] types = new int[schedule.length / 2];
+		for (int i = 0; i < types.length; i++) types[i] = TYPE_IDS.get(plan.nodes[schedule[i * 2]].getClass());
+		Key key = new Key(schedule, types);
+
+		synchronized (CACHE) {
+			Evaluator evaluator = CACHE.get(key);
+			if (evaluator != null) return evaluator;
+		}
+
+		Evaluator evaluator;
+
+		try {
+			Lookup lookup = LOOKUP.defineHiddenClass(generate(schedule), true);
+			evaluator = (Evaluator) lookup.lookupClass().getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError | IllegalArgumentException e) {
+			// Not cached, so the class can be generated again later
+			return (round, nodes, context) -> round.run(schedule);
+		}
+
+		synchronized (CACHE) {
+			CACHE.put(key, evaluator);
+		}
+
+		return evaluator;
+	}
+
+	private static String internalName(Class<?> type) {
+		return type.getName().replace('.', '/');
+	}
+
+	/**
+	 * <p>
+	 * Generate the class file of an evaluator. The class does not have any
+	 * branches, so it does not need stack map frames.
+	 * </p>
+	 *
+	 * @throws IllegalArgumentException if the schedule is too large.
+	 */
+	static byte[] generate(int[] schedule) {
+		ClassWriter writer = new ClassWriter();
+		int prepare = writer.methodRef(ROUND, "prepare", "(I)V", false);
+		int capture = writer.methodRef(ROUND, "capture", "(I)V", false);
+		int process = writer.methodRef(NODE, "process", "(L%s;)V".formatted(CONTEXT), true);
+		int nodes = schedule.length / 2;
+		int chunks = (nodes + NODES_PER_METHOD - 1) / NODES_PER_METHOD;
+		Bytes run = new Bytes();
+
+		for (int chunk = 0; chunk < chunks; chunk++) {
+			Bytes code = new Bytes();
+
+			for (int i = chunk * NODES_PER_METHOD; i < Math.min(nodes, (chunk + 1) * NODES_PER_METHOD); i++) {
+				int slot = schedule[i * 2];
+				int input = schedule[i * 2 + 1];
+
+				// round.prepare(slot); nodes[slot].process(context);
+				code.u1(ALOAD_0);
+				writer.pushInt(code, slot);
+				code.u1(INVOKEVIRTUAL).u2(prepare);
+				code.u1(ALOAD_1);
+				writer.pushInt(code, slot);
+				code.u1(AALOAD).u1(ALOAD_2).u1(INVOKEINTERFACE).u2(process).u1(2).u1(0);
+
+				if (input != -1) {
+					// round.capture(input);
+					code.u1(ALOAD_0);
+					writer.pushInt(code, input);
+					code.u1(INVOKEVIRTUAL).u2(capture);
+				}
+			}
+
+			code.u1(RETURN);
+			String name = "run" + chunk;
+			writer.method(ACC_PRIVATE | ACC_STATIC, name, RUN_DESCRIPTOR, 3, 3, code);
+			run.u1(ALOAD_1).u1(ALOAD_2).u1(ALOAD_3);
+			run.u1(INVOKESTATIC).u2(writer.methodRef(CLASS_NAME, name, RUN_DESCRIPTOR, false));
+		}
+
+		run.u1(RETURN);
+		writer.method(ACC_PUBLIC, "run", RUN_DESCRIPTOR, 3, 4, run);
+
+		Bytes init = new Bytes();
+		init.u1(ALOAD_0).u1(INVOKESPECIAL).u2(writer.methodRef("java/lang/Object", "<init>", "()V", false));
+		init.u1(RETURN);
+		writer.method(ACC_PUBLIC, "<init>", "()V", 1, 1, init);
+		return writer.toByteArray();
+	}
+
+	private static final int ACC_PUBLIC = 0x0001;
+	private static final int ACC_PRIVATE = 0x0002;
+	private static final int ACC_STATIC = 0x0008;
+	private static final int ACC_FINAL = 0x0010;
+	private static final int ACC_SUPER = 0x0020;
+
+	private static final int ICONST_0 = 0x03;
+	private static final int BIPUSH = 0x10;
+	private static final int SIPUSH = 0x11;
+	private static final int LDC_W = 0x13;
+	private static final int ALOAD_0 = 0x2A;
+	private static final int ALOAD_1 = 0x2B;
+	private static final int ALOAD_2 = 0x2C;
+	private static final int ALOAD_3 = 0x2D;
+	private static final int AALOAD = 0x32;
+	private static final int RETURN = 0xB1;
+	private static final int INVOKEVIRTUAL = 0xB6;
+	private static final int INVOKESPECIAL = 0xB7;
+	private static final int INVOKESTATIC = 0xB8;
+	private static final int INVOKEINTERFACE = 0xB9;
+
+	private static final int CONSTANT_UTF8 = 1;
+	private static final int CONSTANT_INTEGER = 3;
+	private static final int CONSTANT_CLASS = 7;
+	private static final int CONSTANT_METHODREF = 10;
+	private static final int CONSTANT_INTERFACE_METHODREF = 11;
+	private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+	/**
+	 * <p>
+	 * Minimal class file writer for evaluator classes. Constants are
+	 * deduplicated by their string representation.
+	 * </p>
+	 */
+	private static class ClassWriter {
+		private final Bytes pool = new Bytes();
+		private final Map<String, Integer> constants = new HashMap<>();
+		private final Bytes methods = new Bytes();
+		private int methodCount = 0;
+
+		private int constant(String key, Bytes entry) {
+			Integer index = constants.get(key);
+			if (index != null) return index;
+			index = constants.size() + 1;
+			if (index > 0xFFFF) throw new IllegalArgumentException("Too many constants");
+			constants.put(key, index);
+			pool.append(entry);
+			return index;
+		}
+
+		int utf8(String value) {
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			return constant("U" + value, new Bytes().u1(CONSTANT_UTF8).u2(bytes.length).append(bytes));
+		}
+
+		int integer(int value) {
+			return constant("I" + value, new Bytes().u1(CONSTANT_INTEGER).u4(value));
+		}
+
+		int classRef(String name) {
+			int nameIndex = utf8(name);
+			return constant("C" + name, new Bytes().u1(CONSTANT_CLASS).u2(nameIndex));
+		}
+
+		int methodRef(String owner, String name, String descriptor, boolean isInterface) {
+			int ownerIndex = classRef(owner);
+			int nameIndex = utf8(name);
+			int descriptorIndex = utf8(descriptor);
+			int nameAndType = constant("N" + name + descriptor, new Bytes()
+				.u1(CONSTANT_NAME_AND_TYPE)
+				.u2(nameIndex)
+				.u2(descriptorIndex));
+			int tag = isInterface ? CONSTANT_INTERFACE_METHODREF : CONSTANT_METHODREF;
+			return constant("M" + owner + "." + name + descriptor, new Bytes().u1(tag).u2(ownerIndex).u2(nameAndType));
+		}
+
+		void pushInt(Bytes code, int value) {
+			if (value >= -1 && value <= 5) code.u1(ICONST_0 + value);
+			else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) code.u1(BIPUSH).u1(value);
+			else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) code.u1(SIPUSH).u2(value);
+			else code.u1(LDC_W).u2(integer(value));
+		}
+
+		void method(int access, String name, String descriptor, int maxStack, int maxLocals, Bytes code) {
+			if (code.length > 0xFFFF) throw new IllegalArgumentException("Method is too large");
+			methods.u2(access).u2(utf8(name)).u2(utf8(descriptor)).u2(1);
+			methods.u2(utf8("Code")).u4(12 + code.length);
+			methods.u2(maxStack).u2(maxLocals).u4(code.length).append(code);
+			methods.u2(0).u2(0);
+			methodCount++;
+		}
+
+		byte[] toByteArray() {
+			int thisClass = classRef(CLASS_NAME);
+			int superClass = classRef("java/lang/Object");
+			int evaluator = classRef(EVALUATOR);
+			Bytes out = new Bytes();
+			out.u4(0xCAFEBABE).u2(0).u2(61);
+			out.u2(constants.size() + 1).append(pool);
+			out.u2(ACC_PUBLIC | ACC_FINAL | ACC_SUPER).u2(thisClass).u2(superClass);
+			out.u2(1).u2(evaluator);
+			out.u2(0);
+			out.u2(methodCount).append(methods);
+			out.u2(0);
+			return Arrays.copyOf(out.data, out.length);
+		}
+	}
+
+	private static class Bytes {
+		private byte[] data = new byte[64];
+		private int length = 0;
+
+		private void ensure(int extra) {
+			if (length + extra > data.length) data = Arrays.copyOf(data, Math.max(data.length * 2, length + extra));
+		}
+
+		Bytes u1(int value) {
+			ensure(1);
+			data[length++] = (byte) value;
+			return this;
+		}
+
+		Bytes u2(int value) {
+			return u1(value >>> 8).u1(value);
+		}
+
+		Bytes u4(int value) {
+			return u2(value >>> 16).u2(value);
+		}
+
+		Bytes append(byte[] bytes) {
+			ensure(bytes.length);
+			System.arraycopy(bytes, 0, data, length, bytes.length);
+			length += bytes.length;
+			return this;
+		}
+
+		Bytes append(Bytes bytes) {
+			return append(Arrays.copyOf(bytes.data, bytes.length));
+		}
+	}
+
+	private static record Key(int[] schedule, int[] types) {
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Key other
+				&& Arrays.equals(schedule, other.schedule)
+				&& Arrays.equals(types, other.types);
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(schedule) * 31 + Arrays.hashCode(types);
+		}
+	}
+}
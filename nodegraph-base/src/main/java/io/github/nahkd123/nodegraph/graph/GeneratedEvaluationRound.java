@@ -0,0 +1,32 @@
+package io.github.nahkd123.nodegraph.graph;
+
+/**
+ * <p>
+ * Compiled evaluation round that runs each schedule with an evaluator
+ * generated by {@link EvaluatorGenerator}. Generated evaluators do not report
+ * to evaluation listeners and do not use {@link MemoCache}, so the round falls
+ * back to the interpreter when the listener is set or the plan have a memo
+ * cache.
+ * </p>
+ *
+ * @param <E> Type of environment object.
+ */
+class GeneratedEvaluationRound<E> extends CompiledEvaluationRound<E> {
+	private final EvaluatorGenerator.Evaluator[] evaluators;
+
+	GeneratedEvaluationRound(CompiledGraph<E> plan, E environment) {
+		super(plan, environment);
+		this.evaluators = new EvaluatorGenerator.Evaluator[plan.instances.length];
+	}
+
+	@Override
+	public NodeOutputGetter eval(NodeInstance<?, E> instance) {
+		if (hasListener() || plan.memoCache != null) return super.eval(instance);
+		int target = targetOf(instance);
+		epoch++;
+		EvaluatorGenerator.Evaluator evaluator = evaluators[target];
+		if (evaluator == null) evaluator = evaluators[target] = EvaluatorGenerator.get(plan, scheduleOf(target));
+		evaluator.run(this, plan.nodes, context);
+		return getter(target);
+	}
+}
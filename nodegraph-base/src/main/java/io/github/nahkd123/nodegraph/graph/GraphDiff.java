@@ -0,0 +1,212 @@
+package io.github.nahkd123.nodegraph.graph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.github.nahkd123.nodegraph.socket.InputSocket;
+
+/**
+ * <p>
+ * The changes between 2 versions of a graph, which can be applied to another
+ * graph as a patch. This is used for keeping a copy of graph (like the one on
+ * a server) up to date without sending the whole graph on each change; see
+ * {@link InstanceIds} for referring to node instances of the copy.
+ * </p>
+ * <p>
+ * Initial values and editor data of added node instances are included as
+ * changes, so the added instances can be created with just the node.
+ * </p>
+ *
+ * @param <E> Type of environment object.
+ * @see #between(GraphSnapshot, GraphSnapshot)
+ */
+public final class GraphDiff<E> {
+	private final List<Connection<E>> removedConnections;
+	private final List<NodeInstance<?, E>> removedInstances;
+	private final List<NodeInstance<?, E>> addedInstances;
+	private final List<InitialValue<E>> initialValues;
+	private final List<EditorData<E>> editorData;
+	private final List<Connection<E>> addedConnections;
+
+	public GraphDiff(List<Connection<E>> removedConnections, List<NodeInstance<?, E>> removedInstances, List<NodeInstance<?, E>> addedInstances, List<InitialValue<E>> initialValues, List<EditorData<E>> editorData, List<Connection<E>> addedConnections) {
+		this.removedConnections = List.copyOf(removedConnections);
+		this.removedInstances = List.copyOf(removedInstances);
+		this.addedInstances = List.copyOf(addedInstances);
+		this.initialValues = List.copyOf(initialValues);
+		this.editorData = List.copyOf(editorData);
+		this.addedConnections = List.copyOf(addedConnections);
+	}
+
+	/**
+	 * <p>
+	 * Compute the changes between 2 snapshots of the same graph. This only takes
+	 * time in proportion to the number of changes.
+	 * </p>
+	 *
+	 * @param from The older snapshot.
+	 * @param to   The newer snapshot.
+	 * @return The changes that turns {@code from} into {@code to}.
+	 * @see GraphSnapshot#diff(GraphSnapshot, NodeGraph.ChangeListener)
+	 */
+	public static <E> GraphDiff<E> between(GraphSnapshot<E> from, GraphSnapshot<E> to) {
+		List<Connection<E>> removedConnections = new ArrayList<>();
+		List<NodeInstance<?, E>> removedInstances = new ArrayList<>();
+		List<NodeInstance<?, E>> addedInstances = new ArrayList<>();
+		List<InitialValue<E>> initialValues = new ArrayList<>();
+		List<EditorData<E>> editorData = new ArrayList<>();
+		List<Connection<E>> addedConnections = new ArrayList<>();
+
+		from.diff(to, new NodeGraph.ChangeListener<>() {
+			@Override
+			public void onInstanceAdded(NodeInstance<?, E> instance) {
+				NodeInstance.Version version = to.instances.get(instance);
+				addedInstances.add(instance);
+				version.initialValues().forEach((socket, value) -> initialValues.add(new InitialValue<>(instance, socket, value)));
+				if (version.editorData() != null) editorData.add(new EditorData<>(instance, version.editorData()));
+			}
+
+			@Override
+			public void onInstanceRemoved(NodeInstance<?, E> instance) {
+				removedInstances.add(instance);
+			}
+
+			@Override
+			public void onConnected(NodeSocketRef<?, E, ?> src, NodeSocketRef<?, E, ?> dst) {
+				addedConnections.add(new Connection<>(src, dst));
+			}
+
+			@Override
+			public void onDisconnected(NodeSocketRef<?, E, ?> src, NodeSocketRef<?, E, ?> dst) {
+				removedConnections.add(new Connection<>(src, dst));
+			}
+
+			@Override
+			public void onInitialValueChanged(NodeInstance<?, E> instance, InputSocket<?> socket) {
+				initialValues.add(new InitialValue<>(instance, socket, to.getInitialValue(instance, socket)));
+			}
+
+			@Override
+			public void onEditorDataChanged(NodeInstance<?, E> instance) {
+				editorData.add(new EditorData<>(instance, to.getEditorData(instance)));
+			}
+		});
+
+		return new GraphDiff<>(removedConnections, removedInstances, addedInstances, initialValues, editorData, addedConnections);
+	}
+
+	public List<Connection<E>> getRemovedConnections() { return removedConnections; }
+
+	public List<NodeInstance<?, E>> getRemovedInstances() { return removedInstances; }
+
+	public List<NodeInstance<?, E>> getAddedInstances() { return addedInstances; }
+
+	public List<InitialValue<E>> getInitialValues() { return initialValues; }
+
+	public List<EditorData<E>> getEditorData() { return editorData; }
+
+	public List<Connection<E>> getAddedConnections() { return addedConnections; }
+
+	public boolean isEmpty() {
+		return removedConnections.isEmpty()
+			&& removedInstances.isEmpty()
+			&& addedInstances.isEmpty()
+			&& initialValues.isEmpty()
+			&& editorData.isEmpty()
+			&& addedConnections.isEmpty();
+	}
+
+	/**
+	 * <p>
+	 * Apply the changes to a graph. Changes are applied in the same order as the
+	 * getters are declared: connections are removed first and added last, so the
+	 * patch never creates a cycle in the intermediate state.
+	 * </p>
+	 * <p>
+	 * A new node instance of the same node is added for each added node
+	 * instance, and changes that refer to them are applied to the copies, so the
+	 * same diff can be applied to multiple graphs without sharing node instances
+	 * (or editor data) with the graph the diff is computed from. The copies only
+	 * get their state from the changes in this diff, so changes made to the added
+	 * node instances after computing the diff are not applied, the same as when
+	 * the diff is serialized. Other node instances in the diff must already be
+	 * in the graph.
+	 * </p>
+	 *
+	 * @param graph The graph.
+	 * @return The copies added to the graph, keyed by added node instances of
+	 *         this diff.
+	 * @throws IllegalArgumentException if an added connection would create a
+	 *                                  cycle, which only happens when the graph
+	 *                                  is not the version this diff is computed
+	 *                                  from.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public Map<NodeInstance<?, E>, NodeInstance<?, E>> applyTo(NodeGraph<E> graph) {
+		Map<NodeInstance<?, E>, NodeInstance<?, E>> copies = new IdentityHashMap<>();
+		for (Connection<E> connection : removedConnections)
+			graph.disconnect((NodeSocketRef) connection.from(), (NodeSocketRef) connection.to());
+		for (NodeInstance<?, E> instance : removedInstances) graph.removeInstance(instance);
+
+		for (NodeInstance<?, E> instance : addedInstances) {
+			NodeInstance<?, E> copy = new NodeInstance<>(instance.getNode(), null);
+			copies.put(instance, copy);
+			graph.addInstance(copy);
+		}
+
+		for (InitialValue<E> value : initialValues)
+			resolve(copies, value.instance()).setInitialValue((InputSocket) value.socket(), value.value());
+
+		for (EditorData<E> data : editorData) {
+			NodeEditorData editorData = data.editorData();
+			resolve(copies, data.instance()).setEditorData(editorData != null ? editorData.copy() : null);
+		}
+
+		for (Connection<E> connection : addedConnections)
+			graph.connect(resolve(copies, connection.from()), resolve(copies, connection.to()));
+		return Collections.unmodifiableMap(copies);
+	}
+
+	/**
+	 * <p>
+	 * Apply the changes to a graph, then point the IDs of added node instances
+	 * to their copies. This is used on the side that receives the diff, where
+	 * the IDs are assigned to added node instances while deserializing.
+	 * </p>
+	 *
+	 * @param graph       The graph.
+	 * @param instanceIds The IDs of node instances of the graph.
+	 * @return The copies added to the graph, keyed by added node instances of
+	 *         this diff.
+	 * @see #applyTo(NodeGraph)
+	 */
+	public Map<NodeInstance<?, E>, NodeInstance<?, E>> applyTo(NodeGraph<E> graph, InstanceIds<E> instanceIds) {
+		Map<NodeInstance<?, E>, NodeInstance<?, E>> copies = applyTo(graph);
+
+		copies.forEach((instance, copy) -> {
+			int id = instanceIds.getId(instance);
+			if (id != -1) instanceIds.put(id, copy);
+		});
+
+		return copies;
+	}
+
+	private static <E> NodeInstance<?, E> resolve(Map<NodeInstance<?, E>, NodeInstance<?, E>> copies, NodeInstance<?, E> instance) {
+		NodeInstance<?, E> copy = copies.get(instance);
+		return copy != null ? copy : instance;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static <E> NodeSocketRef resolve(Map<NodeInstance<?, E>, NodeInstance<?, E>> copies, NodeSocketRef<?, E, ?> ref) {
+		NodeInstance<?, E> copy = copies.get(ref.node());
+		return copy != null ? new NodeSocketRef(copy, ref.socket()) : ref;
+	}
+
+	public static record Connection<E>(NodeSocketRef<?, E, ?> from, NodeSocketRef<?, E, ?> to) {}
+
+	public static record InitialValue<E>(NodeInstance<?, E> instance, InputSocket<?> socket, Object value) {}
+
+	public static record EditorData<E>(NodeInstance<?, E> instance, NodeEditorData editorData) {}
+}
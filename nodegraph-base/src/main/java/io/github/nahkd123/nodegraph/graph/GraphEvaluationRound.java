@@ -0,0 +1,96 @@
+package io.github.nahkd123.nodegraph.graph;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>
+ * Compiled evaluation round of {@link NodeGraph}. The round evaluates a
+ * {@link CompiledGraph} and compiles the graph again when its structure is
+ * changed, moving internal node states of remaining node instances to the new
+ * plan. Changes to initial values only update the constants of the affected
+ * slots, unless the slots are merged or folded at compile time.
+ * </p>
+ * <p>
+ * The plan only includes node instances that the evaluated instances depend
+ * on, so unused instances of the graph do not hold internal states or outputs.
+ * An instance is included in the plan once it is evaluated for the first time,
+ * even if it is not added to the graph, until the plan is compiled again
+ * without it being in the graph.
+ * </p>
+ *
+ * @param <E> Type of environment object.
+ */
+class GraphEvaluationRound<E> implements EvaluationRound<E> {
+	private final NodeGraph<E> graph;
+	private final E environment;
+	private final Set<NodeInstance<?, E>> targets = Collections.newSetFromMap(new IdentityHashMap<>());
+	private final Map<NodeInstance<?, E>, NodeInstance.Version> versions = new IdentityHashMap<>();
+	private CompiledEvaluationRound<E> round;
+	private int modCount;
+	private int valueModCount;
+	private EvaluationListener<E> listener;
+
+	GraphEvaluationRound(NodeGraph<E> graph, E environment) {
+		this.graph = graph;
+		this.environment = environment;
+	}
+
+	@Override
+	public E getEnvironment() { return environment; }
+
+	@Override
+	public void setListener(EvaluationListener<E> listener) {
+		this.listener = listener;
+		if (round != null) round.setListener(listener);
+	}
+
+	@Override
+	public NodeOutputGetter eval(NodeInstance<?, E> instance) {
+		boolean missing = round == null || round.plan.slotOf(instance) == -1;
+		if (missing || modCount != graph.modCount || (valueModCount != graph.valueModCount && !updateConstants()))
+			compile(instance);
+		return round.eval(instance);
+	}
+
+	private void compile(NodeInstance<?, E> instance) {
+		// Instances that are removed from the graph are only kept if they are
+		// evaluated again
+		targets.removeIf(target -> !graph.instances.containsKey(target));
+		targets.add(instance);
+		CompiledEvaluationRound<E> previous = round;
+		round = new CompiledEvaluationRound<>(CompiledGraph.ofDependencies(graph.snapshot(), targets), environment);
+		round.setListener(listener);
+		modCount = graph.modCount;
+		valueModCount = graph.valueModCount;
+		versions.clear();
+		for (NodeInstance<?, E> planned : round.plan.allInstances()) versions.put(planned, planned.getVersion());
+		if (previous != null) round.transferFrom(previous);
+	}
+
+	/**
+	 * <p>
+	 * Read initial values of changed instances again.
+	 * </p>
+	 *
+	 * @return {@code false} if the plan has to be compiled again, because a
+	 *         changed instance is merged with other instances or folded.
+	 */
+	private boolean updateConstants() {
+		CompiledGraph<E> plan = round.plan;
+
+		for (Map.Entry<NodeInstance<?, E>, NodeInstance.Version> entry : versions.entrySet()) {
+			NodeInstance.Version version = entry.getKey().getVersion();
+			if (version.initialValues() == entry.getValue().initialValues()) continue;
+			int slot = plan.slotOf(entry.getKey());
+			if (plan.shared[slot] || plan.folded[slot]) return false;
+			plan.updateConstants(slot);
+			entry.setValue(version);
+		}
+
+		valueModCount = graph.valueModCount;
+		return true;
+	}
+}
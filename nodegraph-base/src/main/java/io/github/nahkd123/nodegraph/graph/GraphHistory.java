@@ -0,0 +1,126 @@
+package io.github.nahkd123.nodegraph.graph;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * <p>
+ * Undo and redo history of a {@link NodeGraph}. Each step of the history is a
+ * {@link GraphSnapshot}, which shares all unchanged parts with other steps, so
+ * each step only costs memory in proportion to the changes made in that step.
+ * </p>
+ * <p>
+ * Changes made to the graph are grouped into a step by calling
+ * {@link #commit()}, usually after each user action. Undo and redo apply the
+ * differences between steps to the graph with {@link NodeGraph#restore(GraphSnapshot)}.
+ * </p>
+ *
+ * @param <E> Type of environment object.
+ */
+public class GraphHistory<E> {
+	private final NodeGraph<E> graph;
+	private final int capacity;
+	private final Deque<GraphSnapshot<E>> undoSteps = new ArrayDeque<>();
+	private final Deque<GraphSnapshot<E>> redoSteps = new ArrayDeque<>();
+	private GraphSnapshot<E> current;
+
+	/**
+	 * <p>
+	 * Create a new history, with the current state of graph as the initial
+	 * step.
+	 * </p>
+	 *
+	 * @param graph    The graph.
+	 * @param capacity The maximum number of steps that can be undone.
+	 */
+	public GraphHistory(NodeGraph<E> graph, int capacity) {
+		if (capacity < 0) throw new IllegalArgumentException("capacity must not be negative");
+		this.graph = graph;
+		this.capacity = capacity;
+		this.current = graph.snapshot();
+	}
+
+	public NodeGraph<E> getGraph() { return graph; }
+
+	public int getCapacity() { return capacity; }
+
+	/**
+	 * <p>
+	 * Record the changes made to the graph since the last step as a new step.
+	 * This clears all steps that can be redone.
+	 * </p>
+	 *
+	 * @return Whether a new step is recorded. If the graph is not changed, this
+	 *         will return {@code false}.
+	 */
+	public boolean commit() {
+		if (!isModified()) return false;
+		pushUndo(current);
+		redoSteps.clear();
+		current = graph.snapshot();
+		return true;
+	}
+
+	public boolean canUndo() {
+		return !undoSteps.isEmpty() || isModified();
+	}
+
+	public boolean canRedo() {
+		return !redoSteps.isEmpty() && !isModified();
+	}
+
+	/**
+	 * <p>
+	 * Revert the graph to the previous step. Changes that are not committed are
+	 * committed first, so they can be redone.
+	 * </p>
+	 *
+	 * @return Whether the graph is reverted.
+	 */
+	public boolean undo() {
+		commit();
+		if (undoSteps.isEmpty()) return false;
+		redoSteps.push(current);
+		current = undoSteps.pop();
+		graph.restore(current);
+		return true;
+	}
+
+	/**
+	 * <p>
+	 * Apply the step that was reverted by {@link #undo()}. Steps can't be redone
+	 * once the graph is changed after undoing.
+	 * </p>
+	 *
+	 * @return Whether the step is applied.
+	 */
+	public boolean redo() {
+		if (!canRedo()) return false;
+		pushUndo(current);
+		current = redoSteps.pop();
+		graph.restore(current);
+		return true;
+	}
+
+	/**
+	 * <p>
+	 * Remove all steps from this history, keeping only the current state of the
+	 * graph.
+	 * </p>
+	 */
+	public void clear() {
+		undoSteps.clear();
+		redoSteps.clear();
+		current = graph.snapshot();
+	}
+
+	private void pushUndo(GraphSnapshot<E> step) {
+		undoSteps.push(step);
+		if (undoSteps.size() > capacity) undoSteps.removeLast();
+	}
+
+	private boolean isModified() {
+		GraphSnapshot<E> snapshot = graph.snapshot();
+		return snapshot.instances != current.instances || snapshot.dstToSrc != current.dstToSrc;
+	}
+}
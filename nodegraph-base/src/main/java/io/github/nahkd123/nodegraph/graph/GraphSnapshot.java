@@ -0,0 +1,249 @@
+package io.github.nahkd123.nodegraph.graph;
+
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import io.github.nahkd123.nodegraph.node.NodeDescriptor;
+import io.github.nahkd123.nodegraph.socket.InputSocket;
+
+/**
+ * <p>
+ * An immutable version of {@link NodeGraph}, including the initial values of
+ * all node instances in the graph. Snapshots share their storage with the
+ * graph, so taking a snapshot is a constant time operation, and changes made
+ * to the graph after taking the snapshot are not visible from the snapshot.
+ * </p>
+ * <p>
+ * Snapshots can be used from any thread, so you can compile and evaluate a
+ * snapshot on a background thread while the graph is being edited. Node
+ * instances that are connected but not added to the graph are not captured;
+ * their initial values are read when the snapshot is compiled.
+ * </p>
+ *
+ * @param <E> Type of environment object.
+ * @see NodeGraph#snapshot()
+ */
+public final class GraphSnapshot<E> {
+	final PersistentMap<NodeInstance<?, E>, NodeInstance.Version> instances;
+	final PersistentMap<NodeSocketRef<?, E, ?>, NodeSocketRef<?, E, ?>> dstToSrc;
+	private final MemoCache memoCache;
+	private final Set<Optimization> optimizations;
+	private final Set<Map.Entry<NodeSocketRef<?, E, ?>, NodeSocketRef<?, E, ?>>> connectionsView = new AbstractSet<>() {
+		@Override
+		public int size() {
+			return dstToSrc.size();
+		}
+
+		@Override
+		public Iterator<Map.Entry<NodeSocketRef<?, E, ?>, NodeSocketRef<?, E, ?>>> iterator() {
+			Iterator<Map.Entry<NodeSocketRef<?, E, ?>, NodeSocketRef<?, E, ?>>> iter = dstToSrc.entrySet().iterator();
+			return new Iterator<>() {
+				@Override
+				public boolean hasNext() {
+					return iter.hasNext();
+				}
+
+				@Override
+				public Map.Entry<NodeSocketRef<?, E, ?>, NodeSocketRef<?, E, ?>> next() {
+					Map.Entry<NodeSocketRef<?, E, ?>, NodeSocketRef<?, E, ?>> entry = iter.next();
+					return Map.entry(entry.getValue(), entry.getKey());
+				}
+			};
+		}
+	};
+
+	GraphSnapshot(PersistentMap<NodeInstance<?, E>, NodeInstance.Version> instances, PersistentMap<NodeSocketRef<?, E, ?>, NodeSocketRef<?, E, ?>> dstToSrc, MemoCache memoCache, Set<Optimization> optimizations) {
+		this.instances = instances;
+		this.dstToSrc = dstToSrc;
+		this.memoCache = memoCache;
+		this.optimizations = optimizations;
+	}
+
+	public Set<NodeInstance<?, E>> getInstances() { return Collections.unmodifiableSet(instances.keySet()); }
+
+	public MemoCache getMemoCache() { return memoCache; }
+
+	public Set<Optimization> getOptimizations() { return optimizations; }
+
+	/**
+	 * <p>
+	 * Get the initial value of input socket at the time of taking this snapshot.
+	 * </p>
+	 *
+	 * @param instance The node instance.
+	 * @param socket   The input socket.
+	 * @return The initial value.
+	 */
+	public <V> V getInitialValue(NodeInstance<?, E> instance, InputSocket<V> socket) {
+		NodeInstance.Version version = instances.get(instance);
+		return version != null ? NodeInstance.getInitialValue(version.initialValues(), socket) : instance.getInitialValue(socket);
+	}
+
+	/**
+	 * <p>
+	 * Get the editor data of node instance at the time of taking this snapshot.
+	 * </p>
+	 *
+	 * @param instance The node instance.
+	 * @return The editor data.
+	 * @see NodeInstance#setEditorData(NodeEditorData)
+	 */
+	public NodeEditorData getEditorData(NodeInstance<?, E> instance) {
+		NodeInstance.Version version = instances.get(instance);
+		return version != null ? version.editorData() : instance.getEditorData();
+	}
+
+	/**
+	 * <p>
+	 * Get the output socket that is connected to input socket.
+	 * </p>
+	 *
+	 * @param to The input socket.
+	 * @return The output socket, or {@code null} if the input is not connected.
+	 */
+	public NodeSocketRef<?, E, ?> getSource(NodeSocketRef<?, E, ?> to) {
+		return dstToSrc.get(to);
+	}
+
+	/**
+	 * <p>
+	 * Get all connections in this snapshot as {@code from -> to} entries.
+	 * </p>
+	 *
+	 * @return An unmodifiable view of connections.
+	 */
+	public Set<Map.Entry<NodeSocketRef<?, E, ?>, NodeSocketRef<?, E, ?>>> getConnections() { return connectionsView; }
+
+	/**
+	 * <p>
+	 * Find all node instances that the outputs of given node instances depend
+	 * on, including the given instances themselves.
+	 * </p>
+	 *
+	 * @param outputs The node instances that produce the outputs.
+	 * @return A new set of node instances.
+	 * @see NodeGraph#findDependencies(Collection)
+	 */
+	public Set<NodeInstance<?, E>> findDependencies(Collection<? extends NodeInstance<?, E>> outputs) {
+		Set<NodeInstance<?, E>> dependencies = Collections.newSetFromMap(new IdentityHashMap<>());
+		Deque<NodeInstance<?, E>> stack = new ArrayDeque<>(outputs);
+
+		while (!stack.isEmpty()) {
+			NodeInstance<?, E> instance = stack.pop();
+			if (!dependencies.add(instance)) continue;
+
+			for (InputSocket<?> input : NodeDescriptor.of(instance.getNode()).getInputs()) {
+				NodeSocketRef<?, E, ?> src = dstToSrc.get(new NodeSocketRef<>(instance, input));
+				if (src != null) stack.push(src.node());
+			}
+		}
+
+		return dependencies;
+	}
+
+	/**
+	 * <p>
+	 * Report the changes between this snapshot and a newer snapshot to a
+	 * listener, as if the changes were made to the graph. Snapshots of the same
+	 * graph share the parts that were not changed, so this only takes time in
+	 * proportion to the number of changes.
+	 * </p>
+	 * <p>
+	 * Instances are reported before connections. Initial values and editor data
+	 * are only reported for instances that exist in both snapshots, and a
+	 * connection that is moved to another source is reported as a disconnection
+	 * followed by a connection.
+	 * </p>
+	 *
+	 * @param to       The newer snapshot.
+	 * @param listener The listener.
+	 */
+	public void diff(GraphSnapshot<E> to, NodeGraph.ChangeListener<E> listener) {
+		instances.diff(to.instances, new PersistentMap.DiffVisitor<>() {
+			@Override
+			public void onAdded(NodeInstance<?, E> instance, NodeInstance.Version version) {
+				listener.onInstanceAdded(instance);
+			}
+
+			@Override
+			public void onRemoved(NodeInstance<?, E> instance, NodeInstance.Version version) {
+				listener.onInstanceRemoved(instance);
+			}
+
+			@Override
+			public void onChanged(NodeInstance<?, E> instance, NodeInstance.Version oldVersion, NodeInstance.Version newVersion) {
+				oldVersion.initialValues().diff(newVersion.initialValues(), new PersistentMap.DiffVisitor<>() {
+					@Override
+					public void onAdded(InputSocket<?> socket, Object value) {
+						listener.onInitialValueChanged(instance, socket);
+					}
+
+					@Override
+					public void onRemoved(InputSocket<?> socket, Object value) {
+						listener.onInitialValueChanged(instance, socket);
+					}
+
+					@Override
+					public void onChanged(InputSocket<?> socket, Object oldValue, Object newValue) {
+						listener.onInitialValueChanged(instance, socket);
+					}
+				});
+
+				if (oldVersion.editorData() != newVersion.editorData()) listener.onEditorDataChanged(instance);
+			}
+		});
+
+		dstToSrc.diff(to.dstToSrc, new PersistentMap.DiffVisitor<>() {
+			@Override
+			public void onAdded(NodeSocketRef<?, E, ?> dst, NodeSocketRef<?, E, ?> src) {
+				listener.onConnected(src, dst);
+			}
+
+			@Override
+			public void onRemoved(NodeSocketRef<?, E, ?> dst, NodeSocketRef<?, E, ?> src) {
+				listener.onDisconnected(src, dst);
+			}
+
+			@Override
+			public void onChanged(NodeSocketRef<?, E, ?> dst, NodeSocketRef<?, E, ?> oldSrc, NodeSocketRef<?, E, ?> newSrc) {
+				listener.onDisconnected(oldSrc, dst);
+				listener.onConnected(newSrc, dst);
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * Compile this snapshot into an evaluation plan.
+	 * </p>
+	 *
+	 * @return A new compiled graph.
+	 * @throws IllegalStateException if the snapshot contains a cycle.
+	 * @see NodeGraph#compile()
+	 */
+	public CompiledGraph<E> compile() {
+		return new CompiledGraph<>(this);
+	}
+
+	/**
+	 * <p>
+	 * Compile the part of this snapshot that the outputs of given node instances
+	 * depend on.
+	 * </p>
+	 *
+	 * @param outputs The node instances that produce the outputs.
+	 * @return A new compiled graph.
+	 * @throws IllegalStateException if the snapshot contains a cycle.
+	 * @see NodeGraph#compile(Collection)
+	 */
+	public CompiledGraph<E> compile(Collection<? extends NodeInstance<?, E>> outputs) {
+		return CompiledGraph.ofDependencies(this, outputs);
+	}
+}
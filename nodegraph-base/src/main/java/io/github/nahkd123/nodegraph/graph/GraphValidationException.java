@@ -0,0 +1,42 @@
+package io.github.nahkd123.nodegraph.graph;
+
+/**
+ * <p>
+ * Thrown by {@link NodeGraph#connectValidated(NodeSocketRef, NodeSocketRef)}
+ * when the connection can't be made.
+ * </p>
+ */
+public class GraphValidationException extends Exception {
+	private static final long serialVersionUID = 1L;
+	private final Reason reason;
+
+	public GraphValidationException(Reason reason, String message) {
+		super(message);
+		this.reason = reason;
+	}
+
+	public Reason getReason() { return reason; }
+
+	public static enum Reason {
+		/**
+		 * <p>
+		 * The outgoing socket is not output, or the incoming socket is not input.
+		 * </p>
+		 */
+		SOCKET_DIRECTION,
+
+		/**
+		 * <p>
+		 * The value type of output socket can't be assigned to input socket.
+		 * </p>
+		 */
+		TYPE_MISMATCH,
+
+		/**
+		 * <p>
+		 * The connection would create a cycle.
+		 * </p>
+		 */
+		CYCLE;
+	}
+}
@@ -0,0 +1,51 @@
+package io.github.nahkd123.nodegraph.graph;
+
+/**
+ * <p>
+ * An evaluation round that keeps outputs of cached nodes between evaluations
+ * and only processes nodes that are affected by changes of the node graph.
+ * </p>
+ * <p>
+ * Changing initial values of a node instance marks that instance and every
+ * instance that depends on it as dirty. Connecting or disconnecting sockets
+ * marks the instance of incoming socket as dirty, and recompiles the graph
+ * while keeping the internal states and outputs of unaffected nodes. Nodes
+ * that are not cached, as well as every node that depends on them, are always
+ * processed.
+ * </p>
+ * <p>
+ * Only changes to node instances that are added to the graph are tracked.
+ * Outputs of cached nodes that read the environment are kept when the
+ * environment changes, so if the environment is changed in a way that affect
+ * the results, callers must use {@link #invalidate(NodeInstance)} on the
+ * affected instances or {@link #invalidateAll()}.
+ * </p>
+ *
+ * @param <E> Type of environment object.
+ * @see NodeGraph#newIncrementalEvalRound(Object)
+ */
+public interface IncrementalEvaluationRound<E> extends EvaluationRound<E>, AutoCloseable {
+	/**
+	 * <p>
+	 * Mark the node instance and every instance that depends on it as dirty.
+	 * </p>
+	 * 
+	 * @param instance The node instance.
+	 */
+	void invalidate(NodeInstance<?, E> instance);
+
+	/**
+	 * <p>
+	 * Mark all node instances as dirty.
+	 * </p>
+	 */
+	void invalidateAll();
+
+	/**
+	 * <p>
+	 * Stop listening to changes of the node graph.
+	 * </p>
+	 */
+	@Override
+	void close();
+}
@@ -0,0 +1,252 @@
+package io.github.nahkd123.nodegraph.graph;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import io.github.nahkd123.nodegraph.socket.InputSocket;
+
+/**
+ * <p>
+ * Incremental evaluation round that runs {@link DirtyTrackingRound} over a
+ * privately owned {@link CompiledGraph}. Changes are recorded as they are
+ * notified and applied right before the next evaluation, so a burst of
+ * changes (like dragging a slider) only recompiles the graph once.
+ * </p>
+ *
+ * @param <E> Type of environment object.
+ */
+class IncrementalEvaluationRoundImpl<E> implements IncrementalEvaluationRound<E>, NodeGraph.ChangeListener<E> {
+	private final NodeGraph<E> graph;
+	private final E environment;
+	private final Set<NodeInstance<?, E>> changed = Collections.newSetFromMap(new IdentityHashMap<>());
+	private boolean structureChanged = false;
+	private boolean invalidateAll = false;
+	private DirtyTrackingRound<E> round;
+	private EvaluationListener<E> listener;
+
+	IncrementalEvaluationRoundImpl(NodeGraph<E> graph, E environment) {
+		this.graph = graph;
+		this.environment = environment;
+		this.round = new DirtyTrackingRound<>(graph.compile(), environment);
+		graph.addListener(this);
+	}
+
+	@Override
+	public E getEnvironment() { return environment; }
+
+	@Override
+	public void setListener(EvaluationListener<E> listener) {
+		this.listener = listener;
+		round.setListener(listener);
+	}
+
+	@Override
+	public NodeOutputGetter eval(NodeInstance<?, E> instance) {
+		applyChanges();
+		return round.eval(instance);
+	}
+
+	@Override
+	public void invalidate(NodeInstance<?, E> instance) {
+		changed.add(instance);
+	}
+
+	@Override
+	public void invalidateAll() {
+		invalidateAll = true;
+	}
+
+	@Override
+	public void close() {
+		graph.removeListener(this);
+	}
+
+	private void applyChanges() {
+		// Initial values of merged instances are stored in the slot owner, so the
+		// instances might no longer be identical, and outputs of folded instances
+		// are baked into the plan, so both have to be compiled again
+		for (NodeInstance<?, E> instance : changed) {
+			int slot = round.plan.slotOf(instance);
+			if (slot != -1 && (round.plan.shared[slot] || round.plan.folded[slot])) structureChanged = true;
+		}
+
+		if (structureChanged) {
+			DirtyTrackingRound<E> previous = round;
+			round = new DirtyTrackingRound<>(graph.compile(), environment);
+			round.transferFrom(previous);
+			round.setListener(listener);
+			structureChanged = false;
+		} else {
+			for (NodeInstance<?, E> instance : changed) {
+				int slot = round.plan.slotOf(instance);
+				if (slot != -1) round.plan.updateConstants(slot);
+			}
+		}
+
+		for (NodeInstance<?, E> instance : changed) round.invalidate(instance);
+		changed.clear();
+
+		if (invalidateAll) {
+			round.invalidateAll();
+			invalidateAll = false;
+		}
+	}
+
+	@Override
+	public void onInstanceAdded(NodeInstance<?, E> instance) {
+		structureChanged = true;
+	}
+
+	@Override
+	public void onInstanceRemoved(NodeInstance<?, E> instance) {
+		structureChanged = true;
+	}
+
+	@Override
+	public void onConnected(NodeSocketRef<?, E, ?> from, NodeSocketRef<?, E, ?> to) {
+		structureChanged = true;
+		changed.add(to.node());
+	}
+
+	@Override
+	public void onDisconnected(NodeSocketRef<?, E, ?> from, NodeSocketRef<?, E, ?> to) {
+		structureChanged = true;
+		changed.add(to.node());
+	}
+
+	@Override
+	public void onInitialValueChanged(NodeInstance<?, E> instance, InputSocket<?> socket) {
+		changed.add(instance);
+	}
+
+	/**
+	 * <p>
+	 * Compiled evaluation round that skips cached nodes that are not dirty. A
+	 * slot that is dirty always have all of its dependents dirty as well, since
+	 * evaluating a slot requires evaluating all slots it depends on.
+	 * </p>
+	 */
+	static class DirtyTrackingRound<E> extends CompiledEvaluationRound<E> {
+		private final boolean[] dirty;
+		private final boolean[] alwaysDirty;
+		private final int[] successorOffsets;
+		private final int[] successors;
+		private final int[] stack;
+
+		DirtyTrackingRound(CompiledGraph<E> plan, E environment) {
+			super(plan, environment);
+			int count = plan.instances.length;
+			dirty = new boolean[count];
+			alwaysDirty = new boolean[count];
+			successorOffsets = new int[count + 1];
+			stack = new int[count];
+			Arrays.fill(dirty, true);
+
+			// Slots are sorted in topological order, so a single pass is enough to
+			// find all slots that depend on uncached nodes
+			for (int slot = 0; slot < count; slot++) {
+				alwaysDirty[slot] = !plan.cached[slot];
+
+				for (int input = plan.inputOffsets[slot]; input < plan.inputOffsets[slot + 1]; input++) {
+					int src = sourceOf(plan, input);
+					if (src == -1) continue;
+					int srcSlot = plan.outputOwners[src];
+					successorOffsets[srcSlot + 1]++;
+					if (alwaysDirty[srcSlot]) alwaysDirty[slot] = true;
+				}
+			}
+
+			for (int i = 0; i < count; i++) successorOffsets[i + 1] += successorOffsets[i];
+			successors = new int[successorOffsets[count]];
+			int[] fill = Arrays.copyOf(successorOffsets, count);
+
+			for (int slot = 0; slot < count; slot++) {
+				for (int input = plan.inputOffsets[slot]; input < plan.inputOffsets[slot + 1]; input++) {
+					int src = sourceOf(plan, input);
+					if (src != -1) successors[fill[plan.outputOwners[src]]++] = slot;
+				}
+			}
+		}
+
+		/**
+		 * <p>
+		 * Get the source of global input, including the folded slot that the input
+		 * was connected to.
+		 * </p>
+		 */
+		private static int sourceOf(CompiledGraph<?> plan, int input) {
+			int src = plan.inputSources[input];
+			return src != -1 ? src : plan.foldedSources[input];
+		}
+
+		@Override
+		public NodeOutputGetter eval(NodeInstance<?, E> instance) {
+			int target = targetOf(instance);
+			int[] schedule = scheduleOf(target);
+			epoch++;
+
+			for (int i = 0; i < schedule.length; i += 2) {
+				int slot = schedule[i];
+				if (!dirty[slot]) continue;
+				process(context, slot);
+				dirty[slot] = alwaysDirty[slot];
+				int capture = schedule[i + 1];
+				if (capture != -1) capture(capture);
+			}
+
+			return getter(target);
+		}
+
+		void invalidate(NodeInstance<?, E> instance) {
+			int slot = plan.slotOf(instance);
+			if (slot == -1 || dirty[slot]) return;
+			int size = 0;
+			dirty[slot] = true;
+			stack[size++] = slot;
+
+			while (size > 0) {
+				int current = stack[--size];
+
+				for (int i = successorOffsets[current]; i < successorOffsets[current + 1]; i++) {
+					int successor = successors[i];
+					if (dirty[successor]) continue;
+					dirty[successor] = true;
+					stack[size++] = successor;
+				}
+			}
+		}
+
+		void invalidateAll() {
+			Arrays.fill(dirty, true);
+		}
+
+		/**
+		 * <p>
+		 * Keep internal states and outputs of slots from previous round. Only
+		 * slots that were not dirty in previous round and do not depend on dirty
+		 * slots will stay clean. Slots are transferred in topological order, so
+		 * sources are always resolved before their dependents.
+		 * </p>
+		 * <p>
+		 * Folded slots are never processed unless they are evaluated directly, so
+		 * dependents of folded slots are always processed again after compiling.
+		 * </p>
+		 */
+		@Override
+		void transferSlot(CompiledEvaluationRound<E> from, int fromSlot, int slot) {
+			super.transferSlot(from, fromSlot, slot);
+			dirty[slot] = ((DirtyTrackingRound<E>) from).dirty[fromSlot] || alwaysDirty[slot] || hasDirtySource(slot);
+		}
+
+		private boolean hasDirtySource(int slot) {
+			for (int input = plan.inputOffsets[slot]; input < plan.inputOffsets[slot + 1]; input++) {
+				int src = sourceOf(plan, input);
+				if (src != -1 && dirty[plan.outputOwners[src]]) return true;
+			}
+
+			return false;
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package io.github.nahkd123.nodegraph.graph;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * A table of numeric IDs for node instances, used to refer to node instances
+ * of a graph that is replicated somewhere else, like when sending
+ * {@link GraphDiff} to a server that has a deserialized copy of the graph. Both
+ * sides keep their own table, and the tables are kept in sync by the
+ * serializers.
+ * </p>
+ * <p>
+ * IDs are assigned in increasing order and are not reused after the instance
+ * is removed from the table.
+ * </p>
+ *
+ * @param <E> Type of environment object.
+ */
+public final class InstanceIds<E> {
+	private final Map<NodeInstance<?, E>, Integer> ids = new HashMap<>();
+	private final Map<Integer, NodeInstance<?, E>> instances = new HashMap<>();
+	private int nextId = 0;
+
+	/**
+	 * <p>
+	 * Get the ID of node instance.
+	 * </p>
+	 *
+	 * @param instance The node instance.
+	 * @return The ID, or {@code -1} if the instance does not have an ID.
+	 */
+	public int getId(NodeInstance<?, E> instance) {
+		Integer id = ids.get(instance);
+		return id != null ? id : -1;
+	}
+
+	/**
+	 * <p>
+	 * Get the ID of node instance, assigning a new ID if the instance does not
+	 * have one.
+	 * </p>
+	 *
+	 * @param instance The node instance.
+	 * @return The ID.
+	 */
+	public int getOrAssign(NodeInstance<?, E> instance) {
+		Integer id = ids.get(instance);
+		if (id != null) return id;
+		put(nextId, instance);
+		return nextId - 1;
+	}
+
+	public NodeInstance<?, E> get(int id) {
+		return instances.get(id);
+	}
+
+	/**
+	 * <p>
+	 * Assign an ID to node instance. This is used when the ID is assigned by the
+	 * other side, like when deserializing.
+	 * </p>
+	 *
+	 * @param id       The ID.
+	 * @param instance The node instance.
+	 */
+	public void put(int id, NodeInstance<?, E> instance) {
+		if (id < 0) throw new IllegalArgumentException("id must not be negative");
+		NodeInstance<?, E> previous = instances.put(id, instance);
+		if (previous != null) ids.remove(previous);
+		Integer previousId = ids.put(instance, id);
+		if (previousId != null && previousId != id) instances.remove(previousId);
+		if (id >= nextId) nextId = id + 1;
+	}
+
+	public boolean remove(NodeInstance<?, E> instance) {
+		Integer id = ids.remove(instance);
+		if (id == null) return false;
+		instances.remove(id);
+		return true;
+	}
+
+	public int size() {
+		return ids.size();
+	}
+
+	/**
+	 * <p>
+	 * Remove all IDs and start assigning IDs from {@code 0} again.
+	 * </p>
+	 */
+	public void clear() {
+		ids.clear();
+		instances.clear();
+		nextId = 0;
+	}
+}
@@ -0,0 +1,244 @@
+package io.github.nahkd123.nodegraph.graph;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.github.nahkd123.nodegraph.node.Node;
+
+/**
+ * <p>
+ * A bounded cache that memoizes outputs of {@link Node#isPure() pure} nodes by
+ * their input values. Entries are keyed by the node and its input values, so
+ * the cache can be shared by multiple evaluation rounds and multiple graphs
+ * (like graphs made with {@link NodeGraph#copy()}).
+ * </p>
+ * <p>
+ * Each entry has a weight given by {@link Weigher}, which is {@code 1} by
+ * default, so the maximum weight is the maximum number of entries. When the
+ * cache is too heavy, the least recently used entries are evicted.
+ * </p>
+ * <p>
+ * The cache is thread-safe. Large caches are split into up to 16 segments by
+ * the hash of keys, each with its own lock and an equal share of the maximum
+ * weight, so rounds that evaluate in parallel rarely wait for each other. The
+ * least recently used entry is picked within each segment, not across the
+ * whole cache.
+ * </p>
+ * 
+ * @see NodeGraph#setMemoCache(MemoCache)
+ */
+public class MemoCache {
+	private static final int MAX_SEGMENTS = 16;
+	private static final long MIN_SEGMENT_WEIGHT = 64L;
+
+	private final long maximumWeight;
+	private final Weigher weigher;
+	private final Segment[] segments;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * <p>
+	 * Create a new memo cache.
+	 * </p>
+	 * 
+	 * @param maximumSize The maximum number of entries to keep.
+	 */
+	public MemoCache(int maximumSize) {
+		this(maximumSize, (node, inputs, outputs) -> 1L);
+	}
+
+	/**
+	 * <p>
+	 * Create a new memo cache that bounds the total weight of its entries, like
+	 * the estimated size of memoized values in bytes.
+	 * </p>
+	 * 
+	 * @param maximumWeight The maximum total weight of entries to keep.
+	 * @param weigher       The weigher that computes the weight of each entry
+	 *                      when it is added.
+	 */
+	public MemoCache(long maximumWeight, Weigher weigher) {
+		if (maximumWeight <= 0L) throw new IllegalArgumentException("maximumWeight must be positive");
+		this.maximumWeight = maximumWeight;
+		this.weigher = weigher;
+		int segmentsCount = 1;
+		while (segmentsCount < MAX_SEGMENTS && maximumWeight / (segmentsCount * 2) >= MIN_SEGMENT_WEIGHT) segmentsCount *= 2;
+		this.segments = new Segment[segmentsCount];
+		for (int i = 0; i < segmentsCount; i++) segments[i] = new Segment(maximumWeight / segmentsCount);
+	}
+
+	public long getMaximumWeight() { return maximumWeight; }
+
+	private Segment segmentOf(Key key) {
+		return segments[(key.hash ^ (key.hash >>> 16)) & (segments.length - 1)];
+	}
+
+	/**
+	 * <p>
+	 * Get memoized outputs of the node.
+	 * </p>
+	 * 
+	 * @param key The node and values of all input sockets.
+	 * @return Values of all output sockets, or {@code null} if not memoized.
+	 */
+	Object[] get(Key key) {
+		Segment segment = segmentOf(key);
+		Entry entry;
+		synchronized (segment) {
+			entry = segment.entries.get(key);
+		}
+
+		if (entry != null) hits.increment();
+		else misses.increment();
+		return entry != null ? entry.outputs() : null;
+	}
+
+	/**
+	 * <p>
+	 * Memoize outputs of the node. The key is copied, so the caller may reuse
+	 * it for later lookups.
+	 * </p>
+	 */
+	void put(Key key, Object[] outputs) {
+		Key copy = key.copy();
+		long weight = weigher.weigh(copy.node, copy.inputs, outputs);
+		Segment segment = segmentOf(copy);
+
+		synchronized (segment) {
+			Entry previous = segment.entries.put(copy, new Entry(outputs, weight));
+			segment.weight += weight - (previous != null ? previous.weight() : 0L);
+			Iterator<Entry> iterator = segment.entries.values().iterator();
+
+			while (segment.weight > segment.maximumWeight && iterator.hasNext()) {
+				segment.weight -= iterator.next().weight();
+				iterator.remove();
+				evictions.increment();
+			}
+		}
+	}
+
+	public int size() {
+		int size = 0;
+
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.entries.size();
+			}
+		}
+
+		return size;
+	}
+
+	public void clear() {
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				segment.entries.clear();
+				segment.weight = 0L;
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Get the statistics of this cache since it was created or since the last
+	 * {@link #resetStats()}.
+	 * </p>
+	 * 
+	 * @return The statistics.
+	 */
+	public Stats getStats() { return new Stats(hits.sum(), misses.sum(), evictions.sum()); }
+
+	public void resetStats() {
+		hits.reset();
+		misses.reset();
+		evictions.reset();
+	}
+
+	public static record Stats(long hits, long misses, long evictions) {
+		/**
+		 * <p>
+		 * Get the ratio of lookups that found memoized outputs.
+		 * </p>
+		 * 
+		 * @return The hit rate, or {@code 0} if there was no lookup.
+		 */
+		public double hitRate() {
+			long lookups = hits + misses;
+			return lookups == 0L ? 0d : (double) hits / lookups;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Compute the weight of memoized entry. Entries that are heavier than a
+	 * segment of the cache are evicted right away.
+	 * </p>
+	 */
+	@FunctionalInterface
+	public static interface Weigher {
+		long weigh(Node<?, ?> node, Object[] inputs, Object[] outputs);
+	}
+
+	private static final class Segment {
+		final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+		final long maximumWeight;
+		long weight = 0L;
+
+		Segment(long maximumWeight) {
+			this.maximumWeight = maximumWeight;
+		}
+	}
+
+	private static record Entry(Object[] outputs, long weight) {}
+
+	/**
+	 * <p>
+	 * The node and its input values. Evaluation rounds keep one key for each
+	 * slot and fill {@link #inputs} before every lookup, so lookups that hit the
+	 * cache do not allocate.
+	 * </p>
+	 */
+	static final class Key {
+		private final Node<?, ?> node;
+		final Object[] inputs;
+		private int hash;
+
+		Key(Node<?, ?> node, int inputsCount) {
+			this(node, new Object[inputsCount], 0);
+		}
+
+		private Key(Node<?, ?> node, Object[] inputs, int hash) {
+			this.node = node;
+			this.inputs = inputs;
+			this.hash = hash;
+		}
+
+		/**
+		 * <p>
+		 * Compute the hash again after {@link #inputs} are changed.
+		 * </p>
+		 */
+		Key rehash() {
+			hash = System.identityHashCode(node) * 31 + Arrays.hashCode(inputs);
+			return this;
+		}
+
+		Key copy() {
+			return new Key(node, inputs.clone(), hash);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Key key && key.node == node && key.hash == hash && Arrays.equals(key.inputs, inputs);
+		}
+	}
+}
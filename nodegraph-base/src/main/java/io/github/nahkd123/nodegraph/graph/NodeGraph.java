@@ -1,13 +1,25 @@
 package io.github.nahkd123.nodegraph.graph;
 
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+import io.github.nahkd123.nodegraph.node.Node;
 import io.github.nahkd123.nodegraph.socket.InputSocket;
 import io.github.nahkd123.nodegraph.socket.OutputSocket;
 
@@ -21,8 +33,103 @@ import io.github.nahkd123.nodegraph.socket.OutputSocket;
  * @param <E> Type of environment object.
  */
 public class NodeGraph<E> {
-	Map<NodeSocketRef<?, E, ?>, NodeSocketRef<?, E, ?>> dstToSrc = new HashMap<>();
-	Set<NodeInstance<?, E>> instances = new HashSet<>();
+	/**
+	 * <p>
+	 * Connections and node instances with their versions. Both maps are
+	 * persistent, so {@link #snapshot()} only has to keep the references.
+	 * </p>
+	 */
+	PersistentMap<NodeSocketRef<?, E, ?>, NodeSocketRef<?, E, ?>> dstToSrc = PersistentMap.empty();
+	PersistentMap<NodeInstance<?, E>, NodeInstance.Version> instances = PersistentMap.empty();
+	private final Map<NodeSocketRef<?, E, ?>, Set<NodeSocketRef<?, E, ?>>> srcToDsts = new HashMap<>();
+	private final Map<NodeInstance<?, E>, Adjacency<E>> adjacency = new HashMap<>();
+	private int nextOrder = 0;
+
+	/**
+	 * <p>
+	 * Number of changes made to the structure or the settings of this graph.
+	 * Changes to initial values of node instances are counted separately in
+	 * {@link #valueModCount}.
+	 * </p>
+	 */
+	int modCount = 0;
+	int valueModCount = 0;
+	private final List<ChangeListener<E>> listeners = new CopyOnWriteArrayList<>();
+	private MemoCache memoCache = null;
+	private Set<Optimization> optimizations = Collections.emptySet();
+
+	private final NodeInstance.ChangeListener instanceListener = new NodeInstance.ChangeListener() {
+		@Override
+		@SuppressWarnings("unchecked")
+		public void onInitialValueChanged(NodeInstance<?, ?> instance, InputSocket<?> socket) {
+			NodeInstance<?, E> changed = (NodeInstance<?, E>) instance;
+			instances = instances.plus(changed, changed.getVersion());
+			valueModCount++;
+			for (ChangeListener<E> listener : listeners) listener.onInitialValueChanged(changed, socket);
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public void onEditorDataChanged(NodeInstance<?, ?> instance) {
+			NodeInstance<?, E> changed = (NodeInstance<?, E>) instance;
+			instances = instances.plus(changed, changed.getVersion());
+			for (ChangeListener<E> listener : listeners) listener.onEditorDataChanged(changed);
+		}
+	};
+
+	private final Set<NodeInstance<?, E>> instancesView = new AbstractSet<>() {
+		@Override
+		public int size() {
+			return instances.size();
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return instances.containsKey(o);
+		}
+
+		@Override
+		public Iterator<NodeInstance<?, E>> iterator() {
+			return instances.keySet().iterator();
+		}
+	};
+
+	private final Set<Map.Entry<NodeSocketRef<?, E, ?>, NodeSocketRef<?, E, ?>>> connectionsView = new AbstractSet<>() {
+		@Override
+		public int size() {
+			return dstToSrc.size();
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return o instanceof Entry<?, ?> entry
+				&& entry.getKey() != null
+				&& entry.getKey().equals(dstToSrc.get(entry.getValue()));
+		}
+
+		@Override
+		public Iterator<Entry<NodeSocketRef<?, E, ?>, NodeSocketRef<?, E, ?>>> iterator() {
+			// Connections are persistent, so the iterator keeps visiting the
+			// connections from the start of iteration even if the graph is changed
+			PersistentMap<NodeSocketRef<?, E, ?>, NodeSocketRef<?, E, ?>> connections = dstToSrc;
+			Iterator<NodeSocketRef<?, E, ?>> iter = connections.keyIterator();
+			return new Iterator<>() {
+				@Override
+				public boolean hasNext() {
+					return iter.hasNext();
+				}
+
+				@Override
+				public Entry<NodeSocketRef<?, E, ?>, NodeSocketRef<?, E, ?>> next() {
+					NodeSocketRef<?, E, ?> to = iter.next();
+					NodeSocketRef<?, E, ?> from = connections.get(to);
+					Adjacency<E> adj = adjacency.get(to.node());
+					Entry<NodeSocketRef<?, E, ?>, NodeSocketRef<?, E, ?>> entry = adj != null ? adj.incoming.get(to) : null;
+					return entry != null && entry.getKey().equals(from) ? entry : Map.entry(from, to);
+				}
+			};
+		}
+	};
 
 	/**
 	 * <p>
@@ -34,39 +141,233 @@ public class NodeGraph<E> {
 	 * @return The same node instance from parameter, for chaining purpose.
 	 */
 	public <S> NodeInstance<S, E> addInstance(NodeInstance<S, E> instance) {
-		instances.add(instance);
+		if (!instances.containsKey(instance)) {
+			instances = instances.plus(instance, instance.getVersion());
+			modCount++;
+			instance.addListener(instanceListener);
+			for (ChangeListener<E> listener : listeners) listener.onInstanceAdded(instance);
+		}
+
 		return instance;
 	}
 
 	public <S> boolean removeInstance(NodeInstance<S, E> instance) {
-		if (instances.remove(instance)) {
-			Iterator<Entry<NodeSocketRef<?, E, ?>, NodeSocketRef<?, E, ?>>> iter = dstToSrc.entrySet().iterator();
-
-			while (iter.hasNext()) {
-				Entry<NodeSocketRef<?, E, ?>, NodeSocketRef<?, E, ?>> entry = iter.next();
+		if (instances.containsKey(instance)) {
+			instances = instances.minus(instance);
+			Adjacency<E> adj = adjacency.get(instance);
 
-				if (entry.getKey().node() == instance || entry.getValue().node() == instance) {
-					iter.remove();
-					continue;
-				}
+			if (adj != null) {
+				for (NodeSocketRef<?, E, ?> to : List.copyOf(adj.incoming.keySet())) disconnectFromSource(to);
+				for (NodeSocketRef<?, E, ?> from : List.copyOf(adj.outgoing)) disconnectFromDestinations(from);
+				adjacency.remove(instance);
 			}
 
+			modCount++;
+			instance.removeListener(instanceListener);
+			for (ChangeListener<E> listener : listeners) listener.onInstanceRemoved(instance);
 			return true;
 		} else {
 			return false;
 		}
 	}
 
+	/**
+	 * <p>
+	 * Connect output socket to input socket. Each input socket can only have a
+	 * single connection coming to it.
+	 * </p>
+	 * 
+	 * @param <V>  Type of value.
+	 * @param from The output socket.
+	 * @param to   The input socket.
+	 * @return Whether the connection is added. If the input socket already have a
+	 *         connection, this will return {@code false}.
+	 * @throws IllegalArgumentException if the sockets are in wrong direction, or
+	 *                                  the connection would create a cycle.
+	 */
 	public <V> boolean connect(NodeSocketRef<?, E, V> from, NodeSocketRef<?, E, V> to) {
 		if (!(from.socket() instanceof OutputSocket))
 			throw new IllegalArgumentException("outgoing socket (from) is not output");
 		if (!(to.socket() instanceof InputSocket))
 			throw new IllegalArgumentException("incoming socket (to) is not input");
-		return dstToSrc.putIfAbsent(to, from) == null;
+		if (dstToSrc.containsKey(to)) return false;
+		if (!link(from, to)) throw new IllegalArgumentException("connection would create a cycle");
+		return true;
 	}
 
-	public <V> boolean connect(NodeInstance<?, E> fromNode, OutputSocket<V> fromSocket, NodeInstance<?, E> toNode, InputSocket<V> toSocket) {
-		return connect(new NodeSocketRef<>(fromNode, fromSocket), new NodeSocketRef<>(toNode, toSocket));
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public <V> boolean connect(NodeInstance<?, E> fromNode, OutputSocket<? extends V> fromSocket, NodeInstance<?, E> toNode, InputSocket<V> toSocket) {
+		return connect(new NodeSocketRef(fromNode, fromSocket), new NodeSocketRef<>(toNode, toSocket));
+	}
+
+	/**
+	 * <p>
+	 * Connect output socket to input socket after validating the connection. Use
+	 * this when the connection is made from user input, where the socket types
+	 * are not checked by compiler.
+	 * </p>
+	 * <p>
+	 * The value type of output socket must be assignable to input socket, where
+	 * primitive types are treated as their wrapper types (for example, a
+	 * {@code double} output can be connected to {@code Number} input).
+	 * </p>
+	 * 
+	 * @param from The output socket.
+	 * @param to   The input socket.
+	 * @return Whether the connection is added. If the input socket already have a
+	 *         connection, this will return {@code false}.
+	 * @throws GraphValidationException if the sockets are in wrong direction,
+	 *                                  have incompatible types or the connection
+	 *                                  would create a cycle.
+	 */
+	public boolean connectValidated(NodeSocketRef<?, E, ?> from, NodeSocketRef<?, E, ?> to) throws GraphValidationException {
+		if (!(from.socket() instanceof OutputSocket)) throw new GraphValidationException(
+			GraphValidationException.Reason.SOCKET_DIRECTION,
+			"outgoing socket (from) is not output");
+		if (!(to.socket() instanceof InputSocket)) throw new GraphValidationException(
+			GraphValidationException.Reason.SOCKET_DIRECTION,
+			"incoming socket (to) is not input");
+		if (!wrap(to.socket().type()).isAssignableFrom(wrap(from.socket().type())))
+			throw new GraphValidationException(
+				GraphValidationException.Reason.TYPE_MISMATCH,
+				"can't connect %s (%s) to %s (%s)".formatted(
+					from.socket().name(), from.socket().type().getName(),
+					to.socket().name(), to.socket().type().getName()));
+		if (dstToSrc.containsKey(to)) return false;
+		if (!link(from, to)) throw new GraphValidationException(
+			GraphValidationException.Reason.CYCLE,
+			"connection would create a cycle");
+		return true;
+	}
+
+	public boolean connectValidated(NodeInstance<?, E> fromNode, OutputSocket<?> fromSocket, NodeInstance<?, E> toNode, InputSocket<?> toSocket) throws GraphValidationException {
+		return connectValidated(new NodeSocketRef<>(fromNode, fromSocket), new NodeSocketRef<>(toNode, toSocket));
+	}
+
+	private static Class<?> wrap(Class<?> type) {
+		if (!type.isPrimitive()) return type;
+		if (type == int.class) return Integer.class;
+		if (type == long.class) return Long.class;
+		if (type == float.class) return Float.class;
+		if (type == double.class) return Double.class;
+		if (type == boolean.class) return Boolean.class;
+		if (type == byte.class) return Byte.class;
+		if (type == short.class) return Short.class;
+		if (type == char.class) return Character.class;
+		return Void.class;
+	}
+
+	/**
+	 * <p>
+	 * Add the connection to all indexes, unless it would create a cycle.
+	 * </p>
+	 * <p>
+	 * Connected node instances are kept in topological order with the online
+	 * algorithm by Pearce and Kelly: when the new connection goes against the
+	 * current order, only instances between the 2 ends of the connection are
+	 * visited and reordered. Both searches use explicit stacks, so deep graphs
+	 * do not overflow the call stack.
+	 * </p>
+	 * 
+	 * @return {@code false} if the connection would create a cycle.
+	 */
+	private boolean link(NodeSocketRef<?, E, ?> from, NodeSocketRef<?, E, ?> to) {
+		Adjacency<E> fromAdj = adjacencyOf(from.node());
+		Adjacency<E> toAdj = adjacencyOf(to.node());
+		if (fromAdj == toAdj) return false;
+
+		if (toAdj.order < fromAdj.order) {
+			List<Adjacency<E>> forward = new ArrayList<>();
+			List<Adjacency<E>> backward = new ArrayList<>();
+			boolean acyclic = visitForward(toAdj, fromAdj, forward);
+			if (acyclic) visitBackward(fromAdj, toAdj.order, backward);
+			for (Adjacency<E> adj : forward) adj.visited = false;
+			for (Adjacency<E> adj : backward) adj.visited = false;
+			if (!acyclic) return false;
+
+			// Instances that reach the source must be placed before instances that
+			// are reachable from destination, reusing the same set of positions
+			Comparator<Adjacency<E>> byOrder = Comparator.comparingInt(adj -> adj.order);
+			forward.sort(byOrder);
+			backward.sort(byOrder);
+			int[] orders = new int[forward.size() + backward.size()];
+			int i = 0;
+			for (Adjacency<E> adj : backward) orders[i++] = adj.order;
+			for (Adjacency<E> adj : forward) orders[i++] = adj.order;
+			Arrays.sort(orders);
+			i = 0;
+			for (Adjacency<E> adj : backward) adj.order = orders[i++];
+			for (Adjacency<E> adj : forward) adj.order = orders[i++];
+		}
+
+		dstToSrc = dstToSrc.plus(to, from);
+		srcToDsts.computeIfAbsent(from, k -> new HashSet<>()).add(to);
+		fromAdj.outgoing.add(from);
+		toAdj.incoming.put(to, Map.entry(from, to));
+		modCount++;
+		for (ChangeListener<E> listener : listeners) listener.onConnected(from, to);
+		return true;
+	}
+
+	private Adjacency<E> adjacencyOf(NodeInstance<?, E> instance) {
+		return adjacency.computeIfAbsent(instance, k -> new Adjacency<>(nextOrder++));
+	}
+
+	/**
+	 * <p>
+	 * Collect instances reachable from {@code start} that are not ordered after
+	 * {@code target}.
+	 * </p>
+	 * 
+	 * @return {@code false} if {@code target} is reachable.
+	 */
+	private boolean visitForward(Adjacency<E> start, Adjacency<E> target, List<Adjacency<E>> visited) {
+		Deque<Adjacency<E>> stack = new ArrayDeque<>();
+		start.visited = true;
+		visited.add(start);
+		stack.push(start);
+
+		while (!stack.isEmpty()) {
+			Adjacency<E> current = stack.pop();
+
+			for (NodeSocketRef<?, E, ?> from : current.outgoing) {
+				for (NodeSocketRef<?, E, ?> to : srcToDsts.get(from)) {
+					Adjacency<E> next = adjacency.get(to.node());
+					if (next == target) return false;
+					if (next.visited || next.order > target.order) continue;
+					next.visited = true;
+					visited.add(next);
+					stack.push(next);
+				}
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * <p>
+	 * Collect instances that can reach {@code start} and are not ordered before
+	 * {@code lowerBound}.
+	 * </p>
+	 */
+	private void visitBackward(Adjacency<E> start, int lowerBound, List<Adjacency<E>> visited) {
+		Deque<Adjacency<E>> stack = new ArrayDeque<>();
+		start.visited = true;
+		visited.add(start);
+		stack.push(start);
+
+		while (!stack.isEmpty()) {
+			Adjacency<E> current = stack.pop();
+
+			for (NodeSocketRef<?, E, ?> to : current.incoming.keySet()) {
+				Adjacency<E> next = adjacency.get(dstToSrc.get(to).node());
+				if (next.visited || next.order < lowerBound) continue;
+				next.visited = true;
+				visited.add(next);
+				stack.push(next);
+			}
+		}
 	}
 
 	public <V> boolean disconnect(NodeSocketRef<?, E, V> from, NodeSocketRef<?, E, V> to) {
@@ -74,11 +375,15 @@ public class NodeGraph<E> {
 			throw new IllegalArgumentException("outgoing socket (from) is not output");
 		if (!(to.socket() instanceof InputSocket))
 			throw new IllegalArgumentException("incoming socket (to) is not input");
-		return dstToSrc.remove(to, from);
+		if (!from.equals(dstToSrc.get(to))) return false;
+		dstToSrc = dstToSrc.minus(to);
+		unlink(from, to);
+		return true;
 	}
 
-	public <V> boolean disconnect(NodeInstance<?, E> fromNode, OutputSocket<V> fromSocket, NodeInstance<?, E> toNode, InputSocket<V> toSocket) {
-		return disconnect(new NodeSocketRef<>(fromNode, fromSocket), new NodeSocketRef<>(toNode, toSocket));
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public <V> boolean disconnect(NodeInstance<?, E> fromNode, OutputSocket<? extends V> fromSocket, NodeInstance<?, E> toNode, InputSocket<V> toSocket) {
+		return disconnect(new NodeSocketRef(fromNode, fromSocket), new NodeSocketRef<>(toNode, toSocket));
 	}
 
 	/**
@@ -90,7 +395,11 @@ public class NodeGraph<E> {
 	 * @return Whether the connection is removed successfully.
 	 */
 	public boolean disconnectFromSource(NodeSocketRef<?, E, ?> to) {
-		return dstToSrc.remove(to) != null;
+		NodeSocketRef<?, E, ?> from = dstToSrc.get(to);
+		if (from == null) return false;
+		dstToSrc = dstToSrc.minus(to);
+		unlink(from, to);
+		return true;
 	}
 
 	/**
@@ -102,22 +411,197 @@ public class NodeGraph<E> {
 	 * @return The number of connections removed.
 	 */
 	public int disconnectFromDestinations(NodeSocketRef<?, E, ?> from) {
-		Iterator<Entry<NodeSocketRef<?, E, ?>, NodeSocketRef<?, E, ?>>> iter = dstToSrc.entrySet().iterator();
-		int counter = 0;
+		Set<NodeSocketRef<?, E, ?>> destinations = srcToDsts.get(from);
+		if (destinations == null) return 0;
+		List<NodeSocketRef<?, E, ?>> removing = List.copyOf(destinations);
+
+		for (NodeSocketRef<?, E, ?> to : removing) {
+			dstToSrc = dstToSrc.minus(to);
+			unlink(from, to);
+		}
+
+		return removing.size();
+	}
+
+	/**
+	 * <p>
+	 * Remove the connection from adjacency indexes. The connection must be
+	 * removed from {@link #dstToSrc} before calling this method.
+	 * </p>
+	 */
+	private void unlink(NodeSocketRef<?, E, ?> from, NodeSocketRef<?, E, ?> to) {
+		Set<NodeSocketRef<?, E, ?>> destinations = srcToDsts.get(from);
+		destinations.remove(to);
+
+		if (destinations.isEmpty()) {
+			srcToDsts.remove(from);
+			adjacency.get(from.node()).outgoing.remove(from);
+		}
+
+		adjacency.get(to.node()).incoming.remove(to);
+		modCount++;
+		for (ChangeListener<E> listener : listeners) listener.onDisconnected(from, to);
+	}
+
+	/**
+	 * <p>
+	 * Add a listener that will be notified when this graph is changed. Changes to
+	 * initial values of node instances that are added to this graph are notified
+	 * as well.
+	 * </p>
+	 * 
+	 * @param listener The listener.
+	 */
+	public void addListener(ChangeListener<E> listener) {
+		listeners.add(listener);
+	}
+
+	public boolean removeListener(ChangeListener<E> listener) {
+		return listeners.remove(listener);
+	}
+
+	public Set<NodeInstance<?, E>> getInstances() { return instancesView; }
+
+	/**
+	 * <p>
+	 * Take an immutable snapshot of this graph, including initial values of all
+	 * node instances in this graph. This is a constant time operation, since the
+	 * snapshot shares its storage with this graph.
+	 * </p>
+	 * <p>
+	 * This graph is not thread-safe, so the snapshot must be taken on the thread
+	 * that edits this graph. The snapshot itself can then be compiled and
+	 * evaluated on any thread while this graph is being edited.
+	 * </p>
+	 * 
+	 * @return The snapshot.
+	 */
+	public GraphSnapshot<E> snapshot() {
+		return new GraphSnapshot<>(instances, dstToSrc, memoCache, optimizations);
+	}
+
+	/**
+	 * <p>
+	 * Restore this graph to a snapshot of this graph. Only the differences
+	 * between this graph and the snapshot are applied, and they are applied like
+	 * regular edits, so listeners and evaluation rounds are notified of each
+	 * change. The memo cache and optimizations are not restored.
+	 * </p>
+	 * 
+	 * @param snapshot The snapshot that was taken from this graph.
+	 * @see GraphHistory
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void restore(GraphSnapshot<E> snapshot) {
+		List<NodeInstance<?, E>> removing = new ArrayList<>();
+		List<NodeSocketRef<?, E, ?>> disconnecting = new ArrayList<>();
+		List<NodeSocketRef<?, E, ?>> connecting = new ArrayList<>();
+		Set<NodeInstance<?, E>> updating = Collections.newSetFromMap(new IdentityHashMap<>());
+
+		snapshot().diff(snapshot, new ChangeListener<>() {
+			@Override
+			public void onInstanceAdded(NodeInstance<?, E> instance) {
+				updating.add(instance);
+			}
+
+			@Override
+			public void onInstanceRemoved(NodeInstance<?, E> instance) {
+				removing.add(instance);
+			}
+
+			@Override
+			public void onConnected(NodeSocketRef<?, E, ?> from, NodeSocketRef<?, E, ?> to) {
+				connecting.add(to);
+			}
 
-		while (iter.hasNext()) {
-			Entry<NodeSocketRef<?, E, ?>, NodeSocketRef<?, E, ?>> entry = iter.next();
+			@Override
+			public void onDisconnected(NodeSocketRef<?, E, ?> from, NodeSocketRef<?, E, ?> to) {
+				disconnecting.add(to);
+			}
 
-			if (entry.getValue().equals(from)) {
-				iter.remove();
-				counter++;
+			@Override
+			public void onInitialValueChanged(NodeInstance<?, E> instance, InputSocket<?> socket) {
+				updating.add(instance);
 			}
+
+			@Override
+			public void onEditorDataChanged(NodeInstance<?, E> instance) {
+				updating.add(instance);
+			}
+		});
+
+		// Removing connections first ensures the remaining connections are always a
+		// subset of connections in either version, so reconnecting never creates
+		// a cycle
+		for (NodeSocketRef<?, E, ?> to : disconnecting) disconnectFromSource(to);
+		for (NodeInstance<?, E> instance : removing) removeInstance(instance);
+
+		for (NodeInstance<?, E> instance : updating) {
+			instance.restore(snapshot.instances.get(instance));
+			addInstance(instance);
 		}
 
-		return counter;
+		for (NodeSocketRef<?, E, ?> to : connecting) connect((NodeSocketRef) snapshot.dstToSrc.get(to), (NodeSocketRef) to);
+
+		// Both versions have the same content now, so the maps from snapshot can be
+		// reused to share as much as possible with older versions
+		instances = snapshot.instances;
+		dstToSrc = snapshot.dstToSrc;
+	}
+
+	/**
+	 * <p>
+	 * Get the output socket that is connected to input socket.
+	 * </p>
+	 * 
+	 * @param to The input socket.
+	 * @return The output socket, or {@code null} if the input is not connected.
+	 */
+	public NodeSocketRef<?, E, ?> getSource(NodeSocketRef<?, E, ?> to) {
+		return dstToSrc.get(to);
+	}
+
+	/**
+	 * <p>
+	 * Get all input sockets that are connected to output socket.
+	 * </p>
+	 * 
+	 * @param from The output socket.
+	 * @return An unmodifiable view of input sockets.
+	 */
+	public Set<NodeSocketRef<?, E, ?>> getOutgoing(NodeSocketRef<?, E, ?> from) {
+		Set<NodeSocketRef<?, E, ?>> destinations = srcToDsts.get(from);
+		return destinations != null ? Collections.unmodifiableSet(destinations) : Collections.emptySet();
+	}
+
+	/**
+	 * <p>
+	 * Get all output sockets of node instance that are connected to at least one
+	 * input socket.
+	 * </p>
+	 * 
+	 * @param instance The node instance.
+	 * @return An unmodifiable view of output sockets.
+	 */
+	public Set<NodeSocketRef<?, E, ?>> getOutgoing(NodeInstance<?, E> instance) {
+		Adjacency<E> adj = adjacency.get(instance);
+		return adj != null ? adj.outgoingView : Collections.emptySet();
 	}
 
-	public Set<NodeInstance<?, E>> getInstances() { return Collections.unmodifiableSet(instances); }
+	/**
+	 * <p>
+	 * Get all input sockets of node instance that are connected. Use
+	 * {@link #getSource(NodeSocketRef)} to get the output socket of each
+	 * connection.
+	 * </p>
+	 * 
+	 * @param instance The node instance.
+	 * @return An unmodifiable view of input sockets.
+	 */
+	public Set<NodeSocketRef<?, E, ?>> getIncoming(NodeInstance<?, E> instance) {
+		Adjacency<E> adj = adjacency.get(instance);
+		return adj != null ? adj.incomingView : Collections.emptySet();
+	}
 
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	public void forEachConnection(ForEachConnectionCallback<E> callback) {
@@ -126,16 +610,24 @@ public class NodeGraph<E> {
 		});
 	}
 
-	public Set<Map.Entry<NodeSocketRef<?, E, ?>, NodeSocketRef<?, E, ?>>> getConnections() {
-		Set<Map.Entry<NodeSocketRef<?, E, ?>, NodeSocketRef<?, E, ?>>> out = new HashSet<>();
-		forEachConnection(new ForEachConnectionCallback<>() {
-			@Override
-			public <V> void callback(NodeSocketRef<?, E, V> from, NodeSocketRef<?, E, V> to) {
-				out.add(Map.entry(from, to));
-			}
-		});
-		return out;
-	}
+	/**
+	 * <p>
+	 * Get all connections of this graph. Key of each entry is the output socket
+	 * and value is the input socket.
+	 * </p>
+	 * <p>
+	 * The returned set is a live view: its size and {@code contains} always
+	 * reflect the current connections, and {@code contains} takes constant time.
+	 * Each iterator visits the connections at the time the iterator is created,
+	 * so connections can be added or removed while iterating (the removed ones
+	 * are still visited). Iterating does not allocate entries; each connection
+	 * is represented by the same entry object until it is disconnected.
+	 * </p>
+	 * 
+	 * @return An unmodifiable view of connections, which is backed by this graph.
+	 * @see #snapshot()
+	 */
+	public Set<Map.Entry<NodeSocketRef<?, E, ?>, NodeSocketRef<?, E, ?>>> getConnections() { return connectionsView; }
 
 	/**
 	 * <p>
@@ -145,8 +637,11 @@ public class NodeGraph<E> {
 	 * indefinitely, as the node instances in this domain may be altered by user.
 	 * </p>
 	 * <p>
-	 * In other words, you can reuse the same round if the node graph is not
-	 * changed, and you have to create a new one if something changed.
+	 * Nodes are processed lazily and recursively: the source of an input is only
+	 * processed when a node reads that input, and nodes without caching are
+	 * processed on every read. The depth of the graph is limited by the thread
+	 * stack size. See {@link #newCompiledEvalRound(Object)} for a faster round
+	 * that supports graphs of any depth.
 	 * </p>
 	 * 
 	 * @return A new evaluation round.
@@ -157,13 +652,204 @@ public class NodeGraph<E> {
 
 	/**
 	 * <p>
-	 * Make a copy of this node graph.
+	 * Create a new evaluation round that evaluates a
+	 * {@link #compile(Collection) compiled plan} of the node instances that the
+	 * evaluated instances depend on. The plan is compiled again on the next
+	 * evaluation after the structure of this graph is changed, while changes to
+	 * initial values are applied to the existing plan.
+	 * </p>
+	 * <p>
+	 * Nodes are processed in topological order without recursion, so the depth
+	 * of the graph is not limited by the thread stack size. Unlike
+	 * {@link #newEvalRound(Object)}, every node that the target depends on is
+	 * processed, even if the node does not read some of its inputs, and nodes
+	 * without caching are processed once for each connection that consumes their
+	 * outputs. Nodes that choose between branches or modify the environment
+	 * might behave differently in this round. The output getter returned from
+	 * {@link EvaluationRound#eval(NodeInstance)} reflects the latest evaluation
+	 * of the round.
+	 * </p>
+	 * <p>
+	 * See {@link #newIncrementalEvalRound(Object)} for a round that only
+	 * processes nodes affected by changes of this graph.
+	 * </p>
+	 * 
+	 * @param environment The environment.
+	 * @return A new evaluation round.
+	 */
+	public EvaluationRound<E> newCompiledEvalRound(E environment) {
+		return new GraphEvaluationRound<>(this, environment);
+	}
+
+	/**
+	 * <p>
+	 * Create a new incremental evaluation round. The round keeps the outputs of
+	 * cached nodes between evaluations and listens to changes of this graph, so
+	 * only the nodes that are affected by the changes will be processed again.
+	 * Unlike {@link #newEvalRound(Object)}, the round can be reused after the
+	 * graph is changed.
+	 * </p>
+	 * <p>
+	 * Only changes of this graph are tracked. Cached outputs are kept even if the
+	 * environment changes, so when a change of the environment affects the
+	 * results of some nodes, callers must use
+	 * {@link IncrementalEvaluationRound#invalidate(NodeInstance)} on the
+	 * instances of those nodes, or {@link IncrementalEvaluationRound#invalidateAll()}
+	 * before the next evaluation.
+	 * </p>
+	 * <p>
+	 * The round must be closed when it is no longer used, otherwise it will be
+	 * kept alive by this graph.
+	 * </p>
+	 * 
+	 * @param environment The environment.
+	 * @return A new incremental evaluation round.
+	 * @throws IllegalStateException if the graph contains a cycle.
+	 */
+	public IncrementalEvaluationRound<E> newIncrementalEvalRound(E environment) {
+		return new IncrementalEvaluationRoundImpl<>(this, environment);
+	}
+
+	/**
+	 * <p>
+	 * Find all node instances that the outputs of given node instances depend
+	 * on, including the given instances themselves. Node instances that are not
+	 * in the returned set can not affect the outputs.
+	 * </p>
+	 * 
+	 * @param outputs The node instances that produce the outputs.
+	 * @return A new set of node instances.
+	 * @see #findUnused(Collection)
+	 */
+	public Set<NodeInstance<?, E>> findDependencies(Collection<? extends NodeInstance<?, E>> outputs) {
+		Set<NodeInstance<?, E>> dependencies = Collections.newSetFromMap(new IdentityHashMap<>());
+		Deque<NodeInstance<?, E>> stack = new ArrayDeque<>(outputs);
+
+		while (!stack.isEmpty()) {
+			NodeInstance<?, E> instance = stack.pop();
+			if (!dependencies.add(instance)) continue;
+			for (NodeSocketRef<?, E, ?> to : getIncoming(instance)) stack.push(dstToSrc.get(to).node());
+		}
+
+		return dependencies;
+	}
+
+	/**
+	 * <p>
+	 * Find all node instances in this graph that do not affect the outputs of
+	 * given node instances. These instances are not included in plans compiled
+	 * from {@link #compile(Collection)}.
+	 * </p>
+	 * 
+	 * @param outputs The node instances that produce the outputs.
+	 * @return A new set of unused node instances.
+	 */
+	public Set<NodeInstance<?, E>> findUnused(Collection<? extends NodeInstance<?, E>> outputs) {
+		Set<NodeInstance<?, E>> dependencies = findDependencies(outputs);
+		Set<NodeInstance<?, E>> unused = new HashSet<>();
+		for (NodeInstance<?, E> instance : instances.keySet()) if (!dependencies.contains(instance)) unused.add(instance);
+		return unused;
+	}
+
+	/**
+	 * <p>
+	 * Compile this node graph into an immutable evaluation plan. The plan sorts
+	 * all node instances in topological order and resolves the connections into
+	 * flat tables. Unlike {@link #newCompiledEvalRound(Object)}, the plan does
+	 * not follow changes of this graph.
+	 * </p>
+	 *
+	 * @return A new compiled graph.
+	 * @throws IllegalStateException if the graph contains a cycle.
+	 */
+	public CompiledGraph<E> compile() {
+		return snapshot().compile();
+	}
+
+	/**
+	 * <p>
+	 * Compile the part of this node graph that the outputs of given node
+	 * instances depend on. Unused node instances are not included in the plan,
+	 * so evaluation rounds of the plan do not hold internal states or outputs for
+	 * them. Only the given instances and their dependencies can be evaluated.
+	 * </p>
+	 *
+	 * @param outputs The node instances that produce the outputs.
+	 * @return A new compiled graph.
+	 * @throws IllegalStateException if the graph contains a cycle.
+	 * @see #findUnused(Collection)
+	 */
+	public CompiledGraph<E> compile(Collection<? extends NodeInstance<?, E>> outputs) {
+		return snapshot().compile(outputs);
+	}
+
+	/**
+	 * <p>
+	 * Get the memo cache that stores outputs of pure nodes between evaluation
+	 * rounds.
+	 * </p>
+	 * 
+	 * @return The memo cache, or {@code null} if memoization is disabled.
+	 * @see Node#isPure()
+	 */
+	public MemoCache getMemoCache() {
+		return memoCache;
+	}
+
+	/**
+	 * <p>
+	 * Attach a memo cache to this graph. The same cache can be shared between
+	 * multiple graphs, which is also the case for graphs created from
+	 * {@link #copy()}.
+	 * </p>
+	 * 
+	 * @param memoCache The memo cache, or {@code null} to disable memoization.
+	 * @see Node#isPure()
+	 */
+	public void setMemoCache(MemoCache memoCache) {
+		this.memoCache = memoCache;
+		modCount++;
+	}
+
+	/**
+	 * <p>
+	 * Get the optimizations that are applied when this graph is compiled.
+	 * </p>
+	 * 
+	 * @return An unmodifiable set of optimizations.
+	 */
+	public Set<Optimization> getOptimizations() {
+		return optimizations;
+	}
+
+	/**
+	 * <p>
+	 * Set the optimizations that are applied when this graph is compiled, which
+	 * includes the plans that are compiled by evaluation rounds of this graph.
+	 * No optimizations are applied by default.
+	 * </p>
+	 * 
+	 * @param optimizations The optimizations.
+	 */
+	public void setOptimizations(Set<Optimization> optimizations) {
+		this.optimizations = optimizations.isEmpty()
+			? Collections.emptySet()
+			: Collections.unmodifiableSet(EnumSet.copyOf(optimizations));
+		modCount++;
+	}
+
+	/**
+	 * <p>
+	 * Make a copy of this node graph. The copy shares the memo cache and
+	 * optimizations with this graph.
 	 * </p>
 	 */
 	public NodeGraph<E> copy() {
 		NodeGraph<E> newGraph = new NodeGraph<>();
+		newGraph.memoCache = memoCache;
+		newGraph.optimizations = optimizations;
 		Map<NodeInstance<?, E>, NodeInstance<?, E>> currToNew = new HashMap<>();
-		instances.forEach(i -> currToNew.put(i, newGraph.addInstance(i.copy())));
+		instances.keySet().forEach(i -> currToNew.put(i, newGraph.addInstance(i.copy())));
 
 		forEachConnection(new ForEachConnectionCallback<>() {
 			@SuppressWarnings({ "rawtypes", "unchecked" })
@@ -180,8 +866,55 @@ public class NodeGraph<E> {
 		return newGraph;
 	}
 
+	/**
+	 * <p>
+	 * Connected sockets of a node instance, along with its position in
+	 * topological order of connected instances.
+	 * </p>
+	 */
+	private static class Adjacency<E> {
+		int order;
+		boolean visited = false;
+		/**
+		 * <p>
+		 * Connected input sockets, mapped to the {@code from -> to} entry of each
+		 * connection that is returned from {@link NodeGraph#getConnections()}.
+		 * </p>
+		 */
+		final Map<NodeSocketRef<?, E, ?>, Entry<NodeSocketRef<?, E, ?>, NodeSocketRef<?, E, ?>>> incoming = new HashMap<>();
+		final Set<NodeSocketRef<?, E, ?>> outgoing = new HashSet<>();
+		final Set<NodeSocketRef<?, E, ?>> incomingView = Collections.unmodifiableSet(incoming.keySet());
+		final Set<NodeSocketRef<?, E, ?>> outgoingView = Collections.unmodifiableSet(outgoing);
+
+		Adjacency(int order) {
+			this.order = order;
+		}
+	}
+
 	@FunctionalInterface
 	public static interface ForEachConnectionCallback<E> {
 		<V> void callback(NodeSocketRef<?, E, V> from, NodeSocketRef<?, E, V> to);
 	}
+
+	/**
+	 * <p>
+	 * Listener for changes of {@link NodeGraph}. All methods do nothing by
+	 * default.
+	 * </p>
+	 *
+	 * @param <E> Type of environment object.
+	 */
+	public static interface ChangeListener<E> {
+		default void onInstanceAdded(NodeInstance<?, E> instance) {}
+
+		default void onInstanceRemoved(NodeInstance<?, E> instance) {}
+
+		default void onConnected(NodeSocketRef<?, E, ?> from, NodeSocketRef<?, E, ?> to) {}
+
+		default void onDisconnected(NodeSocketRef<?, E, ?> from, NodeSocketRef<?, E, ?> to) {}
+
+		default void onInitialValueChanged(NodeInstance<?, E> instance, InputSocket<?> socket) {}
+
+		default void onEditorDataChanged(NodeInstance<?, E> instance) {}
+	}
 }
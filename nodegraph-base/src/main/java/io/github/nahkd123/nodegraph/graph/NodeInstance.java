@@ -1,10 +1,10 @@
 package io.github.nahkd123.nodegraph.graph;
 
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import io.github.nahkd123.nodegraph.node.Node;
 import io.github.nahkd123.nodegraph.socket.InputSocket;
@@ -21,8 +21,8 @@ import io.github.nahkd123.nodegraph.socket.InputSocket;
  */
 public class NodeInstance<S, E> {
 	private Node<S, E> node;
-	private NodeEditorData editorData;
-	private Map<InputSocket<?>, ?> sockets = new HashMap<>();
+	private volatile Version version;
+	private List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
 
 	/**
 	 * <p>
@@ -35,11 +35,13 @@ public class NodeInstance<S, E> {
 	 * @param sockets    An optional collection of socket-value pair to set as
 	 *                   initial value.
 	 */
-	@SuppressWarnings({ "unchecked", "rawtypes" })
 	public NodeInstance(Node<S, E> node, NodeEditorData editorData, Collection<Map.Entry<InputSocket<?>, ?>> sockets) {
+		PersistentMap<InputSocket<?>, Object> values = PersistentMap.empty();
 		this.node = node;
-		this.editorData = editorData;
-		if (sockets != null) sockets.forEach(entry -> ((Map) this.sockets).put(entry.getKey(), entry.getValue()));
+		if (sockets != null) {
+			for (Map.Entry<InputSocket<?>, ?> entry : sockets) values = values.plus(entry.getKey(), entry.getValue());
+		}
+		this.version = new Version(values, editorData);
 	}
 
 	public NodeInstance(Node<S, E> node, NodeEditorData editorData) {
@@ -48,27 +50,144 @@ public class NodeInstance<S, E> {
 
 	public Node<S, E> getNode() { return node; }
 
-	public NodeEditorData getEditorData() { return editorData; }
+	public NodeEditorData getEditorData() { return version.editorData(); }
 
-	public void setEditorData(NodeEditorData editorData) { this.editorData = editorData; }
+	/**
+	 * <p>
+	 * Replace the editor data of this node instance. Only replacements are
+	 * recorded in {@link GraphSnapshot} and {@link GraphHistory}; changes made to
+	 * the fields of editor data are visible from all snapshots that share it, so
+	 * editors that keep a history should set a modified copy instead.
+	 * </p>
+	 * 
+	 * @param editorData The new editor data.
+	 */
+	public void setEditorData(NodeEditorData editorData) {
+		if (version.editorData() == editorData) return;
+		version = new Version(version.initialValues(), editorData);
+		for (ChangeListener listener : listeners) listener.onEditorDataChanged(this);
+	}
 
-	@SuppressWarnings({ "unchecked", "rawtypes" })
 	public <V> V getInitialValue(InputSocket<V> socket) {
-		return (V) ((Map) sockets).computeIfAbsent(socket, s -> socket.defaultValue());
+		return getInitialValue(version.initialValues(), socket);
+	}
+
+	/**
+	 * <p>
+	 * Get the initial value of a socket from a version of initial values.
+	 * </p>
+	 */
+	@SuppressWarnings("unchecked")
+	static <V> V getInitialValue(PersistentMap<InputSocket<?>, Object> values, InputSocket<V> socket) {
+		Object value = values.get(socket);
+		if (value == null && !values.containsKey(socket)) return socket.defaultValue();
+		return (V) value;
 	}
 
-	@SuppressWarnings({ "unchecked", "rawtypes" })
 	public <V> void setInitialValue(InputSocket<V> socket, V initialValue) {
-		((Map) sockets).put(socket, initialValue);
+		version = new Version(version.initialValues().plus(socket, initialValue), version.editorData());
+		notifyInitialValueChanged(socket);
+	}
+
+	private void notifyInitialValueChanged(InputSocket<?> socket) {
+		for (ChangeListener listener : listeners) listener.onInitialValueChanged(this, socket);
 	}
 
+	/**
+	 * <p>
+	 * Get all initial values that are set on this node instance. Sockets that are
+	 * not included use their default values.
+	 * </p>
+	 * 
+	 * @return An immutable collection of socket-value pairs.
+	 */
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	public Collection<Map.Entry<InputSocket<?>, ?>> getAllInitialValues() {
-		return (Set) Collections.unmodifiableSet(sockets.entrySet());
+		return (Set) version.initialValues().entrySet();
+	}
+
+	/**
+	 * <p>
+	 * Get the current version of initial values and editor data. The returned
+	 * version is immutable, so it can be kept as a snapshot of this node
+	 * instance.
+	 * </p>
+	 */
+	Version getVersion() {
+		return version;
+	}
+
+	/**
+	 * <p>
+	 * Restore initial values and editor data from a version. Listeners are
+	 * notified of each socket that have a different initial value, as if the
+	 * values were set one by one.
+	 * </p>
+	 */
+	void restore(Version target) {
+		Version previous = version;
+		if (previous == target) return;
+		version = target;
+		previous.initialValues().diff(target.initialValues(), new PersistentMap.DiffVisitor<>() {
+			@Override
+			public void onAdded(InputSocket<?> socket, Object value) {
+				notifyInitialValueChanged(socket);
+			}
+
+			@Override
+			public void onRemoved(InputSocket<?> socket, Object value) {
+				notifyInitialValueChanged(socket);
+			}
+
+			@Override
+			public void onChanged(InputSocket<?> socket, Object oldValue, Object newValue) {
+				notifyInitialValueChanged(socket);
+			}
+		});
+		if (previous.editorData() != target.editorData())
+			for (ChangeListener listener : listeners) listener.onEditorDataChanged(this);
+	}
+
+	/**
+	 * <p>
+	 * Add a listener that will be notified when initial value of a socket is
+	 * changed. Listeners are not copied by {@link #copy()}.
+	 * </p>
+	 * 
+	 * @param listener The listener.
+	 */
+	public void addListener(ChangeListener listener) {
+		listeners.add(listener);
+	}
+
+	public boolean removeListener(ChangeListener listener) {
+		return listeners.remove(listener);
 	}
 
-	@SuppressWarnings({ "unchecked", "rawtypes" })
 	public NodeInstance<S, E> copy() {
-		return new NodeInstance<>(node, editorData.copy(), (Collection) sockets.entrySet());
+		NodeEditorData editorData = version.editorData();
+		NodeInstance<S, E> copy = new NodeInstance<>(node, editorData != null ? editorData.copy() : null);
+		copy.version = new Version(version.initialValues(), copy.version.editorData());
+		return copy;
 	}
+
+	@FunctionalInterface
+	public static interface ChangeListener {
+		void onInitialValueChanged(NodeInstance<?, ?> instance, InputSocket<?> socket);
+
+		/**
+		 * <p>
+		 * Called when the editor data is replaced with
+		 * {@link NodeInstance#setEditorData(NodeEditorData)}.
+		 * </p>
+		 */
+		default void onEditorDataChanged(NodeInstance<?, ?> instance) {}
+	}
+
+	/**
+	 * <p>
+	 * An immutable version of initial values and editor data of node instance.
+	 * </p>
+	 */
+	static record Version(PersistentMap<InputSocket<?>, Object> initialValues, NodeEditorData editorData) {}
 }
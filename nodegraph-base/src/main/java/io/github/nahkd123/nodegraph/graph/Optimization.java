@@ -0,0 +1,46 @@
+package io.github.nahkd123.nodegraph.graph;
+
+import io.github.nahkd123.nodegraph.node.Node;
+
+/**
+ * <p>
+ * Optimizations that can be applied when compiling {@link NodeGraph} into
+ * {@link CompiledGraph}. Optimizations only change the compiled plan; the node
+ * graph itself is never modified.
+ * </p>
+ *
+ * @see NodeGraph#setOptimizations(java.util.Set)
+ */
+public enum Optimization {
+	/**
+	 * <p>
+	 * Merge structurally identical node instances into a single slot. Two
+	 * instances are identical if they have the same {@link Node}, the same
+	 * initial values on unconnected inputs and the same sources on connected
+	 * inputs. Only nodes that are {@link Node#isPure() pure} and
+	 * {@link Node#shouldCache() cached} are merged.
+	 * </p>
+	 * <p>
+	 * Merged instances share the same slot, so
+	 * {@link CompiledGraph#slotOf(NodeInstance)} returns the same value for all
+	 * of them, and evaluation listeners only observe the first instance.
+	 * </p>
+	 */
+	DEDUPLICATE,
+
+	/**
+	 * <p>
+	 * Evaluate nodes that only depend on initial values once at compile time.
+	 * Only nodes that are {@link Node#isPure() pure} and
+	 * {@link Node#shouldCache() cached} are folded, and a node is only folded if
+	 * all of its connected inputs come from folded nodes. Connections from folded
+	 * nodes are replaced with their outputs, so the nodes are not processed
+	 * again unless they are evaluated directly.
+	 * </p>
+	 * <p>
+	 * Folded outputs are discarded when the initial values are changed, because
+	 * evaluation rounds of {@link NodeGraph} compile the graph again.
+	 * </p>
+	 */
+	FOLD_CONSTANTS;
+}
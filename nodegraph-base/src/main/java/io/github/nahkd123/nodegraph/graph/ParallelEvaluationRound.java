@@ -0,0 +1,240 @@
+package io.github.nahkd123.nodegraph.graph;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>
+ * Evaluation round that runs independent branches of {@link CompiledGraph} on
+ * an {@link Executor}.
+ * </p>
+ * <p>
+ * The schedule of each target is split into units: a unit processes a single
+ * cached node, along with all uncached nodes that must be expanded right before
+ * it. A unit can be started as soon as all units that it reads from are
+ * completed. Each slot is only written by a single unit, and completing a unit
+ * happens-before starting any units that depend on it, so the value arrays
+ * do not need any additional synchronization. Uncached nodes may be expanded
+ * in multiple units, so they are processed while holding a lock of their slot,
+ * and nodes that are not {@link io.github.nahkd123.nodegraph.node.Node#isThreadSafe()
+ * thread-safe} are processed while holding a lock shared by the whole round.
+ * </p>
+ *
+ * @param <E> Type of environment object.
+ */
+class ParallelEvaluationRound<E> extends CompiledEvaluationRound<E> {
+	private final Executor executor;
+	private final Object[] slotLocks;
+	private final ReentrantLock exclusiveLock = new ReentrantLock();
+	private final Object listenerLock = new Object();
+	private final ParallelSchedule[] parallelSchedules;
+
+	ParallelEvaluationRound(CompiledGraph<E> plan, E environment, Executor executor) {
+		super(plan, environment);
+		this.executor = executor;
+		this.slotLocks = new Object[plan.instances.length];
+		this.parallelSchedules = new ParallelSchedule[plan.instances.length];
+		for (int slot = 0; slot < slotLocks.length; slot++) if (!plan.cached[slot]) slotLocks[slot] = new Object();
+	}
+
+	@Override
+	public synchronized NodeOutputGetter eval(NodeInstance<?, E> instance) {
+		int target = targetOf(instance);
+		ParallelSchedule schedule = parallelSchedules[target];
+		if (schedule == null) schedule = parallelSchedules[target] = new ParallelSchedule(plan, plan.schedule(target));
+		epoch++;
+		new Execution(schedule).run();
+		return getter(target);
+	}
+
+	@Override
+	void process(SlotContext context, int slot) {
+		if (plan.threadSafe[slot]) {
+			super.process(context, slot);
+			return;
+		}
+
+		exclusiveLock.lock();
+
+		try {
+			super.process(context, slot);
+		} finally {
+			exclusiveLock.unlock();
+		}
+	}
+
+	@Override
+	void reportCacheHits(EvaluationListener<E> listener, int slot) {
+		// Units that read the same source may run at the same time
+		synchronized (listenerLock) {
+			super.reportCacheHits(listener, slot);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Sequential schedule split into units, with dependencies between units in
+	 * CSR form.
+	 * </p>
+	 */
+	private static class ParallelSchedule {
+		final int[] ops;
+		final int[] unitOffsets;
+		final int[] dependencyCounts;
+		final int[] dependentOffsets;
+		final int[] dependents;
+		final int[] roots;
+
+		ParallelSchedule(CompiledGraph<?> plan, int[] ops) {
+			this.ops = ops;
+			int[] unitOfSlot = new int[plan.instances.length];
+			int unitsCount = 0;
+			for (int i = 0; i < ops.length; i += 2) if (ops[i + 1] == -1) unitsCount++;
+
+			unitOffsets = new int[unitsCount + 1];
+			dependencyCounts = new int[unitsCount];
+			int[] edgeFrom = new int[16];
+			int[] edgeTo = new int[16];
+			int edgesCount = 0;
+			int[] lastSeen = new int[unitsCount];
+			Arrays.fill(lastSeen, -1);
+			int unit = 0;
+
+			for (int i = 0; i < ops.length; i += 2) {
+				int slot = ops[i];
+
+				for (int input = plan.inputOffsets[slot]; input < plan.inputOffsets[slot + 1]; input++) {
+					if (plan.inputSources[input] == -1) continue;
+					int src = plan.outputOwners[plan.inputSources[input]];
+					if (!plan.cached[src]) continue;
+					int dependency = unitOfSlot[src];
+					if (lastSeen[dependency] == unit) continue;
+					lastSeen[dependency] = unit;
+
+					if (edgesCount == edgeFrom.length) {
+						edgeFrom = Arrays.copyOf(edgeFrom, edgesCount * 2);
+						edgeTo = Arrays.copyOf(edgeTo, edgesCount * 2);
+					}
+
+					edgeFrom[edgesCount] = dependency;
+					edgeTo[edgesCount++] = unit;
+					dependencyCounts[unit]++;
+				}
+
+				if (ops[i + 1] == -1) {
+					unitOfSlot[slot] = unit;
+					unitOffsets[++unit] = i + 2;
+				}
+			}
+
+			dependentOffsets = new int[unitsCount + 1];
+			dependents = new int[edgesCount];
+			for (int i = 0; i < edgesCount; i++) dependentOffsets[edgeFrom[i] + 1]++;
+			for (int i = 0; i < unitsCount; i++) dependentOffsets[i + 1] += dependentOffsets[i];
+			int[] fill = Arrays.copyOf(dependentOffsets, unitsCount);
+			for (int i = 0; i < edgesCount; i++) dependents[fill[edgeFrom[i]]++] = edgeTo[i];
+
+			int rootsCount = 0;
+			for (int i = 0; i < unitsCount; i++) if (dependencyCounts[i] == 0) rootsCount++;
+			roots = new int[rootsCount];
+			rootsCount = 0;
+			for (int i = 0; i < unitsCount; i++) if (dependencyCounts[i] == 0) roots[rootsCount++] = i;
+		}
+	}
+
+	private class Execution {
+		private final ParallelSchedule schedule;
+		private final AtomicIntegerArray pending;
+		private final CountDownLatch remaining;
+		private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+		Execution(ParallelSchedule schedule) {
+			this.schedule = schedule;
+			this.pending = new AtomicIntegerArray(schedule.dependencyCounts);
+			this.remaining = new CountDownLatch(schedule.dependencyCounts.length);
+		}
+
+		void run() {
+			for (int i = 1; i < schedule.roots.length; i++) submit(schedule.roots[i]);
+			runFrom(schedule.roots[0]);
+			boolean interrupted = false;
+
+			while (true) {
+				try {
+					remaining.await();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+
+			if (interrupted) Thread.currentThread().interrupt();
+			Throwable t = failure.get();
+			if (t instanceof RuntimeException e) throw e;
+			if (t instanceof Error e) throw e;
+			if (t != null) throw new RuntimeException(t);
+		}
+
+		private void submit(int unit) {
+			try {
+				executor.execute(() -> runFrom(unit));
+			} catch (RejectedExecutionException e) {
+				runFrom(unit);
+			}
+		}
+
+		/**
+		 * <p>
+		 * Run the unit, then keep running one of its dependents that became ready
+		 * on current thread and submit the rest to the executor.
+		 * </p>
+		 */
+		private void runFrom(int unit) {
+			SlotContext context = new SlotContext();
+
+			while (unit != -1) {
+				if (failure.get() == null) {
+					try {
+						runUnit(context, unit);
+					} catch (Throwable t) {
+						failure.compareAndSet(null, t);
+					}
+				}
+
+				int next = -1;
+
+				for (int i = schedule.dependentOffsets[unit]; i < schedule.dependentOffsets[unit + 1]; i++) {
+					int dependent = schedule.dependents[i];
+					if (pending.decrementAndGet(dependent) != 0) continue;
+					if (next == -1) next = dependent;
+					else submit(dependent);
+				}
+
+				remaining.countDown();
+				unit = next;
+			}
+		}
+
+		private void runUnit(SlotContext context, int unit) {
+			for (int i = schedule.unitOffsets[unit]; i < schedule.unitOffsets[unit + 1]; i += 2) {
+				int slot = schedule.ops[i];
+				int capture = schedule.ops[i + 1];
+
+				if (plan.cached[slot]) {
+					process(context, slot);
+					if (capture != -1) capture(capture);
+				} else {
+					synchronized (slotLocks[slot]) {
+						process(context, slot);
+						if (capture != -1) capture(capture);
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,467 @@
+package io.github.nahkd123.nodegraph.graph;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * <p>
+ * An immutable hash array mapped trie. Every modification returns a new map
+ * that shares all unchanged nodes with the previous map, so keeping old
+ * versions around only costs memory in proportion to the changes.
+ * </p>
+ * <p>
+ * Each node stores its entries in a single array of key-value pairs, where a
+ * pair with {@code null} key holds a child node instead of a value. Keys must
+ * not be {@code null}, while values can be {@code null}. The map is a
+ * read-only {@link Map}; use {@link #plus(Object, Object)} and
+ * {@link #minus(Object)} to make modified copies.
+ * </p>
+ *
+ * @param <K> Type of keys.
+ * @param <V> Type of values.
+ */
+final class PersistentMap<K, V> extends AbstractMap<K, V> {
+	private static final PersistentMap<?, ?> EMPTY = new PersistentMap<>(null, 0);
+	private static final Object NOT_FOUND = new Object();
+	private static final int BITS = 5;
+	private static final int MASK = (1 << BITS) - 1;
+	private static final int MAX_DEPTH = 8;
+
+	private final Trie root;
+	private final int size;
+	private Set<Map.Entry<K, V>> entrySet;
+
+	private PersistentMap(Trie root, int size) {
+		this.root = root;
+		this.size = size;
+	}
+
+	@SuppressWarnings("unchecked")
+	static <K, V> PersistentMap<K, V> empty() {
+		return (PersistentMap<K, V>) EMPTY;
+	}
+
+	private static int hash(Object key) {
+		int h = key.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public V get(Object key) {
+		if (root == null || key == null) return null;
+		Object value = root.find(key, hash(key), 0);
+		return value != NOT_FOUND ? (V) value : null;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return root != null && key != null && root.find(key, hash(key), 0) != NOT_FOUND;
+	}
+
+	/**
+	 * <p>
+	 * Get a map with the key mapped to the value.
+	 * </p>
+	 *
+	 * @return A new map, or this map if the key is already mapped to the same
+	 *         value.
+	 */
+	PersistentMap<K, V> plus(K key, V value) {
+		boolean[] added = new boolean[1];
+		Trie newRoot = root == null
+			? new Trie(new Object[] { key, value }, 1 << (hash(key) & MASK))
+			: root.put(key, value, hash(key), 0, added);
+		if (newRoot == root) return this;
+		return new PersistentMap<>(newRoot, root == null || added[0] ? size + 1 : size);
+	}
+
+	/**
+	 * <p>
+	 * Get a map without the key.
+	 * </p>
+	 *
+	 * @return A new map, or this map if the key is not in this map.
+	 */
+	PersistentMap<K, V> minus(Object key) {
+		if (root == null) return this;
+		Trie newRoot = root.remove(key, hash(key), 0);
+		if (newRoot == root) return this;
+		return newRoot != null ? new PersistentMap<>(newRoot, size - 1) : empty();
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public void forEach(BiConsumer<? super K, ? super V> action) {
+		if (root != null) root.forEach((BiConsumer<Object, Object>) action);
+	}
+
+	/**
+	 * <p>
+	 * Report the differences between this map and another map. Nodes that are
+	 * shared between the maps are skipped without visiting their entries, so
+	 * the cost is proportional to the number of changes if the other map is
+	 * derived from this map (or the other way around).
+	 * </p>
+	 * <p>
+	 * Values are compared with {@link Object#equals(Object)}.
+	 * </p>
+	 *
+	 * @param to      The newer map.
+	 * @param visitor The visitor that will be notified of each changed key.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	void diff(PersistentMap<K, V> to, DiffVisitor<? super K, ? super V> visitor) {
+		if (root != to.root) diff(root, to.root, (DiffVisitor) visitor);
+	}
+
+	private static void diff(Trie a, Trie b, DiffVisitor<Object, Object> visitor) {
+		if (a == b) return;
+		if (a == null) {
+			b.forEach(visitor::onAdded);
+			return;
+		}
+		if (b == null) {
+			a.forEach(visitor::onRemoved);
+			return;
+		}
+		if (a.bitmap == 0 || b.bitmap == 0) {
+			diffEntries(a, b, visitor);
+			return;
+		}
+
+		int bits = a.bitmap | b.bitmap;
+
+		while (bits != 0) {
+			int bit = bits & -bits;
+			bits &= ~bit;
+			int ia = 2 * Integer.bitCount(a.bitmap & (bit - 1));
+			int ib = 2 * Integer.bitCount(b.bitmap & (bit - 1));
+
+			if ((b.bitmap & bit) == 0) {
+				a.slot(ia).forEach(visitor::onRemoved);
+				continue;
+			}
+			if ((a.bitmap & bit) == 0) {
+				b.slot(ib).forEach(visitor::onAdded);
+				continue;
+			}
+
+			Object ka = a.array[ia];
+			Object kb = b.array[ib];
+			Object va = a.array[ia + 1];
+			Object vb = b.array[ib + 1];
+
+			if (ka == null && kb == null) {
+				diff((Trie) va, (Trie) vb, visitor);
+			} else if (ka == null || kb == null) {
+				// Entry on one side and child on the other side
+				diffEntries(a.slot(ia), b.slot(ib), visitor);
+			} else if (!ka.equals(kb)) {
+				visitor.onRemoved(ka, va);
+				visitor.onAdded(kb, vb);
+			} else if (va != vb && (va == null || !va.equals(vb))) {
+				visitor.onChanged(ka, va, vb);
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Compare all entries of 2 nodes. This is used where the nodes does not have
+	 * the same shape, which is rare since both nodes must contain the same
+	 * hashes.
+	 * </p>
+	 */
+	private static void diffEntries(Trie a, Trie b, DiffVisitor<Object, Object> visitor) {
+		Map<Object, Object> remaining = new HashMap<>();
+		a.forEach(remaining::put);
+
+		b.forEach((key, value) -> {
+			if (!remaining.containsKey(key)) {
+				visitor.onAdded(key, value);
+				return;
+			}
+
+			Object oldValue = remaining.remove(key);
+			if (oldValue != value && (oldValue == null || !oldValue.equals(value)))
+				visitor.onChanged(key, oldValue, value);
+		});
+
+		remaining.forEach(visitor::onRemoved);
+	}
+
+	@Override
+	public Set<Map.Entry<K, V>> entrySet() {
+		Set<Map.Entry<K, V>> entries = entrySet;
+
+		if (entries == null) entries = entrySet = new AbstractSet<>() {
+			@Override
+			public int size() {
+				return size;
+			}
+
+			@Override
+			public Iterator<Map.Entry<K, V>> iterator() {
+				return new TrieIterator<>(root) {
+					@Override
+					@SuppressWarnings("unchecked")
+					Map.Entry<K, V> current() {
+						return new AbstractMap.SimpleImmutableEntry<>((K) nextKey, (V) nextValue);
+					}
+				};
+			}
+		};
+
+		return entries;
+	}
+
+	/**
+	 * <p>
+	 * Iterate keys without creating an entry for each key.
+	 * </p>
+	 */
+	Iterator<K> keyIterator() {
+		return new TrieIterator<>(root) {
+			@Override
+			@SuppressWarnings("unchecked")
+			K current() {
+				return (K) nextKey;
+			}
+		};
+	}
+
+	/**
+	 * <p>
+	 * A node of the trie. Nodes with {@code bitmap} set to {@code 0} are
+	 * collision nodes, which store keys with the same hash in a plain list of
+	 * pairs.
+	 * </p>
+	 */
+	private static final class Trie {
+		final Object[] array;
+		final int bitmap;
+
+		Trie(Object[] array, int bitmap) {
+			this.array = array;
+			this.bitmap = bitmap;
+		}
+
+		Object find(Object key, int hash, int shift) {
+			if (bitmap == 0) {
+				for (int i = 0; i < array.length; i += 2) if (key.equals(array[i])) return array[i + 1];
+				return NOT_FOUND;
+			}
+
+			int bit = 1 << ((hash >>> shift) & MASK);
+			if ((bitmap & bit) == 0) return NOT_FOUND;
+			int index = 2 * Integer.bitCount(bitmap & (bit - 1));
+			Object k = array[index];
+			if (k == null) return ((Trie) array[index + 1]).find(key, hash, shift + BITS);
+			return key.equals(k) ? array[index + 1] : NOT_FOUND;
+		}
+
+		Trie put(Object key, Object value, int hash, int shift, boolean[] added) {
+			if (bitmap == 0) return putCollision(key, value, hash, shift, added);
+			int bit = 1 << ((hash >>> shift) & MASK);
+			int index = 2 * Integer.bitCount(bitmap & (bit - 1));
+
+			if ((bitmap & bit) == 0) {
+				added[0] = true;
+				Object[] newArray = new Object[array.length + 2];
+				System.arraycopy(array, 0, newArray, 0, index);
+				newArray[index] = key;
+				newArray[index + 1] = value;
+				System.arraycopy(array, index, newArray, index + 2, array.length - index);
+				return new Trie(newArray, bitmap | bit);
+			}
+
+			Object k = array[index];
+			Object v = array[index + 1];
+
+			if (k == null) {
+				Trie child = ((Trie) v).put(key, value, hash, shift + BITS, added);
+				return child == v ? this : with(index, null, child);
+			}
+
+			if (key.equals(k)) return v == value ? this : with(index, k, value);
+			added[0] = true;
+			return with(index, null, pair(k, v, hash(k), key, value, hash, shift + BITS));
+		}
+
+		private Trie putCollision(Object key, Object value, int hash, int shift, boolean[] added) {
+			int collisionHash = hash(array[0]);
+
+			if (hash != collisionHash) {
+				// Push this node one level down and add the key next to it
+				Trie parent = new Trie(new Object[] { null, this }, 1 << ((collisionHash >>> shift) & MASK));
+				return parent.put(key, value, hash, shift, added);
+			}
+
+			for (int i = 0; i < array.length; i += 2) {
+				if (key.equals(array[i])) return array[i + 1] == value ? this : with(i, array[i], value);
+			}
+
+			added[0] = true;
+			Object[] newArray = new Object[array.length + 2];
+			System.arraycopy(array, 0, newArray, 0, array.length);
+			newArray[array.length] = key;
+			newArray[array.length + 1] = value;
+			return new Trie(newArray, 0);
+		}
+
+		private static Trie pair(Object k1, Object v1, int h1, Object k2, Object v2, int h2, int shift) {
+			if (h1 == h2 || shift >= BITS * MAX_DEPTH) return new Trie(new Object[] { k1, v1, k2, v2 }, 0);
+			int b1 = (h1 >>> shift) & MASK;
+			int b2 = (h2 >>> shift) & MASK;
+			if (b1 == b2) return new Trie(new Object[] { null, pair(k1, v1, h1, k2, v2, h2, shift + BITS) }, 1 << b1);
+			Object[] array = b1 < b2 ? new Object[] { k1, v1, k2, v2 } : new Object[] { k2, v2, k1, v1 };
+			return new Trie(array, (1 << b1) | (1 << b2));
+		}
+
+		private Trie with(int index, Object key, Object value) {
+			Object[] newArray = array.clone();
+			newArray[index] = key;
+			newArray[index + 1] = value;
+			return new Trie(newArray, bitmap);
+		}
+
+		/**
+		 * @return The new node, this node if the key is not found or {@code null} if
+		 *         the node is empty after removal.
+		 */
+		Trie remove(Object key, int hash, int shift) {
+			if (bitmap == 0) {
+				for (int i = 0; i < array.length; i += 2) {
+					if (key.equals(array[i])) return without(i, 0);
+				}
+
+				return this;
+			}
+
+			int bit = 1 << ((hash >>> shift) & MASK);
+			if ((bitmap & bit) == 0) return this;
+			int index = 2 * Integer.bitCount(bitmap & (bit - 1));
+			Object k = array[index];
+
+			if (k == null) {
+				Trie child = (Trie) array[index + 1];
+				Trie newChild = child.remove(key, hash, shift + BITS);
+				if (newChild == child) return this;
+				if (newChild == null) return without(index, bitmap & ~bit);
+
+				// Inline child with a single entry, so the trie stays as shallow as
+				// possible after removals
+				if (newChild.array.length == 2 && newChild.array[0] != null)
+					return with(index, newChild.array[0], newChild.array[1]);
+				return with(index, null, newChild);
+			}
+
+			return key.equals(k) ? without(index, bitmap & ~bit) : this;
+		}
+
+		private Trie without(int index, int newBitmap) {
+			if (array.length == 2) return null;
+			Object[] newArray = new Object[array.length - 2];
+			System.arraycopy(array, 0, newArray, 0, index);
+			System.arraycopy(array, index + 2, newArray, index, array.length - index - 2);
+			return new Trie(newArray, newBitmap);
+		}
+
+		/**
+		 * <p>
+		 * Get the pair at index as a node, which is the child node if the pair holds
+		 * a child or a single-entry collision node otherwise.
+		 * </p>
+		 */
+		Trie slot(int index) {
+			if (array[index] == null) return (Trie) array[index + 1];
+			return new Trie(new Object[] { array[index], array[index + 1] }, 0);
+		}
+
+		void forEach(BiConsumer<Object, Object> action) {
+			for (int i = 0; i < array.length; i += 2) {
+				if (array[i] == null) ((Trie) array[i + 1]).forEach(action);
+				else action.accept(array[i], array[i + 1]);
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Visitor of differences between 2 maps.
+	 * </p>
+	 *
+	 * @see PersistentMap#diff(PersistentMap, DiffVisitor)
+	 */
+	static interface DiffVisitor<K, V> {
+		void onAdded(K key, V value);
+
+		void onRemoved(K key, V value);
+
+		void onChanged(K key, V oldValue, V newValue);
+	}
+
+	private static abstract class TrieIterator<T> implements Iterator<T> {
+		private final Object[][] arrays = new Object[MAX_DEPTH + 1][];
+		private final int[] positions = new int[MAX_DEPTH + 1];
+		private int depth;
+		Object nextKey;
+		Object nextValue;
+		private boolean ready;
+
+		TrieIterator(Trie root) {
+			depth = root != null ? 0 : -1;
+			if (root != null) arrays[0] = root.array;
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (ready) return true;
+
+			while (depth >= 0) {
+				Object[] array = arrays[depth];
+				int position = positions[depth];
+
+				if (position >= array.length) {
+					depth--;
+					continue;
+				}
+
+				positions[depth] = position + 2;
+
+				if (array[position] == null) {
+					arrays[++depth] = ((Trie) array[position + 1]).array;
+					positions[depth] = 0;
+					continue;
+				}
+
+				nextKey = array[position];
+				nextValue = array[position + 1];
+				return ready = true;
+			}
+
+			return false;
+		}
+
+		abstract T current();
+
+		@Override
+		public T next() {
+			if (!hasNext()) throw new NoSuchElementException();
+			ready = false;
+			return current();
+		}
+	}
+}
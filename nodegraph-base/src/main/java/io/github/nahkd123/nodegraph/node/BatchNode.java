@@ -0,0 +1,36 @@
+package io.github.nahkd123.nodegraph.node;
+
+/**
+ * <p>
+ * An optional extension of {@link Node} that can process a whole batch of
+ * samples at once. When evaluating a batch (see
+ * {@link io.github.nahkd123.nodegraph.graph.CompiledGraph#newBatchEvalRound()}),
+ * {@link #processBatch(BatchProcessContext)} will be called once per batch
+ * instead of calling {@link #process(NodeProcessContext)} once per sample.
+ * </p>
+ * <p>
+ * Inputs and outputs of a batch are exposed as plain arrays (columns), which
+ * allows implementations to write tight loops that the JIT compiler can
+ * vectorize, or use the Vector API ({@code jdk.incubator.vector}) where it is
+ * available.
+ * </p>
+ * <p>
+ * {@link #process(NodeProcessContext)} will still be used when the node is
+ * evaluated outside a batch, so both methods must produce the same results.
+ * </p>
+ * 
+ * @param <S> Type of the object that hold internal node states.
+ * @param <E> Type of environment that the node can interact while processing.
+ */
+public interface BatchNode<S, E> extends Node<S, E> {
+	/**
+	 * <p>
+	 * Process this node over a batch of samples.
+	 * </p>
+	 * 
+	 * @param context The context that allows this node to access its internal
+	 *                states, environment of each sample, input columns and
+	 *                output columns.
+	 */
+	void processBatch(BatchProcessContext<S, E> context);
+}
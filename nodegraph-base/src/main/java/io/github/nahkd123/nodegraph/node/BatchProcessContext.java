@@ -0,0 +1,119 @@
+package io.github.nahkd123.nodegraph.node;
+
+import io.github.nahkd123.nodegraph.socket.InputSocket;
+import io.github.nahkd123.nodegraph.socket.OutputSocket;
+
+/**
+ * <p>
+ * The context that will be provided to {@link BatchNode} when processing a
+ * batch of samples. All columns returned from this context may be longer than
+ * {@link #size()}; only the first {@link #size()} elements are used.
+ * </p>
+ * <p>
+ * Input columns must not be modified, as they may be shared with outputs of
+ * other nodes. Output columns are only valid for storage type of the socket:
+ * use {@link #getDoubleOutput(OutputSocket)} for {@code double} or
+ * {@code float} sockets, {@link #getLongOutput(OutputSocket)} for {@code int},
+ * {@code long} or {@code boolean} sockets (booleans are stored as {@code 0} or
+ * {@code 1}) and {@link #getObjectOutput(OutputSocket)} for everything else.
+ * </p>
+ * 
+ * @param <S> Type of the object that hold internal node states.
+ * @param <E> Type of environment that the node can interact while processing.
+ */
+public interface BatchProcessContext<S, E> {
+	/**
+	 * <p>
+	 * Get the number of samples in this batch.
+	 * </p>
+	 * 
+	 * @return The number of samples.
+	 */
+	int size();
+
+	/**
+	 * <p>
+	 * Get the internal states of current node instance. The states are shared
+	 * between all samples.
+	 * </p>
+	 * 
+	 * @return The node internal states.
+	 */
+	S getStates();
+
+	/**
+	 * <p>
+	 * Get the environment of a sample.
+	 * </p>
+	 * 
+	 * @param sample The index of sample.
+	 * @return The environment.
+	 */
+	E getEnvironment(int sample);
+
+	/**
+	 * <p>
+	 * Get the input column as {@code double} values.
+	 * </p>
+	 * 
+	 * @param socket The input socket.
+	 * @return The input column.
+	 */
+	double[] getDoubles(InputSocket<? extends Number> socket);
+
+	/**
+	 * <p>
+	 * Get the input column as {@code long} values.
+	 * </p>
+	 * 
+	 * @param socket The input socket.
+	 * @return The input column.
+	 */
+	long[] getLongs(InputSocket<?> socket);
+
+	/**
+	 * <p>
+	 * Get the input column as objects. Primitive values will be boxed.
+	 * </p>
+	 * 
+	 * @param socket The input socket.
+	 * @return The input column.
+	 */
+	Object[] getObjects(InputSocket<?> socket);
+
+	/**
+	 * <p>
+	 * Get the output column of {@code double} or {@code float} socket.
+	 * </p>
+	 * 
+	 * @param socket The output socket.
+	 * @return The output column.
+	 * @throws IllegalArgumentException if the socket is not {@code double} or
+	 *                                  {@code float}.
+	 */
+	double[] getDoubleOutput(OutputSocket<?> socket);
+
+	/**
+	 * <p>
+	 * Get the output column of {@code int}, {@code long} or {@code boolean}
+	 * socket.
+	 * </p>
+	 * 
+	 * @param socket The output socket.
+	 * @return The output column.
+	 * @throws IllegalArgumentException if the socket is not {@code int},
+	 *                                  {@code long} or {@code boolean}.
+	 */
+	long[] getLongOutput(OutputSocket<?> socket);
+
+	/**
+	 * <p>
+	 * Get the output column of socket with non-primitive type.
+	 * </p>
+	 * 
+	 * @param socket The output socket.
+	 * @return The output column.
+	 * @throws IllegalArgumentException if the socket has primitive type.
+	 */
+	Object[] getObjectOutput(OutputSocket<?> socket);
+}
@@ -27,20 +27,24 @@ public interface Node<S, E> {
 	 */
 	List<Socket<?>> getSockets();
 
-	@SuppressWarnings("unchecked")
+	/**
+	 * <p>
+	 * Get input sockets in the same order as {@link #getSockets()}. The result is
+	 * taken from {@link NodeDescriptor}, which is built on the first call.
+	 * </p>
+	 */
 	default Collection<InputSocket<?>> getInputSockets() {
-		return (List<InputSocket<?>>) (Object) getSockets().stream()
-			.map(s -> s instanceof InputSocket<?> input ? input : null)
-			.filter(s -> s != null)
-			.toList();
+		return NodeDescriptor.of(this).getInputs();
 	}
 
-	@SuppressWarnings("unchecked")
+	/**
+	 * <p>
+	 * Get output sockets in the same order as {@link #getSockets()}. The result
+	 * is taken from {@link NodeDescriptor}, which is built on the first call.
+	 * </p>
+	 */
 	default Collection<OutputSocket<?>> getOutputSockets() {
-		return (List<OutputSocket<?>>) (Object) getSockets().stream()
-			.map(s -> s instanceof OutputSocket<?> input ? input : null)
-			.filter(s -> s != null)
-			.toList();
+		return NodeDescriptor.of(this).getOutputs();
 	}
 
 	/**
@@ -67,6 +71,49 @@ public interface Node<S, E> {
 		return true;
 	}
 
+	/**
+	 * <p>
+	 * Check whether this node can be processed concurrently with other nodes. A
+	 * parallel evaluation round (see
+	 * {@link io.github.nahkd123.nodegraph.graph.CompiledGraph#newParallelEvalRound(Object, java.util.concurrent.Executor)})
+	 * will process independent nodes on multiple threads at the same time, but
+	 * nodes that are not thread-safe will never be processed at the same time as
+	 * each other.
+	 * </p>
+	 * <p>
+	 * Processing a single node instance is never done concurrently, so the
+	 * internal states do not need to be thread-safe. However, nodes that access
+	 * the environment must override this method and return {@code false}, unless
+	 * the environment is thread-safe.
+	 * </p>
+	 * 
+	 * @return Whether this node can be processed concurrently with other nodes.
+	 */
+	default boolean isThreadSafe() {
+		return true;
+	}
+
+	/**
+	 * <p>
+	 * Check whether this node is pure. Outputs of a pure node only depend on the
+	 * values of its inputs: the node does not read or modify its internal states
+	 * or the environment. When a
+	 * {@link io.github.nahkd123.nodegraph.graph.MemoCache} is attached to the
+	 * graph, outputs of pure nodes are memoized by their input values and shared
+	 * between evaluation rounds.
+	 * </p>
+	 * <p>
+	 * Values of inputs must implement {@link Object#equals(Object)} and
+	 * {@link Object#hashCode()}, which is already the case for immutable socket
+	 * values.
+	 * </p>
+	 * 
+	 * @return Whether this node is pure.
+	 */
+	default boolean isPure() {
+		return false;
+	}
+
 	/**
 	 * <p>
 	 * Process this node. During processing, to indicate the node failed while
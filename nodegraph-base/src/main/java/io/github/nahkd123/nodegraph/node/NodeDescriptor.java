@@ -0,0 +1,203 @@
+package io.github.nahkd123.nodegraph.node;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.github.nahkd123.nodegraph.socket.InputSocket;
+import io.github.nahkd123.nodegraph.socket.OutputSocket;
+import io.github.nahkd123.nodegraph.socket.Socket;
+
+/**
+ * <p>
+ * Precomputed socket metadata of a {@link Node}: the input and output sockets
+ * in declaration order, and lookup tables from socket names and sockets to
+ * their indices. Descriptors are built once per node and cached, so looking up
+ * sockets does not go through {@link Node#getSockets()} each time.
+ * </p>
+ * <p>
+ * Sockets are declared by node objects rather than node classes (the same
+ * node class can be instantiated with different sockets), so descriptors are
+ * cached per node object. The cache only holds weak references to nodes. The
+ * sockets of a node must not change after the descriptor is created.
+ * </p>
+ * <p>
+ * Descriptors are immutable, and looking up a cached descriptor does not take
+ * any lock, so they can be shared by threads that deserialize graphs in
+ * parallel.
+ * </p>
+ */
+public final class NodeDescriptor {
+	private static final Map<Key, NodeDescriptor> CACHE = new ConcurrentHashMap<>();
+	private static final ReferenceQueue<Node<?, ?>> STALE_KEYS = new ReferenceQueue<>();
+
+	private final List<InputSocket<?>> inputs;
+	private final List<OutputSocket<?>> outputs;
+	private final Map<String, Integer> inputNames = new HashMap<>();
+	private final Map<String, Integer> outputNames = new HashMap<>();
+	private final Map<InputSocket<?>, Integer> inputIndices = new HashMap<>();
+	private final Map<OutputSocket<?>, Integer> outputIndices = new HashMap<>();
+
+	private NodeDescriptor(Node<?, ?> node) {
+		List<InputSocket<?>> inputs = new ArrayList<>();
+		List<OutputSocket<?>> outputs = new ArrayList<>();
+
+		for (Socket<?> socket : node.getSockets()) {
+			if (socket instanceof InputSocket<?> input) {
+				inputNames.putIfAbsent(input.name(), inputs.size());
+				inputIndices.putIfAbsent(input, inputs.size());
+				inputs.add(input);
+			} else if (socket instanceof OutputSocket<?> output) {
+				outputNames.putIfAbsent(output.name(), outputs.size());
+				outputIndices.putIfAbsent(output, outputs.size());
+				outputs.add(output);
+			}
+		}
+
+		this.inputs = List.copyOf(inputs);
+		this.outputs = List.copyOf(outputs);
+	}
+
+	/**
+	 * <p>
+	 * Get the descriptor of a node, creating it if this is the first time the
+	 * node is described.
+	 * </p>
+	 */
+	public static NodeDescriptor of(Node<?, ?> node) {
+		NodeDescriptor descriptor = CACHE.get(new LookupKey(node));
+		if (descriptor != null) return descriptor;
+		expungeStaleKeys();
+		descriptor = new NodeDescriptor(node);
+		NodeDescriptor previous = CACHE.putIfAbsent(new WeakKey(node), descriptor);
+		return previous != null ? previous : descriptor;
+	}
+
+	private static void expungeStaleKeys() {
+		Reference<?> key;
+		while ((key = STALE_KEYS.poll()) != null) CACHE.remove(key);
+	}
+
+	/**
+	 * @return Input sockets, in the same order as {@link Node#getSockets()}.
+	 */
+	public List<InputSocket<?>> getInputs() { return inputs; }
+
+	/**
+	 * @return Output sockets, in the same order as {@link Node#getSockets()}.
+	 */
+	public List<OutputSocket<?>> getOutputs() { return outputs; }
+
+	/**
+	 * @return Index of input socket in {@link #getInputs()}, or {@code -1} if
+	 *         the node does not have the socket.
+	 */
+	public int indexOf(InputSocket<?> socket) {
+		Integer index = inputIndices.get(socket);
+		return index != null ? index : -1;
+	}
+
+	/**
+	 * @return Index of output socket in {@link #getOutputs()}, or {@code -1} if
+	 *         the node does not have the socket.
+	 */
+	public int indexOf(OutputSocket<?> socket) {
+		Integer index = outputIndices.get(socket);
+		return index != null ? index : -1;
+	}
+
+	/**
+	 * @return Index of the first input socket with given name, or {@code -1} if
+	 *         there is no such socket.
+	 */
+	public int inputIndexOf(String name) {
+		Integer index = inputNames.get(name);
+		return index != null ? index : -1;
+	}
+
+	/**
+	 * @return Index of the first output socket with given name, or {@code -1}
+	 *         if there is no such socket.
+	 */
+	public int outputIndexOf(String name) {
+		Integer index = outputNames.get(name);
+		return index != null ? index : -1;
+	}
+
+	/**
+	 * @return The first input socket with given name, or {@code null} if there
+	 *         is no such socket.
+	 */
+	public InputSocket<?> getInput(String name) {
+		Integer index = inputNames.get(name);
+		return index != null ? inputs.get(index) : null;
+	}
+
+	/**
+	 * @return The first output socket with given name, or {@code null} if there
+	 *         is no such socket.
+	 */
+	public OutputSocket<?> getOutput(String name) {
+		Integer index = outputNames.get(name);
+		return index != null ? outputs.get(index) : null;
+	}
+
+	/**
+	 * <p>
+	 * Cache key that compares nodes by identity. {@link WeakKey} is stored in the
+	 * cache, while {@link LookupKey} is only used for lookups, so looking up does
+	 * not create a weak reference.
+	 * </p>
+	 */
+	private static interface Key {
+		Node<?, ?> node();
+
+		default boolean matches(Object obj) {
+			if (obj == this) return true;
+			if (!(obj instanceof Key other)) return false;
+			Node<?, ?> node = node();
+			return node != null && node == other.node();
+		}
+	}
+
+	private static final class WeakKey extends WeakReference<Node<?, ?>> implements Key {
+		private final int hash;
+
+		private WeakKey(Node<?, ?> node) {
+			super(node, STALE_KEYS);
+			this.hash = System.identityHashCode(node);
+		}
+
+		@Override
+		public Node<?, ?> node() {
+			return get();
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return matches(obj);
+		}
+	}
+
+	private static record LookupKey(Node<?, ?> node) implements Key {
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(node);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return matches(obj);
+		}
+	}
+}
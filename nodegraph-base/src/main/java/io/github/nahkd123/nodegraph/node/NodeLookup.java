@@ -0,0 +1,60 @@
+package io.github.nahkd123.nodegraph.node;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * <p>
+ * Thread-safe cache of nodes resolved from their IDs, which can be shared by
+ * threads that deserialize or decode graphs in parallel. Each ID is resolved
+ * once with the wrapped resolver, and the {@link NodeDescriptor} of the
+ * resolved node is built at the same time, so workers only read immutable
+ * entries afterward.
+ * </p>
+ * <p>
+ * The wrapped resolver is never called by more than one thread at a time, so
+ * existing resolvers that are not thread-safe (like a lookup in a registry that
+ * is populated lazily) can be used as is. Looking up a cached ID does not take
+ * any lock. IDs without a node are cached as well, and resolve to
+ * {@code null}.
+ * </p>
+ *
+ * @param <E> Type of environment object.
+ */
+public final class NodeLookup<E> implements Function<String, Node<?, E>> {
+	private final Function<String, Node<?, E>> idToNode;
+	private final Map<String, Optional<Node<?, E>>> nodes = new ConcurrentHashMap<>();
+
+	private NodeLookup(Function<String, Node<?, E>> idToNode) {
+		this.idToNode = idToNode;
+	}
+
+	/**
+	 * <p>
+	 * Wrap a resolver in a lookup cache. If {@code idToNode} is already a lookup
+	 * cache, it is returned as is.
+	 * </p>
+	 */
+	public static <E> NodeLookup<E> of(Function<String, Node<?, E>> idToNode) {
+		if (idToNode instanceof NodeLookup<E> lookup) return lookup;
+		return new NodeLookup<>(idToNode);
+	}
+
+	@Override
+	public Node<?, E> apply(String id) {
+		Optional<Node<?, E>> node = nodes.get(id);
+		if (node == null) node = resolve(id);
+		return node.orElse(null);
+	}
+
+	private synchronized Optional<Node<?, E>> resolve(String id) {
+		Optional<Node<?, E>> node = nodes.get(id);
+		if (node != null) return node;
+		node = Optional.ofNullable(idToNode.apply(id));
+		node.ifPresent(NodeDescriptor::of);
+		nodes.put(id, node);
+		return node;
+	}
+}
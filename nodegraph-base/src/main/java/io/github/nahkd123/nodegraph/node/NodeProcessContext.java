@@ -59,4 +59,139 @@ public interface NodeProcessContext<S, E> {
 	 * @param value  The value.
 	 */
 	<V> void set(OutputSocket<V> socket, V value);
+
+	/**
+	 * <p>
+	 * Get a value from input socket as {@code int}. If the value is stored as
+	 * primitive (for example, the socket is connected to output socket created
+	 * from {@link OutputSocket#ofInt(String)}), this method will not box the
+	 * value.
+	 * </p>
+	 *
+	 * @param socket The input socket.
+	 * @return The value.
+	 * @see #get(InputSocket)
+	 */
+	default int getInt(InputSocket<? extends Number> socket) {
+		return get(socket).intValue();
+	}
+
+	/**
+	 * <p>
+	 * Get a value from input socket as {@code long} without boxing.
+	 * </p>
+	 *
+	 * @param socket The input socket.
+	 * @return The value.
+	 * @see #getInt(InputSocket)
+	 */
+	default long getLong(InputSocket<? extends Number> socket) {
+		return get(socket).longValue();
+	}
+
+	/**
+	 * <p>
+	 * Get a value from input socket as {@code float} without boxing.
+	 * </p>
+	 *
+	 * @param socket The input socket.
+	 * @return The value.
+	 * @see #getInt(InputSocket)
+	 */
+	default float getFloat(InputSocket<? extends Number> socket) {
+		return get(socket).floatValue();
+	}
+
+	/**
+	 * <p>
+	 * Get a value from input socket as {@code double} without boxing.
+	 * </p>
+	 *
+	 * @param socket The input socket.
+	 * @return The value.
+	 * @see #getInt(InputSocket)
+	 */
+	default double getDouble(InputSocket<? extends Number> socket) {
+		return get(socket).doubleValue();
+	}
+
+	/**
+	 * <p>
+	 * Get a value from input socket as {@code boolean} without boxing.
+	 * </p>
+	 *
+	 * @param socket The input socket.
+	 * @return The value.
+	 * @see #getInt(InputSocket)
+	 */
+	default boolean getBoolean(InputSocket<Boolean> socket) {
+		return get(socket);
+	}
+
+	/**
+	 * <p>
+	 * Set a {@code int} value to output socket. If the value is stored as
+	 * primitive (for example, the socket is created from
+	 * {@link OutputSocket#ofInt(String)}), this method will not box the value.
+	 * </p>
+	 *
+	 * @param socket The output socket.
+	 * @param value  The value.
+	 * @see #set(OutputSocket, Object)
+	 */
+	default void setInt(OutputSocket<? super Integer> socket, int value) {
+		set(socket, value);
+	}
+
+	/**
+	 * <p>
+	 * Set a {@code long} value to output socket without boxing.
+	 * </p>
+	 *
+	 * @param socket The output socket.
+	 * @param value  The value.
+	 * @see #setInt(OutputSocket, int)
+	 */
+	default void setLong(OutputSocket<? super Long> socket, long value) {
+		set(socket, value);
+	}
+
+	/**
+	 * <p>
+	 * Set a {@code float} value to output socket without boxing.
+	 * </p>
+	 *
+	 * @param socket The output socket.
+	 * @param value  The value.
+	 * @see #setInt(OutputSocket, int)
+	 */
+	default void setFloat(OutputSocket<? super Float> socket, float value) {
+		set(socket, value);
+	}
+
+	/**
+	 * <p>
+	 * Set a {@code double} value to output socket without boxing.
+	 * </p>
+	 *
+	 * @param socket The output socket.
+	 * @param value  The value.
+	 * @see #setInt(OutputSocket, int)
+	 */
+	default void setDouble(OutputSocket<? super Double> socket, double value) {
+		set(socket, value);
+	}
+
+	/**
+	 * <p>
+	 * Set a {@code boolean} value to output socket without boxing.
+	 * </p>
+	 *
+	 * @param socket The output socket.
+	 * @param value  The value.
+	 * @see #setInt(OutputSocket, int)
+	 */
+	default void setBoolean(OutputSocket<? super Boolean> socket, boolean value) {
+		set(socket, value);
+	}
 }
@@ -1,12 +1,39 @@
 package io.github.nahkd123.nodegraph.socket;
 
+import io.github.nahkd123.nodegraph.node.NodeProcessContext;
+
 /**
  * <p>
  * Represent an input socket that accept input from either incoming connection
  * or user-controlled initial value.
  * </p>
+ * <p>
+ * Sockets with primitive type (like {@code double.class}) can be created with
+ * {@link #ofDouble(String, double)} and similar methods. Values of these
+ * sockets can be obtained without boxing with methods like
+ * {@link NodeProcessContext#getDouble(InputSocket)}.
+ * </p>
  * 
  * @param <V> Type of value that this socket will consume.
  */
 public record InputSocket<V>(Class<V> type, String name, V defaultValue) implements Socket<V> {
+	public static InputSocket<Integer> ofInt(String name, int defaultValue) {
+		return new InputSocket<>(int.class, name, defaultValue);
+	}
+
+	public static InputSocket<Long> ofLong(String name, long defaultValue) {
+		return new InputSocket<>(long.class, name, defaultValue);
+	}
+
+	public static InputSocket<Float> ofFloat(String name, float defaultValue) {
+		return new InputSocket<>(float.class, name, defaultValue);
+	}
+
+	public static InputSocket<Double> ofDouble(String name, double defaultValue) {
+		return new InputSocket<>(double.class, name, defaultValue);
+	}
+
+	public static InputSocket<Boolean> ofBoolean(String name, boolean defaultValue) {
+		return new InputSocket<>(boolean.class, name, defaultValue);
+	}
 }
@@ -1,11 +1,38 @@
 package io.github.nahkd123.nodegraph.socket;
 
+import io.github.nahkd123.nodegraph.node.NodeProcessContext;
+
 /**
  * <p>
  * Represent a socket that produce outputs for other nodes or to requester.
  * </p>
+ * <p>
+ * Sockets with primitive type (like {@code double.class}) can be created with
+ * {@link #ofDouble(String)} and similar methods. Compiled graphs store values
+ * of these sockets in primitive arrays, which can be populated without boxing
+ * with methods like {@link NodeProcessContext#setDouble(OutputSocket, double)}.
+ * </p>
  * 
  * @param <V> Type of value that this socket will produce.
  */
 public record OutputSocket<V>(Class<V> type, String name) implements Socket<V> {
+	public static OutputSocket<Integer> ofInt(String name) {
+		return new OutputSocket<>(int.class, name);
+	}
+
+	public static OutputSocket<Long> ofLong(String name) {
+		return new OutputSocket<>(long.class, name);
+	}
+
+	public static OutputSocket<Float> ofFloat(String name) {
+		return new OutputSocket<>(float.class, name);
+	}
+
+	public static OutputSocket<Double> ofDouble(String name) {
+		return new OutputSocket<>(double.class, name);
+	}
+
+	public static OutputSocket<Boolean> ofBoolean(String name) {
+		return new OutputSocket<>(boolean.class, name);
+	}
 }
@@ -0,0 +1,588 @@
+package io.github.nahkd123.nodegraph.graph;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+import com.sun.management.ThreadMXBean;
+
+import io.github.nahkd123.nodegraph.node.BatchNode;
+import io.github.nahkd123.nodegraph.node.BatchProcessContext;
+import io.github.nahkd123.nodegraph.node.Node;
+import io.github.nahkd123.nodegraph.node.NodeProcessContext;
+import io.github.nahkd123.nodegraph.socket.InputSocket;
+import io.github.nahkd123.nodegraph.socket.OutputSocket;
+import io.github.nahkd123.nodegraph.socket.Socket;
+
+class CompiledGraphTest {
+	static class AddNode implements Node<Object, Void> {
+		InputSocket<Number> inputA = new InputSocket<>(Number.class, "inputA", 0);
+		InputSocket<Number> inputB = new InputSocket<>(Number.class, "inputB", 0);
+		OutputSocket<Number> output = new OutputSocket<>(Number.class, "output");
+
+		@Override
+		public List<Socket<?>> getSockets() { return List.of(inputA, inputB, output); }
+
+		@Override
+		public Object initialize() {
+			return new Object();
+		}
+
+		@Override
+		public void process(NodeProcessContext<Object, Void> context) {
+			double a = context.get(inputA).doubleValue();
+			double b = context.get(inputB).doubleValue();
+			context.set(output, a + b);
+		}
+	}
+
+	static class CounterNode implements Node<int[], Void> {
+		OutputSocket<Number> output = new OutputSocket<>(Number.class, "output");
+
+		@Override
+		public List<Socket<?>> getSockets() { return List.of(output); }
+
+		@Override
+		public int[] initialize() {
+			return new int[1];
+		}
+
+		@Override
+		public boolean shouldCache() {
+			return false;
+		}
+
+		@Override
+		public void process(NodeProcessContext<int[], Void> context) {
+			context.set(output, ++context.getStates()[0]);
+		}
+	}
+
+	static class MaxNode implements Node<Void, Void> {
+		InputSocket<Number> inputA = new InputSocket<>(Number.class, "inputA", 0);
+		InputSocket<Number> inputB = new InputSocket<>(Number.class, "inputB", 0);
+		OutputSocket<Number> output = new OutputSocket<>(Number.class, "output");
+		boolean cache;
+
+		MaxNode(boolean cache) {
+			this.cache = cache;
+		}
+
+		@Override
+		public List<Socket<?>> getSockets() { return List.of(inputA, inputB, output); }
+
+		@Override
+		public Void initialize() {
+			return null;
+		}
+
+		@Override
+		public boolean shouldCache() {
+			return cache;
+		}
+
+		@Override
+		public void process(NodeProcessContext<Void, Void> context) {
+			Number a = context.get(inputA);
+			Number b = context.get(inputB);
+			context.set(output, a.doubleValue() >= b.doubleValue() ? a : b);
+		}
+	}
+
+	static class DoubleAddNode implements Node<Void, Void> {
+		InputSocket<Double> inputA = InputSocket.ofDouble("inputA", 0);
+		InputSocket<Double> inputB = InputSocket.ofDouble("inputB", 0);
+		OutputSocket<Double> output = OutputSocket.ofDouble("output");
+
+		@Override
+		public List<Socket<?>> getSockets() { return List.of(inputA, inputB, output); }
+
+		@Override
+		public Void initialize() {
+			return null;
+		}
+
+		@Override
+		public void process(NodeProcessContext<Void, Void> context) {
+			context.setDouble(output, context.getDouble(inputA) + context.getDouble(inputB));
+		}
+	}
+
+	static class SampleNode implements Node<Void, Double> {
+		OutputSocket<Double> output = OutputSocket.ofDouble("output");
+
+		@Override
+		public List<Socket<?>> getSockets() { return List.of(output); }
+
+		@Override
+		public Void initialize() {
+			return null;
+		}
+
+		@Override
+		public void process(NodeProcessContext<Void, Double> context) {
+			context.setDouble(output, context.getEnvironment());
+		}
+	}
+
+	static class ScaleNode implements BatchNode<Void, Double> {
+		InputSocket<Double> input = InputSocket.ofDouble("input", 0);
+		InputSocket<Number> factor = new InputSocket<>(Number.class, "factor", 1);
+		OutputSocket<Double> output = OutputSocket.ofDouble("output");
+
+		@Override
+		public List<Socket<?>> getSockets() { return List.of(input, factor, output); }
+
+		@Override
+		public Void initialize() {
+			return null;
+		}
+
+		@Override
+		public void process(NodeProcessContext<Void, Double> context) {
+			context.setDouble(output, context.getDouble(input) * context.getDouble(factor));
+		}
+
+		@Override
+		public void processBatch(BatchProcessContext<Void, Double> context) {
+			double[] in = context.getDoubles(input);
+			double[] factors = context.getDoubles(factor);
+			double[] out = context.getDoubleOutput(output);
+			for (int i = 0; i < context.size(); i++) out[i] = in[i] * factors[i];
+		}
+	}
+
+	static class PureNode extends AddNode {
+		int processed = 0;
+
+		@Override
+		public boolean isPure() { return true; }
+
+		@Override
+		public void process(NodeProcessContext<Object, Void> context) {
+			processed++;
+			super.process(context);
+		}
+	}
+
+	static final AddNode ADD_NODE = new AddNode();
+	static final DoubleAddNode DOUBLE_ADD_NODE = new DoubleAddNode();
+	static final CounterNode COUNTER_NODE = new CounterNode();
+	static final MaxNode MAX_NODE = new MaxNode(true);
+	static final MaxNode UNCACHED_MAX_NODE = new MaxNode(false);
+
+	@Test
+	void testDiamond() {
+		NodeGraph<Void> graph = new NodeGraph<>();
+		NodeInstance<Object, Void> a = graph.addInstance(new NodeInstance<>(ADD_NODE, null));
+		NodeInstance<Object, Void> b = graph.addInstance(new NodeInstance<>(ADD_NODE, null));
+		NodeInstance<Object, Void> c = graph.addInstance(new NodeInstance<>(ADD_NODE, null));
+		NodeInstance<Object, Void> d = graph.addInstance(new NodeInstance<>(ADD_NODE, null));
+		a.setInitialValue(ADD_NODE.inputA, 1);
+		a.setInitialValue(ADD_NODE.inputB, 2);
+		b.setInitialValue(ADD_NODE.inputB, 10);
+		c.setInitialValue(ADD_NODE.inputB, 100);
+		graph.connect(a, ADD_NODE.output, b, ADD_NODE.inputA);
+		graph.connect(a, ADD_NODE.output, c, ADD_NODE.inputA);
+		graph.connect(b, ADD_NODE.output, d, ADD_NODE.inputA);
+		graph.connect(c, ADD_NODE.output, d, ADD_NODE.inputB);
+
+		CompiledGraph<Void> compiled = graph.compile();
+		assertEquals(4, compiled.getInstances().size());
+		assertEquals(0, compiled.slotOf(a));
+		assertEquals(3, compiled.slotOf(d));
+
+		EvaluationRound<Void> eval = compiled.newEvalRound(null);
+		assertEquals((1 + 2) + 10, eval.eval(b).get(ADD_NODE.output).doubleValue());
+		assertEquals(((1 + 2) + 10) + ((1 + 2) + 100), eval.eval(d).get(ADD_NODE.output).doubleValue());
+	}
+
+	@Test
+	void testMetrics() {
+		NodeGraph<Void> graph = new NodeGraph<>();
+		NodeInstance<Object, Void> a = graph.addInstance(new NodeInstance<>(ADD_NODE, null));
+		NodeInstance<Object, Void> b = graph.addInstance(new NodeInstance<>(ADD_NODE, null));
+		NodeInstance<Object, Void> c = graph.addInstance(new NodeInstance<>(ADD_NODE, null));
+		NodeInstance<int[], Void> counter = graph.addInstance(new NodeInstance<>(COUNTER_NODE, null));
+		graph.connect(a, ADD_NODE.output, b, ADD_NODE.inputA);
+		graph.connect(a, ADD_NODE.output, c, ADD_NODE.inputA);
+		graph.connect(b, ADD_NODE.output, c, ADD_NODE.inputB);
+		graph.connect(counter, COUNTER_NODE.output, b, ADD_NODE.inputB);
+
+		EvaluationMetrics<Void> metrics = new EvaluationMetrics<>();
+		EvaluationRound<Void> eval = graph.newCompiledEvalRound(null);
+		eval.setListener(metrics);
+		eval.eval(c);
+		eval.eval(c);
+
+		assertEquals(2, metrics.get(a).invocations());
+		assertEquals(2, metrics.get(a).cacheMisses());
+		assertEquals(2, metrics.get(a).cacheHits());
+		assertEquals(0, metrics.get(b).cacheHits());
+		assertEquals(0, metrics.get(c).cacheHits());
+		assertEquals(2, metrics.get(counter).invocations());
+		assertEquals(0, metrics.get(counter).cacheMisses());
+		assertEquals(0, metrics.get(counter).cacheHits());
+
+		metrics.reset();
+		EvaluationRound<Void> lazy = graph.newEvalRound(null);
+		lazy.setListener(metrics);
+		lazy.eval(c);
+		assertEquals(1, metrics.get(a).invocations());
+		assertEquals(1, metrics.get(a).cacheMisses());
+		assertEquals(1, metrics.get(a).cacheHits());
+	}
+
+	@Test
+	void testUncachedNode() {
+		NodeGraph<Void> graph = new NodeGraph<>();
+		NodeInstance<int[], Void> counter = graph.addInstance(new NodeInstance<>(COUNTER_NODE, null));
+		NodeInstance<Object, Void> add = graph.addInstance(new NodeInstance<>(ADD_NODE, null));
+		graph.connect(counter, COUNTER_NODE.output, add, ADD_NODE.inputA);
+		graph.connect(counter, COUNTER_NODE.output, add, ADD_NODE.inputB);
+
+		// Uncached node must be processed once for each connection, just like the
+		// default evaluation round
+		EvaluationRound<Void> expected = graph.newEvalRound(null);
+		EvaluationRound<Void> actual = graph.compile().newEvalRound(null);
+
+		for (int i = 0; i < 3; i++) {
+			assertEquals(
+				expected.eval(add).get(ADD_NODE.output).doubleValue(),
+				actual.eval(add).get(ADD_NODE.output).doubleValue());
+		}
+	}
+
+	@Test
+	void testZeroAllocation() {
+		NodeGraph<Void> graph = new NodeGraph<>();
+		NodeInstance<Void, Void> a = graph.addInstance(new NodeInstance<>(MAX_NODE, null));
+		NodeInstance<Void, Void> b = graph.addInstance(new NodeInstance<>(UNCACHED_MAX_NODE, null));
+		NodeInstance<Void, Void> c = graph.addInstance(new NodeInstance<>(MAX_NODE, null));
+		a.setInitialValue(MAX_NODE.inputA, 1);
+		a.setInitialValue(MAX_NODE.inputB, 2);
+		b.setInitialValue(MAX_NODE.inputB, 3);
+		graph.connect(a, MAX_NODE.output, b, UNCACHED_MAX_NODE.inputA);
+		graph.connect(a, MAX_NODE.output, c, MAX_NODE.inputA);
+		graph.connect(b, UNCACHED_MAX_NODE.output, c, MAX_NODE.inputB);
+
+		EvaluationRound<Void> eval = graph.compile().newEvalRound(null);
+		assertEquals(3, eval.eval(c).get(MAX_NODE.output).intValue());
+		assertNoAllocation(() -> eval.eval(c));
+	}
+
+	@Test
+	void testPrimitiveSockets() {
+		NodeGraph<Void> graph = new NodeGraph<>();
+		NodeInstance<Void, Void> a = graph.addInstance(new NodeInstance<>(DOUBLE_ADD_NODE, null));
+		NodeInstance<Void, Void> b = graph.addInstance(new NodeInstance<>(DOUBLE_ADD_NODE, null));
+		NodeInstance<Object, Void> c = graph.addInstance(new NodeInstance<>(ADD_NODE, null));
+		a.setInitialValue(DOUBLE_ADD_NODE.inputA, 1d);
+		a.setInitialValue(DOUBLE_ADD_NODE.inputB, 2d);
+		b.setInitialValue(DOUBLE_ADD_NODE.inputB, 4d);
+		c.setInitialValue(ADD_NODE.inputB, 8);
+		graph.connect(a, DOUBLE_ADD_NODE.output, b, DOUBLE_ADD_NODE.inputA);
+		graph.connect(b, DOUBLE_ADD_NODE.output, c, ADD_NODE.inputA);
+
+		EvaluationRound<Void> expected = graph.newEvalRound(null);
+		EvaluationRound<Void> eval = graph.compile().newEvalRound(null);
+		assertEquals(1 + 2 + 4, expected.eval(b).get(DOUBLE_ADD_NODE.output));
+		assertEquals(1 + 2 + 4, eval.eval(b).get(DOUBLE_ADD_NODE.output));
+		assertEquals(1 + 2 + 4, eval.eval(b).getDouble(DOUBLE_ADD_NODE.output));
+		assertEquals(1 + 2 + 4 + 8, eval.eval(c).getDouble(ADD_NODE.output));
+		assertNoAllocation(() -> eval.eval(b));
+	}
+
+	@Test
+	void testBatch() {
+		SampleNode sampleNode = new SampleNode();
+		ScaleNode scaleNode = new ScaleNode();
+		NodeGraph<Double> graph = new NodeGraph<>();
+		NodeInstance<Void, Double> sample = graph.addInstance(new NodeInstance<>(sampleNode, null));
+		NodeInstance<Void, Double> scale = graph.addInstance(new NodeInstance<>(scaleNode, null));
+		NodeInstance<Void, Double> scaleTwice = graph.addInstance(new NodeInstance<>(scaleNode, null));
+		scale.setInitialValue(scaleNode.factor, 3);
+		graph.connect(sample, sampleNode.output, scale, scaleNode.input);
+		graph.connect(scale, scaleNode.output, scaleTwice, scaleNode.input);
+		graph.connect(sample, sampleNode.output, scaleTwice, scaleNode.factor);
+
+		CompiledGraph<Double> compiled = graph.compile();
+		BatchEvaluationRound<Double> batch = compiled.newBatchEvalRound();
+		List<Double> samples = List.of(1d, 2d, 3d, 4d, 5d);
+		BatchEvaluationRound.BatchOutputGetter getter = batch.evalBatch(scaleTwice, samples);
+		assertEquals(samples.size(), getter.size());
+
+		for (int i = 0; i < samples.size(); i++) {
+			double expected = compiled.newEvalRound(samples.get(i)).eval(scaleTwice).getDouble(scaleNode.output);
+			assertEquals(expected, getter.getDouble(scaleNode.output, i));
+			assertEquals(expected, getter.getDoubles(scaleNode.output)[i]);
+		}
+
+		assertNoAllocation(() -> batch.evalBatch(scaleTwice, samples));
+	}
+
+	@Test
+	void testIncremental() {
+		class CountingNode extends AddNode {
+			int processed = 0;
+
+			@Override
+			public void process(NodeProcessContext<Object, Void> context) {
+				processed++;
+				super.process(context);
+			}
+		}
+
+		CountingNode node = new CountingNode();
+		NodeGraph<Void> graph = new NodeGraph<>();
+		NodeInstance<Object, Void> a = graph.addInstance(new NodeInstance<>(node, null));
+		NodeInstance<Object, Void> b = graph.addInstance(new NodeInstance<>(node, null));
+		NodeInstance<Object, Void> c = graph.addInstance(new NodeInstance<>(node, null));
+		NodeInstance<Object, Void> x = graph.addInstance(new NodeInstance<>(node, null));
+		a.setInitialValue(node.inputA, 1);
+		a.setInitialValue(node.inputB, 2);
+		b.setInitialValue(node.inputB, 10);
+		x.setInitialValue(node.inputA, 5);
+		x.setInitialValue(node.inputB, 5);
+		graph.connect(a, node.output, b, node.inputA);
+		graph.connect(b, node.output, c, node.inputA);
+		graph.connect(x, node.output, c, node.inputB);
+
+		try (IncrementalEvaluationRound<Void> eval = graph.newIncrementalEvalRound(null)) {
+			assertEquals(13 + 10, eval.eval(c).getDouble(node.output));
+			assertEquals(4, node.processed);
+
+			a.setInitialValue(node.inputB, 3);
+			assertEquals(14 + 10, eval.eval(c).getDouble(node.output));
+			assertEquals(4 + 3, node.processed);
+
+			x.setInitialValue(node.inputA, 6);
+			assertEquals(14 + 11, eval.eval(c).getDouble(node.output));
+			assertEquals(7 + 2, node.processed);
+
+			graph.disconnect(x, node.output, c, node.inputB);
+			assertEquals(14, eval.eval(c).getDouble(node.output));
+			assertEquals(9 + 1, node.processed);
+
+			assertEquals(14, eval.eval(c).getDouble(node.output));
+			assertEquals(10, node.processed);
+		}
+	}
+
+	@Test
+	void testMemoCache() {
+		PureNode node = new PureNode();
+		NodeGraph<Void> graph = new NodeGraph<>();
+		NodeInstance<Object, Void> a = graph.addInstance(new NodeInstance<>(node, null));
+		NodeInstance<Object, Void> b = graph.addInstance(new NodeInstance<>(node, null));
+		a.setInitialValue(node.inputA, 1);
+		a.setInitialValue(node.inputB, 2);
+		b.setInitialValue(node.inputB, 10);
+		graph.connect(a, node.output, b, node.inputA);
+		MemoCache cache = new MemoCache(16);
+		graph.setMemoCache(cache);
+
+		assertEquals(13, graph.newCompiledEvalRound(null).eval(b).getDouble(node.output));
+		assertEquals(2, node.processed);
+		assertEquals(13, graph.newCompiledEvalRound(null).eval(b).getDouble(node.output));
+		assertEquals(2, node.processed);
+
+		NodeGraph<Void> copy = graph.copy();
+		NodeInstance<?, Void> copiedB = copy.getInstances().stream()
+			.filter(i -> copy.getOutgoing(i).isEmpty())
+			.findFirst()
+			.get();
+		assertEquals(cache, copy.getMemoCache());
+		assertEquals(13, copy.newCompiledEvalRound(null).eval(copiedB).getDouble(node.output));
+		assertEquals(2, node.processed);
+
+		a.setInitialValue(node.inputB, 3);
+		assertEquals(14, graph.newCompiledEvalRound(null).eval(b).getDouble(node.output));
+		assertEquals(4, node.processed);
+		assertEquals(new MemoCache.Stats(4, 4, 0), cache.getStats());
+
+		// Only one entry fits, so the output of b evicts the output of a
+		MemoCache weighted = new MemoCache(2L, (n, inputs, outputs) -> 2L);
+		graph.setMemoCache(weighted);
+		assertEquals(14, graph.newCompiledEvalRound(null).eval(b).getDouble(node.output));
+		assertEquals(new MemoCache.Stats(0, 2, 1), weighted.getStats());
+		assertEquals(1, weighted.size());
+	}
+
+	@Test
+	void testDeduplicate() {
+		PureNode node = new PureNode();
+		NodeGraph<Void> graph = new NodeGraph<>();
+		NodeInstance<Object, Void> a1 = graph.addInstance(new NodeInstance<>(node, null));
+		NodeInstance<Object, Void> b1 = graph.addInstance(new NodeInstance<>(node, null));
+		NodeInstance<Object, Void> a2 = graph.addInstance(new NodeInstance<>(node, null));
+		NodeInstance<Object, Void> b2 = graph.addInstance(new NodeInstance<>(node, null));
+		NodeInstance<Object, Void> sum = graph.addInstance(new NodeInstance<>(node, null));
+		a1.setInitialValue(node.inputA, 1);
+		a2.setInitialValue(node.inputA, 1);
+		graph.connect(a1, node.output, b1, node.inputA);
+		graph.connect(a2, node.output, b2, node.inputA);
+		graph.connect(b1, node.output, sum, node.inputA);
+		graph.connect(b2, node.output, sum, node.inputB);
+		graph.setOptimizations(EnumSet.of(Optimization.DEDUPLICATE));
+
+		CompiledGraph<Void> plan = graph.compile();
+		assertEquals(3, plan.getInstances().size());
+		assertEquals(plan.slotOf(b1), plan.slotOf(b2));
+		assertEquals(2, plan.newEvalRound(null).eval(sum).getDouble(node.output));
+		assertEquals(3, node.processed);
+
+		try (IncrementalEvaluationRound<Void> eval = graph.newIncrementalEvalRound(null)) {
+			assertEquals(2, eval.eval(sum).getDouble(node.output));
+			a2.setInitialValue(node.inputB, 4);
+			assertEquals(6, eval.eval(sum).getDouble(node.output));
+		}
+	}
+
+	@Test
+	void testFoldConstants() {
+		PureNode node = new PureNode();
+		NodeGraph<Void> graph = new NodeGraph<>();
+		NodeInstance<Object, Void> a = graph.addInstance(new NodeInstance<>(node, null));
+		NodeInstance<Object, Void> b = graph.addInstance(new NodeInstance<>(node, null));
+		NodeInstance<Object, Void> c = graph.addInstance(new NodeInstance<>(ADD_NODE, null));
+		a.setInitialValue(node.inputA, 1);
+		a.setInitialValue(node.inputB, 2);
+		b.setInitialValue(node.inputB, 10);
+		graph.connect(a, node.output, b, node.inputA);
+		graph.connect(b, node.output, c, ADD_NODE.inputA);
+		graph.setOptimizations(EnumSet.of(Optimization.FOLD_CONSTANTS));
+
+		EvaluationRound<Void> round = graph.compile().newEvalRound(null);
+		assertEquals(2, node.processed);
+		assertEquals(13, round.eval(c).getDouble(ADD_NODE.output));
+		assertEquals(13, round.eval(c).getDouble(ADD_NODE.output));
+		assertEquals(2, node.processed);
+
+		try (IncrementalEvaluationRound<Void> eval = graph.newIncrementalEvalRound(null)) {
+			assertEquals(13, eval.eval(c).getDouble(ADD_NODE.output));
+			a.setInitialValue(node.inputB, 3);
+			assertEquals(14, eval.eval(c).getDouble(ADD_NODE.output));
+			c.setInitialValue(ADD_NODE.inputB, 1);
+			assertEquals(15, eval.eval(c).getDouble(ADD_NODE.output));
+		}
+	}
+
+	@Test
+	void testGenerated() {
+		NodeGraph<Void> graph = new NodeGraph<>();
+		NodeInstance<Void, Void> a = graph.addInstance(new NodeInstance<>(DOUBLE_ADD_NODE, null));
+		NodeInstance<Void, Void> b = graph.addInstance(new NodeInstance<>(DOUBLE_ADD_NODE, null));
+		NodeInstance<int[], Void> counter = graph.addInstance(new NodeInstance<>(COUNTER_NODE, null));
+		NodeInstance<Object, Void> c = graph.addInstance(new NodeInstance<>(ADD_NODE, null));
+		a.setInitialValue(DOUBLE_ADD_NODE.inputA, 1000d);
+		b.setInitialValue(DOUBLE_ADD_NODE.inputB, 0.5);
+		graph.connect(a, DOUBLE_ADD_NODE.output, b, DOUBLE_ADD_NODE.inputA);
+		graph.connect(b, DOUBLE_ADD_NODE.output, c, ADD_NODE.inputA);
+		graph.connect(counter, COUNTER_NODE.output, c, ADD_NODE.inputB);
+
+		CompiledGraph<Void> plan = graph.compile();
+		int target = plan.slotOf(c);
+		EvaluatorGenerator.Evaluator evaluator = EvaluatorGenerator.get(plan, plan.schedule(target));
+		assertTrue(evaluator.getClass().isHidden());
+		assertEquals(evaluator, EvaluatorGenerator.get(graph.compile(), plan.schedule(target)));
+
+		EvaluationRound<Void> interpreted = plan.newEvalRound(null);
+		EvaluationRound<Void> generated = plan.newGeneratedEvalRound(null);
+
+		for (int i = 0; i < 3; i++) {
+			assertEquals(
+				interpreted.eval(c).getDouble(ADD_NODE.output),
+				generated.eval(c).getDouble(ADD_NODE.output));
+		}
+	}
+
+	@Test
+	void testParallel() {
+		class UnsafeNode extends AddNode {
+			AtomicInteger active = new AtomicInteger();
+			AtomicInteger maxActive = new AtomicInteger();
+
+			@Override
+			public boolean isThreadSafe() {
+				return false;
+			}
+
+			@Override
+			public void process(NodeProcessContext<Object, Void> context) {
+				maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+				Thread.yield();
+				super.process(context);
+				active.decrementAndGet();
+			}
+		}
+
+		// Sum of 64 branches, each branch is a chain of 8 nodes that add 1
+		UnsafeNode unsafeNode = new UnsafeNode();
+		NodeGraph<Void> graph = new NodeGraph<>();
+		NodeInstance<?, Void> sum = null;
+
+		for (int branch = 0; branch < 64; branch++) {
+			NodeInstance<?, Void> tail = graph.addInstance(new NodeInstance<>(COUNTER_NODE, null));
+
+			for (int i = 0; i < 8; i++) {
+				AddNode node = i % 2 == 0 ? ADD_NODE : unsafeNode;
+				NodeInstance<Object, Void> next = graph.addInstance(new NodeInstance<>(node, null));
+				next.setInitialValue(node.inputB, 1);
+				graph.connect(tail, ADD_NODE.output, next, node.inputA);
+				tail = next;
+			}
+
+			NodeInstance<Object, Void> next = graph.addInstance(new NodeInstance<>(ADD_NODE, null));
+			if (sum != null) graph.connect(sum, ADD_NODE.output, next, ADD_NODE.inputA);
+			graph.connect(tail, ADD_NODE.output, next, ADD_NODE.inputB);
+			sum = next;
+		}
+
+		// Counter node is uncached, so it will be 1 on first evaluation and 2 on
+		// second evaluation
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+
+		try {
+			EvaluationRound<Void> eval = graph.compile().newParallelEvalRound(null, executor);
+			assertEquals(64 * (1 + 8), eval.eval(sum).getDouble(ADD_NODE.output));
+			assertEquals(64 * (2 + 8), eval.eval(sum).getDouble(ADD_NODE.output));
+			assertEquals(1, unsafeNode.maxActive.get());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	static void assertNoAllocation(Runnable task) {
+		ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+		Assumptions.assumeTrue(threads.isThreadAllocatedMemorySupported());
+		threads.setThreadAllocatedMemoryEnabled(true);
+		for (int i = 0; i < 10000; i++) task.run();
+
+		long thread = Thread.currentThread().getId();
+		long overheadStart = threads.getThreadAllocatedBytes(thread);
+		long overheadEnd = threads.getThreadAllocatedBytes(thread);
+		long overhead = overheadEnd - overheadStart;
+		long allocated = -1;
+
+		// Earlier measurements may include one-time allocations from the JVM itself
+		// (such as on-stack replacement of the loop), so only the last one counts
+		for (int round = 0; round < 5; round++) {
+			long start = threads.getThreadAllocatedBytes(thread);
+			for (int i = 0; i < 10000; i++) task.run();
+			long end = threads.getThreadAllocatedBytes(thread);
+			allocated = end - start - overhead;
+		}
+
+		assertEquals(0, allocated);
+	}
+}
@@ -1,12 +1,22 @@
 package io.github.nahkd123.nodegraph.graph;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.junit.jupiter.api.Test;
 
 import io.github.nahkd123.nodegraph.node.Node;
+import io.github.nahkd123.nodegraph.node.NodeDescriptor;
 import io.github.nahkd123.nodegraph.node.NodeProcessContext;
 import io.github.nahkd123.nodegraph.socket.InputSocket;
 import io.github.nahkd123.nodegraph.socket.OutputSocket;
@@ -58,4 +68,320 @@ class NodeGraphTest {
 		eval = domain.newEvalRound(null);
 		assertEquals((1 + 2) + (1 + 2), eval.eval(b).get(addNode.output).doubleValue());
 	}
+
+	@Test
+	void testAdjacency() {
+		CompiledGraphTest.AddNode addNode = CompiledGraphTest.ADD_NODE;
+		NodeGraph<Void> graph = new NodeGraph<>();
+		NodeInstance<Object, Void> a = graph.addInstance(new NodeInstance<>(addNode, null));
+		NodeInstance<Object, Void> b = graph.addInstance(new NodeInstance<>(addNode, null));
+		NodeInstance<Object, Void> c = graph.addInstance(new NodeInstance<>(addNode, null));
+		graph.connect(a, addNode.output, b, addNode.inputA);
+		graph.connect(a, addNode.output, c, addNode.inputA);
+		graph.connect(b, addNode.output, c, addNode.inputB);
+
+		NodeSocketRef<Object, Void, Number> aOutput = new NodeSocketRef<>(a, addNode.output);
+		assertEquals(2, graph.getOutgoing(aOutput).size());
+		assertEquals(1, graph.getOutgoing(a).size());
+		assertEquals(2, graph.getIncoming(c).size());
+		assertEquals(aOutput, graph.getSource(new NodeSocketRef<>(c, addNode.inputA)));
+		assertEquals(3, graph.getConnections().size());
+		assertTrue(graph.getConnections().contains(Map.entry(aOutput, new NodeSocketRef<>(c, addNode.inputA))));
+		assertFalse(graph.getConnections().contains(Map.entry(aOutput, new NodeSocketRef<>(c, addNode.inputB))));
+		Map.Entry<?, ?> first = graph.getConnections().iterator().next();
+		assertSame(first, graph.getConnections().iterator().next());
+
+		// Iterators visit the connections from the start of iteration
+		int visited = 0;
+
+		for (Map.Entry<NodeSocketRef<?, Void, ?>, NodeSocketRef<?, Void, ?>> connection : graph.getConnections()) {
+			graph.disconnectFromSource(connection.getValue());
+			visited++;
+		}
+
+		assertEquals(3, visited);
+		assertEquals(0, graph.getConnections().size());
+		graph.connect(a, addNode.output, b, addNode.inputA);
+		graph.connect(a, addNode.output, c, addNode.inputA);
+		graph.connect(b, addNode.output, c, addNode.inputB);
+
+		graph.removeInstance(b);
+		assertEquals(1, graph.getOutgoing(aOutput).size());
+		assertEquals(1, graph.getIncoming(c).size());
+		assertEquals(1, graph.getConnections().size());
+
+		assertEquals(1, graph.disconnectFromDestinations(aOutput));
+		assertEquals(0, graph.getOutgoing(a).size());
+		assertEquals(0, graph.getIncoming(c).size());
+		assertEquals(0, graph.getConnections().size());
+	}
+
+	@Test
+	void testFindUnused() {
+		CompiledGraphTest.AddNode addNode = CompiledGraphTest.ADD_NODE;
+		NodeGraph<Void> graph = new NodeGraph<>();
+		NodeInstance<Object, Void> a = graph.addInstance(new NodeInstance<>(addNode, null));
+		NodeInstance<Object, Void> b = graph.addInstance(new NodeInstance<>(addNode, null));
+		NodeInstance<Object, Void> scratch = graph.addInstance(new NodeInstance<>(addNode, null));
+		NodeInstance<Object, Void> preview = graph.addInstance(new NodeInstance<>(addNode, null));
+		a.setInitialValue(addNode.inputA, 1);
+		graph.connect(a, addNode.output, b, addNode.inputA);
+		graph.connect(a, addNode.output, preview, addNode.inputA);
+
+		assertEquals(Set.of(scratch, preview), graph.findUnused(List.of(b)));
+		CompiledGraph<Void> plan = graph.compile(List.of(b));
+		assertEquals(List.of(a, b), plan.getInstances());
+		assertEquals(-1, plan.slotOf(scratch));
+		assertEquals(1, plan.newEvalRound(null).eval(b).getDouble(addNode.output));
+	}
+
+	@Test
+	void testSnapshot() {
+		CompiledGraphTest.AddNode addNode = CompiledGraphTest.ADD_NODE;
+		NodeGraph<Void> graph = new NodeGraph<>();
+		List<NodeInstance<Object, Void>> chain = new ArrayList<>();
+
+		for (int i = 0; i < 1000; i++) {
+			NodeInstance<Object, Void> instance = graph.addInstance(new NodeInstance<>(addNode, null));
+			instance.setInitialValue(addNode.inputB, 1);
+			if (i > 0) graph.connect(chain.get(i - 1), addNode.output, instance, addNode.inputA);
+			chain.add(instance);
+		}
+
+		NodeInstance<Object, Void> head = chain.get(0);
+		NodeInstance<Object, Void> tail = chain.get(999);
+		GraphSnapshot<Void> snapshot = graph.snapshot();
+
+		for (int i = 500; i < 1000; i += 2) graph.removeInstance(chain.get(i));
+		head.setInitialValue(addNode.inputB, 1001);
+		graph.addInstance(new NodeInstance<>(addNode, null));
+
+		assertEquals(751, graph.getInstances().size());
+		assertEquals(1000, snapshot.getInstances().size());
+		assertEquals(999, snapshot.getConnections().size());
+		assertEquals(1, snapshot.getInitialValue(head, addNode.inputB));
+		assertEquals(1000, snapshot.compile().newEvalRound(null).eval(tail).getDouble(addNode.output));
+		assertEquals(1500, graph.newEvalRound(null).eval(chain.get(499)).getDouble(addNode.output));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	void testApplyDiff() {
+		CompiledGraphTest.AddNode addNode = CompiledGraphTest.ADD_NODE;
+		NodeGraph<Void> graph = new NodeGraph<>();
+		GraphSnapshot<Void> empty = graph.snapshot();
+		NodeInstance<Object, Void> a = graph.addInstance(new NodeInstance<>(addNode, null));
+		NodeInstance<Object, Void> b = graph.addInstance(new NodeInstance<>(addNode, null));
+		a.setInitialValue(addNode.inputA, 1);
+		a.setEditorData(new NodeEditorData("A", 0, 0, 100, 100, true));
+		graph.connect(a, addNode.output, b, addNode.inputA);
+		GraphDiff<Void> diff = GraphDiff.between(empty, graph.snapshot());
+		// Changes after computing the diff are not part of it
+		a.setInitialValue(addNode.inputA, 3);
+		a.setEditorData(new NodeEditorData("Changed", 0, 0, 100, 100, true));
+
+		NodeGraph<Void> first = new NodeGraph<>();
+		NodeGraph<Void> second = new NodeGraph<>();
+		Map<NodeInstance<?, Void>, NodeInstance<?, Void>> firstCopies = diff.applyTo(first);
+		Map<NodeInstance<?, Void>, NodeInstance<?, Void>> secondCopies = diff.applyTo(second);
+		NodeInstance<Object, Void> firstA = (NodeInstance<Object, Void>) firstCopies.get(a);
+		assertFalse(graph.getInstances().contains(firstA));
+		assertFalse(second.getInstances().contains(firstA));
+		assertEquals("A", firstA.getEditorData().getDisplayName());
+		assertNotSame(diff.getEditorData().get(0).editorData(), firstA.getEditorData());
+		assertEquals(1, first.newEvalRound(null).eval(firstCopies.get(b)).getDouble(addNode.output));
+
+		firstA.setInitialValue(addNode.inputA, 5);
+		assertEquals(5, first.newEvalRound(null).eval(firstCopies.get(b)).getDouble(addNode.output));
+		assertEquals(1, second.newEvalRound(null).eval(secondCopies.get(b)).getDouble(addNode.output));
+		assertEquals(3, graph.newEvalRound(null).eval(b).getDouble(addNode.output));
+	}
+
+	@Test
+	void testHistory() {
+		CompiledGraphTest.AddNode addNode = CompiledGraphTest.ADD_NODE;
+		NodeGraph<Void> graph = new NodeGraph<>();
+		GraphHistory<Void> history = new GraphHistory<>(graph, 10);
+		List<NodeInstance<Object, Void>> chain = new ArrayList<>();
+
+		for (int i = 0; i < 1000; i++) {
+			NodeInstance<Object, Void> instance = graph.addInstance(new NodeInstance<>(addNode, null));
+			instance.setInitialValue(addNode.inputB, 1);
+			if (i > 0) graph.connect(chain.get(i - 1), addNode.output, instance, addNode.inputA);
+			chain.add(instance);
+		}
+
+		NodeInstance<Object, Void> tail = chain.get(999);
+		assertTrue(history.commit());
+		GraphSnapshot<Void> before = graph.snapshot();
+		graph.removeInstance(chain.get(500));
+		chain.get(0).setInitialValue(addNode.inputB, 11);
+		chain.get(1).setEditorData(new NodeEditorData("Renamed", 0, 0, 100, 50, true));
+		assertTrue(history.commit());
+
+		List<String> changes = new ArrayList<>();
+		before.diff(graph.snapshot(), new NodeGraph.ChangeListener<>() {
+			@Override
+			public void onInstanceRemoved(NodeInstance<?, Void> instance) {
+				changes.add("removed");
+			}
+
+			@Override
+			public void onDisconnected(NodeSocketRef<?, Void, ?> from, NodeSocketRef<?, Void, ?> to) {
+				changes.add("disconnected");
+			}
+
+			@Override
+			public void onInitialValueChanged(NodeInstance<?, Void> instance, InputSocket<?> socket) {
+				changes.add("value");
+			}
+
+			@Override
+			public void onEditorDataChanged(NodeInstance<?, Void> instance) {
+				changes.add("editor");
+			}
+		});
+
+		assertEquals(List.of("disconnected", "disconnected", "editor", "removed", "value"), changes.stream().sorted().toList());
+		assertEquals(499, graph.newEvalRound(null).eval(tail).getDouble(addNode.output));
+
+		assertTrue(history.undo());
+		assertEquals(1000, graph.getInstances().size());
+		assertEquals(999, graph.getConnections().size());
+		assertNull(chain.get(1).getEditorData());
+		assertEquals(1000, graph.newEvalRound(null).eval(tail).getDouble(addNode.output));
+
+		assertTrue(history.redo());
+		assertEquals(999, graph.getInstances().size());
+		assertEquals(11, chain.get(0).getInitialValue(addNode.inputB));
+		assertEquals(499, graph.newEvalRound(null).eval(tail).getDouble(addNode.output));
+		assertFalse(history.redo());
+	}
+
+	@Test
+	void testCycle() throws GraphValidationException {
+		CompiledGraphTest.AddNode addNode = CompiledGraphTest.ADD_NODE;
+		NodeGraph<Void> graph = new NodeGraph<>();
+		List<NodeInstance<Object, Void>> chain = new ArrayList<>();
+		for (int i = 0; i < 2000; i++) chain.add(graph.addInstance(new NodeInstance<>(addNode, null)));
+
+		// Connecting in reverse order forces the topological order to be fixed on
+		// every connection
+		for (int i = chain.size() - 1; i > 0; i--)
+			graph.connect(chain.get(i), addNode.output, chain.get(i - 1), addNode.inputA);
+
+		NodeInstance<Object, Void> head = chain.get(chain.size() - 1);
+		NodeInstance<Object, Void> tail = chain.get(0);
+		assertThrows(IllegalArgumentException.class, () -> graph.connect(tail, addNode.output, head, addNode.inputA));
+		assertThrows(IllegalArgumentException.class, () -> graph.connect(tail, addNode.output, tail, addNode.inputB));
+		assertEquals(GraphValidationException.Reason.CYCLE, assertThrows(
+			GraphValidationException.class,
+			() -> graph.connectValidated(tail, addNode.output, head, addNode.inputB)).getReason());
+		assertTrue(graph.connectValidated(head, addNode.output, tail, addNode.inputB));
+		assertEquals(chain.size(), graph.getConnections().size());
+		head.setInitialValue(addNode.inputA, 1);
+		assertEquals(1 + 1, graph.compile().newEvalRound(null).eval(tail).getDouble(addNode.output));
+	}
+
+	@Test
+	void testConnectValidatedType() throws GraphValidationException {
+		CompiledGraphTest.AddNode addNode = CompiledGraphTest.ADD_NODE;
+		CompiledGraphTest.DoubleAddNode doubleAddNode = CompiledGraphTest.DOUBLE_ADD_NODE;
+		NodeGraph<Void> graph = new NodeGraph<>();
+		NodeInstance<Object, Void> a = graph.addInstance(new NodeInstance<>(addNode, null));
+		NodeInstance<Void, Void> b = graph.addInstance(new NodeInstance<>(doubleAddNode, null));
+		assertTrue(graph.connectValidated(b, doubleAddNode.output, a, addNode.inputA));
+		assertEquals(GraphValidationException.Reason.TYPE_MISMATCH, assertThrows(
+			GraphValidationException.class,
+			() -> graph.connectValidated(a, addNode.output, b, doubleAddNode.inputA)).getReason());
+	}
+
+	@Test
+	void testDeepChain() {
+		CompiledGraphTest.AddNode addNode = CompiledGraphTest.ADD_NODE;
+		NodeGraph<Void> graph = new NodeGraph<>();
+		NodeInstance<Object, Void> head = graph.addInstance(new NodeInstance<>(addNode, null));
+		NodeInstance<Object, Void> tail = head;
+
+		for (int i = 0; i < 100_000; i++) {
+			NodeInstance<Object, Void> next = graph.addInstance(new NodeInstance<>(addNode, null));
+			next.setInitialValue(addNode.inputB, 1);
+			graph.connect(tail, addNode.output, next, addNode.inputA);
+			tail = next;
+		}
+
+		EvaluationRound<Void> eval = graph.newCompiledEvalRound(null);
+		assertEquals(100_000, eval.eval(tail).getDouble(addNode.output));
+
+		// Changes are picked up on next evaluation
+		head.setInitialValue(addNode.inputA, 5);
+		assertEquals(100_005, eval.eval(tail).getDouble(addNode.output));
+	}
+
+	@Test
+	void testLazyEval() {
+		class SwitchNode implements Node<Void, Void> {
+			InputSocket<Boolean> condition = new InputSocket<>(Boolean.class, "condition", true);
+			InputSocket<Number> ifTrue = new InputSocket<>(Number.class, "ifTrue", 0);
+			InputSocket<Number> ifFalse = new InputSocket<>(Number.class, "ifFalse", 0);
+			OutputSocket<Number> output = new OutputSocket<>(Number.class, "output");
+
+			@Override
+			public List<Socket<?>> getSockets() { return List.of(condition, ifTrue, ifFalse, output); }
+
+			@Override
+			public Void initialize() {
+				return null;
+			}
+
+			@Override
+			public void process(NodeProcessContext<Void, Void> context) {
+				context.set(output, context.get(condition) ? context.get(ifTrue) : context.get(ifFalse));
+			}
+		}
+
+		SwitchNode switchNode = new SwitchNode();
+		CompiledGraphTest.CounterNode counterNode = CompiledGraphTest.COUNTER_NODE;
+		NodeGraph<Void> graph = new NodeGraph<>();
+		NodeInstance<int[], Void> a = graph.addInstance(new NodeInstance<>(counterNode, null));
+		NodeInstance<int[], Void> b = graph.addInstance(new NodeInstance<>(counterNode, null));
+		NodeInstance<Void, Void> choice = graph.addInstance(new NodeInstance<>(switchNode, null));
+		graph.connect(a, counterNode.output, choice, switchNode.ifTrue);
+		graph.connect(b, counterNode.output, choice, switchNode.ifFalse);
+
+		// Only the branch that is read is processed
+		EvaluationMetrics<Void> lazyMetrics = new EvaluationMetrics<>();
+		EvaluationRound<Void> lazy = graph.newEvalRound(null);
+		lazy.setListener(lazyMetrics);
+		assertEquals(1, lazy.eval(choice).get(switchNode.output).intValue());
+		assertEquals(2, lazy.eval(choice).get(switchNode.output).intValue());
+		assertEquals(2, lazyMetrics.get(a).invocations());
+		assertEquals(0, lazyMetrics.get(b).invocations());
+
+		EvaluationMetrics<Void> compiledMetrics = new EvaluationMetrics<>();
+		EvaluationRound<Void> compiled = graph.newCompiledEvalRound(null);
+		compiled.setListener(compiledMetrics);
+		assertEquals(1, compiled.eval(choice).get(switchNode.output).intValue());
+		assertEquals(1, compiledMetrics.get(b).invocations());
+
+		choice.setInitialValue(switchNode.condition, false);
+		assertEquals(2, compiled.eval(choice).get(switchNode.output).intValue());
+		assertEquals(1, lazy.eval(choice).get(switchNode.output).intValue());
+		assertEquals(2, lazyMetrics.get(a).invocations());
+	}
+
+	@Test
+	void testNodeDescriptor() {
+		CompiledGraphTest.AddNode addNode = CompiledGraphTest.ADD_NODE;
+		NodeDescriptor descriptor = NodeDescriptor.of(addNode);
+		assertSame(descriptor, NodeDescriptor.of(addNode));
+		assertEquals(List.of(addNode.inputA, addNode.inputB), descriptor.getInputs());
+		assertEquals(List.of(addNode.output), descriptor.getOutputs());
+		assertEquals(1, descriptor.indexOf(addNode.inputB));
+		assertEquals(0, descriptor.indexOf(addNode.output));
+		assertEquals(1, descriptor.inputIndexOf(addNode.inputB.name()));
+		assertEquals(addNode.output, descriptor.getOutput(addNode.output.name()));
+		assertNull(descriptor.getInput(addNode.output.name()));
+		assertEquals(-1, descriptor.outputIndexOf("missing"));
+	}
 }
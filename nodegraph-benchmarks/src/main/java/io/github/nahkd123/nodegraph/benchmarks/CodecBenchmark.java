@@ -0,0 +1,66 @@
+package io.github.nahkd123.nodegraph.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.JsonElement;
+import com.mojang.datafixers.util.Pair;
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.JsonOps;
+
+import io.github.nahkd123.nodegraph.benchmarks.SyntheticGraphs.Shape;
+import io.github.nahkd123.nodegraph.dfucodec.NodeGraphCodecs;
+import io.github.nahkd123.nodegraph.dfucodec.ValueCodecRegistry;
+import io.github.nahkd123.nodegraph.graph.NodeGraph;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+	static final Codec<Number> NUMBER_CODEC = Codec.DOUBLE.xmap(d -> d, n -> n.doubleValue());
+	static final ValueCodecRegistry VALUE_CODECS = new ValueCodecRegistry() {
+		@SuppressWarnings("unchecked")
+		@Override
+		public <V> Codec<V> getFromType(Class<V> type) {
+			return type == Number.class ? (Codec<V>) NUMBER_CODEC : null;
+		}
+	};
+
+	@Param({ "100", "10000", "100000" })
+	public int size;
+
+	private Codec<NodeGraph<Void>> codec;
+	private NodeGraph<Void> graph;
+	private JsonElement encoded;
+
+	@Setup
+	public void setup() {
+		codec = NodeGraphCodecs.createGraphCodec(SyntheticGraphs.NODE_TO_ID, SyntheticGraphs.ID_TO_NODE, VALUE_CODECS).codec();
+		graph = SyntheticGraphs.generate(Shape.DIAMOND, size).graph();
+		encoded = encode();
+	}
+
+	@Benchmark
+	public JsonElement encode() {
+		return codec.encodeStart(JsonOps.INSTANCE, graph).getPartialOrThrow();
+	}
+
+	@Benchmark
+	public NodeGraph<Void> decode() {
+		return codec.decode(JsonOps.INSTANCE, encoded).map(Pair::getFirst).getPartialOrThrow();
+	}
+}
@@ -0,0 +1,67 @@
+package io.github.nahkd123.nodegraph.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.github.nahkd123.nodegraph.benchmarks.SyntheticGraphs.Generated;
+import io.github.nahkd123.nodegraph.benchmarks.SyntheticGraphs.Shape;
+import io.github.nahkd123.nodegraph.graph.CompiledGraph;
+import io.github.nahkd123.nodegraph.graph.EvaluationRound;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluationBenchmark {
+	@Param({ "CHAIN", "TREE", "DIAMOND", "WIDE" })
+	public Shape shape;
+
+	@Param({ "100", "10000" })
+	public int size;
+
+	private Generated generated;
+	private EvaluationRound<Void> graphRound;
+	private EvaluationRound<Void> compiledRound;
+	private EvaluationRound<Void> generatedRound;
+
+	@Setup
+	public void setup() {
+		generated = SyntheticGraphs.generate(shape, size);
+		graphRound = generated.graph().newCompiledEvalRound(null);
+		compiledRound = generated.graph().compile().newEvalRound(null);
+		generatedRound = generated.graph().compile().newGeneratedEvalRound(null);
+	}
+
+	@Benchmark
+	public double evalGraph() {
+		return graphRound.eval(generated.output()).getDouble(SyntheticGraphs.ADD_NODE.output);
+	}
+
+	@Benchmark
+	public double evalCompiled() {
+		return compiledRound.eval(generated.output()).getDouble(SyntheticGraphs.ADD_NODE.output);
+	}
+
+	@Benchmark
+	public double evalGenerated() {
+		return generatedRound.eval(generated.output()).getDouble(SyntheticGraphs.ADD_NODE.output);
+	}
+
+	@Benchmark
+	public CompiledGraph<Void> compile() {
+		return generated.graph().compile();
+	}
+}
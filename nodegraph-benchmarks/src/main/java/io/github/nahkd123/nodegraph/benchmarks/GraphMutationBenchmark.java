@@ -0,0 +1,55 @@
+package io.github.nahkd123.nodegraph.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.github.nahkd123.nodegraph.benchmarks.SyntheticGraphs.Generated;
+import io.github.nahkd123.nodegraph.benchmarks.SyntheticGraphs.Shape;
+import io.github.nahkd123.nodegraph.graph.NodeGraph;
+import io.github.nahkd123.nodegraph.graph.NodeInstance;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GraphMutationBenchmark {
+	@Param({ "100", "10000", "100000" })
+	public int size;
+
+	private NodeGraph<Void> graph;
+	private List<NodeInstance<?, Void>> instances;
+
+	@Setup(Level.Invocation)
+	public void setup() {
+		Generated generated = SyntheticGraphs.generate(Shape.DIAMOND, size);
+		graph = generated.graph();
+		instances = new ArrayList<>(graph.getInstances());
+	}
+
+	@Benchmark
+	public NodeGraph<Void> connect() {
+		return SyntheticGraphs.generate(Shape.DIAMOND, size).graph();
+	}
+
+	@Benchmark
+	public NodeGraph<Void> removeInstance() {
+		for (NodeInstance<?, Void> instance : instances) graph.removeInstance(instance);
+		return graph;
+	}
+}
@@ -0,0 +1,54 @@
+package io.github.nahkd123.nodegraph.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.github.nahkd123.nodegraph.benchmarks.SyntheticGraphs.Generated;
+import io.github.nahkd123.nodegraph.benchmarks.SyntheticGraphs.Shape;
+import io.github.nahkd123.nodegraph.graph.EvaluationRound;
+
+/**
+ * <p>
+ * Benchmark of the default lazy evaluation round. The round evaluates
+ * recursively, so graphs are kept small enough for the default thread stack;
+ * compare with {@link EvaluationBenchmark} at the same size.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LazyEvaluationBenchmark {
+	@Param({ "CHAIN", "TREE", "DIAMOND", "WIDE" })
+	public Shape shape;
+
+	@Param({ "100", "1000" })
+	public int size;
+
+	private Generated generated;
+	private EvaluationRound<Void> lazyRound;
+
+	@Setup
+	public void setup() {
+		generated = SyntheticGraphs.generate(shape, size);
+		lazyRound = generated.graph().newEvalRound(null);
+	}
+
+	@Benchmark
+	public double evalLazy() {
+		return lazyRound.eval(generated.output()).getDouble(SyntheticGraphs.ADD_NODE.output);
+	}
+}
@@ -0,0 +1,97 @@
+package io.github.nahkd123.nodegraph.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.github.nahkd123.nodegraph.benchmarks.SyntheticGraphs.Shape;
+import io.github.nahkd123.nodegraph.graph.NodeGraph;
+import io.github.nahkd123.nodegraph.serialize.NodeGraphSerializer;
+import io.github.nahkd123.nodegraph.serialize.ValueDeserializer;
+import io.github.nahkd123.nodegraph.serialize.ValueSerializer;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializerBenchmark {
+	static final Function<Class<?>, ValueSerializer<?>> VALUE_SERIALIZERS = Map.<Class<?>, ValueSerializer<?>>of(
+		Number.class, (ValueSerializer<Number>) (v, s) -> s.writeDouble(v.doubleValue()))::get;
+	static final Function<Class<?>, ValueDeserializer<?>> VALUE_DESERIALIZERS = Map.<Class<?>, ValueDeserializer<?>>of(
+		Number.class, (ValueDeserializer<Number>) s -> s.readDouble())::get;
+
+	@Param({ "100", "10000", "100000" })
+	public int size;
+
+	private NodeGraph<Void> graph;
+	private byte[] serialized;
+	private ByteBuffer buffer;
+	private Path file;
+
+	@Setup
+	public void setup() throws IOException {
+		graph = SyntheticGraphs.generate(Shape.DIAMOND, size).graph();
+		serialized = serialize();
+		buffer = ByteBuffer.allocateDirect(serialized.length).put(serialized).flip();
+		file = Files.createTempFile("nodegraph", ".bin");
+		Files.write(file, serialized);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	@Benchmark
+	public byte[] serialize() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		NodeGraphSerializer.serialize(graph, SyntheticGraphs.NODE_TO_ID, VALUE_SERIALIZERS, new DataOutputStream(out));
+		return out.toByteArray();
+	}
+
+	@Benchmark
+	public NodeGraph<Void> deserialize() throws IOException {
+		return NodeGraphSerializer.deserialize(
+			SyntheticGraphs.ID_TO_NODE,
+			VALUE_DESERIALIZERS,
+			new DataInputStream(new ByteArrayInputStream(serialized)));
+	}
+
+	@Benchmark
+	public ByteBuffer serializeBuffer() throws IOException {
+		return NodeGraphSerializer.serialize(graph, SyntheticGraphs.NODE_TO_ID, VALUE_SERIALIZERS);
+	}
+
+	@Benchmark
+	public NodeGraph<Void> deserializeBuffer() throws IOException {
+		return NodeGraphSerializer.deserialize(SyntheticGraphs.ID_TO_NODE, VALUE_DESERIALIZERS, buffer.duplicate());
+	}
+
+	@Benchmark
+	public NodeGraph<Void> deserializeMappedFile() throws IOException {
+		return NodeGraphSerializer.deserialize(SyntheticGraphs.ID_TO_NODE, VALUE_DESERIALIZERS, file);
+	}
+}
@@ -0,0 +1,172 @@
+package io.github.nahkd123.nodegraph.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import io.github.nahkd123.nodegraph.graph.NodeGraph;
+import io.github.nahkd123.nodegraph.graph.NodeInstance;
+import io.github.nahkd123.nodegraph.node.Node;
+import io.github.nahkd123.nodegraph.node.NodeProcessContext;
+import io.github.nahkd123.nodegraph.socket.InputSocket;
+import io.github.nahkd123.nodegraph.socket.OutputSocket;
+import io.github.nahkd123.nodegraph.socket.Socket;
+
+/**
+ * <p>
+ * Generator for synthetic node graphs used in benchmarks. All graphs are made
+ * of {@link AddNode}, where every node adds its 2 inputs together.
+ * </p>
+ */
+public final class SyntheticGraphs {
+	public static final AddNode ADD_NODE = new AddNode();
+	public static final Function<Node<?, Void>, String> NODE_TO_ID = Map.of(ADD_NODE, "add")::get;
+	public static final Function<String, Node<?, Void>> ID_TO_NODE = Map.of("add", ADD_NODE)::get;
+
+	private SyntheticGraphs() {}
+
+	public static class AddNode implements Node<Void, Void> {
+		public final InputSocket<Number> inputA = new InputSocket<>(Number.class, "inputA", 0);
+		public final InputSocket<Number> inputB = new InputSocket<>(Number.class, "inputB", 0);
+		public final OutputSocket<Number> output = new OutputSocket<>(Number.class, "output");
+
+		@Override
+		public List<Socket<?>> getSockets() { return List.of(inputA, inputB, output); }
+
+		@Override
+		public Void initialize() {
+			return null;
+		}
+
+		@Override
+		public void process(NodeProcessContext<Void, Void> context) {
+			context.set(output, context.get(inputA).doubleValue() + context.get(inputB).doubleValue());
+		}
+	}
+
+	public static enum Shape {
+		/**
+		 * <p>
+		 * A single chain, where each node reads the previous node.
+		 * </p>
+		 */
+		CHAIN,
+
+		/**
+		 * <p>
+		 * A balanced binary tree that sums all leaves to the root.
+		 * </p>
+		 */
+		TREE,
+
+		/**
+		 * <p>
+		 * A chain of diamonds, where each diamond splits into 2 nodes and joins
+		 * them back.
+		 * </p>
+		 */
+		DIAMOND,
+
+		/**
+		 * <p>
+		 * A single node fanning out to many branches, which are then summed
+		 * together by a chain.
+		 * </p>
+		 */
+		WIDE;
+	}
+
+	/**
+	 * <p>
+	 * Synthetic graph along with the node instance that depends on every other
+	 * instances.
+	 * </p>
+	 */
+	public static record Generated(NodeGraph<Void> graph, NodeInstance<Void, Void> output) {
+	}
+
+	/**
+	 * <p>
+	 * Generate a graph with roughly given number of node instances.
+	 * </p>
+	 * 
+	 * @param shape The shape of the graph.
+	 * @param size  The number of node instances.
+	 * @return The generated graph.
+	 */
+	public static Generated generate(Shape shape, int size) {
+		NodeGraph<Void> graph = new NodeGraph<>();
+		NodeInstance<Void, Void> output = switch (shape) {
+		case CHAIN -> chain(graph, size);
+		case TREE -> tree(graph, size);
+		case DIAMOND -> diamond(graph, size);
+		case WIDE -> wide(graph, size);
+		};
+		return new Generated(graph, output);
+	}
+
+	private static NodeInstance<Void, Void> add(NodeGraph<Void> graph) {
+		NodeInstance<Void, Void> instance = graph.addInstance(new NodeInstance<>(ADD_NODE, null));
+		instance.setInitialValue(ADD_NODE.inputB, 1);
+		return instance;
+	}
+
+	private static NodeInstance<Void, Void> chain(NodeGraph<Void> graph, int size) {
+		NodeInstance<Void, Void> tail = add(graph);
+
+		for (int i = 1; i < size; i++) {
+			NodeInstance<Void, Void> next = add(graph);
+			graph.connect(tail, ADD_NODE.output, next, ADD_NODE.inputA);
+			tail = next;
+		}
+
+		return tail;
+	}
+
+	private static NodeInstance<Void, Void> tree(NodeGraph<Void> graph, int size) {
+		// Heap layout: children of node i are 2i + 1 and 2i + 2
+		List<NodeInstance<Void, Void>> nodes = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) nodes.add(add(graph));
+
+		for (int i = size - 1; i > 0; i--) {
+			NodeInstance<Void, Void> parent = nodes.get((i - 1) / 2);
+			graph.connect(nodes.get(i), ADD_NODE.output, parent, i % 2 == 1 ? ADD_NODE.inputA : ADD_NODE.inputB);
+		}
+
+		return nodes.get(0);
+	}
+
+	private static NodeInstance<Void, Void> diamond(NodeGraph<Void> graph, int size) {
+		NodeInstance<Void, Void> top = add(graph);
+
+		for (int i = 1; i + 3 <= size; i += 3) {
+			NodeInstance<Void, Void> left = add(graph);
+			NodeInstance<Void, Void> right = add(graph);
+			NodeInstance<Void, Void> bottom = add(graph);
+			graph.connect(top, ADD_NODE.output, left, ADD_NODE.inputA);
+			graph.connect(top, ADD_NODE.output, right, ADD_NODE.inputA);
+			graph.connect(left, ADD_NODE.output, bottom, ADD_NODE.inputA);
+			graph.connect(right, ADD_NODE.output, bottom, ADD_NODE.inputB);
+			top = bottom;
+		}
+
+		return top;
+	}
+
+	private static NodeInstance<Void, Void> wide(NodeGraph<Void> graph, int size) {
+		NodeInstance<Void, Void> source = add(graph);
+		NodeInstance<Void, Void> sum = source;
+
+		for (int i = 1; i + 2 <= size; i += 2) {
+			NodeInstance<Void, Void> branch = add(graph);
+			NodeInstance<Void, Void> next = add(graph);
+			graph.connect(source, ADD_NODE.output, branch, ADD_NODE.inputA);
+			graph.connect(sum, ADD_NODE.output, next, ADD_NODE.inputA);
+			graph.connect(branch, ADD_NODE.output, next, ADD_NODE.inputB);
+			sum = next;
+		}
+
+		return sum;
+	}
+}
@@ -0,0 +1,16 @@
+package io.github.nahkd123.nodegraph.dfucodec;
+
+import java.util.Optional;
+
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.MapCodec;
+import com.mojang.serialization.codecs.RecordCodecBuilder;
+
+import io.github.nahkd123.nodegraph.graph.NodeEditorData;
+
+public record CodecEditorDataChange(String node, Optional<NodeEditorData> editor) {
+	public static final MapCodec<CodecEditorDataChange> CODEC = RecordCodecBuilder.mapCodec(i -> i.group(
+		Codec.STRING.fieldOf("node").forGetter(CodecEditorDataChange::node),
+		NodeGraphCodecs.NODE_EDITOR_DATA.codec().optionalFieldOf("editor").forGetter(CodecEditorDataChange::editor))
+		.apply(i, CodecEditorDataChange::new));
+}
@@ -0,0 +1,276 @@
+package io.github.nahkd123.nodegraph.dfucodec;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.DataResult;
+import com.mojang.serialization.DynamicOps;
+import com.mojang.serialization.ListBuilder;
+import com.mojang.serialization.MapCodec;
+import com.mojang.serialization.MapLike;
+import com.mojang.serialization.RecordBuilder;
+
+import io.github.nahkd123.nodegraph.graph.GraphDiff;
+import io.github.nahkd123.nodegraph.graph.InstanceIds;
+import io.github.nahkd123.nodegraph.graph.NodeInstance;
+import io.github.nahkd123.nodegraph.graph.NodeSocketRef;
+import io.github.nahkd123.nodegraph.node.Node;
+import io.github.nahkd123.nodegraph.node.NodeDescriptor;
+import io.github.nahkd123.nodegraph.socket.InputSocket;
+import io.github.nahkd123.nodegraph.socket.OutputSocket;
+
+/**
+ * <p>
+ * Codec for {@link GraphDiff}. Node instances are referred by their IDs in
+ * {@link InstanceIds}, which are the same IDs used by {@link NodeGraphCodec}
+ * when it is created with the same table. Encoding assigns IDs to added
+ * instances and decoding registers them, so each side must use its own codec
+ * and encode or decode diffs in the same order.
+ * </p>
+ * <p>
+ * Unlike the initial values of {@link NodeGraphCodec}, initial values that are
+ * changed back to the default values are always encoded.
+ * </p>
+ *
+ * @param <E> Type of environment object.
+ */
+public class GraphDiffCodec<E> extends MapCodec<GraphDiff<E>> {
+	private static final String KEY_REMOVED_CONNECTIONS = "removedConnections";
+	private static final String KEY_REMOVED_INSTANCES = "removedInstances";
+	private static final String KEY_ADDED_INSTANCES = "addedInstances";
+	private static final String KEY_INITIAL_VALUES = "initialValues";
+	private static final String KEY_EDITOR_DATA = "editorData";
+	private static final String KEY_ADDED_CONNECTIONS = "addedConnections";
+
+	private Function<Node<?, E>, String> nodeToId;
+	private Function<String, Node<?, E>> idToNode;
+	private ValueCodecRegistry valueCodecs;
+	private InstanceIds<E> instanceIds;
+
+	public GraphDiffCodec(Function<Node<?, E>, String> nodeToId, Function<String, Node<?, E>> idToNode, ValueCodecRegistry valueCodecs, InstanceIds<E> instanceIds) {
+		this.nodeToId = nodeToId;
+		this.idToNode = idToNode;
+		this.valueCodecs = valueCodecs;
+		this.instanceIds = instanceIds;
+	}
+
+	@Override
+	public <T> DataResult<GraphDiff<E>> decode(DynamicOps<T> ops, MapLike<T> input) {
+		List<GraphDiff.Connection<E>> removedConnections = new ArrayList<>();
+		List<NodeInstance<?, E>> removedInstances = new ArrayList<>();
+		List<NodeInstance<?, E>> addedInstances = new ArrayList<>();
+		List<GraphDiff.InitialValue<E>> initialValues = new ArrayList<>();
+		List<GraphDiff.EditorData<E>> editorData = new ArrayList<>();
+		List<GraphDiff.Connection<E>> addedConnections = new ArrayList<>();
+		List<DataResult<?>> errors = new ArrayList<>();
+
+		decodeConnections(ops, input.get(KEY_REMOVED_CONNECTIONS), removedConnections, errors);
+
+		T removedInstancesT = input.get(KEY_REMOVED_INSTANCES);
+		if (removedInstancesT != null) ops.getStream(removedInstancesT)
+			.ifSuccess(instances -> instances.forEach(raw -> ops.getStringValue(raw)
+				.flatMap(this::instanceFromId)
+				.ifSuccess(removedInstances::add)
+				.ifError(errors::add)))
+			.ifError(errors::add);
+		for (NodeInstance<?, E> instance : removedInstances) instanceIds.remove(instance);
+
+		T addedInstancesT = input.get(KEY_ADDED_INSTANCES);
+		if (addedInstancesT != null) ops.getMapValues(addedInstancesT)
+			.ifSuccess(instances -> instances.forEach(pair -> ops.getStringValue(pair.getFirst())
+				.flatMap(id -> ops.getStringValue(pair.getSecond()).flatMap(nodeId -> addInstance(id, nodeId)))
+				.ifSuccess(addedInstances::add)
+				.ifError(errors::add)))
+			.ifError(errors::add);
+
+		T initialValuesT = input.get(KEY_INITIAL_VALUES);
+		if (initialValuesT != null) ops.getMapValues(initialValuesT)
+			.ifSuccess(instances -> instances.forEach(pair -> ops.getStringValue(pair.getFirst())
+				.flatMap(this::instanceFromId)
+				.ifSuccess(instance -> ops.getMapValues(pair.getSecond())
+					.ifSuccess(values -> values.forEach(entry -> ops.getStringValue(entry.getFirst())
+						.flatMap(socketId -> Optional.<InputSocket<?>>ofNullable(NodeDescriptor.of(instance.getNode()).getInput(socketId))
+							.<DataResult<InputSocket<?>>>map(DataResult::success)
+							.orElseGet(() -> DataResult.error(() -> "No such input socket with ID %s"
+								.formatted(socketId))))
+						.flatMap(socket -> valueCodecs.getFromType(socket.type())
+							.parse(ops, entry.getSecond())
+							.map(value -> new GraphDiff.InitialValue<>(instance, socket, value)))
+						.ifSuccess(initialValues::add)
+						.ifError(errors::add)))
+					.ifError(errors::add))
+				.ifError(errors::add)))
+			.ifError(errors::add);
+
+		T editorDataT = input.get(KEY_EDITOR_DATA);
+		if (editorDataT != null) ops.getStream(editorDataT)
+			.ifSuccess(changes -> changes.forEach(raw -> CodecEditorDataChange.CODEC.codec()
+				.parse(ops, raw)
+				.flatMap(change -> instanceFromId(change.node())
+					.map(instance -> new GraphDiff.EditorData<>(instance, change.editor().orElse(null))))
+				.ifSuccess(editorData::add)
+				.ifError(errors::add)))
+			.ifError(errors::add);
+
+		decodeConnections(ops, input.get(KEY_ADDED_CONNECTIONS), addedConnections, errors);
+
+		GraphDiff<E> diff = new GraphDiff<>(
+			removedConnections,
+			removedInstances,
+			addedInstances,
+			initialValues,
+			editorData,
+			addedConnections);
+		return errors.size() == 0
+			? DataResult.success(diff)
+			: DataResult.error(() -> errors.stream()
+				.map(r -> r.error().get().message())
+				.collect(Collectors.joining(";")), diff);
+	}
+
+	private <T> void decodeConnections(DynamicOps<T> ops, T connectionsListT, List<GraphDiff.Connection<E>> connections, List<DataResult<?>> errors) {
+		if (connectionsListT != null) ops.getStream(connectionsListT)
+			.ifSuccess(stream -> stream.forEach(raw -> CodecSocketConnection.CODEC.codec()
+				.parse(ops, raw)
+				.flatMap(this::connectionFromCodec)
+				.ifSuccess(connections::add)
+				.ifError(errors::add)))
+			.ifError(errors::add);
+	}
+
+	private DataResult<NodeInstance<?, E>> addInstance(String id, String nodeId) {
+		int number = NodeGraphCodec.parseInstanceId(id);
+		if (number == -1) return DataResult.error(() -> "Invalid node instance ID %s".formatted(id));
+		Node<?, E> node = idToNode.apply(nodeId);
+		if (node == null) return DataResult.error(() -> "No such node with ID %s".formatted(nodeId));
+		NodeInstance<?, E> instance = new NodeInstance<>(node, null);
+		instanceIds.put(number, instance);
+		return DataResult.success(instance);
+	}
+
+	private DataResult<NodeInstance<?, E>> instanceFromId(String id) {
+		int number = NodeGraphCodec.parseInstanceId(id);
+		NodeInstance<?, E> instance = number != -1 ? instanceIds.get(number) : null;
+		return instance != null
+			? DataResult.success(instance)
+			: DataResult.error(() -> "No such node instance with ID %s".formatted(id));
+	}
+
+	private DataResult<GraphDiff.Connection<E>> connectionFromCodec(CodecSocketConnection connection) {
+		return instanceFromId(connection.from().node()).flatMap(fromNode -> instanceFromId(connection.to().node())
+			.flatMap(toNode -> {
+				OutputSocket<?> fromSocket = NodeDescriptor.of(fromNode.getNode()).getOutput(connection.from().socket());
+				if (fromSocket == null)
+					return DataResult.error(() -> "No such output socket with ID %s in instance %s".formatted(
+						connection.from().socket(),
+						connection.from().node()));
+
+				InputSocket<?> toSocket = NodeDescriptor.of(toNode.getNode()).getInput(connection.to().socket());
+				if (toSocket == null)
+					return DataResult.error(() -> "No such input socket with ID %s in instance %s".formatted(
+						connection.to().socket(),
+						connection.to().node()));
+
+				return DataResult.success(new GraphDiff.Connection<>(
+					new NodeSocketRef<>(fromNode, fromSocket),
+					new NodeSocketRef<>(toNode, toSocket)));
+			}));
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Override
+	public <T> RecordBuilder<T> encode(GraphDiff<E> input, DynamicOps<T> ops, RecordBuilder<T> prefix) {
+		ListBuilder<T> removedConnections = ops.listBuilder();
+		for (GraphDiff.Connection<E> connection : input.getRemovedConnections())
+			removedConnections.add(encodeConnection(connection, ops));
+
+		ListBuilder<T> removedInstances = ops.listBuilder();
+		for (NodeInstance<?, E> instance : input.getRemovedInstances()) removedInstances.add(encodeId(instance, ops));
+		for (NodeInstance<?, E> instance : input.getRemovedInstances()) instanceIds.remove(instance);
+
+		RecordBuilder<T> addedInstances = ops.mapBuilder();
+
+		for (NodeInstance<?, E> instance : input.getAddedInstances()) {
+			String nodeId = nodeToId.apply(instance.getNode());
+			addedInstances = addedInstances.add(
+				NodeGraphCodec.formatInstanceId(instanceIds.getOrAssign(instance)),
+				nodeId != null
+					? DataResult.success(ops.createString(nodeId))
+					: DataResult.error(() -> "Missing ID for node %s".formatted(instance.getNode().getClass())));
+		}
+
+		Map<NodeInstance<?, E>, RecordBuilder<T>> valuesByInstance = new LinkedHashMap<>();
+
+		for (GraphDiff.InitialValue<E> value : input.getInitialValues()) {
+			Codec<?> valueCodec = valueCodecs.getFromType(value.socket().type());
+			RecordBuilder<T> values = valuesByInstance.computeIfAbsent(value.instance(), k -> ops.mapBuilder());
+			valuesByInstance.put(value.instance(), values.add(
+				value.socket().name(),
+				((Codec) valueCodec).encodeStart(ops, value.value())));
+		}
+
+		RecordBuilder<T> initialValues = ops.mapBuilder();
+		for (Map.Entry<NodeInstance<?, E>, RecordBuilder<T>> entry : valuesByInstance.entrySet())
+			initialValues = initialValues.add(encodeId(entry.getKey(), ops), entry.getValue().build(ops.empty()));
+
+		ListBuilder<T> editorData = ops.listBuilder();
+
+		for (GraphDiff.EditorData<E> data : input.getEditorData()) {
+			int id = instanceIds.getId(data.instance());
+			editorData.add(id != -1
+				? CodecEditorDataChange.CODEC.codec().encodeStart(ops, new CodecEditorDataChange(
+					NodeGraphCodec.formatInstanceId(id),
+					Optional.ofNullable(data.editorData())))
+				: missingId(data.instance()));
+		}
+
+		ListBuilder<T> addedConnections = ops.listBuilder();
+		for (GraphDiff.Connection<E> connection : input.getAddedConnections())
+			addedConnections.add(encodeConnection(connection, ops));
+
+		return prefix
+			.add(ops.createString(KEY_REMOVED_CONNECTIONS), removedConnections.build(ops.empty()))
+			.add(ops.createString(KEY_REMOVED_INSTANCES), removedInstances.build(ops.empty()))
+			.add(ops.createString(KEY_ADDED_INSTANCES), addedInstances.build(ops.empty()))
+			.add(ops.createString(KEY_INITIAL_VALUES), initialValues.build(ops.empty()))
+			.add(ops.createString(KEY_EDITOR_DATA), editorData.build(ops.empty()))
+			.add(ops.createString(KEY_ADDED_CONNECTIONS), addedConnections.build(ops.empty()));
+	}
+
+	private <T> DataResult<T> encodeId(NodeInstance<?, E> instance, DynamicOps<T> ops) {
+		int id = instanceIds.getId(instance);
+		return id != -1 ? DataResult.success(ops.createString(NodeGraphCodec.formatInstanceId(id))) : missingId(instance);
+	}
+
+	private <T> DataResult<T> encodeConnection(GraphDiff.Connection<E> connection, DynamicOps<T> ops) {
+		int fromId = instanceIds.getId(connection.from().node());
+		int toId = instanceIds.getId(connection.to().node());
+		if (fromId == -1) return missingId(connection.from().node());
+		if (toId == -1) return missingId(connection.to().node());
+		CodecSocketRef from = new CodecSocketRef(NodeGraphCodec.formatInstanceId(fromId), connection.from().socket().name());
+		CodecSocketRef to = new CodecSocketRef(NodeGraphCodec.formatInstanceId(toId), connection.to().socket().name());
+		return CodecSocketConnection.CODEC.codec().encodeStart(ops, new CodecSocketConnection(from, to));
+	}
+
+	private static <T> DataResult<T> missingId(NodeInstance<?, ?> instance) {
+		return DataResult.error(() -> "Missing ID for node instance of %s".formatted(instance.getNode().getClass()));
+	}
+
+	@Override
+	public <T> Stream<T> keys(DynamicOps<T> ops) {
+		return Stream.of(
+			KEY_REMOVED_CONNECTIONS,
+			KEY_REMOVED_INSTANCES,
+			KEY_ADDED_INSTANCES,
+			KEY_INITIAL_VALUES,
+			KEY_EDITOR_DATA,
+			KEY_ADDED_CONNECTIONS).map(ops::createString);
+	}
+}
@@ -2,10 +2,12 @@ package io.github.nahkd123.nodegraph.dfucodec;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import com.mojang.datafixers.util.Pair;
@@ -14,21 +16,27 @@ import com.mojang.serialization.DataResult;
 import com.mojang.serialization.DynamicOps;
 import com.mojang.serialization.RecordBuilder;
 
+import io.github.nahkd123.nodegraph.node.NodeDescriptor;
 import io.github.nahkd123.nodegraph.socket.InputSocket;
 
 public class InitialValuesCodec implements Codec<Collection<Entry<InputSocket<?>, ?>>> {
-	private Collection<InputSocket<?>> inputSockets;
+	private Function<String, InputSocket<?>> socketLookup;
 	private ValueCodecRegistry valueCodecs;
 
 	public InitialValuesCodec(Collection<InputSocket<?>> inputSockets, ValueCodecRegistry valueCodecs) {
-		this.inputSockets = inputSockets;
+		Map<String, InputSocket<?>> sockets = new HashMap<>();
+		for (InputSocket<?> socket : inputSockets) sockets.putIfAbsent(socket.name(), socket);
+		this.socketLookup = sockets::get;
+		this.valueCodecs = valueCodecs;
+	}
+
+	public InitialValuesCodec(NodeDescriptor descriptor, ValueCodecRegistry valueCodecs) {
+		this.socketLookup = descriptor::getInput;
 		this.valueCodecs = valueCodecs;
 	}
 
 	public Optional<InputSocket<?>> socketFromId(String id) {
-		return inputSockets.stream()
-			.filter(socket -> socket.name().equals(id))
-			.findAny();
+		return Optional.ofNullable(socketLookup.apply(id));
 	}
 
 	@SuppressWarnings({ "unchecked", "rawtypes" })
@@ -16,9 +16,11 @@ import com.mojang.serialization.MapCodec;
 import com.mojang.serialization.MapLike;
 import com.mojang.serialization.RecordBuilder;
 
+import io.github.nahkd123.nodegraph.graph.InstanceIds;
 import io.github.nahkd123.nodegraph.graph.NodeGraph;
 import io.github.nahkd123.nodegraph.graph.NodeInstance;
 import io.github.nahkd123.nodegraph.graph.NodeSocketRef;
+import io.github.nahkd123.nodegraph.node.NodeDescriptor;
 import io.github.nahkd123.nodegraph.socket.InputSocket;
 import io.github.nahkd123.nodegraph.socket.OutputSocket;
 
@@ -26,10 +28,49 @@ public class NodeGraphCodec<E> extends MapCodec<NodeGraph<E>> {
 	private static final String KEY_INSTANCES = "instances";
 	private static final String KEY_CONNECTIONS = "connections";
 
+	private static final String INSTANCE_ID_PREFIX = "instance";
+
 	private MapCodec<NodeInstance<?, E>> instancesCodec;
+	private InstanceIds<E> ids;
 
 	public NodeGraphCodec(MapCodec<NodeInstance<?, E>> instancesCodec) {
+		this(instancesCodec, null);
+	}
+
+	/**
+	 * <p>
+	 * Create a graph codec that replaces all IDs in {@code ids} with IDs of node
+	 * instances on each encode or decode, so the instances can be referred by
+	 * {@link GraphDiffCodec} afterward. Node instance keys must be in the format
+	 * used by this codec when decoding.
+	 * </p>
+	 *
+	 * @param instancesCodec The node instances codec.
+	 * @param ids            The node instance IDs table, or {@code null} to not
+	 *                       record IDs.
+	 */
+	public NodeGraphCodec(MapCodec<NodeInstance<?, E>> instancesCodec, InstanceIds<E> ids) {
 		this.instancesCodec = instancesCodec;
+		this.ids = ids;
+	}
+
+	static String formatInstanceId(int id) {
+		return INSTANCE_ID_PREFIX + "%04d".formatted(id);
+	}
+
+	/**
+	 * @return The numeric ID, or {@code -1} if the ID is not in the format of
+	 *         {@link #formatInstanceId(int)}.
+	 */
+	static int parseInstanceId(String id) {
+		if (!id.startsWith(INSTANCE_ID_PREFIX)) return -1;
+
+		try {
+			int number = Integer.parseInt(id.substring(INSTANCE_ID_PREFIX.length()));
+			return number >= 0 ? number : -1;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
 	}
 
 	@SuppressWarnings({ "unchecked", "rawtypes" })
@@ -40,6 +81,7 @@ public class NodeGraphCodec<E> extends MapCodec<NodeGraph<E>> {
 		NodeGraph<E> graph = new NodeGraph<>();
 		Map<String, NodeInstance<?, E>> instanceIds = new HashMap<>();
 		List<DataResult<?>> errors = new ArrayList<>();
+		if (ids != null) ids.clear();
 
 		if (instancesMapT != null) ops.getMapValues(instancesMapT)
 			.ifSuccess(instances -> instances.forEach(pair -> {
@@ -53,6 +95,10 @@ public class NodeGraphCodec<E> extends MapCodec<NodeGraph<E>> {
 					.ifSuccess(instance -> {
 						graph.addInstance(instance);
 						instanceIds.put(instanceId, instance);
+						if (ids == null) return;
+						int number = parseInstanceId(instanceId);
+						if (number != -1) ids.put(number, instance);
+						else errors.add(DataResult.error(() -> "Invalid node instance ID %s".formatted(instanceId)));
 					})
 					.ifError(errors::add);
 			}))
@@ -86,11 +132,7 @@ public class NodeGraphCodec<E> extends MapCodec<NodeGraph<E>> {
 						return;
 					}
 
-					OutputSocket<?> fromSocket = fromNode.getNode().getOutputSockets()
-						.stream()
-						.filter(socket -> socket.name().equals(connection.from().socket()))
-						.findAny()
-						.orElse(null);
+					OutputSocket<?> fromSocket = NodeDescriptor.of(fromNode.getNode()).getOutput(connection.from().socket());
 					if (fromSocket == null) {
 						errors.add(DataResult.error(() -> "No such output socket with ID %s in instance %s".formatted(
 							connection.from().socket(),
@@ -98,11 +140,7 @@ public class NodeGraphCodec<E> extends MapCodec<NodeGraph<E>> {
 						return;
 					}
 
-					InputSocket<?> toSocket = fromNode.getNode().getInputSockets()
-						.stream()
-						.filter(socket -> socket.name().equals(connection.to().socket()))
-						.findAny()
-						.orElse(null);
+					InputSocket<?> toSocket = NodeDescriptor.of(toNode.getNode()).getInput(connection.to().socket());
 					if (toSocket == null) {
 						errors.add(DataResult.error(() -> "No such input socket with ID %s in instance %s".formatted(
 							connection.to().socket(),
@@ -126,9 +164,10 @@ public class NodeGraphCodec<E> extends MapCodec<NodeGraph<E>> {
 		RecordBuilder<T> instancesMap = ops.mapBuilder();
 		ListBuilder<T> connectionsList = ops.listBuilder();
 		Map<NodeInstance<?, E>, String> instanceIds = new HashMap<>();
+		if (ids != null) ids.clear();
 
 		for (NodeInstance<?, E> instance : input.getInstances()) {
-			String id = "instance%04d".formatted(instanceIds.size());
+			String id = formatInstanceId(ids != null ? ids.getOrAssign(instance) : instanceIds.size());
 			instanceIds.put(instance, id);
 			instancesMap = instancesMap.add(id, instancesCodec
 				.encode(instance, ops, ops.mapBuilder())
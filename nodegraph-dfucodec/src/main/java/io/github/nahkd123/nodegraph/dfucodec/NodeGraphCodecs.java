@@ -1,18 +1,29 @@
 package io.github.nahkd123.nodegraph.dfucodec;
 
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.function.Function;
 
 import com.mojang.serialization.Codec;
+import com.mojang.serialization.DataResult;
+import com.mojang.serialization.DynamicOps;
 import com.mojang.serialization.MapCodec;
 import com.mojang.serialization.codecs.RecordCodecBuilder;
 
+import io.github.nahkd123.nodegraph.graph.GraphDiff;
+import io.github.nahkd123.nodegraph.graph.InstanceIds;
 import io.github.nahkd123.nodegraph.graph.NodeEditorData;
 import io.github.nahkd123.nodegraph.graph.NodeGraph;
 import io.github.nahkd123.nodegraph.graph.NodeInstance;
 import io.github.nahkd123.nodegraph.node.Node;
+import io.github.nahkd123.nodegraph.node.NodeDescriptor;
+import io.github.nahkd123.nodegraph.node.NodeLookup;
 import io.github.nahkd123.nodegraph.socket.InputSocket;
 
 /**
@@ -34,9 +45,13 @@ public class NodeGraphCodecs {
 		return new InitialValuesCodec(inputSockets, valueCodecs);
 	}
 
+	public static Codec<Collection<Entry<InputSocket<?>, ?>>> createInitialValuesCodec(NodeDescriptor descriptor, ValueCodecRegistry valueCodecs) {
+		return new InitialValuesCodec(descriptor, valueCodecs);
+	}
+
 	public static <S, E> MapCodec<NodeInstance<S, E>> createInstanceCodec(Node<S, E> node, ValueCodecRegistry valueCodecs) {
 		Codec<Collection<Entry<InputSocket<?>, ?>>> initialValuesCodec = createInitialValuesCodec(
-			node.getInputSockets(),
+			NodeDescriptor.of(node),
 			valueCodecs);
 		return RecordCodecBuilder.mapCodec(i -> i.group(
 			NODE_EDITOR_DATA.codec().lenientOptionalFieldOf("editor")
@@ -57,4 +72,74 @@ public class NodeGraphCodecs {
 	public static <E> MapCodec<NodeGraph<E>> createGraphCodec(Function<Node<?, E>, String> nodeToId, Function<String, Node<?, E>> idToNode, ValueCodecRegistry valueCodecs) {
 		return new NodeGraphCodec<>(createInstancesCodec(nodeToId, idToNode, valueCodecs));
 	}
+
+	/**
+	 * <p>
+	 * Create a graph codec that can be shared by threads that decode graphs in
+	 * parallel, like with {@link #decodeAll(MapCodec, DynamicOps, Map, Executor)}.
+	 * Node IDs are resolved through a {@link NodeLookup}, so {@code idToNode}
+	 * does not need to be thread-safe, and the codec of each node is created once
+	 * instead of once per decoded node instance. {@code nodeToId} and
+	 * {@code valueCodecs} must be thread-safe.
+	 * </p>
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public static <E> MapCodec<NodeGraph<E>> createSharedGraphCodec(Function<Node<?, E>, String> nodeToId, Function<String, Node<?, E>> idToNode, ValueCodecRegistry valueCodecs) {
+		NodeLookup<E> nodes = NodeLookup.of(idToNode);
+		Map<Node<?, E>, MapCodec<NodeInstance<?, E>>> instanceCodecs = new ConcurrentHashMap<>();
+		Codec<Node<?, E>> nodeCodec = Codec.STRING.comapFlatMap(id -> {
+			Node<?, E> node = nodes.apply(id);
+			return node != null ? DataResult.success(node) : DataResult.error(() -> "Unknown node %s".formatted(id));
+		}, nodeToId);
+		return new NodeGraphCodec<>(nodeCodec.dispatchMap(
+			"type",
+			instance -> instance.getNode(),
+			node -> instanceCodecs.computeIfAbsent(node, key -> (MapCodec) createInstanceCodec(key, valueCodecs))));
+	}
+
+	/**
+	 * <p>
+	 * Decode many graphs in parallel, submitting one task per graph to
+	 * {@code executor}. Failing to decode a graph does not affect other graphs;
+	 * the error is reported in the result of that graph. The graph codec must be
+	 * safe to use from multiple threads, like the one created by
+	 * {@link #createSharedGraphCodec(Function, Function, ValueCodecRegistry)}.
+	 * Codecs that record instance IDs are not.
+	 * </p>
+	 *
+	 * @return A future that completes when all graphs are decoded, with results
+	 *         in the iteration order of {@code inputs}.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <K, T, E> CompletableFuture<Map<K, DataResult<NodeGraph<E>>>> decodeAll(MapCodec<NodeGraph<E>> graphCodec, DynamicOps<T> ops, Map<K, T> inputs, Executor executor) {
+		Codec<NodeGraph<E>> codec = graphCodec.codec();
+		Map<K, CompletableFuture<DataResult<NodeGraph<E>>>> futures = new LinkedHashMap<>();
+		inputs.forEach((key, input) -> futures.put(key, CompletableFuture.supplyAsync(() -> {
+			try {
+				return codec.parse(ops, input);
+			} catch (RuntimeException e) {
+				return DataResult.error(() -> "Failed to decode graph: %s".formatted(e));
+			}
+		}, executor)));
+		return CompletableFuture.allOf(futures.values().toArray(CompletableFuture[]::new)).thenApply(done -> {
+			Map<K, DataResult<NodeGraph<E>>> results = new LinkedHashMap<>();
+			futures.forEach((key, future) -> results.put(key, future.join()));
+			return results;
+		});
+	}
+
+	/**
+	 * <p>
+	 * Create a graph codec that records IDs of node instances in
+	 * {@code instanceIds}, which can then be used with
+	 * {@link #createGraphDiffCodec(Function, Function, ValueCodecRegistry, InstanceIds)}.
+	 * </p>
+	 */
+	public static <E> MapCodec<NodeGraph<E>> createGraphCodec(Function<Node<?, E>, String> nodeToId, Function<String, Node<?, E>> idToNode, ValueCodecRegistry valueCodecs, InstanceIds<E> instanceIds) {
+		return new NodeGraphCodec<>(createInstancesCodec(nodeToId, idToNode, valueCodecs), instanceIds);
+	}
+
+	public static <E> MapCodec<GraphDiff<E>> createGraphDiffCodec(Function<Node<?, E>, String> nodeToId, Function<String, Node<?, E>> idToNode, ValueCodecRegistry valueCodecs, InstanceIds<E> instanceIds) {
+		return new GraphDiffCodec<>(nodeToId, idToNode, valueCodecs, instanceIds);
+	}
 }
@@ -1,19 +1,30 @@
 package io.github.nahkd123.nodegraph.dfucodec;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Function;
 
 import org.junit.jupiter.api.Test;
 
 import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
 import com.mojang.datafixers.util.Pair;
 import com.mojang.serialization.Codec;
+import com.mojang.serialization.DataResult;
 import com.mojang.serialization.JsonOps;
+import com.mojang.serialization.MapCodec;
 
 import io.github.nahkd123.nodegraph.graph.EvaluationRound;
+import io.github.nahkd123.nodegraph.graph.GraphDiff;
+import io.github.nahkd123.nodegraph.graph.GraphSnapshot;
+import io.github.nahkd123.nodegraph.graph.InstanceIds;
 import io.github.nahkd123.nodegraph.graph.NodeGraph;
 import io.github.nahkd123.nodegraph.graph.NodeInstance;
 import io.github.nahkd123.nodegraph.node.Node;
@@ -89,4 +100,74 @@ class NodeGraphCodecsTest {
 		EvaluationRound<Void> eval = graph.newEvalRound(null);
 		assertEquals((1 + 2) + 4, eval.eval(b).get(ADD_NODE.output).doubleValue());
 	}
+
+	@Test
+	void testDiff() {
+		InstanceIds<Void> clientIds = new InstanceIds<>();
+		InstanceIds<Void> serverIds = new InstanceIds<>();
+		NodeGraph<Void> client = new NodeGraph<>();
+		NodeInstance<Object, Void> a = client.addInstance(new NodeInstance<>(ADD_NODE, null));
+		a.setInitialValue(ADD_NODE.inputA, 1);
+
+		JsonElement encoded = NodeGraphCodecs.createGraphCodec(NODE_TO_ID, ID_TO_NODE, VALUE_CODECS, clientIds).codec()
+			.encodeStart(JsonOps.INSTANCE, client).getPartialOrThrow();
+		NodeGraph<Void> server = NodeGraphCodecs.createGraphCodec(NODE_TO_ID, ID_TO_NODE, VALUE_CODECS, serverIds).codec()
+			.decode(JsonOps.INSTANCE, encoded).map(Pair::getFirst).getPartialOrThrow();
+
+		GraphSnapshot<Void> before = client.snapshot();
+		NodeInstance<Object, Void> b = client.addInstance(new NodeInstance<>(ADD_NODE, null));
+		b.setInitialValue(ADD_NODE.inputB, 10);
+		client.connect(a, ADD_NODE.output, b, ADD_NODE.inputA);
+		a.setInitialValue(ADD_NODE.inputA, 2);
+
+		encoded = NodeGraphCodecs.createGraphDiffCodec(NODE_TO_ID, ID_TO_NODE, VALUE_CODECS, clientIds).codec()
+			.encodeStart(JsonOps.INSTANCE, GraphDiff.between(before, client.snapshot())).getPartialOrThrow();
+		NodeGraphCodecs.createGraphDiffCodec(NODE_TO_ID, ID_TO_NODE, VALUE_CODECS, serverIds).codec()
+			.decode(JsonOps.INSTANCE, encoded).map(Pair::getFirst).getPartialOrThrow()
+			.applyTo(server, serverIds);
+
+		NodeInstance<?, Void> serverB = serverIds.get(clientIds.getId(b));
+		assertEquals(2, server.getInstances().size());
+		assertEquals(2 + 10, server.newEvalRound(null).eval(serverB).getDouble(ADD_NODE.output));
+	}
+
+	@Test
+	void testDecodeAll() throws Exception {
+		NodeGraph<Void> graph = new NodeGraph<>();
+		NodeInstance<Object, Void> a = graph.addInstance(new NodeInstance<>(ADD_NODE, null));
+		NodeInstance<Object, Void> b = graph.addInstance(new NodeInstance<>(ADD_NODE, null));
+		a.setInitialValue(ADD_NODE.inputA, 1);
+		b.setInitialValue(ADD_NODE.inputB, 10);
+		graph.connect(a, ADD_NODE.output, b, ADD_NODE.inputA);
+
+		MapCodec<NodeGraph<Void>> codec = NodeGraphCodecs.createSharedGraphCodec(NODE_TO_ID, ID_TO_NODE, VALUE_CODECS);
+		JsonElement encoded = codec.codec().encodeStart(JsonOps.INSTANCE, graph).getPartialOrThrow();
+		Map<String, JsonElement> inputs = new LinkedHashMap<>();
+		for (int i = 0; i < 20; i++) inputs.put("graph" + i, encoded);
+		inputs.put("invalid", new JsonPrimitive("not a graph"));
+		JsonElement unknown = JsonParser.parseString(encoded.toString().replace("\"add\"", "\"missing\""));
+		inputs.put("unknown", unknown);
+		assertTrue(codec.codec().parse(JsonOps.INSTANCE, unknown).error().orElseThrow().message().contains("Unknown node missing"));
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+
+		try {
+			Map<String, DataResult<NodeGraph<Void>>> results = NodeGraphCodecs.decodeAll(codec, JsonOps.INSTANCE, inputs, executor).get();
+			assertEquals(List.copyOf(inputs.keySet()), List.copyOf(results.keySet()));
+
+			for (int i = 0; i < 20; i++) {
+				NodeGraph<Void> decoded = results.get("graph" + i).result().orElseThrow();
+				NodeInstance<?, Void> output = decoded.getInstances().stream()
+					.filter(instance -> decoded.getOutgoing(instance).isEmpty())
+					.findFirst()
+					.get();
+				assertEquals(2, decoded.getInstances().size());
+				assertEquals(1 + 10, decoded.newEvalRound(null).eval(output).getDouble(ADD_NODE.output));
+			}
+
+			assertTrue(results.get("invalid").error().isPresent());
+			assertTrue(results.get("unknown").error().orElseThrow().message().contains("Unknown node missing"));
+		} finally {
+			executor.shutdown();
+		}
+	}
 }
@@ -0,0 +1,149 @@
+package io.github.nahkd123.nodegraph.serialize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+import io.github.nahkd123.nodegraph.graph.NodeGraph;
+import io.github.nahkd123.nodegraph.node.Node;
+import io.github.nahkd123.nodegraph.node.NodeLookup;
+
+/**
+ * <p>
+ * Deserialize many graphs in parallel on an {@link Executor}. All graphs share
+ * the same {@link NodeLookup}, so each node ID is only resolved once, no matter
+ * how many graphs and workers use it. Failing to deserialize a graph does not
+ * affect other graphs; the error is reported in the {@link Result} of that
+ * graph.
+ * </p>
+ * <p>
+ * The node resolver does not need to be thread-safe, but value deserializers
+ * are called from all workers at the same time, so both
+ * {@code valueDeserializers} and the returned deserializers must be
+ * thread-safe.
+ * </p>
+ *
+ * @param <E> Type of environment object.
+ */
+public final class BulkGraphLoader<E> {
+	private final NodeLookup<E> nodes;
+	private final Function<Class<?>, ValueDeserializer<?>> valueDeserializers;
+
+	public BulkGraphLoader(Function<String, Node<?, E>> idToNode, Function<Class<?>, ValueDeserializer<?>> valueDeserializers) {
+		this.nodes = NodeLookup.of(idToNode);
+		this.valueDeserializers = valueDeserializers;
+	}
+
+	/**
+	 * <p>
+	 * Get the node lookup shared by all graphs loaded by this loader, which can
+	 * also be used to load graphs in other ways, like with
+	 * {@link LazyNodeGraph}.
+	 * </p>
+	 */
+	public NodeLookup<E> getNodes() { return nodes; }
+
+	/**
+	 * <p>
+	 * Deserialize a single graph on the current thread.
+	 * </p>
+	 */
+	public Result<E> load(Source source) {
+		try {
+			return new Result<>(NodeGraphSerializer.deserialize(nodes, valueDeserializers, source.open()), null);
+		} catch (IOException | RuntimeException e) {
+			return new Result<>(null, e);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Deserialize all graphs in parallel, submitting one task per graph to
+	 * {@code executor}.
+	 * </p>
+	 *
+	 * @param <K>      Type of the keys that identify graphs, like file names.
+	 * @param sources  The sources of graphs.
+	 * @param executor The executor to deserialize graphs with.
+	 * @return A future that completes when all graphs are deserialized, with
+	 *         results in the iteration order of {@code sources}.
+	 */
+	@SuppressWarnings("unchecked")
+	public <K> CompletableFuture<Map<K, Result<E>>> loadAll(Map<K, ? extends Source> sources, Executor executor) {
+		Map<K, CompletableFuture<Result<E>>> futures = new LinkedHashMap<>();
+		sources.forEach((key, source) -> futures.put(key, CompletableFuture.supplyAsync(() -> load(source), executor)));
+		return CompletableFuture.allOf(futures.values().toArray(CompletableFuture[]::new)).thenApply(done -> {
+			Map<K, Result<E>> results = new LinkedHashMap<>();
+			futures.forEach((key, future) -> results.put(key, future.join()));
+			return results;
+		});
+	}
+
+	/**
+	 * <p>
+	 * A serialized graph. The source is opened by the worker that deserializes
+	 * the graph.
+	 * </p>
+	 */
+	@FunctionalInterface
+	public static interface Source {
+		/**
+		 * @return A buffer with the graph starting at its position.
+		 */
+		ByteBuffer open() throws IOException;
+
+		/**
+		 * <p>
+		 * A graph in a buffer. The buffer is not modified, so the same buffer can be
+		 * loaded multiple times.
+		 * </p>
+		 */
+		static Source of(ByteBuffer buffer) {
+			return buffer::duplicate;
+		}
+
+		static Source of(byte[] bytes) {
+			return () -> ByteBuffer.wrap(bytes);
+		}
+
+		/**
+		 * <p>
+		 * A graph in a file, which is mapped to memory when it is loaded.
+		 * </p>
+		 */
+		static Source of(Path file) {
+			return () -> {
+				try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+					return channel.map(MapMode.READ_ONLY, 0, channel.size());
+				}
+			};
+		}
+	}
+
+	/**
+	 * <p>
+	 * The result of loading a graph, which is either the graph or the error that
+	 * stopped it from being loaded.
+	 * </p>
+	 */
+	public static record Result<E>(NodeGraph<E> graph, Exception error) {
+		public boolean isSuccess() { return error == null; }
+
+		/**
+		 * @throws IOException if the graph could not be loaded.
+		 */
+		public NodeGraph<E> getOrThrow() throws IOException {
+			if (error == null) return graph;
+			if (error instanceof IOException e) throw e;
+			throw new IOException(error);
+		}
+	}
+}
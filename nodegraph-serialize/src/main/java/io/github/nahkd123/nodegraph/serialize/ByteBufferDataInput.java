@@ -0,0 +1,184 @@
+package io.github.nahkd123.nodegraph.serialize;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p>
+ * {@link DataInput} that reads directly from a {@link ByteBuffer}, like a
+ * {@link java.nio.MappedByteBuffer} of a file. Unlike
+ * {@link DataInputStream}, nothing is copied through intermediate streams, and
+ * each read is a single bounds check followed by a read from the buffer.
+ * </p>
+ * <p>
+ * Reading advances the position of the buffer, so multiple graphs stored next
+ * to each other can be read with the same buffer.
+ * </p>
+ */
+public final class ByteBufferDataInput implements DataInput {
+	private final ByteBuffer buffer;
+
+	/**
+	 * @param buffer The buffer, which must be in big-endian order (the default
+	 *               order of new buffers).
+	 */
+	public ByteBufferDataInput(ByteBuffer buffer) {
+		if (buffer.order() != ByteOrder.BIG_ENDIAN) throw new IllegalArgumentException("buffer must be big-endian");
+		this.buffer = buffer;
+	}
+
+	public ByteBuffer getBuffer() { return buffer; }
+
+	/**
+	 * <p>
+	 * Get the number of bytes left in this input.
+	 * </p>
+	 */
+	int remaining() {
+		return buffer.remaining();
+	}
+
+	private void require(int length) throws EOFException {
+		if (buffer.remaining() < length) throw new EOFException();
+	}
+
+	/**
+	 * <p>
+	 * Get the next {@code length} bytes as a new buffer that shares the content
+	 * of this buffer, skipping them in this input.
+	 * </p>
+	 */
+	ByteBuffer slice(int length) throws IOException {
+		if (length < 0) throw new IOException("Negative length %d".formatted(length));
+		require(length);
+		ByteBuffer slice = buffer.slice(buffer.position(), length);
+		buffer.position(buffer.position() + length);
+		return slice;
+	}
+
+	@Override
+	public void readFully(byte[] b) throws IOException {
+		readFully(b, 0, b.length);
+	}
+
+	@Override
+	public void readFully(byte[] b, int off, int len) throws IOException {
+		require(len);
+		buffer.get(b, off, len);
+	}
+
+	@Override
+	public int skipBytes(int n) {
+		int skipped = Math.max(Math.min(n, buffer.remaining()), 0);
+		buffer.position(buffer.position() + skipped);
+		return skipped;
+	}
+
+	@Override
+	public boolean readBoolean() throws IOException {
+		return readByte() != 0;
+	}
+
+	@Override
+	public byte readByte() throws IOException {
+		require(1);
+		return buffer.get();
+	}
+
+	@Override
+	public int readUnsignedByte() throws IOException {
+		return readByte() & 0xFF;
+	}
+
+	@Override
+	public short readShort() throws IOException {
+		require(2);
+		return buffer.getShort();
+	}
+
+	@Override
+	public int readUnsignedShort() throws IOException {
+		return readShort() & 0xFFFF;
+	}
+
+	@Override
+	public char readChar() throws IOException {
+		require(2);
+		return buffer.getChar();
+	}
+
+	@Override
+	public int readInt() throws IOException {
+		require(4);
+		return buffer.getInt();
+	}
+
+	@Override
+	public long readLong() throws IOException {
+		require(8);
+		return buffer.getLong();
+	}
+
+	@Override
+	public float readFloat() throws IOException {
+		require(4);
+		return buffer.getFloat();
+	}
+
+	@Override
+	public double readDouble() throws IOException {
+		require(8);
+		return buffer.getDouble();
+	}
+
+	@Override
+	public String readLine() throws IOException {
+		if (!buffer.hasRemaining()) return null;
+		StringBuilder builder = new StringBuilder();
+
+		while (buffer.hasRemaining()) {
+			char c = (char) (buffer.get() & 0xFF);
+			if (c == '\n') break;
+
+			if (c == '\r') {
+				if (buffer.hasRemaining() && buffer.get(buffer.position()) == '\n') buffer.get();
+				break;
+			}
+
+			builder.append(c);
+		}
+
+		return builder.toString();
+	}
+
+	/**
+	 * <p>
+	 * Read a string in modified UTF-8. Strings that only have ASCII characters,
+	 * like node IDs and socket names, are decoded directly from the bytes
+	 * without going through a temporary character array.
+	 * </p>
+	 */
+	@Override
+	public String readUTF() throws IOException {
+		int start = buffer.position();
+		int length = readUnsignedShort();
+		require(length);
+		int position = buffer.position();
+
+		for (int i = 0; i < length; i++) {
+			if (buffer.get(position + i) < 0) {
+				buffer.position(start);
+				return DataInputStream.readUTF(this);
+			}
+		}
+
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.ISO_8859_1);
+	}
+}
@@ -0,0 +1,179 @@
+package io.github.nahkd123.nodegraph.serialize;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+
+/**
+ * <p>
+ * {@link DataOutput} that writes to a growable heap {@link ByteBuffer}. This is
+ * the writing counterpart of {@link ByteBufferDataInput}: the written bytes can
+ * be obtained with {@link #toByteBuffer()} and written to a
+ * {@link java.nio.channels.FileChannel} without copying them again.
+ * </p>
+ */
+public final class ByteBufferDataOutput implements DataOutput {
+	private ByteBuffer buffer;
+
+	public ByteBufferDataOutput() {
+		this(256);
+	}
+
+	public ByteBufferDataOutput(int initialCapacity) {
+		buffer = ByteBuffer.allocate(initialCapacity);
+	}
+
+	/**
+	 * <p>
+	 * Get the number of bytes written so far.
+	 * </p>
+	 */
+	public int size() {
+		return buffer.position();
+	}
+
+	/**
+	 * <p>
+	 * Get the written bytes as a buffer. The returned buffer shares the content
+	 * of this output, so it must not be used after writing more data.
+	 * </p>
+	 *
+	 * @return A buffer with position at {@code 0} and limit at {@link #size()}.
+	 */
+	public ByteBuffer toByteBuffer() {
+		return buffer.duplicate().flip();
+	}
+
+	public byte[] toByteArray() {
+		byte[] bytes = new byte[buffer.position()];
+		buffer.get(0, bytes);
+		return bytes;
+	}
+
+	private void ensure(int length) {
+		if (buffer.remaining() >= length) return;
+		int capacity = Math.max(buffer.capacity() * 2, buffer.position() + length);
+		ByteBuffer grown = ByteBuffer.allocate(capacity);
+		grown.put(buffer.flip());
+		buffer = grown;
+	}
+
+	@Override
+	public void write(int b) {
+		ensure(1);
+		buffer.put((byte) b);
+	}
+
+	@Override
+	public void write(byte[] b) {
+		write(b, 0, b.length);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) {
+		ensure(len);
+		buffer.put(b, off, len);
+	}
+
+	/**
+	 * <p>
+	 * Write the remaining bytes of a buffer, advancing its position.
+	 * </p>
+	 */
+	public void write(ByteBuffer b) {
+		ensure(b.remaining());
+		buffer.put(b);
+	}
+
+	@Override
+	public void writeBoolean(boolean v) {
+		write(v ? 1 : 0);
+	}
+
+	@Override
+	public void writeByte(int v) {
+		write(v);
+	}
+
+	@Override
+	public void writeShort(int v) {
+		ensure(2);
+		buffer.putShort((short) v);
+	}
+
+	@Override
+	public void writeChar(int v) {
+		ensure(2);
+		buffer.putChar((char) v);
+	}
+
+	@Override
+	public void writeInt(int v) {
+		ensure(4);
+		buffer.putInt(v);
+	}
+
+	@Override
+	public void writeLong(long v) {
+		ensure(8);
+		buffer.putLong(v);
+	}
+
+	@Override
+	public void writeFloat(float v) {
+		ensure(4);
+		buffer.putFloat(v);
+	}
+
+	@Override
+	public void writeDouble(double v) {
+		ensure(8);
+		buffer.putDouble(v);
+	}
+
+	@Override
+	public void writeBytes(String s) {
+		int length = s.length();
+		ensure(length);
+		for (int i = 0; i < length; i++) buffer.put((byte) s.charAt(i));
+	}
+
+	@Override
+	public void writeChars(String s) {
+		int length = s.length();
+		ensure(length * 2);
+		for (int i = 0; i < length; i++) buffer.putChar(s.charAt(i));
+	}
+
+	@Override
+	public void writeUTF(String s) throws IOException {
+		int length = s.length();
+		int encodedLength = length;
+
+		for (int i = 0; i < length; i++) {
+			char c = s.charAt(i);
+			if (c >= 0x80 || c == 0) encodedLength += c >= 0x800 ? 2 : 1;
+		}
+
+		if (encodedLength > 0xFFFF) throw new UTFDataFormatException("Encoded string is too long: %d bytes"
+			.formatted(encodedLength));
+		ensure(2 + encodedLength);
+		buffer.putShort((short) encodedLength);
+
+		for (int i = 0; i < length; i++) {
+			char c = s.charAt(i);
+
+			if (c < 0x80 && c != 0) {
+				buffer.put((byte) c);
+			} else if (c < 0x800) {
+				buffer.put((byte) (0xC0 | (c >> 6)));
+				buffer.put((byte) (0x80 | (c & 0x3F)));
+			} else {
+				buffer.put((byte) (0xE0 | (c >> 12)));
+				buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+				buffer.put((byte) (0x80 | (c & 0x3F)));
+			}
+		}
+	}
+}
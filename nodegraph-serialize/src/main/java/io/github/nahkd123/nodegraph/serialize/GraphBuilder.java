@@ -0,0 +1,60 @@
+package io.github.nahkd123.nodegraph.serialize;
+
+import io.github.nahkd123.nodegraph.graph.InstanceIds;
+import io.github.nahkd123.nodegraph.graph.NodeEditorData;
+import io.github.nahkd123.nodegraph.graph.NodeGraph;
+import io.github.nahkd123.nodegraph.graph.NodeInstance;
+import io.github.nahkd123.nodegraph.node.Node;
+import io.github.nahkd123.nodegraph.socket.InputSocket;
+import io.github.nahkd123.nodegraph.socket.OutputSocket;
+
+/**
+ * <p>
+ * Visitor that builds the graph. Each instance is added to the graph after
+ * all of its initial values are set, so the graph is not notified of each
+ * initial value.
+ * </p>
+ */
+class GraphBuilder<E> implements GraphVisitor<E> {
+	private final NodeGraph<E> graph = new NodeGraph<>();
+	private final InstanceIds<E> instanceIds;
+	private NodeInstance<?, E> pending;
+
+	GraphBuilder(InstanceIds<E> instanceIds) {
+		this.instanceIds = instanceIds;
+		instanceIds.clear();
+	}
+
+	NodeGraph<E> getGraph() { return graph; }
+
+	@Override
+	public void visitInstance(int id, Node<?, E> node, NodeEditorData editorData) {
+		flush();
+		pending = new NodeInstance<>(node, editorData);
+		instanceIds.put(id, pending);
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	@Override
+	public void visitInitialValue(int id, InputSocket<?> socket, Object value) {
+		pending.setInitialValue((InputSocket) socket, value);
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	@Override
+	public void visitConnection(int fromId, OutputSocket<?> fromSocket, int toId, InputSocket<?> toSocket) {
+		flush();
+		((NodeGraph) graph).connect(instanceIds.get(fromId), fromSocket, instanceIds.get(toId), toSocket);
+	}
+
+	@Override
+	public void visitEnd() {
+		flush();
+	}
+
+	private void flush() {
+		if (pending == null) return;
+		graph.addInstance(pending);
+		pending = null;
+	}
+}
@@ -0,0 +1,35 @@
+package io.github.nahkd123.nodegraph.serialize;
+
+import java.io.IOException;
+
+import io.github.nahkd123.nodegraph.graph.NodeEditorData;
+import io.github.nahkd123.nodegraph.node.Node;
+import io.github.nahkd123.nodegraph.socket.InputSocket;
+import io.github.nahkd123.nodegraph.socket.OutputSocket;
+
+/**
+ * <p>
+ * Visitor of a serialized graph, which is notified of each part of the graph
+ * as it is read from the stream. This can be used to validate, index or
+ * transform huge graphs without building {@link io.github.nahkd123.nodegraph.graph.NodeGraph}
+ * in memory.
+ * </p>
+ * <p>
+ * Node instances are identified by their positions in the stream, starting
+ * from {@code 0}. Initial values of an instance are visited right after the
+ * instance, and connections are visited after all instances. Visitors can
+ * throw {@link IOException} to stop reading.
+ * </p>
+ *
+ * @param <E> Type of environment object.
+ * @see NodeGraphSerializer#visit(java.util.function.Function, java.util.function.Function, GraphVisitor, java.io.DataInput)
+ */
+public interface GraphVisitor<E> {
+	default void visitInstance(int id, Node<?, E> node, NodeEditorData editorData) throws IOException {}
+
+	default void visitInitialValue(int id, InputSocket<?> socket, Object value) throws IOException {}
+
+	default void visitConnection(int fromId, OutputSocket<?> fromSocket, int toId, InputSocket<?> toSocket) throws IOException {}
+
+	default void visitEnd() throws IOException {}
+}
@@ -0,0 +1,274 @@
+package io.github.nahkd123.nodegraph.serialize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Function;
+
+import io.github.nahkd123.nodegraph.graph.NodeEditorData;
+import io.github.nahkd123.nodegraph.graph.NodeGraph;
+import io.github.nahkd123.nodegraph.graph.NodeInstance;
+import io.github.nahkd123.nodegraph.node.Node;
+import io.github.nahkd123.nodegraph.serialize.NodeGraphSerializerV2.NodeType;
+import io.github.nahkd123.nodegraph.socket.InputSocket;
+import io.github.nahkd123.nodegraph.socket.OutputSocket;
+
+/**
+ * <p>
+ * A view of a graph serialized with
+ * {@link NodeGraphSerializer#serializeIndexed(NodeGraph, Function, Function, java.io.DataOutput)},
+ * which only deserializes node instances when they are first accessed. This is
+ * useful for large graphs where only a part of the graph is needed, like the
+ * dependencies of a single output node, or the editor data for rendering a
+ * thumbnail.
+ * </p>
+ * <p>
+ * Loaded node instances are added to {@link #getGraph()}. Connections are only
+ * added by {@link #loadWithDependencies(int)}, which loads the node instance
+ * along with all node instances it depends on, so the returned instance can be
+ * evaluated right away. The view is not thread-safe.
+ * </p>
+ * <p>
+ * Node instances are identified by the same IDs as the ones assigned while
+ * serializing (see
+ * {@link NodeGraphSerializer#serializeIndexed(NodeGraph, Function, Function, io.github.nahkd123.nodegraph.graph.InstanceIds, java.io.DataOutput)}).
+ * </p>
+ *
+ * @param <E> Type of environment object.
+ */
+public final class LazyNodeGraph<E> {
+	private final ByteBuffer buffer;
+	private final ByteBufferDataInput input;
+	private final Function<Class<?>, ValueDeserializer<?>> valueDeserializers;
+	private final NodeType<E>[] types;
+	private final int instancesCount;
+	private final int connectionsCount;
+	private final int offsetsBase;
+	private final int startsBase;
+	private final int instancesBase;
+	private final int instancesLength;
+	private final int connectionsBase;
+	private final NodeInstance<?, E>[] instances;
+	private final boolean[] connected;
+	private final NodeGraph<E> graph = new NodeGraph<>();
+	private final InstanceReader reader = new InstanceReader();
+
+	@SuppressWarnings("unchecked")
+	private LazyNodeGraph(Function<String, Node<?, E>> idToNode, Function<Class<?>, ValueDeserializer<?>> valueDeserializers, ByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+		this.input = new ByteBufferDataInput(buffer.duplicate());
+		this.valueDeserializers = valueDeserializers;
+
+		int version = input.readInt();
+		if (version != NodeGraphSerializer.INDEXED_VERSION.versionId())
+			throw new IOException("Version %d does not have an index of node instances".formatted(version));
+
+		types = NodeGraphSerializerV2.readNodeTypes(idToNode, input);
+		instancesCount = input.readInt();
+		connectionsCount = input.readInt();
+		if (instancesCount < 0 || connectionsCount < 0) throw new IOException("Negative count");
+		offsetsBase = input.getBuffer().position();
+		long tablesEnd = offsetsBase + (instancesCount * 2L + 1) * 4;
+		if (tablesEnd + 4 > buffer.limit())
+			throw new IOException("Index of %d node instances does not fit in %d bytes".formatted(instancesCount, buffer.limit()));
+		startsBase = offsetsBase + instancesCount * 4;
+		input.getBuffer().position((int) tablesEnd);
+		instancesLength = input.readInt();
+		instancesBase = input.getBuffer().position();
+		if (instancesLength < 0 || instancesBase + (long) instancesLength > buffer.limit())
+			throw new IOException("Node instances length %d does not fit in %d bytes".formatted(instancesLength, buffer.limit()));
+		connectionsBase = instancesBase + instancesLength;
+		if (connectionsBase + (long) connectionsCount * NodeGraphSerializerV3.CONNECTION_SIZE > buffer.limit())
+			throw new IOException("Graph is truncated");
+		instances = new NodeInstance[instancesCount];
+		connected = new boolean[instancesCount];
+	}
+
+	/**
+	 * <p>
+	 * Open a view of an indexed graph. The graph is read starting at the position
+	 * of the buffer, and the buffer must not be modified while the view is in
+	 * use.
+	 * </p>
+	 *
+	 * @throws IOException if the graph is not serialized with an index.
+	 */
+	public static <E> LazyNodeGraph<E> open(Function<String, Node<?, E>> idToNode, Function<Class<?>, ValueDeserializer<?>> valueDeserializers, ByteBuffer buffer) throws IOException {
+		return new LazyNodeGraph<>(idToNode, valueDeserializers, buffer.slice());
+	}
+
+	/**
+	 * <p>
+	 * Open a view of an indexed graph stored in a file. The file is mapped to
+	 * memory, so only the parts of the file that are accessed are loaded.
+	 * </p>
+	 */
+	public static <E> LazyNodeGraph<E> open(Function<String, Node<?, E>> idToNode, Function<Class<?>, ValueDeserializer<?>> valueDeserializers, Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return open(idToNode, valueDeserializers, channel.map(MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * <p>
+	 * Get the graph of all loaded node instances.
+	 * </p>
+	 */
+	public NodeGraph<E> getGraph() { return graph; }
+
+	public int getInstancesCount() { return instancesCount; }
+
+	public int getConnectionsCount() { return connectionsCount; }
+
+	public boolean isLoaded(int id) {
+		checkId(id);
+		return instances[id] != null;
+	}
+
+	private void checkId(int id) {
+		if (id < 0 || id >= instancesCount) throw new IndexOutOfBoundsException(id);
+	}
+
+	private ByteBufferDataInput seekInstance(int id) throws IOException {
+		checkId(id);
+		int offset = buffer.getInt(offsetsBase + id * 4);
+		if (offset < 0 || offset >= instancesLength)
+			throw new IOException("Invalid offset %d for node instance %d".formatted(offset, id));
+		input.getBuffer().position(instancesBase + offset);
+		return input;
+	}
+
+	/**
+	 * <p>
+	 * Get the node of node instance without loading the node instance.
+	 * </p>
+	 */
+	public Node<?, E> getNode(int id) throws IOException {
+		if (isLoaded(id)) return instances[id].getNode();
+		return getType(id).node();
+	}
+
+	/**
+	 * <p>
+	 * Get the editor data of node instance without loading the node instance.
+	 * Initial values are not deserialized.
+	 * </p>
+	 */
+	public NodeEditorData getEditorData(int id) throws IOException {
+		if (isLoaded(id)) return instances[id].getEditorData();
+		ByteBufferDataInput input = seekInstance(id);
+		NodeGraphSerializerV2.readVarInt(input);
+		return NodeGraphSerializerV2.readEditorData(input);
+	}
+
+	/**
+	 * <p>
+	 * Get the node instance, loading it if it is not loaded yet. The node
+	 * instance is added to {@link #getGraph()} without any connection.
+	 * </p>
+	 */
+	public NodeInstance<?, E> getInstance(int id) throws IOException {
+		if (isLoaded(id)) return instances[id];
+		NodeGraphSerializerV2.readInstance(id, types, valueDeserializers, reader, seekInstance(id));
+		NodeInstance<?, E> instance = reader.instance;
+		reader.instance = null;
+		instances[id] = graph.addInstance(instance);
+		return instance;
+	}
+
+	/**
+	 * <p>
+	 * Get the connections to inputs of node instance, without loading any node
+	 * instance.
+	 * </p>
+	 */
+	public List<Connection> getInputConnections(int id) throws IOException {
+		checkId(id);
+		int start = buffer.getInt(startsBase + id * 4);
+		int end = buffer.getInt(startsBase + (id + 1) * 4);
+		if (start < 0 || start > end || end > connectionsCount)
+			throw new IOException("Invalid connections for node instance %d".formatted(id));
+		NodeType<E> toType = getType(id);
+		List<Connection> connections = new ArrayList<>(end - start);
+
+		for (int i = start; i < end; i++) {
+			int position = connectionsBase + i * NodeGraphSerializerV3.CONNECTION_SIZE;
+			int fromId = buffer.getInt(position);
+			if (fromId < 0 || fromId >= instancesCount)
+				throw new IOException("Missing node instance with ID %d".formatted(fromId));
+			OutputSocket<?> fromSocket = getType(fromId).output(Short.toUnsignedInt(buffer.getShort(position + 4)));
+			InputSocket<?> toSocket = toType.input(Short.toUnsignedInt(buffer.getShort(position + 6)));
+			connections.add(new Connection(fromId, fromSocket, id, toSocket));
+		}
+
+		return connections;
+	}
+
+	private NodeType<E> getType(int id) throws IOException {
+		return types[NodeGraphSerializerV2.readIndex(types.length, "node type", seekInstance(id))];
+	}
+
+	/**
+	 * <p>
+	 * Load the node instance along with all node instances that it depends on,
+	 * connecting them in {@link #getGraph()}.
+	 * </p>
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public NodeInstance<?, E> loadWithDependencies(int id) throws IOException {
+		NodeInstance<?, E> result = getInstance(id);
+		Deque<Integer> stack = new ArrayDeque<>();
+		stack.push(id);
+
+		while (!stack.isEmpty()) {
+			int current = stack.pop();
+			if (connected[current]) continue;
+			connected[current] = true;
+			NodeInstance<?, E> to = getInstance(current);
+
+			for (Connection connection : getInputConnections(current)) {
+				NodeInstance<?, E> from = getInstance(connection.fromId());
+				((NodeGraph) graph).connect(from, connection.fromSocket(), to, connection.toSocket());
+				if (!connected[connection.fromId()]) stack.push(connection.fromId());
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * <p>
+	 * Load all node instances and connections.
+	 * </p>
+	 *
+	 * @return The graph, which is the same as {@link #getGraph()}.
+	 */
+	public NodeGraph<E> loadAll() throws IOException {
+		for (int i = 0; i < instancesCount; i++) loadWithDependencies(i);
+		return graph;
+	}
+
+	public static record Connection(int fromId, OutputSocket<?> fromSocket, int toId, InputSocket<?> toSocket) {}
+
+	private class InstanceReader implements GraphVisitor<E> {
+		private NodeInstance<?, E> instance;
+
+		@Override
+		public void visitInstance(int id, Node<?, E> node, NodeEditorData editorData) {
+			instance = new NodeInstance<>(node, editorData);
+		}
+
+		@SuppressWarnings({ "rawtypes", "unchecked" })
+		@Override
+		public void visitInitialValue(int id, InputSocket<?> socket, Object value) {
+			instance.setInitialValue((InputSocket) socket, value);
+		}
+	}
+}
@@ -3,18 +3,148 @@ package io.github.nahkd123.nodegraph.serialize;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Map;
 import java.util.function.Function;
 
+import io.github.nahkd123.nodegraph.graph.GraphDiff;
+import io.github.nahkd123.nodegraph.graph.InstanceIds;
 import io.github.nahkd123.nodegraph.graph.NodeGraph;
 import io.github.nahkd123.nodegraph.node.Node;
 
 public interface NodeGraphSerializer {
-	NodeGraphSerializer CURRENT_VERSION = new NodeGraphSerializerV1();
-	Map<Integer, NodeGraphSerializer> VERSIONS = Map.of(1, CURRENT_VERSION);
+	NodeGraphSerializer CURRENT_VERSION = new NodeGraphSerializerV2();
+	NodeGraphSerializer INDEXED_VERSION = new NodeGraphSerializerV3();
+	Map<Integer, NodeGraphSerializer> VERSIONS = Map.of(
+		1, new NodeGraphSerializerV1(),
+		2, CURRENT_VERSION,
+		3, INDEXED_VERSION);
 
 	static <E> NodeGraph<E> deserialize(Function<String, Node<?, E>> idToNode, Function<Class<?>, ValueDeserializer<?>> valueDeserializers, DataInput stream) throws IOException {
-		int versionId = stream.readInt();
+		return deserialize(idToNode, valueDeserializers, new InstanceIds<>(), stream);
+	}
+
+	/**
+	 * <p>
+	 * Deserialize a graph, replacing all IDs in {@code instanceIds} with IDs of
+	 * deserialized node instances. The IDs are the same as the ones assigned by
+	 * {@link #serialize(NodeGraph, Function, Function, InstanceIds, DataOutput)},
+	 * so both sides can exchange {@link GraphDiff} afterward.
+	 * </p>
+	 */
+	static <E> NodeGraph<E> deserialize(Function<String, Node<?, E>> idToNode, Function<Class<?>, ValueDeserializer<?>> valueDeserializers, InstanceIds<E> instanceIds, DataInput stream) throws IOException {
+		return versionOf(stream.readInt()).deserializeGraph(idToNode, valueDeserializers, instanceIds, stream);
+	}
+
+	/**
+	 * <p>
+	 * Deserialize a graph directly from a buffer, starting at the position of the
+	 * buffer. The position is moved to the end of the graph.
+	 * </p>
+	 *
+	 * @see ByteBufferDataInput
+	 */
+	static <E> NodeGraph<E> deserialize(Function<String, Node<?, E>> idToNode, Function<Class<?>, ValueDeserializer<?>> valueDeserializers, ByteBuffer buffer) throws IOException {
+		return deserialize(idToNode, valueDeserializers, new ByteBufferDataInput(buffer));
+	}
+
+	/**
+	 * <p>
+	 * Deserialize a graph from a file. The file is mapped to memory instead of
+	 * being read through a stream, so the operating system can load it directly
+	 * from its page cache.
+	 * </p>
+	 */
+	static <E> NodeGraph<E> deserialize(Function<String, Node<?, E>> idToNode, Function<Class<?>, ValueDeserializer<?>> valueDeserializers, Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return deserialize(idToNode, valueDeserializers, channel.map(MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * <p>
+	 * Read a serialized graph into a visitor, without building the graph. Only
+	 * the node of each instance is kept in memory while reading, so this can be
+	 * used on graphs that are too large to deserialize.
+	 * </p>
+	 */
+	static <E> void visit(Function<String, Node<?, E>> idToNode, Function<Class<?>, ValueDeserializer<?>> valueDeserializers, GraphVisitor<E> visitor, DataInput stream) throws IOException {
+		versionOf(stream.readInt()).visitGraph(idToNode, valueDeserializers, visitor, stream);
+	}
+
+	static <E> void serialize(NodeGraph<E> graph, Function<Node<?, E>, String> nodeToId, Function<Class<?>, ValueSerializer<?>> valueSerializers, DataOutput stream) throws IOException {
+		serialize(graph, nodeToId, valueSerializers, new InstanceIds<>(), stream);
+	}
+
+	/**
+	 * <p>
+	 * Serialize a graph to a heap buffer.
+	 * </p>
+	 *
+	 * @return The buffer with position at {@code 0} and limit at the end of the
+	 *         graph.
+	 */
+	static <E> ByteBuffer serialize(NodeGraph<E> graph, Function<Node<?, E>, String> nodeToId, Function<Class<?>, ValueSerializer<?>> valueSerializers) throws IOException {
+		ByteBufferDataOutput output = new ByteBufferDataOutput();
+		serialize(graph, nodeToId, valueSerializers, output);
+		return output.toByteBuffer();
+	}
+
+	/**
+	 * <p>
+	 * Serialize a graph, replacing all IDs in {@code instanceIds} with IDs of
+	 * node instances in the graph.
+	 * </p>
+	 */
+	static <E> void serialize(NodeGraph<E> graph, Function<Node<?, E>, String> nodeToId, Function<Class<?>, ValueSerializer<?>> valueSerializers, InstanceIds<E> instanceIds, DataOutput stream) throws IOException {
+		stream.writeInt(CURRENT_VERSION.versionId());
+		CURRENT_VERSION.serializeGraph(graph, nodeToId, valueSerializers, instanceIds, stream);
+	}
+
+	static <E> void serializeIndexed(NodeGraph<E> graph, Function<Node<?, E>, String> nodeToId, Function<Class<?>, ValueSerializer<?>> valueSerializers, DataOutput stream) throws IOException {
+		serializeIndexed(graph, nodeToId, valueSerializers, new InstanceIds<>(), stream);
+	}
+
+	/**
+	 * <p>
+	 * Serialize a graph with an index of node instances and connections, which
+	 * can be opened with {@link LazyNodeGraph} to load parts of the graph on
+	 * demand. The result is larger than {@link #serialize(NodeGraph, Function, Function, DataOutput)},
+	 * but it can still be deserialized normally.
+	 * </p>
+	 */
+	static <E> void serializeIndexed(NodeGraph<E> graph, Function<Node<?, E>, String> nodeToId, Function<Class<?>, ValueSerializer<?>> valueSerializers, InstanceIds<E> instanceIds, DataOutput stream) throws IOException {
+		stream.writeInt(INDEXED_VERSION.versionId());
+		INDEXED_VERSION.serializeGraph(graph, nodeToId, valueSerializers, instanceIds, stream);
+	}
+
+	/**
+	 * <p>
+	 * Deserialize a diff. Node instances are resolved from {@code instanceIds},
+	 * which is updated with added and removed instances, so the next diff can
+	 * be deserialized with the same table.
+	 * </p>
+	 */
+	static <E> GraphDiff<E> deserializeDiff(Function<String, Node<?, E>> idToNode, Function<Class<?>, ValueDeserializer<?>> valueDeserializers, InstanceIds<E> instanceIds, DataInput stream) throws IOException {
+		return versionOf(stream.readInt()).deserializeGraphDiff(idToNode, valueDeserializers, instanceIds, stream);
+	}
+
+	/**
+	 * <p>
+	 * Serialize a diff. Added node instances are assigned new IDs in
+	 * {@code instanceIds} and removed instances are removed from it.
+	 * </p>
+	 */
+	static <E> void serializeDiff(GraphDiff<E> diff, Function<Node<?, E>, String> nodeToId, Function<Class<?>, ValueSerializer<?>> valueSerializers, InstanceIds<E> instanceIds, DataOutput stream) throws IOException {
+		stream.writeInt(CURRENT_VERSION.versionId());
+		CURRENT_VERSION.serializeGraphDiff(diff, nodeToId, valueSerializers, instanceIds, stream);
+	}
+
+	private static NodeGraphSerializer versionOf(int versionId) throws IOException {
 		NodeGraphSerializer serializer = VERSIONS.get(versionId);
 
 		if (serializer == null) {
@@ -24,17 +154,26 @@ public interface NodeGraphSerializer {
 			else throw new IOException("Version %d is no longer supported.".formatted(versionId));
 		}
 
-		return serializer.deserializeGraph(idToNode, valueDeserializers, stream);
+		return serializer;
 	}
 
-	static <E> void serialize(NodeGraph<E> graph, Function<Node<?, E>, String> nodeToId, Function<Class<?>, ValueSerializer<?>> valueSerializers, DataOutput stream) throws IOException {
-		stream.writeInt(CURRENT_VERSION.versionId());
-		CURRENT_VERSION.serializeGraph(graph, nodeToId, valueSerializers, stream);
+	int versionId();
+
+	default <E> NodeGraph<E> deserializeGraph(Function<String, Node<?, E>> idToNode, Function<Class<?>, ValueDeserializer<?>> valueDeserializers, DataInput stream) throws IOException {
+		return deserializeGraph(idToNode, valueDeserializers, new InstanceIds<>(), stream);
 	}
 
-	int versionId();
+	<E> NodeGraph<E> deserializeGraph(Function<String, Node<?, E>> idToNode, Function<Class<?>, ValueDeserializer<?>> valueDeserializers, InstanceIds<E> instanceIds, DataInput stream) throws IOException;
+
+	<E> void visitGraph(Function<String, Node<?, E>> idToNode, Function<Class<?>, ValueDeserializer<?>> valueDeserializers, GraphVisitor<E> visitor, DataInput stream) throws IOException;
+
+	default <E> void serializeGraph(NodeGraph<E> graph, Function<Node<?, E>, String> nodeToId, Function<Class<?>, ValueSerializer<?>> valueSerializers, DataOutput stream) throws IOException {
+		serializeGraph(graph, nodeToId, valueSerializers, new InstanceIds<>(), stream);
+	}
+
+	<E> void serializeGraph(NodeGraph<E> graph, Function<Node<?, E>, String> nodeToId, Function<Class<?>, ValueSerializer<?>> valueSerializers, InstanceIds<E> instanceIds, DataOutput stream) throws IOException;
 
-	<E> NodeGraph<E> deserializeGraph(Function<String, Node<?, E>> idToNode, Function<Class<?>, ValueDeserializer<?>> valueDeserializers, DataInput stream) throws IOException;
+	<E> GraphDiff<E> deserializeGraphDiff(Function<String, Node<?, E>> idToNode, Function<Class<?>, ValueDeserializer<?>> valueDeserializers, InstanceIds<E> instanceIds, DataInput stream) throws IOException;
 
-	<E> void serializeGraph(NodeGraph<E> graph, Function<Node<?, E>, String> nodeToId, Function<Class<?>, ValueSerializer<?>> valueSerializers, DataOutput stream) throws IOException;
+	<E> void serializeGraphDiff(GraphDiff<E> diff, Function<Node<?, E>, String> nodeToId, Function<Class<?>, ValueSerializer<?>> valueSerializers, InstanceIds<E> instanceIds, DataOutput stream) throws IOException;
 }
@@ -3,18 +3,20 @@ package io.github.nahkd123.nodegraph.serialize;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
 import java.util.Set;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
+import io.github.nahkd123.nodegraph.graph.GraphDiff;
+import io.github.nahkd123.nodegraph.graph.InstanceIds;
 import io.github.nahkd123.nodegraph.graph.NodeEditorData;
 import io.github.nahkd123.nodegraph.graph.NodeGraph;
 import io.github.nahkd123.nodegraph.graph.NodeInstance;
 import io.github.nahkd123.nodegraph.graph.NodeSocketRef;
 import io.github.nahkd123.nodegraph.node.Node;
+import io.github.nahkd123.nodegraph.node.NodeDescriptor;
 import io.github.nahkd123.nodegraph.socket.InputSocket;
 import io.github.nahkd123.nodegraph.socket.OutputSocket;
 
@@ -24,128 +26,244 @@ class NodeGraphSerializerV1 implements NodeGraphSerializer {
 		return 1;
 	}
 
-	@SuppressWarnings({ "rawtypes", "unchecked" })
 	@Override
-	public <E> NodeGraph<E> deserializeGraph(Function<String, Node<?, E>> idToNode, Function<Class<?>, ValueDeserializer<?>> valueDeserializers, DataInput stream) throws IOException {
-		NodeGraph<E> graph = new NodeGraph<>();
-		Map<Integer, NodeInstance<?, E>> instanceIds = new HashMap<>();
+	public <E> NodeGraph<E> deserializeGraph(Function<String, Node<?, E>> idToNode, Function<Class<?>, ValueDeserializer<?>> valueDeserializers, InstanceIds<E> instanceIds, DataInput stream) throws IOException {
+		GraphBuilder<E> builder = new GraphBuilder<>(instanceIds);
+		visitGraph(idToNode, valueDeserializers, builder, stream);
+		return builder.getGraph();
+	}
+
+	@Override
+	public <E> void visitGraph(Function<String, Node<?, E>> idToNode, Function<Class<?>, ValueDeserializer<?>> valueDeserializers, GraphVisitor<E> visitor, DataInput stream) throws IOException {
 		int instancesCount = stream.readInt();
+		List<Node<?, E>> nodes = new ArrayList<>();
 
 		for (int i = 0; i < instancesCount; i++) {
 			String id = stream.readUTF();
 			Node<?, E> node = idToNode.apply(id);
 			if (node == null) throw new IOException("Missing node with ID %s".formatted(id));
-			NodeEditorData editor;
-
-			if (stream.readBoolean()) {
-				String name = stream.readUTF();
-				int x = stream.readInt();
-				int y = stream.readInt();
-				int w = stream.readInt();
-				int h = stream.readInt();
-				boolean e = stream.readBoolean();
-				editor = new NodeEditorData(name, x, y, w, h, e);
-			} else {
-				editor = null;
-			}
-
-			NodeInstance<?, E> instance = new NodeInstance<>(node, editor);
+			visitor.visitInstance(i, node, readEditorData(stream));
+			nodes.add(node);
 			stream.readInt(); // TODO: Node parameters
 			int socketsCount = stream.readInt();
 
 			for (int j = 0; j < socketsCount; j++) {
-				String socketId = stream.readUTF();
-				InputSocket<?> socket = node.getInputSockets().stream()
-					.filter(s -> s.name().equals(socketId))
-					.findAny()
-					.orElseThrow(() -> new IOException("Unknown socket %s in node %s".formatted(socketId, id)));
+				InputSocket<?> socket = inputOf(node, stream.readUTF());
 				Object value = valueDeserializers.apply(socket.type()).deserialize(stream);
-				instance.setInitialValue((InputSocket) socket, value);
+				visitor.visitInitialValue(i, socket, value);
 			}
-
-			graph.addInstance(instance);
-			instanceIds.put(instanceIds.size(), instance);
 		}
 
 		int connectionsCount = stream.readInt();
 
 		for (int i = 0; i < connectionsCount; i++) {
-			NodeInstance<?, E> fromNode = instanceIds.get(stream.readInt());
-			String fromSocketId = stream.readUTF();
-			OutputSocket<?> fromSocket = fromNode.getNode().getOutputSockets().stream()
-				.filter(s -> s.name().equals(fromSocketId))
-				.findAny()
-				.orElseThrow(() -> new IOException("Unknown socket %s in node %s".formatted(
-					fromSocketId,
-					fromNode.getNode().getClass())));
-			NodeInstance<?, E> toNode = instanceIds.get(stream.readInt());
-			String toSocketId = stream.readUTF();
-			InputSocket<?> toSocket = toNode.getNode().getInputSockets().stream()
-				.filter(s -> s.name().equals(toSocketId))
-				.findAny()
-				.orElseThrow(() -> new IOException("Unknown socket %s in node %s".formatted(
-					toSocketId,
-					toNode.getNode().getClass())));
-			((NodeGraph) graph).connect(fromNode, fromSocket, toNode, toSocket);
+			int fromId = readIndex(instancesCount, stream);
+			OutputSocket<?> fromSocket = outputOf(nodes.get(fromId), stream.readUTF());
+			int toId = readIndex(instancesCount, stream);
+			InputSocket<?> toSocket = inputOf(nodes.get(toId), stream.readUTF());
+			visitor.visitConnection(fromId, fromSocket, toId, toSocket);
 		}
 
-		return graph;
+		visitor.visitEnd();
+	}
+
+	private static int readIndex(int instancesCount, DataInput stream) throws IOException {
+		int id = stream.readInt();
+		if (id < 0 || id >= instancesCount) throw new IOException("Missing node instance with ID %d".formatted(id));
+		return id;
 	}
 
 	@SuppressWarnings({ "rawtypes", "unchecked" })
 	@Override
-	public <E> void serializeGraph(NodeGraph<E> graph, Function<Node<?, E>, String> nodeToId, Function<Class<?>, ValueSerializer<?>> valueSerializers, DataOutput stream) throws IOException {
+	public <E> void serializeGraph(NodeGraph<E> graph, Function<Node<?, E>, String> nodeToId, Function<Class<?>, ValueSerializer<?>> valueSerializers, InstanceIds<E> instanceIds, DataOutput stream) throws IOException {
 		Set<NodeInstance<?, E>> instances = graph.getInstances();
-		Map<NodeInstance<?, E>, Integer> instanceIds = new HashMap<>();
 		stream.writeInt(instances.size());
+		instanceIds.clear();
 
 		for (NodeInstance<?, E> instance : instances) {
-			String id = nodeToId.apply(instance.getNode());
-			if (id == null) throw new IOException("Missing ID for node %s".formatted(instance.getNode().getClass()));
-			stream.writeUTF(id);
-
-			if (instance.getEditorData() != null) {
-				NodeEditorData editor = instance.getEditorData();
-				stream.writeBoolean(true);
-				stream.writeUTF(editor.getDisplayName());
-				stream.writeInt(editor.getX());
-				stream.writeInt(editor.getY());
-				stream.writeInt(editor.getWidth());
-				stream.writeInt(editor.getHeight());
-				stream.writeBoolean(editor.isExpanded());
-			} else {
-				stream.writeBoolean(false);
-			}
+			stream.writeUTF(nodeIdOf(nodeToId, instance));
+			writeEditorData(instance.getEditorData(), stream);
+
+			List<InputSocket<?>> inputs = NodeDescriptor.of(instance.getNode()).getInputs();
+			List<InputSocket<?>> sockets = new ArrayList<>();
+
+			for (InputSocket<?> socket : inputs)
+				if (!Objects.equals(instance.getInitialValue((InputSocket) socket), socket.defaultValue())) sockets.add(socket);
 
-			Map<InputSocket<?>, ?> sockets = instance.getNode().getInputSockets()
-				.stream()
-				.filter(s -> !instance.getInitialValue(s).equals(s.defaultValue()))
-				.collect(Collectors.toMap(
-					s -> (InputSocket<?>) s,
-					s -> instance.getInitialValue((InputSocket<?>) s)));
 			stream.writeInt(0); // TODO: Node parameters
 			stream.writeInt(sockets.size());
 
-			for (Entry<InputSocket<?>, ?> entry : sockets.entrySet()) {
-				InputSocket<?> socket = entry.getKey();
-				Object value = entry.getValue();
+			for (InputSocket<?> socket : sockets) {
 				stream.writeUTF(socket.name());
-				((ValueSerializer) valueSerializers.apply(socket.type())).serialize(value, stream);
+				((ValueSerializer) valueSerializers.apply(socket.type()))
+					.serialize(instance.getInitialValue((InputSocket) socket), stream);
 			}
 
-			instanceIds.put(instance, instanceIds.size());
+			instanceIds.getOrAssign(instance);
 		}
 
 		var connections = graph.getConnections();
 		stream.writeInt(connections.size());
 
-		for (var connection : connections) {
-			NodeSocketRef<?, E, ?> from = connection.getKey();
-			NodeSocketRef<?, E, ?> to = connection.getValue();
-			stream.writeInt(instanceIds.get(from.node()));
-			stream.writeUTF(from.socket().name());
-			stream.writeInt(instanceIds.get(to.node()));
-			stream.writeUTF(to.socket().name());
+		for (var connection : connections)
+			writeConnection(connection.getKey(), connection.getValue(), instanceIds, stream);
+	}
+
+	@Override
+	public <E> GraphDiff<E> deserializeGraphDiff(Function<String, Node<?, E>> idToNode, Function<Class<?>, ValueDeserializer<?>> valueDeserializers, InstanceIds<E> instanceIds, DataInput stream) throws IOException {
+		List<GraphDiff.Connection<E>> removedConnections = new ArrayList<>();
+		List<NodeInstance<?, E>> removedInstances = new ArrayList<>();
+		List<NodeInstance<?, E>> addedInstances = new ArrayList<>();
+		List<GraphDiff.InitialValue<E>> initialValues = new ArrayList<>();
+		List<GraphDiff.EditorData<E>> editorData = new ArrayList<>();
+		List<GraphDiff.Connection<E>> addedConnections = new ArrayList<>();
+		int count = stream.readInt();
+		for (int i = 0; i < count; i++) removedConnections.add(readConnection(instanceIds, stream));
+
+		count = stream.readInt();
+		for (int i = 0; i < count; i++) removedInstances.add(readInstance(instanceIds, stream));
+		for (NodeInstance<?, E> instance : removedInstances) instanceIds.remove(instance);
+
+		count = stream.readInt();
+
+		for (int i = 0; i < count; i++) {
+			int instanceId = stream.readInt();
+			String id = stream.readUTF();
+			Node<?, E> node = idToNode.apply(id);
+			if (node == null) throw new IOException("Missing node with ID %s".formatted(id));
+			NodeInstance<?, E> instance = new NodeInstance<>(node, null);
+			instanceIds.put(instanceId, instance);
+			addedInstances.add(instance);
+		}
+
+		count = stream.readInt();
+
+		for (int i = 0; i < count; i++) {
+			NodeInstance<?, E> instance = readInstance(instanceIds, stream);
+			InputSocket<?> socket = inputOf(instance.getNode(), stream.readUTF());
+			Object value = valueDeserializers.apply(socket.type()).deserialize(stream);
+			initialValues.add(new GraphDiff.InitialValue<>(instance, socket, value));
 		}
+
+		count = stream.readInt();
+
+		for (int i = 0; i < count; i++) {
+			NodeInstance<?, E> instance = readInstance(instanceIds, stream);
+			editorData.add(new GraphDiff.EditorData<>(instance, readEditorData(stream)));
+		}
+
+		count = stream.readInt();
+		for (int i = 0; i < count; i++) addedConnections.add(readConnection(instanceIds, stream));
+
+		return new GraphDiff<>(removedConnections, removedInstances, addedInstances, initialValues, editorData, addedConnections);
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	@Override
+	public <E> void serializeGraphDiff(GraphDiff<E> diff, Function<Node<?, E>, String> nodeToId, Function<Class<?>, ValueSerializer<?>> valueSerializers, InstanceIds<E> instanceIds, DataOutput stream) throws IOException {
+		stream.writeInt(diff.getRemovedConnections().size());
+		for (GraphDiff.Connection<E> connection : diff.getRemovedConnections())
+			writeConnection(connection.from(), connection.to(), instanceIds, stream);
+
+		stream.writeInt(diff.getRemovedInstances().size());
+		for (NodeInstance<?, E> instance : diff.getRemovedInstances()) writeInstance(instance, instanceIds, stream);
+		for (NodeInstance<?, E> instance : diff.getRemovedInstances()) instanceIds.remove(instance);
+
+		stream.writeInt(diff.getAddedInstances().size());
+
+		for (NodeInstance<?, E> instance : diff.getAddedInstances()) {
+			stream.writeInt(instanceIds.getOrAssign(instance));
+			stream.writeUTF(nodeIdOf(nodeToId, instance));
+		}
+
+		stream.writeInt(diff.getInitialValues().size());
+
+		for (GraphDiff.InitialValue<E> value : diff.getInitialValues()) {
+			writeInstance(value.instance(), instanceIds, stream);
+			stream.writeUTF(value.socket().name());
+			((ValueSerializer) valueSerializers.apply(value.socket().type())).serialize(value.value(), stream);
+		}
+
+		stream.writeInt(diff.getEditorData().size());
+
+		for (GraphDiff.EditorData<E> data : diff.getEditorData()) {
+			writeInstance(data.instance(), instanceIds, stream);
+			writeEditorData(data.editorData(), stream);
+		}
+
+		stream.writeInt(diff.getAddedConnections().size());
+		for (GraphDiff.Connection<E> connection : diff.getAddedConnections())
+			writeConnection(connection.from(), connection.to(), instanceIds, stream);
+	}
+
+	private static <E> String nodeIdOf(Function<Node<?, E>, String> nodeToId, NodeInstance<?, E> instance) throws IOException {
+		String id = nodeToId.apply(instance.getNode());
+		if (id == null) throw new IOException("Missing ID for node %s".formatted(instance.getNode().getClass()));
+		return id;
+	}
+
+	static InputSocket<?> inputOf(Node<?, ?> node, String name) throws IOException {
+		InputSocket<?> socket = NodeDescriptor.of(node).getInput(name);
+		if (socket == null) throw new IOException("Unknown socket %s in node %s".formatted(name, node.getClass()));
+		return socket;
+	}
+
+	static OutputSocket<?> outputOf(Node<?, ?> node, String name) throws IOException {
+		OutputSocket<?> socket = NodeDescriptor.of(node).getOutput(name);
+		if (socket == null) throw new IOException("Unknown socket %s in node %s".formatted(name, node.getClass()));
+		return socket;
+	}
+
+	private static NodeEditorData readEditorData(DataInput stream) throws IOException {
+		if (!stream.readBoolean()) return null;
+		String name = stream.readUTF();
+		int x = stream.readInt();
+		int y = stream.readInt();
+		int w = stream.readInt();
+		int h = stream.readInt();
+		boolean e = stream.readBoolean();
+		return new NodeEditorData(name, x, y, w, h, e);
+	}
+
+	private static void writeEditorData(NodeEditorData editor, DataOutput stream) throws IOException {
+		if (editor != null) {
+			stream.writeBoolean(true);
+			stream.writeUTF(editor.getDisplayName());
+			stream.writeInt(editor.getX());
+			stream.writeInt(editor.getY());
+			stream.writeInt(editor.getWidth());
+			stream.writeInt(editor.getHeight());
+			stream.writeBoolean(editor.isExpanded());
+		} else {
+			stream.writeBoolean(false);
+		}
+	}
+
+	private static <E> NodeInstance<?, E> readInstance(InstanceIds<E> instanceIds, DataInput stream) throws IOException {
+		int id = stream.readInt();
+		NodeInstance<?, E> instance = instanceIds.get(id);
+		if (instance == null) throw new IOException("Missing node instance with ID %d".formatted(id));
+		return instance;
+	}
+
+	private static <E> void writeInstance(NodeInstance<?, E> instance, InstanceIds<E> instanceIds, DataOutput stream) throws IOException {
+		int id = instanceIds.getId(instance);
+		if (id == -1) throw new IOException("Missing ID for node instance of %s".formatted(instance.getNode().getClass()));
+		stream.writeInt(id);
+	}
+
+	private static <E> GraphDiff.Connection<E> readConnection(InstanceIds<E> instanceIds, DataInput stream) throws IOException {
+		NodeInstance<?, E> fromNode = readInstance(instanceIds, stream);
+		OutputSocket<?> fromSocket = outputOf(fromNode.getNode(), stream.readUTF());
+		NodeInstance<?, E> toNode = readInstance(instanceIds, stream);
+		InputSocket<?> toSocket = inputOf(toNode.getNode(), stream.readUTF());
+		return new GraphDiff.Connection<>(new NodeSocketRef<>(fromNode, fromSocket), new NodeSocketRef<>(toNode, toSocket));
+	}
+
+	private static <E> void writeConnection(NodeSocketRef<?, E, ?> from, NodeSocketRef<?, E, ?> to, InstanceIds<E> instanceIds, DataOutput stream) throws IOException {
+		writeInstance(from.node(), instanceIds, stream);
+		stream.writeUTF(from.socket().name());
+		writeInstance(to.node(), instanceIds, stream);
+		stream.writeUTF(to.socket().name());
 	}
 }
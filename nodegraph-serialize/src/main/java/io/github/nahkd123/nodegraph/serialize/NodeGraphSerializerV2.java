@@ -0,0 +1,489 @@
+package io.github.nahkd123.nodegraph.serialize;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import io.github.nahkd123.nodegraph.graph.GraphDiff;
+import io.github.nahkd123.nodegraph.graph.InstanceIds;
+import io.github.nahkd123.nodegraph.graph.NodeEditorData;
+import io.github.nahkd123.nodegraph.graph.NodeGraph;
+import io.github.nahkd123.nodegraph.graph.NodeInstance;
+import io.github.nahkd123.nodegraph.graph.NodeSocketRef;
+import io.github.nahkd123.nodegraph.node.Node;
+import io.github.nahkd123.nodegraph.node.NodeDescriptor;
+import io.github.nahkd123.nodegraph.socket.InputSocket;
+import io.github.nahkd123.nodegraph.socket.OutputSocket;
+
+/**
+ * <p>
+ * Compact binary format. Node IDs and socket names are written once in a table
+ * of node types, so instances and connections only refer to them by indices.
+ * All counts and indices are written as varints, and connections are sorted by
+ * their destination so node instance IDs can be written as small deltas.
+ * </p>
+ * <p>
+ * The payload is deflated when it is at least {@link #COMPRESSION_THRESHOLD}
+ * bytes and compressing actually makes it smaller. Diffs use the same layout
+ * as version 1, since they are usually too small to benefit from the tables.
+ * </p>
+ */
+class NodeGraphSerializerV2 implements NodeGraphSerializer {
+	static final int COMPRESSION_THRESHOLD = 1024;
+	private static final int FLAG_COMPRESSED = 1;
+	private static final int EDITOR_PRESENT = 1;
+	private static final int EDITOR_EXPANDED = 2;
+
+	/**
+	 * <p>
+	 * Number of entries allocated up front for tables that are read from
+	 * streams of unknown size. Larger tables grow while their entries are read,
+	 * so a malformed count fails on the end of the stream instead of allocating
+	 * a huge table.
+	 * </p>
+	 */
+	private static final int STREAM_INITIAL_CAPACITY = 1024;
+
+	/**
+	 * <p>
+	 * The highest ratio between inflated and deflated sizes that deflate can
+	 * achieve.
+	 * </p>
+	 */
+	private static final int MAX_DEFLATE_RATIO = 1032;
+
+	private final NodeGraphSerializerV1 diffs = new NodeGraphSerializerV1();
+
+	@Override
+	public int versionId() {
+		return 2;
+	}
+
+	@Override
+	public <E> NodeGraph<E> deserializeGraph(Function<String, Node<?, E>> idToNode, Function<Class<?>, ValueDeserializer<?>> valueDeserializers, InstanceIds<E> instanceIds, DataInput stream) throws IOException {
+		GraphBuilder<E> builder = new GraphBuilder<>(instanceIds);
+		visitGraph(idToNode, valueDeserializers, builder, stream);
+		return builder.getGraph();
+	}
+
+	@Override
+	public <E> void visitGraph(Function<String, Node<?, E>> idToNode, Function<Class<?>, ValueDeserializer<?>> valueDeserializers, GraphVisitor<E> visitor, DataInput stream) throws IOException {
+		DataInput payload = readPayload(stream);
+		NodeType<E>[] types = readNodeTypes(idToNode, payload);
+		int instancesCount = readCount(payload, 3);
+		int[] typeOf = new int[initialCapacity(instancesCount, payload)];
+
+		for (int i = 0; i < instancesCount; i++) {
+			if (i == typeOf.length) typeOf = Arrays.copyOf(typeOf, grownCapacity(typeOf.length, instancesCount));
+			typeOf[i] = readInstance(i, types, valueDeserializers, visitor, payload).index();
+		}
+
+		int connectionsCount = readVarInt(payload);
+		int toId = 0;
+
+		for (int i = 0; i < connectionsCount; i++) {
+			toId += readVarInt(payload);
+			if (toId < 0 || toId >= instancesCount) throw new IOException("Missing node instance with ID %d".formatted(toId));
+			InputSocket<?> toSocket = types[typeOf[toId]].input(readVarInt(payload));
+			int fromId = toId + unzigzag(readVarInt(payload));
+			if (fromId < 0 || fromId >= instancesCount)
+				throw new IOException("Missing node instance with ID %d".formatted(fromId));
+			OutputSocket<?> fromSocket = types[typeOf[fromId]].output(readVarInt(payload));
+			visitor.visitConnection(fromId, fromSocket, toId, toSocket);
+		}
+
+		visitor.visitEnd();
+	}
+
+	@Override
+	public <E> void serializeGraph(NodeGraph<E> graph, Function<Node<?, E>, String> nodeToId, Function<Class<?>, ValueSerializer<?>> valueSerializers, InstanceIds<E> instanceIds, DataOutput stream) throws IOException {
+		Map<Node<?, E>, NodeTypeRef> types = new IdentityHashMap<>();
+		List<NodeTypeRef> typesList = collectNodeTypes(graph, nodeToId, instanceIds, types);
+		ByteBufferDataOutput payload = new ByteBufferDataOutput();
+		writeNodeTypes(typesList, payload);
+		writeVarInt(graph.getInstances().size(), payload);
+
+		for (NodeInstance<?, E> instance : graph.getInstances())
+			writeInstance(instance, types.get(instance.getNode()), valueSerializers, payload);
+
+		int[][] connections = encodeConnections(graph, instanceIds, types);
+		writeVarInt(connections.length, payload);
+		int previousTo = 0;
+
+		for (int[] connection : connections) {
+			writeVarInt(connection[0] - previousTo, payload);
+			writeVarInt(connection[1], payload);
+			writeVarInt(zigzag(connection[2] - connection[0]), payload);
+			writeVarInt(connection[3], payload);
+			previousTo = connection[0];
+		}
+
+		writePayload(payload, stream);
+	}
+
+	@Override
+	public <E> GraphDiff<E> deserializeGraphDiff(Function<String, Node<?, E>> idToNode, Function<Class<?>, ValueDeserializer<?>> valueDeserializers, InstanceIds<E> instanceIds, DataInput stream) throws IOException {
+		return diffs.deserializeGraphDiff(idToNode, valueDeserializers, instanceIds, stream);
+	}
+
+	@Override
+	public <E> void serializeGraphDiff(GraphDiff<E> diff, Function<Node<?, E>, String> nodeToId, Function<Class<?>, ValueSerializer<?>> valueSerializers, InstanceIds<E> instanceIds, DataOutput stream) throws IOException {
+		diffs.serializeGraphDiff(diff, nodeToId, valueSerializers, instanceIds, stream);
+	}
+
+	/**
+	 * <p>
+	 * Assign IDs to all node instances and collect the table of node types, in
+	 * the order of first use.
+	 * </p>
+	 */
+	static <E> List<NodeTypeRef> collectNodeTypes(NodeGraph<E> graph, Function<Node<?, E>, String> nodeToId, InstanceIds<E> instanceIds, Map<Node<?, E>, NodeTypeRef> types) throws IOException {
+		List<NodeTypeRef> typesList = new ArrayList<>();
+		instanceIds.clear();
+
+		for (NodeInstance<?, E> instance : graph.getInstances()) {
+			instanceIds.getOrAssign(instance);
+			Node<?, E> node = instance.getNode();
+
+			if (!types.containsKey(node)) {
+				String id = nodeToId.apply(node);
+				if (id == null) throw new IOException("Missing ID for node %s".formatted(node.getClass()));
+				NodeTypeRef type = new NodeTypeRef(typesList.size(), id, NodeDescriptor.of(node));
+				types.put(node, type);
+				typesList.add(type);
+			}
+		}
+
+		return typesList;
+	}
+
+	static void writeNodeTypes(List<NodeTypeRef> types, DataOutput stream) throws IOException {
+		writeVarInt(types.size(), stream);
+
+		for (NodeTypeRef type : types) {
+			stream.writeUTF(type.id);
+			List<InputSocket<?>> inputs = type.descriptor.getInputs();
+			List<OutputSocket<?>> outputs = type.descriptor.getOutputs();
+			writeVarInt(inputs.size(), stream);
+			for (InputSocket<?> socket : inputs) stream.writeUTF(socket.name());
+			writeVarInt(outputs.size(), stream);
+			for (OutputSocket<?> socket : outputs) stream.writeUTF(socket.name());
+		}
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	static <E> void writeInstance(NodeInstance<?, E> instance, NodeTypeRef type, Function<Class<?>, ValueSerializer<?>> valueSerializers, DataOutput stream) throws IOException {
+		writeVarInt(type.index, stream);
+		writeEditorData(instance.getEditorData(), stream);
+		List<InputSocket<?>> inputs = type.descriptor.getInputs();
+		int valuesCount = 0;
+
+		for (InputSocket<?> socket : inputs)
+			if (!Objects.equals(instance.getInitialValue((InputSocket) socket), socket.defaultValue())) valuesCount++;
+
+		writeVarInt(valuesCount, stream);
+
+		for (int i = 0; i < inputs.size(); i++) {
+			InputSocket<?> socket = inputs.get(i);
+			Object value = instance.getInitialValue((InputSocket) socket);
+			if (Objects.equals(value, socket.defaultValue())) continue;
+			writeVarInt(i, stream);
+			((ValueSerializer) valueSerializers.apply(socket.type())).serialize(value, stream);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Read a node instance written by
+	 * {@link #writeInstance(NodeInstance, NodeTypeRef, Function, DataOutput)}
+	 * into a visitor.
+	 * </p>
+	 *
+	 * @return The type of the instance.
+	 */
+	static <E> NodeType<E> readInstance(int id, NodeType<E>[] types, Function<Class<?>, ValueDeserializer<?>> valueDeserializers, GraphVisitor<E> visitor, DataInput stream) throws IOException {
+		NodeType<E> type = types[readIndex(types.length, "node type", stream)];
+		visitor.visitInstance(id, type.node, readEditorData(stream));
+		int valuesCount = readVarInt(stream);
+
+		for (int j = 0; j < valuesCount; j++) {
+			InputSocket<?> socket = type.input(readVarInt(stream));
+			Object value = valueDeserializers.apply(socket.type()).deserialize(stream);
+			visitor.visitInitialValue(id, socket, value);
+		}
+
+		return type;
+	}
+
+	/**
+	 * <p>
+	 * Encode connections as {@code [toId, toSocket, fromId, fromSocket]}, sorted
+	 * by destination instance and socket.
+	 * </p>
+	 */
+	static <E> int[][] encodeConnections(NodeGraph<E> graph, InstanceIds<E> instanceIds, Map<Node<?, E>, NodeTypeRef> types) {
+		var connections = graph.getConnections();
+		int[][] encoded = new int[connections.size()][];
+		int count = 0;
+
+		for (var connection : connections) {
+			NodeSocketRef<?, E, ?> from = connection.getKey();
+			NodeSocketRef<?, E, ?> to = connection.getValue();
+			encoded[count++] = new int[] {
+				instanceIds.getId(to.node()),
+				types.get(to.node().getNode()).descriptor.indexOf((InputSocket<?>) to.socket()),
+				instanceIds.getId(from.node()),
+				types.get(from.node().getNode()).descriptor.indexOf((OutputSocket<?>) from.socket())
+			};
+		}
+
+		Arrays.sort(encoded, Comparator.<int[]>comparingInt(c -> c[0]).thenComparingInt(c -> c[1]));
+		return encoded;
+	}
+
+	@SuppressWarnings("unchecked")
+	static <E> NodeType<E>[] readNodeTypes(Function<String, Node<?, E>> idToNode, DataInput stream) throws IOException {
+		int typesCount = readCount(stream, 4);
+		NodeType<E>[] types = new NodeType[initialCapacity(typesCount, stream)];
+
+		for (int i = 0; i < typesCount; i++) {
+			String id = stream.readUTF();
+			Node<?, E> node = idToNode.apply(id);
+			if (node == null) throw new IOException("Missing node with ID %s".formatted(id));
+			int inputsCount = readCount(stream, 2);
+			InputSocket<?>[] inputs = new InputSocket[initialCapacity(inputsCount, stream)];
+
+			for (int j = 0; j < inputsCount; j++) {
+				if (j == inputs.length) inputs = Arrays.copyOf(inputs, grownCapacity(inputs.length, inputsCount));
+				inputs[j] = NodeGraphSerializerV1.inputOf(node, stream.readUTF());
+			}
+
+			int outputsCount = readCount(stream, 2);
+			OutputSocket<?>[] outputs = new OutputSocket[initialCapacity(outputsCount, stream)];
+
+			for (int j = 0; j < outputsCount; j++) {
+				if (j == outputs.length) outputs = Arrays.copyOf(outputs, grownCapacity(outputs.length, outputsCount));
+				outputs[j] = NodeGraphSerializerV1.outputOf(node, stream.readUTF());
+			}
+
+			if (i == types.length) types = Arrays.copyOf(types, grownCapacity(types.length, typesCount));
+			types[i] = new NodeType<>(i, node, inputs, outputs);
+		}
+
+		return types;
+	}
+
+	/**
+	 * <p>
+	 * Read the number of entries of a table where each entry takes at least
+	 * {@code minBytes} bytes. If the input is a {@link ByteBufferDataInput}, the
+	 * count is checked against its remaining bytes, so the table can be
+	 * allocated at once; otherwise the table must be allocated with
+	 * {@link #initialCapacity(int, DataInput)} and grown while reading.
+	 * </p>
+	 *
+	 * @throws IOException if the entries can not fit in the remaining bytes.
+	 */
+	static int readCount(DataInput stream, int minBytes) throws IOException {
+		int count = readLength(stream);
+		if (stream instanceof ByteBufferDataInput input && (long) count * minBytes > input.remaining())
+			throw new IOException("%d entries do not fit in the remaining %d bytes".formatted(count, input.remaining()));
+		return count;
+	}
+
+	static int initialCapacity(int count, DataInput stream) {
+		return stream instanceof ByteBufferDataInput ? count : Math.min(count, STREAM_INITIAL_CAPACITY);
+	}
+
+	static int grownCapacity(int capacity, int count) {
+		return (int) Math.min(count, capacity * 2L);
+	}
+
+	static int readIndex(int count, String what, DataInput stream) throws IOException {
+		int index = readVarInt(stream);
+		if (index < 0 || index >= count) throw new IOException("Missing %s with index %d".formatted(what, index));
+		return index;
+	}
+
+	static NodeEditorData readEditorData(DataInput stream) throws IOException {
+		int flags = stream.readUnsignedByte();
+		if ((flags & EDITOR_PRESENT) == 0) return null;
+		String name = stream.readUTF();
+		int x = unzigzag(readVarInt(stream));
+		int y = unzigzag(readVarInt(stream));
+		int w = unzigzag(readVarInt(stream));
+		int h = unzigzag(readVarInt(stream));
+		return new NodeEditorData(name, x, y, w, h, (flags & EDITOR_EXPANDED) != 0);
+	}
+
+	static void writeEditorData(NodeEditorData editor, DataOutput stream) throws IOException {
+		if (editor == null) {
+			stream.writeByte(0);
+			return;
+		}
+
+		stream.writeByte(EDITOR_PRESENT | (editor.isExpanded() ? EDITOR_EXPANDED : 0));
+		stream.writeUTF(editor.getDisplayName());
+		writeVarInt(zigzag(editor.getX()), stream);
+		writeVarInt(zigzag(editor.getY()), stream);
+		writeVarInt(zigzag(editor.getWidth()), stream);
+		writeVarInt(zigzag(editor.getHeight()), stream);
+	}
+
+	private static DataInput readPayload(DataInput stream) throws IOException {
+		int flags = stream.readUnsignedByte();
+		if ((flags & FLAG_COMPRESSED) == 0) return stream;
+
+		int payloadLength = readLength(stream);
+		int compressedLength = readLength(stream);
+		if (payloadLength > (long) compressedLength * MAX_DEFLATE_RATIO)
+			throw new IOException("Compressed payload of %d bytes can not inflate to %d bytes".formatted(compressedLength, payloadLength));
+		Inflater inflater = new Inflater();
+
+		try {
+			if (stream instanceof ByteBufferDataInput input) inflater.setInput(input.slice(compressedLength));
+			else inflater.setInput(readBytes(compressedLength, stream));
+
+			byte[] payload = new byte[payloadLength];
+			int length = 0;
+
+			while (length < payload.length) {
+				int inflated = inflater.inflate(payload, length, payload.length - length);
+				// All input is given up front, so no progress means the payload can not be
+				// inflated, whether it ended early or asks for a preset dictionary
+				if (inflated == 0) throw new IOException(inflater.needsDictionary()
+					? "Compressed payload requires a preset dictionary"
+					: "Compressed payload is truncated");
+				length += inflated;
+			}
+
+			return new ByteBufferDataInput(ByteBuffer.wrap(payload));
+		} catch (DataFormatException e) {
+			throw new IOException("Compressed payload is malformed", e);
+		} finally {
+			inflater.end();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Read bytes from a stream of unknown size, growing the array while reading
+	 * so a malformed length fails on the end of the stream.
+	 * </p>
+	 */
+	private static byte[] readBytes(int length, DataInput stream) throws IOException {
+		byte[] bytes = new byte[Math.min(length, STREAM_INITIAL_CAPACITY * 64)];
+		int read = 0;
+
+		while (read < length) {
+			if (read == bytes.length) bytes = Arrays.copyOf(bytes, grownCapacity(bytes.length, length));
+			stream.readFully(bytes, read, bytes.length - read);
+			read = bytes.length;
+		}
+
+		return bytes;
+	}
+
+	private static void writePayload(ByteBufferDataOutput payload, DataOutput stream) throws IOException {
+		int length = payload.size();
+
+		if (length >= COMPRESSION_THRESHOLD) {
+			// Compressed payload is only used when it is smaller, so deflating stops
+			// once the output buffer is full
+			ByteBuffer compressed = ByteBuffer.allocate(length);
+			Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+			try {
+				deflater.setInput(payload.toByteBuffer());
+				deflater.finish();
+				while (!deflater.finished() && compressed.hasRemaining()) deflater.deflate(compressed);
+
+				if (deflater.finished() && compressed.position() < length) {
+					stream.writeByte(FLAG_COMPRESSED);
+					writeVarInt(length, stream);
+					writeVarInt(compressed.position(), stream);
+					write(compressed.flip(), stream);
+					return;
+				}
+			} finally {
+				deflater.end();
+			}
+		}
+
+		stream.writeByte(0);
+		write(payload.toByteBuffer(), stream);
+	}
+
+	static void write(ByteBuffer bytes, DataOutput stream) throws IOException {
+		if (stream instanceof ByteBufferDataOutput output) output.write(bytes);
+		else stream.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+	}
+
+	static int readLength(DataInput stream) throws IOException {
+		int length = readVarInt(stream);
+		if (length < 0) throw new IOException("Negative length %d".formatted(length));
+		return length;
+	}
+
+	/**
+	 * <p>
+	 * Write an unsigned LEB128 varint, which takes 1 byte for values below 128.
+	 * Negative values always take 5 bytes; use {@link #zigzag(int)} for signed
+	 * values.
+	 * </p>
+	 */
+	static void writeVarInt(int value, DataOutput stream) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			stream.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+
+		stream.writeByte(value);
+	}
+
+	static int readVarInt(DataInput stream) throws IOException {
+		int value = 0;
+
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = stream.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) return value;
+		}
+
+		throw new IOException("Malformed varint");
+	}
+
+	static int zigzag(int value) {
+		return (value << 1) ^ (value >> 31);
+	}
+
+	static int unzigzag(int value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	static record NodeTypeRef(int index, String id, NodeDescriptor descriptor) {}
+
+	static record NodeType<E>(int index, Node<?, E> node, InputSocket<?>[] inputs, OutputSocket<?>[] outputs) {
+		InputSocket<?> input(int socket) throws IOException {
+			if (socket < 0 || socket >= inputs.length) throw new IOException("Missing input socket with index %d".formatted(socket));
+			return inputs[socket];
+		}
+
+		OutputSocket<?> output(int socket) throws IOException {
+			if (socket < 0 || socket >= outputs.length) throw new IOException("Missing output socket with index %d".formatted(socket));
+			return outputs[socket];
+		}
+	}
+}
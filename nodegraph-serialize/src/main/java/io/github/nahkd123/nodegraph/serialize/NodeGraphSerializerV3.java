@@ -0,0 +1,152 @@
+package io.github.nahkd123.nodegraph.serialize;
+
+import static io.github.nahkd123.nodegraph.serialize.NodeGraphSerializerV2.collectNodeTypes;
+import static io.github.nahkd123.nodegraph.serialize.NodeGraphSerializerV2.encodeConnections;
+import static io.github.nahkd123.nodegraph.serialize.NodeGraphSerializerV2.readInstance;
+import static io.github.nahkd123.nodegraph.serialize.NodeGraphSerializerV2.readNodeTypes;
+import static io.github.nahkd123.nodegraph.serialize.NodeGraphSerializerV2.writeInstance;
+import static io.github.nahkd123.nodegraph.serialize.NodeGraphSerializerV2.writeNodeTypes;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import io.github.nahkd123.nodegraph.graph.GraphDiff;
+import io.github.nahkd123.nodegraph.graph.InstanceIds;
+import io.github.nahkd123.nodegraph.graph.NodeGraph;
+import io.github.nahkd123.nodegraph.node.Node;
+import io.github.nahkd123.nodegraph.serialize.NodeGraphSerializerV2.NodeType;
+import io.github.nahkd123.nodegraph.serialize.NodeGraphSerializerV2.NodeTypeRef;
+
+/**
+ * <p>
+ * Indexed binary format, which is the same as version 2 with tables of
+ * offsets in front of node instances and connections. This allows
+ * {@link LazyNodeGraph} to read any node instance without reading the ones
+ * before it. The layout is:
+ * </p>
+ * <ul>
+ * <li>Table of node types, same as version 2;</li>
+ * <li>Number of node instances {@code n} and number of connections;</li>
+ * <li>{@code n} offsets of node instances, relative to the start of node
+ * instances;</li>
+ * <li>{@code n + 1} indices of the first incoming connection of each node
+ * instance; connections are sorted by their destination;</li>
+ * <li>Length of node instances, followed by node instances in version 2
+ * encoding;</li>
+ * <li>Connections, each of which is the source instance ID, the source socket
+ * index and the destination socket index.</li>
+ * </ul>
+ * <p>
+ * All numbers outside node instances have a fixed width, and the payload is
+ * never compressed, so the tables can be read in place from a mapped file.
+ * Diffs use the same layout as version 1.
+ * </p>
+ */
+class NodeGraphSerializerV3 implements NodeGraphSerializer {
+	static final int CONNECTION_SIZE = 8;
+
+	private final NodeGraphSerializerV1 diffs = new NodeGraphSerializerV1();
+
+	@Override
+	public int versionId() {
+		return 3;
+	}
+
+	@Override
+	public <E> NodeGraph<E> deserializeGraph(Function<String, Node<?, E>> idToNode, Function<Class<?>, ValueDeserializer<?>> valueDeserializers, InstanceIds<E> instanceIds, DataInput stream) throws IOException {
+		GraphBuilder<E> builder = new GraphBuilder<>(instanceIds);
+		visitGraph(idToNode, valueDeserializers, builder, stream);
+		return builder.getGraph();
+	}
+
+	@Override
+	public <E> void visitGraph(Function<String, Node<?, E>> idToNode, Function<Class<?>, ValueDeserializer<?>> valueDeserializers, GraphVisitor<E> visitor, DataInput stream) throws IOException {
+		NodeType<E>[] types = readNodeTypes(idToNode, stream);
+		int instancesCount = stream.readInt();
+		int connectionsCount = stream.readInt();
+		if (instancesCount < 0 || connectionsCount < 0) throw new IOException("Negative count");
+		if (stream instanceof ByteBufferDataInput input && (instancesCount * 2L + 1) * 4 + 4 > input.remaining())
+			throw new IOException("Index of %d node instances does not fit in the remaining %d bytes".formatted(instancesCount, input.remaining()));
+		// Offsets are skipped before allocating, so a truncated stream fails
+		// before the table of starts is allocated
+		for (int i = 0; i < instancesCount; i++) stream.readInt();
+		int[] starts = new int[instancesCount + 1];
+		for (int i = 0; i <= instancesCount; i++) {
+			starts[i] = stream.readInt();
+			if (starts[i] < (i == 0 ? 0 : starts[i - 1]) || starts[i] > connectionsCount)
+				throw new IOException("Invalid index %d of connections for node instance %d".formatted(starts[i], i));
+		}
+		int instancesLength = stream.readInt();
+		if (instancesLength < 0 || (stream instanceof ByteBufferDataInput input && instancesLength > input.remaining()))
+			throw new IOException("Node instances length %d does not fit in the remaining bytes".formatted(instancesLength));
+		int[] typeOf = new int[instancesCount];
+
+		for (int i = 0; i < instancesCount; i++)
+			typeOf[i] = readInstance(i, types, valueDeserializers, visitor, stream).index();
+
+		for (int toId = 0; toId < instancesCount; toId++) {
+			for (int i = starts[toId]; i < starts[toId + 1]; i++) {
+				int fromId = stream.readInt();
+				if (fromId < 0 || fromId >= instancesCount)
+					throw new IOException("Missing node instance with ID %d".formatted(fromId));
+				int fromSocket = stream.readUnsignedShort();
+				int toSocket = stream.readUnsignedShort();
+				visitor.visitConnection(
+					fromId, types[typeOf[fromId]].output(fromSocket),
+					toId, types[typeOf[toId]].input(toSocket));
+			}
+		}
+
+		visitor.visitEnd();
+	}
+
+	@Override
+	public <E> void serializeGraph(NodeGraph<E> graph, Function<Node<?, E>, String> nodeToId, Function<Class<?>, ValueSerializer<?>> valueSerializers, InstanceIds<E> instanceIds, DataOutput stream) throws IOException {
+		Map<Node<?, E>, NodeTypeRef> types = new IdentityHashMap<>();
+		List<NodeTypeRef> typesList = collectNodeTypes(graph, nodeToId, instanceIds, types);
+		int instancesCount = instanceIds.size();
+		ByteBufferDataOutput instances = new ByteBufferDataOutput();
+		int[] offsets = new int[instancesCount];
+
+		for (int i = 0; i < instancesCount; i++) {
+			offsets[i] = instances.size();
+			writeInstance(instanceIds.get(i), types.get(instanceIds.get(i).getNode()), valueSerializers, instances);
+		}
+
+		int[][] connections = encodeConnections(graph, instanceIds, types);
+		int[] starts = new int[instancesCount + 1];
+		for (int[] connection : connections) starts[connection[0] + 1]++;
+		for (int i = 0; i < instancesCount; i++) starts[i + 1] += starts[i];
+
+		writeNodeTypes(typesList, stream);
+		stream.writeInt(instancesCount);
+		stream.writeInt(connections.length);
+		for (int offset : offsets) stream.writeInt(offset);
+		for (int start : starts) stream.writeInt(start);
+		stream.writeInt(instances.size());
+		NodeGraphSerializerV2.write(instances.toByteBuffer(), stream);
+
+		for (int[] connection : connections) {
+			if (connection[1] > 0xFFFF || connection[3] > 0xFFFF)
+				throw new IOException("Socket index %d is too large".formatted(Math.max(connection[1], connection[3])));
+			stream.writeInt(connection[2]);
+			stream.writeShort(connection[3]);
+			stream.writeShort(connection[1]);
+		}
+	}
+
+	@Override
+	public <E> GraphDiff<E> deserializeGraphDiff(Function<String, Node<?, E>> idToNode, Function<Class<?>, ValueDeserializer<?>> valueDeserializers, InstanceIds<E> instanceIds, DataInput stream) throws IOException {
+		return diffs.deserializeGraphDiff(idToNode, valueDeserializers, instanceIds, stream);
+	}
+
+	@Override
+	public <E> void serializeGraphDiff(GraphDiff<E> diff, Function<Node<?, E>, String> nodeToId, Function<Class<?>, ValueSerializer<?>> valueSerializers, InstanceIds<E> instanceIds, DataOutput stream) throws IOException {
+		diffs.serializeGraphDiff(diff, nodeToId, valueSerializers, instanceIds, stream);
+	}
+}
@@ -0,0 +1,70 @@
+package io.github.nahkd123.nodegraph.serialize;
+
+import static io.github.nahkd123.nodegraph.serialize.NodeGraphSerializerV2Test.ADD_NODE;
+import static io.github.nahkd123.nodegraph.serialize.NodeGraphSerializerV2Test.DESERIALIZERS;
+import static io.github.nahkd123.nodegraph.serialize.NodeGraphSerializerV2Test.NODE_TO_ID;
+import static io.github.nahkd123.nodegraph.serialize.NodeGraphSerializerV2Test.SERIALIZERS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Test;
+
+import io.github.nahkd123.nodegraph.graph.NodeGraph;
+import io.github.nahkd123.nodegraph.graph.NodeInstance;
+import io.github.nahkd123.nodegraph.node.Node;
+
+class BulkGraphLoaderTest {
+	@SuppressWarnings("unchecked")
+	@Test
+	void testLoadAll() throws Exception {
+		ByteBuffer serialized = NodeGraphSerializer.serialize(
+			NodeGraphSerializerV2Test.createChain(new NodeInstance[100]),
+			NODE_TO_ID,
+			SERIALIZERS);
+		Map<String, BulkGraphLoader.Source> sources = new LinkedHashMap<>();
+		for (int i = 0; i < 50; i++) sources.put("graph" + i, BulkGraphLoader.Source.of(serialized));
+		sources.put("truncated", BulkGraphLoader.Source.of(serialized.duplicate().limit(20)));
+		sources.put("unknown", () -> { throw new IOException("Missing file"); });
+
+		// Not thread-safe on purpose: the loader must only call it from one thread
+		// at a time
+		Map<String, Node<?, Void>> registry = new HashMap<>();
+		List<String> resolved = new ArrayList<>();
+		BulkGraphLoader<Void> loader = new BulkGraphLoader<>(id -> {
+			resolved.add(id);
+			return registry.computeIfAbsent(id, key -> id.equals("add") ? ADD_NODE : null);
+		}, DESERIALIZERS);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+
+		try {
+			Map<String, BulkGraphLoader.Result<Void>> results = loader.loadAll(sources, executor).get();
+			assertEquals(List.copyOf(sources.keySet()), List.copyOf(results.keySet()));
+			assertEquals(List.of("add"), resolved);
+
+			for (int i = 0; i < 50; i++) {
+				NodeGraph<Void> graph = results.get("graph" + i).getOrThrow();
+				assertEquals(100, graph.getInstances().size());
+				assertEquals(99, graph.getConnections().size());
+			}
+
+			assertFalse(results.get("truncated").isSuccess());
+			assertThrows(IOException.class, results.get("truncated")::getOrThrow);
+			assertInstanceOf(IOException.class, results.get("unknown").error());
+			assertEquals(0, serialized.position());
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
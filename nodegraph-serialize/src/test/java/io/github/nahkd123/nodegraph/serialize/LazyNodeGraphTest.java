@@ -0,0 +1,98 @@
+package io.github.nahkd123.nodegraph.serialize;
+
+import static io.github.nahkd123.nodegraph.serialize.NodeGraphSerializerV2Test.ADD_NODE;
+import static io.github.nahkd123.nodegraph.serialize.NodeGraphSerializerV2Test.DESERIALIZERS;
+import static io.github.nahkd123.nodegraph.serialize.NodeGraphSerializerV2Test.ID_TO_NODE;
+import static io.github.nahkd123.nodegraph.serialize.NodeGraphSerializerV2Test.NODE_TO_ID;
+import static io.github.nahkd123.nodegraph.serialize.NodeGraphSerializerV2Test.SERIALIZERS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+import io.github.nahkd123.nodegraph.graph.InstanceIds;
+import io.github.nahkd123.nodegraph.graph.NodeGraph;
+import io.github.nahkd123.nodegraph.graph.NodeInstance;
+
+class LazyNodeGraphTest {
+	@SuppressWarnings("unchecked")
+	@Test
+	void testLoadWithDependencies() throws IOException {
+		NodeInstance<?, Void>[] chain = new NodeInstance[100];
+		NodeGraph<Void> graph = NodeGraphSerializerV2Test.createChain(chain);
+		InstanceIds<Void> ids = new InstanceIds<>();
+		ByteBufferDataOutput out = new ByteBufferDataOutput();
+		NodeGraphSerializer.serializeIndexed(graph, NODE_TO_ID, SERIALIZERS, ids, out);
+
+		LazyNodeGraph<Void> lazy = LazyNodeGraph.open(ID_TO_NODE, DESERIALIZERS, out.toByteBuffer());
+		assertEquals(100, lazy.getInstancesCount());
+		assertEquals(99, lazy.getConnectionsCount());
+
+		int middle = ids.getId(chain[50]);
+		assertEquals(500, lazy.getEditorData(middle).getX());
+		assertEquals(ADD_NODE, lazy.getNode(middle));
+		assertEquals(1, lazy.getInputConnections(middle).size());
+		assertEquals(ids.getId(chain[49]), lazy.getInputConnections(middle).get(0).fromId());
+		assertFalse(lazy.isLoaded(middle));
+
+		NodeInstance<?, Void> instance = lazy.loadWithDependencies(middle);
+		assertEquals(51, lazy.getGraph().getInstances().size());
+		assertEquals(50, lazy.getGraph().getConnections().size());
+		assertFalse(lazy.isLoaded(ids.getId(chain[51])));
+		assertEquals(51, lazy.getGraph().newEvalRound(null).eval(instance).getDouble(ADD_NODE.output));
+
+		lazy.loadAll();
+		assertEquals(100, lazy.getGraph().getInstances().size());
+		assertEquals(99, lazy.getGraph().getConnections().size());
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	void testIndexedFormat() throws IOException {
+		NodeGraph<Void> graph = NodeGraphSerializerV2Test.createChain(new NodeInstance[100]);
+		ByteBufferDataOutput indexed = new ByteBufferDataOutput();
+		NodeGraphSerializer.serializeIndexed(graph, NODE_TO_ID, SERIALIZERS, indexed);
+		NodeGraph<Void> eager = NodeGraphSerializer.deserialize(ID_TO_NODE, DESERIALIZERS, indexed.toByteBuffer());
+		assertEquals(100, eager.getInstances().size());
+		assertEquals(99, eager.getConnections().size());
+
+		ByteBuffer compact = NodeGraphSerializer.serialize(graph, NODE_TO_ID, SERIALIZERS);
+		assertThrows(IOException.class, () -> LazyNodeGraph.open(ID_TO_NODE, DESERIALIZERS, compact));
+		assertTrue(compact.remaining() < indexed.size());
+	}
+
+	@Test
+	void testMalformedIndex() throws IOException {
+		ByteBufferDataOutput out = new ByteBufferDataOutput();
+		NodeGraphSerializer.serializeIndexed(new NodeGraph<Void>(), NODE_TO_ID, SERIALIZERS, out);
+		ByteBuffer empty = out.toByteBuffer();
+		// Empty graph ends with instances count, connections count, first start
+		// and instances length
+		int[] positions = { empty.limit() - 16, empty.limit() - 4 };
+
+		for (int position : positions) {
+			byte[] bytes = new byte[empty.limit()];
+			empty.get(0, bytes);
+			ByteBuffer.wrap(bytes).putInt(position, Integer.MAX_VALUE);
+
+			assertThrows(IOException.class, () -> LazyNodeGraph.open(ID_TO_NODE, DESERIALIZERS, ByteBuffer.wrap(bytes)));
+			assertThrows(IOException.class, () -> NodeGraphSerializer.deserialize(ID_TO_NODE, DESERIALIZERS, ByteBuffer.wrap(bytes)));
+		}
+
+		// Streams are only bounded by the instances count
+		byte[] bytes = new byte[empty.limit()];
+		empty.get(0, bytes);
+		ByteBuffer.wrap(bytes).putInt(positions[0], Integer.MAX_VALUE);
+		assertThrows(IOException.class, () -> NodeGraphSerializer.deserialize(
+			ID_TO_NODE,
+			DESERIALIZERS,
+			new DataInputStream(new ByteArrayInputStream(bytes))));
+	}
+}
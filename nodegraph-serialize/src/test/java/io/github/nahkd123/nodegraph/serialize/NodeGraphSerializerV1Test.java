@@ -9,10 +9,15 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 
 import org.junit.jupiter.api.Test;
 
 import io.github.nahkd123.nodegraph.graph.EvaluationRound;
+import io.github.nahkd123.nodegraph.graph.GraphDiff;
+import io.github.nahkd123.nodegraph.graph.GraphSnapshot;
+import io.github.nahkd123.nodegraph.graph.InstanceIds;
+import io.github.nahkd123.nodegraph.graph.NodeEditorData;
 import io.github.nahkd123.nodegraph.graph.NodeGraph;
 import io.github.nahkd123.nodegraph.graph.NodeInstance;
 import io.github.nahkd123.nodegraph.node.Node;
@@ -22,30 +27,32 @@ import io.github.nahkd123.nodegraph.socket.OutputSocket;
 import io.github.nahkd123.nodegraph.socket.Socket;
 
 class NodeGraphSerializerV1Test {
-	@Test
-	void testSerializeAndDeserialize() throws IOException {
-		class AddNode implements Node<Object, Void> {
-			InputSocket<Number> inputA = new InputSocket<>(Number.class, "inputA", 0);
-			InputSocket<Number> inputB = new InputSocket<>(Number.class, "inputB", 0);
-			OutputSocket<Number> output = new OutputSocket<>(Number.class, "output");
-
-			@Override
-			public List<Socket<?>> getSockets() { return List.of(inputA, inputB, output); }
-
-			@Override
-			public Object initialize() {
-				return new Object();
-			}
-
-			@Override
-			public void process(NodeProcessContext<Object, Void> context) {
-				double a = context.get(inputA).doubleValue();
-				double b = context.get(inputB).doubleValue();
-				context.set(output, a + b);
-			}
+	static class AddNode implements Node<Object, Void> {
+		InputSocket<Number> inputA = new InputSocket<>(Number.class, "inputA", 0);
+		InputSocket<Number> inputB = new InputSocket<>(Number.class, "inputB", 0);
+		OutputSocket<Number> output = new OutputSocket<>(Number.class, "output");
+
+		@Override
+		public List<Socket<?>> getSockets() { return List.of(inputA, inputB, output); }
+
+		@Override
+		public Object initialize() {
+			return new Object();
 		}
 
-		AddNode addNode = new AddNode();
+		@Override
+		public void process(NodeProcessContext<Object, Void> context) {
+			double a = context.get(inputA).doubleValue();
+			double b = context.get(inputB).doubleValue();
+			context.set(output, a + b);
+		}
+	}
+
+	static final AddNode ADD_NODE = new AddNode();
+
+	@Test
+	void testSerializeAndDeserialize() throws IOException {
+		AddNode addNode = ADD_NODE;
 		NodeGraph<Void> domain = new NodeGraph<>();
 		NodeInstance<Object, Void> a = domain.addInstance(new NodeInstance<>(addNode, null));
 		NodeInstance<Object, Void> b = domain.addInstance(new NodeInstance<>(addNode, null));
@@ -71,4 +78,105 @@ class NodeGraphSerializerV1Test {
 		EvaluationRound<Void> eval = newDomain.newEvalRound(null);
 		assertEquals((1 + 2) + 4, eval.eval(b).get(addNode.output).doubleValue());
 	}
+
+	@Test
+	void testDiff() throws IOException {
+		AddNode addNode = ADD_NODE;
+		Function<Node<?, Void>, String> nodeToId = Map.of(addNode, "add")::get;
+		Function<String, Node<?, Void>> idToNode = Map.of("add", addNode)::get;
+		Function<Class<?>, ValueSerializer<?>> serializers = Map.of(
+			Number.class,
+			(ValueSerializer<Number>) (v, s) -> s.writeDouble(v.doubleValue()))::get;
+		Function<Class<?>, ValueDeserializer<?>> deserializers = Map.of(
+			Number.class,
+			(ValueDeserializer<Number>) s -> s.readDouble())::get;
+
+		NodeGraph<Void> client = new NodeGraph<>();
+		NodeInstance<Object, Void> a = client.addInstance(new NodeInstance<>(addNode, null));
+		NodeInstance<Object, Void> b = client.addInstance(new NodeInstance<>(addNode, null));
+		a.setInitialValue(addNode.inputA, 1);
+		client.connect(a, addNode.output, b, addNode.inputA);
+
+		InstanceIds<Void> clientIds = new InstanceIds<>();
+		InstanceIds<Void> serverIds = new InstanceIds<>();
+		ByteArrayOutputStream bo = new ByteArrayOutputStream();
+		NodeGraphSerializer.serialize(client, nodeToId, serializers, clientIds, new DataOutputStream(bo));
+		NodeGraph<Void> server = NodeGraphSerializer.deserialize(
+			idToNode,
+			deserializers,
+			serverIds,
+			new DataInputStream(new ByteArrayInputStream(bo.toByteArray())));
+
+		GraphSnapshot<Void> before = client.snapshot();
+		NodeInstance<Object, Void> c = client.addInstance(new NodeInstance<>(addNode, null));
+		c.setInitialValue(addNode.inputB, 10);
+		client.connect(b, addNode.output, c, addNode.inputA);
+		a.setInitialValue(addNode.inputA, 2);
+		b.setEditorData(new NodeEditorData("Moved", 100, 100, 50, 50, true));
+		GraphDiff<Void> diff = GraphDiff.between(before, client.snapshot());
+
+		bo = new ByteArrayOutputStream();
+		NodeGraphSerializer.serializeDiff(diff, nodeToId, serializers, clientIds, new DataOutputStream(bo));
+		GraphDiff<Void> received = NodeGraphSerializer.deserializeDiff(
+			idToNode,
+			deserializers,
+			serverIds,
+			new DataInputStream(new ByteArrayInputStream(bo.toByteArray())));
+		received.applyTo(server, serverIds);
+
+		NodeInstance<?, Void> serverB = serverIds.get(clientIds.getId(b));
+		NodeInstance<?, Void> serverC = serverIds.get(clientIds.getId(c));
+		assertEquals(3, server.getInstances().size());
+		assertEquals(2, server.getConnections().size());
+		assertEquals("Moved", serverB.getEditorData().getDisplayName());
+		assertEquals(2 + 10, server.newEvalRound(null).eval(serverC).getDouble(addNode.output));
+	}
+
+	@Test
+	void testVisit() throws IOException {
+		AddNode addNode = ADD_NODE;
+		NodeGraph<Void> graph = new NodeGraph<>();
+		NodeInstance<Object, Void> previous = null;
+
+		for (int i = 0; i < 100; i++) {
+			NodeInstance<Object, Void> instance = graph.addInstance(new NodeInstance<>(addNode, null));
+			instance.setInitialValue(addNode.inputB, i);
+			if (previous != null) graph.connect(previous, addNode.output, instance, addNode.inputA);
+			previous = instance;
+		}
+
+		ByteArrayOutputStream bo = new ByteArrayOutputStream();
+		NodeGraphSerializer.serialize(
+			graph,
+			Map.of(addNode, "add")::get,
+			Map.of(Number.class, (ValueSerializer<Number>) (v, s) -> s.writeDouble(v.doubleValue()))::get,
+			new DataOutputStream(bo));
+
+		int[] counts = new int[3];
+		NodeGraphSerializer.visit(
+			Map.of("add", addNode)::get,
+			Map.of(Number.class, (ValueDeserializer<Number>) s -> s.readDouble())::get,
+			new GraphVisitor<>() {
+				@Override
+				public void visitInstance(int id, Node<?, Void> node, NodeEditorData editorData) {
+					counts[0]++;
+				}
+
+				@Override
+				public void visitInitialValue(int id, InputSocket<?> socket, Object value) {
+					assertEquals(addNode.inputB, socket);
+					counts[1]++;
+				}
+
+				@Override
+				public void visitConnection(int fromId, OutputSocket<?> fromSocket, int toId, InputSocket<?> toSocket) {
+					assertEquals(addNode.inputA, toSocket);
+					counts[2]++;
+				}
+			},
+			new DataInputStream(new ByteArrayInputStream(bo.toByteArray())));
+		assertEquals(100, counts[0]);
+		assertEquals(99, counts[1]);
+		assertEquals(99, counts[2]);
+	}
 }
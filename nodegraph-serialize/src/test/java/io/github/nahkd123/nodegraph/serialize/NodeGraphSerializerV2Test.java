@@ -0,0 +1,203 @@
+package io.github.nahkd123.nodegraph.serialize;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.github.nahkd123.nodegraph.graph.InstanceIds;
+import io.github.nahkd123.nodegraph.graph.NodeEditorData;
+import io.github.nahkd123.nodegraph.graph.NodeGraph;
+import io.github.nahkd123.nodegraph.graph.NodeInstance;
+import io.github.nahkd123.nodegraph.node.Node;
+import io.github.nahkd123.nodegraph.serialize.NodeGraphSerializerV1Test.AddNode;
+
+class NodeGraphSerializerV2Test {
+	static final AddNode ADD_NODE = NodeGraphSerializerV1Test.ADD_NODE;
+	static final Function<Node<?, Void>, String> NODE_TO_ID = Map.of(ADD_NODE, "add")::get;
+	static final Function<String, Node<?, Void>> ID_TO_NODE = Map.of("add", ADD_NODE)::get;
+	static final Function<Class<?>, ValueSerializer<?>> SERIALIZERS = Map.of(
+		Number.class,
+		(ValueSerializer<Number>) (v, s) -> s.writeDouble(v.doubleValue()))::get;
+	static final Function<Class<?>, ValueDeserializer<?>> DESERIALIZERS = Map.of(
+		Number.class,
+		(ValueDeserializer<Number>) s -> s.readDouble())::get;
+
+	static NodeGraph<Void> createChain(NodeInstance<?, Void>[] chain) {
+		NodeGraph<Void> graph = new NodeGraph<>();
+		NodeInstance<Object, Void> previous = null;
+
+		for (int i = 0; i < chain.length; i++) {
+			NodeInstance<Object, Void> instance = graph.addInstance(new NodeInstance<>(ADD_NODE, i % 2 == 0
+				? new NodeEditorData("Add", i * 10, -i * 10, 100, 50, true)
+				: null));
+			instance.setInitialValue(ADD_NODE.inputB, 1);
+			if (previous != null) graph.connect(previous, ADD_NODE.output, instance, ADD_NODE.inputA);
+			chain[i] = previous = instance;
+		}
+
+		return graph;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	void testCompressedRoundTrip() throws IOException {
+		NodeInstance<?, Void>[] chain = new NodeInstance[1000];
+		NodeGraph<Void> graph = createChain(chain);
+		InstanceIds<Void> ids = new InstanceIds<>();
+		ByteArrayOutputStream v1 = new ByteArrayOutputStream();
+		ByteArrayOutputStream v2 = new ByteArrayOutputStream();
+		new NodeGraphSerializerV1().serializeGraph(graph, NODE_TO_ID, SERIALIZERS, new DataOutputStream(v1));
+		NodeGraphSerializer.serialize(graph, NODE_TO_ID, SERIALIZERS, ids, new DataOutputStream(v2));
+		assertTrue(v2.size() * 4 < v1.size(), "v2 is %d bytes, v1 is %d bytes".formatted(v2.size(), v1.size()));
+
+		InstanceIds<Void> newIds = new InstanceIds<>();
+		NodeGraph<Void> newGraph = NodeGraphSerializer.deserialize(
+			ID_TO_NODE,
+			DESERIALIZERS,
+			newIds,
+			new DataInputStream(new ByteArrayInputStream(v2.toByteArray())));
+		assertEquals(1000, newGraph.getInstances().size());
+		assertEquals(999, newGraph.getConnections().size());
+
+		NodeInstance<?, Void> last = newIds.get(ids.getId(chain[999]));
+		NodeInstance<?, Void> even = newIds.get(ids.getId(chain[10]));
+		assertEquals(1000, newGraph.newEvalRound(null).eval(last).getDouble(ADD_NODE.output));
+		assertEquals(-100, even.getEditorData().getY());
+		assertTrue(even.getEditorData().isExpanded());
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	void testLoadV1() throws IOException {
+		NodeGraph<Void> graph = createChain(new NodeInstance[10]);
+		ByteArrayOutputStream bo = new ByteArrayOutputStream();
+		DataOutputStream stream = new DataOutputStream(bo);
+		stream.writeInt(1);
+		new NodeGraphSerializerV1().serializeGraph(graph, NODE_TO_ID, SERIALIZERS, stream);
+
+		NodeGraph<Void> newGraph = NodeGraphSerializer.deserialize(
+			ID_TO_NODE,
+			DESERIALIZERS,
+			new DataInputStream(new ByteArrayInputStream(bo.toByteArray())));
+		assertEquals(10, newGraph.getInstances().size());
+		assertEquals(9, newGraph.getConnections().size());
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	void testMappedFile(@TempDir Path directory) throws IOException {
+		NodeInstance<?, Void>[] chain = new NodeInstance[1000];
+		NodeGraph<Void> graph = createChain(chain);
+		ByteBuffer buffer = NodeGraphSerializer.serialize(graph, NODE_TO_ID, SERIALIZERS);
+		Path file = directory.resolve("graph.bin");
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			channel.write(buffer.duplicate());
+			channel.write(buffer.duplicate());
+		}
+
+		NodeGraph<Void> fromFile = NodeGraphSerializer.deserialize(ID_TO_NODE, DESERIALIZERS, file);
+		assertEquals(1000, fromFile.getInstances().size());
+		assertEquals(999, fromFile.getConnections().size());
+
+		ByteBuffer twice = ByteBuffer.allocate(buffer.remaining() * 2).put(buffer.duplicate()).put(buffer.duplicate()).flip();
+		NodeGraphSerializer.deserialize(ID_TO_NODE, DESERIALIZERS, twice);
+		NodeGraph<Void> second = NodeGraphSerializer.deserialize(ID_TO_NODE, DESERIALIZERS, twice);
+		assertEquals(1000, second.getInstances().size());
+		assertFalse(twice.hasRemaining());
+	}
+
+	@Test
+	void testMalformedLengths() throws IOException {
+		int[][] headers = {
+			// Node types count
+			{ 0, Integer.MAX_VALUE },
+			// Inflated and deflated lengths
+			{ 1, Integer.MAX_VALUE, 16 },
+			{ 1, 1024, Integer.MAX_VALUE },
+		};
+
+		for (int[] header : headers) {
+			ByteArrayOutputStream bo = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bo);
+			out.writeInt(2);
+			out.writeByte(header[0]);
+			for (int i = 1; i < header.length; i++) NodeGraphSerializerV2.writeVarInt(header[i], out);
+			out.write(new byte[16]);
+			byte[] bytes = bo.toByteArray();
+
+			assertThrows(IOException.class, () -> NodeGraphSerializer.deserialize(ID_TO_NODE, DESERIALIZERS, ByteBuffer.wrap(bytes)));
+			assertThrows(IOException.class, () -> NodeGraphSerializer.deserialize(
+				ID_TO_NODE,
+				DESERIALIZERS,
+				new DataInputStream(new ByteArrayInputStream(bytes))));
+		}
+	}
+
+	@Test
+	void testPresetDictionary() throws IOException {
+		ByteArrayOutputStream bo = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bo);
+		out.writeInt(2);
+		out.writeByte(1);
+		NodeGraphSerializerV2.writeVarInt(16, out);
+		NodeGraphSerializerV2.writeVarInt(24, out);
+		// Zlib header with FDICT set, followed by the dictionary ID
+		out.write(new byte[] { 0x78, (byte) 0xBB });
+		out.write(new byte[22]);
+		byte[] bytes = bo.toByteArray();
+
+		assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+			assertThrows(IOException.class, () -> NodeGraphSerializer.deserialize(ID_TO_NODE, DESERIALIZERS, ByteBuffer.wrap(bytes)));
+			assertThrows(IOException.class, () -> NodeGraphSerializer.deserialize(
+				ID_TO_NODE,
+				DESERIALIZERS,
+				new DataInputStream(new ByteArrayInputStream(bytes))));
+		});
+	}
+
+	@Test
+	void testVarInt() throws IOException {
+		int[] values = { 0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, -1, Integer.MIN_VALUE };
+		ByteArrayOutputStream bo = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bo);
+		for (int value : values) NodeGraphSerializerV2.writeVarInt(NodeGraphSerializerV2.zigzag(value), out);
+
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bo.toByteArray()));
+		for (int value : values) assertEquals(value, NodeGraphSerializerV2.unzigzag(NodeGraphSerializerV2.readVarInt(in)));
+	}
+
+	@Test
+	void testByteBufferUtf() throws IOException {
+		String[] values = { "", "add", "caf\u00e9", "\u0000", "\u4e2d\u6587", "\ud83d\ude00" };
+		ByteBufferDataOutput out = new ByteBufferDataOutput(1);
+		for (String value : values) out.writeUTF(value);
+
+		ByteArrayOutputStream bo = new ByteArrayOutputStream();
+		DataOutputStream expected = new DataOutputStream(bo);
+		for (String value : values) expected.writeUTF(value);
+		assertArrayEquals(bo.toByteArray(), out.toByteArray());
+
+		ByteBufferDataInput in = new ByteBufferDataInput(out.toByteBuffer());
+		for (String value : values) assertEquals(value, in.readUTF());
+	}
+}